@@ -0,0 +1,16 @@
+package com.compostos.app;
+
+/**
+ * Conversion between JS amounts (major units, e.g. 25.50 CZK) and Stripe amounts (minor units).
+ */
+final class Amounts {
+
+    private Amounts() {}
+
+    /**
+     * Convert dollars to cents (Stripe uses cents).
+     */
+    static long toMinorUnits(double amount) {
+        return Math.round(amount * 100);
+    }
+}
@@ -0,0 +1,329 @@
+package com.compostos.app;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client for the register's own backend ({@code /connection_token},
+ * {@code /create_payment_intent}, ...).
+ *
+ * Connections are kept alive and reused from the platform pool: every response body
+ * (including error bodies) is fully drained and closed, and {@code disconnect()} is never
+ * called. Responses may be gzip-encoded and are decoded with {@link BackendJson} straight
+ * off the socket. Each endpoint can have its own connect/read deadline.
+ *
+ * With several backend URLs, requests go to the one {@link BackendEndpoints} prefers. A
+ * request that could not even connect moves on to the next URL at once (nothing was sent,
+ * so this is safe for any call); other failures count against the URL's circuit breaker
+ * and are thrown to the caller's retry logic.
+ */
+class BackendClient {
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    static final int DEFAULT_READ_TIMEOUT_MS = 10000;
+    // Connect deadline while another backend is available to fail over to
+    static final int FAILOVER_CONNECT_TIMEOUT_MS = 3000;
+    static final int PROBE_TIMEOUT_MS = 2000;
+    private static final long PROBE_TICK_MS = 1000;
+
+    interface Listener {
+        void onEndpointStateChanged(BackendEndpoints.Endpoint endpoint, BackendEndpoints.State state);
+    }
+
+    /**
+     * Thrown for non-2xx responses. The message keeps the "Backend returned N" wording.
+     */
+    static class BackendException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int statusCode;
+
+        BackendException(int statusCode, String detail) {
+            super("Backend returned " + statusCode + (detail != null ? " (" + detail + ")" : ""));
+            this.statusCode = statusCode;
+        }
+    }
+
+    static final class Timeouts {
+        final int connectMs;
+        final int readMs;
+
+        Timeouts(int connectMs, int readMs) {
+            this.connectMs = connectMs;
+            this.readMs = readMs;
+        }
+    }
+
+    private static final Timeouts DEFAULT_TIMEOUTS = new Timeouts(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+
+    /**
+     * A connect failure: the request never left the device.
+     */
+    private static final class NotSentException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NotSentException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    private final Map<String, Timeouts> timeouts = new ConcurrentHashMap<>();
+    private final BackendEndpoints endpoints;
+    private volatile Listener listener;
+
+    BackendClient(String baseUrl) {
+        this(Collections.singletonList(baseUrl));
+    }
+
+    BackendClient(List<String> baseUrls) {
+        this.endpoints = new BackendEndpoints(baseUrls);
+    }
+
+    void setBaseUrl(String baseUrl) {
+        setBaseUrls(Collections.singletonList(baseUrl));
+    }
+
+    /**
+     * Ordered backend URLs, preferred first; health tracking starts over.
+     */
+    void setBaseUrls(List<String> baseUrls) {
+        endpoints.setUrls(baseUrls);
+    }
+
+    /**
+     * The URL requests currently go to.
+     */
+    String getBaseUrl() {
+        return endpoints.current().url;
+    }
+
+    BackendEndpoints endpoints() {
+        return endpoints;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Probe {@code GET /health} on open circuits once their cool-down is over and, with more
+     * than one URL, on every URL periodically to rank them by round trip.
+     */
+    ScheduledFuture<?> startHealthProbes(Executor io, ScheduledExecutorService timer) {
+        return timer.scheduleWithFixedDelay(() -> {
+            List<BackendEndpoints.Endpoint> all = endpoints.all();
+            long now = System.nanoTime();
+            for (BackendEndpoints.Endpoint endpoint : all) {
+                if (!endpoint.startProbe(now, all.size() > 1)) {
+                    continue;
+                }
+                try {
+                    io.execute(() -> probe(endpoint));
+                } catch (RuntimeException e) {
+                    endpoint.finishProbe(System.nanoTime(), 0, false);
+                }
+            }
+        }, PROBE_TICK_MS, PROBE_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void probe(BackendEndpoints.Endpoint endpoint) {
+        long start = System.nanoTime();
+        boolean healthy;
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(endpoint.url + "/health").openConnection();
+            conn.setConnectTimeout(PROBE_TIMEOUT_MS);
+            conn.setReadTimeout(PROBE_TIMEOUT_MS);
+            conn.setUseCaches(false);
+            int code = conn.getResponseCode();
+            InputStream body = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+            if (body != null) {
+                responseReader(conn, body).close();
+            }
+            healthy = code >= 200 && code < 300;
+        } catch (IOException e) {
+            healthy = false;
+        }
+        long now = System.nanoTime();
+        if (endpoint.finishProbe(now, now - start, healthy)) {
+            notifyState(endpoint, BackendEndpoints.State.CLOSED);
+        }
+    }
+
+    /**
+     * Override connect/read deadlines for one endpoint path, e.g. {@code /create_payment_intent}.
+     */
+    void setTimeouts(String path, int connectMs, int readMs) {
+        timeouts.put(path, new Timeouts(connectMs, readMs));
+    }
+
+    Timeouts timeoutsFor(String path) {
+        Timeouts t = timeouts.get(path);
+        return t != null ? t : DEFAULT_TIMEOUTS;
+    }
+
+    /**
+     * POST a JSON body and decode the JSON object response.
+     */
+    Map<String, Object> post(String path, Map<String, ?> body) throws IOException {
+        return post(path, body, null);
+    }
+
+    /**
+     * POST with extra request headers (e.g. {@code Idempotency-Key}).
+     */
+    Map<String, Object> post(String path, Map<String, ?> body, Map<String, String> headers) throws IOException {
+        return post(path, BackendJson.write(body).getBytes(StandardCharsets.UTF_8), headers);
+    }
+
+    /**
+     * POST a JSON document that is already gzip-compressed (bulk uploads).
+     */
+    Map<String, Object> postGzip(String path, byte[] gzippedJson) throws IOException {
+        return post(path, gzippedJson, Collections.singletonMap("Content-Encoding", "gzip"));
+    }
+
+    private Map<String, Object> post(String path, byte[] payload, Map<String, String> headers) throws IOException {
+        List<BackendEndpoints.Endpoint> candidates = endpoints.candidates();
+        IOException lastError = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            BackendEndpoints.Endpoint endpoint = candidates.get(i);
+            try {
+                return post(endpoint, path, payload, headers, i + 1 < candidates.size());
+            } catch (NotSentException e) {
+                recordFailure(endpoint);
+                lastError = (IOException) e.getCause();
+            }
+        }
+        throw lastError;
+    }
+
+    private Map<String, Object> post(BackendEndpoints.Endpoint endpoint, String path, byte[] payload,
+                                     Map<String, String> headers, boolean canFailOver) throws IOException {
+        Timeouts t = timeoutsFor(path);
+        HttpURLConnection conn = (HttpURLConnection) new URL(endpoint.url + path).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setRequestProperty("Accept-Encoding", "gzip");
+        conn.setRequestProperty("Connection", "keep-alive");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        conn.setConnectTimeout(canFailOver ? Math.min(t.connectMs, FAILOVER_CONNECT_TIMEOUT_MS) : t.connectMs);
+        conn.setReadTimeout(t.readMs);
+        conn.setUseCaches(false);
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(payload.length);
+        try {
+            conn.connect();
+        } catch (IOException e) {
+            throw new NotSentException(e);
+        }
+
+        try {
+            Map<String, Object> json = exchange(conn, payload);
+            endpoint.recordSuccess();
+            return json;
+        } catch (BackendException e) {
+            if (e.statusCode >= 500) {
+                recordFailure(endpoint);
+            } else {
+                // The backend is up; the request itself was refused
+                endpoint.recordSuccess();
+            }
+            throw e;
+        } catch (IOException e) {
+            recordFailure(endpoint);
+            throw e;
+        }
+    }
+
+    private void recordFailure(BackendEndpoints.Endpoint endpoint) {
+        if (endpoint.recordFailure(System.nanoTime())) {
+            notifyState(endpoint, BackendEndpoints.State.OPEN);
+        }
+    }
+
+    private void notifyState(BackendEndpoints.Endpoint endpoint, BackendEndpoints.State state) {
+        Listener l = listener;
+        if (l != null) {
+            l.onEndpointStateChanged(endpoint, state);
+        }
+    }
+
+    private static Map<String, Object> exchange(HttpURLConnection conn, byte[] payload) throws IOException {
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write(payload);
+        }
+
+        int responseCode = conn.getResponseCode();
+        if (responseCode < 200 || responseCode >= 300) {
+            String detail = null;
+            InputStream error = conn.getErrorStream();
+            if (error != null) {
+                try (Reader reader = responseReader(conn, error)) {
+                    detail = BackendJson.optString(BackendJson.readObject(reader), "error");
+                } catch (IOException ignored) {
+                    // Non-JSON error page; the status code is enough
+                }
+            }
+            throw new BackendException(responseCode, detail);
+        }
+
+        try (Reader reader = responseReader(conn, conn.getInputStream())) {
+            return BackendJson.readObject(reader);
+        }
+    }
+
+    private static Reader responseReader(HttpURLConnection conn, InputStream stream) throws IOException {
+        InputStream in = stream;
+        if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+            in = new GZIPInputStream(stream);
+        }
+        return new DrainingReader(new InputStreamReader(in, StandardCharsets.UTF_8), stream);
+    }
+
+    /**
+     * Drains whatever the parser didn't consume before closing, so the socket goes back to the pool.
+     */
+    private static final class DrainingReader extends FilterReader {
+        private final InputStream raw;
+
+        DrainingReader(Reader in, InputStream raw) {
+            super(in);
+            this.raw = raw;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                byte[] skip = new byte[256];
+                while (raw.read(skip) != -1) {
+                    // discard
+                }
+            } catch (IOException ignored) {
+                // Connection will simply not be reused
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.compostos.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ordered list of backend base URLs (e.g. cloud first, in-store LAN server second) with
+ * per-endpoint health.
+ *
+ * Each endpoint keeps a rolling health-probe round trip and request error rate. After
+ * {@link #FAILURES_TO_OPEN} consecutive failures its circuit opens and requests skip it;
+ * once the cool-down (doubling per re-open) has passed, a {@code /health} probe closes it
+ * again. Requests go to the fastest closed endpoint, where an endpoint later in the list
+ * must be clearly faster ({@link #SWITCH_FACTOR}) to win over an earlier one.
+ */
+final class BackendEndpoints {
+
+    enum State {
+        CLOSED,
+        OPEN
+    }
+
+    static final int FAILURES_TO_OPEN = 3;
+    static final long INITIAL_OPEN_MS = 5000;
+    static final long MAX_OPEN_MS = 60000;
+    static final long RTT_PROBE_INTERVAL_MS = 30000;
+    static final double SWITCH_FACTOR = 0.8;
+    private static final double ALPHA = 0.2;
+
+    static final class Endpoint {
+        final String url;
+        final int index;
+
+        // Guarded by this
+        private State state = State.CLOSED;
+        private double rttMs = -1;
+        private double errorRate;
+        private int consecutiveFailures;
+        private int opens;
+        private long retryAtNanos;
+        private long lastProbeNanos;
+        private boolean probing;
+        private long successes;
+        private long failures;
+
+        Endpoint(String url, int index) {
+            this.url = url;
+            this.index = index;
+        }
+
+        synchronized State state() {
+            return state;
+        }
+
+        synchronized double rttMs() {
+            return rttMs;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized int consecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        synchronized long successes() {
+            return successes;
+        }
+
+        synchronized long failures() {
+            return failures;
+        }
+
+        /**
+         * Lower is better; endpoints not probed yet rank by list position only.
+         */
+        synchronized double score() {
+            return rttMs < 0 ? Double.MAX_VALUE : rttMs * (1 + 3 * errorRate);
+        }
+
+        synchronized void recordSuccess() {
+            successes++;
+            consecutiveFailures = 0;
+            errorRate = (1 - ALPHA) * errorRate;
+        }
+
+        /**
+         * Returns true if this failure opened the circuit.
+         */
+        synchronized boolean recordFailure(long nowNanos) {
+            failures++;
+            errorRate = (1 - ALPHA) * errorRate + ALPHA;
+            if (state == State.OPEN || ++consecutiveFailures < FAILURES_TO_OPEN) {
+                return false;
+            }
+            open(nowNanos);
+            return true;
+        }
+
+        private void open(long nowNanos) {
+            state = State.OPEN;
+            opens++;
+            long openMs = Math.min(MAX_OPEN_MS, INITIAL_OPEN_MS << Math.min(10, opens - 1));
+            retryAtNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(openMs);
+        }
+
+        /**
+         * Claim a probe if one is due: open endpoints after their cool-down, closed ones
+         * periodically to refresh the round trip.
+         */
+        synchronized boolean startProbe(long nowNanos, boolean measureRtt) {
+            if (probing) {
+                return false;
+            }
+            boolean due = state == State.OPEN
+                ? nowNanos >= retryAtNanos
+                : measureRtt && (lastProbeNanos == 0 || nowNanos - lastProbeNanos >= TimeUnit.MILLISECONDS.toNanos(RTT_PROBE_INTERVAL_MS));
+            if (due) {
+                probing = true;
+            }
+            return due;
+        }
+
+        /**
+         * Returns true if the probe closed the circuit.
+         */
+        synchronized boolean finishProbe(long nowNanos, long rttNanos, boolean healthy) {
+            probing = false;
+            lastProbeNanos = nowNanos;
+            if (!healthy) {
+                if (state == State.OPEN) {
+                    open(nowNanos);
+                }
+                return false;
+            }
+            double sample = rttNanos / 1e6;
+            rttMs = rttMs < 0 ? sample : (1 - ALPHA) * rttMs + ALPHA * sample;
+            if (state != State.OPEN) {
+                return false;
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            errorRate = 0;
+            return true;
+        }
+
+        synchronized long retryAtNanos() {
+            return retryAtNanos;
+        }
+    }
+
+    private volatile List<Endpoint> endpoints;
+
+    BackendEndpoints(List<String> urls) {
+        setUrls(urls);
+    }
+
+    /**
+     * Replace the list; health starts over.
+     */
+    void setUrls(List<String> urls) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend URL is required");
+        }
+        List<Endpoint> list = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            list.add(new Endpoint(url, list.size()));
+        }
+        endpoints = Collections.unmodifiableList(list);
+    }
+
+    List<Endpoint> all() {
+        return endpoints;
+    }
+
+    /**
+     * Endpoints in the order a request should try them: the preferred closed endpoint, the
+     * other closed ones by score, then open ones by soonest retry (better than failing
+     * outright when every circuit is open).
+     */
+    List<Endpoint> candidates() {
+        List<Endpoint> list = endpoints;
+        List<Endpoint> closed = new ArrayList<>(list.size());
+        List<Endpoint> open = new ArrayList<>(list.size());
+        for (Endpoint endpoint : list) {
+            (endpoint.state() == State.CLOSED ? closed : open).add(endpoint);
+        }
+        Collections.sort(open, (a, b) -> Long.compare(a.retryAtNanos(), b.retryAtNanos()));
+
+        List<Endpoint> ordered = new ArrayList<>(list.size());
+        if (!closed.isEmpty()) {
+            Endpoint preferred = preferred(closed);
+            ordered.add(preferred);
+            closed.remove(preferred);
+            Collections.sort(closed, (a, b) -> Double.compare(a.score(), b.score()));
+            ordered.addAll(closed);
+        }
+        ordered.addAll(open);
+        return ordered;
+    }
+
+    /**
+     * First endpoint requests would use.
+     */
+    Endpoint current() {
+        return candidates().get(0);
+    }
+
+    private static Endpoint preferred(List<Endpoint> closed) {
+        Endpoint best = closed.get(0);
+        double bestScore = best.score();
+        for (int i = 1; i < closed.size(); i++) {
+            double score = closed.get(i).score();
+            if (score < bestScore * SWITCH_FACTOR) {
+                best = closed.get(i);
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+}
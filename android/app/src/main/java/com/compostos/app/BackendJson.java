@@ -0,0 +1,330 @@
+package com.compostos.app;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal streaming JSON codec for backend calls.
+ *
+ * Decoding pulls characters straight off the response stream through a reusable buffer,
+ * so the body is never materialised as one String. Objects decode to {@link LinkedHashMap},
+ * arrays to {@link ArrayList}, integers to {@link Long} and other numbers to {@link Double}.
+ * Pure Java (no org.json / android.*) so it runs in JVM unit tests and benchmarks.
+ */
+final class BackendJson {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // Backend work runs on a bounded pool, so per-thread buffers stay bounded too
+    private static final ThreadLocal<char[]> READ_BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[BUFFER_SIZE];
+        }
+    };
+    private static final ThreadLocal<StringBuilder> SCRATCH = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private BackendJson() {}
+
+    /**
+     * Decode a single JSON object from the reader.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> readObject(Reader reader) throws IOException {
+        Object value = new Parser(reader, READ_BUFFER.get(), SCRATCH.get()).readTopLevel();
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a JSON object from backend");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    static Map<String, Object> readObject(String json) throws IOException {
+        return readObject(new java.io.StringReader(json));
+    }
+
+    /**
+     * Encode a flat or nested map as JSON. The returned String is built in a reused buffer.
+     */
+    static String write(Map<String, ?> body) {
+        StringBuilder out = SCRATCH.get();
+        out.setLength(0);
+        writeValue(out, body);
+        return out.toString();
+    }
+
+    static String getString(Map<String, Object> json, String key) throws IOException {
+        Object value = json.get(key);
+        if (!(value instanceof String)) {
+            throw new IOException("Backend response is missing \"" + key + "\"");
+        }
+        return (String) value;
+    }
+
+    static String optString(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    static long optLong(Map<String, Object> json, String key, long fallback) {
+        Object value = json.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : fallback;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, ?> entry : ((Map<String, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(out, entry.getKey());
+                out.append(':');
+                writeValue(out, entry.getValue());
+            }
+            out.append('}');
+        } else if (value instanceof Iterable) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : (Iterable<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeValue(out, item);
+            }
+            out.append(']');
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private static final class Parser {
+        private final Reader reader;
+        private final char[] buffer;
+        private final StringBuilder scratch;
+        private int pos;
+        private int limit;
+
+        Parser(Reader reader, char[] buffer, StringBuilder scratch) {
+            this.reader = reader;
+            this.buffer = buffer;
+            this.scratch = scratch;
+        }
+
+        Object readTopLevel() throws IOException {
+            Object value = readValue();
+            if (peekNonWhitespace() != -1) {
+                throw syntaxError("Trailing data after JSON value");
+            }
+            return value;
+        }
+
+        private Object readValue() throws IOException {
+            int c = peekNonWhitespace();
+            switch (c) {
+                case '{': return readMap();
+                case '[': return readList();
+                case '"': pos++; return readString();
+                case 't': expectLiteral("true"); return Boolean.TRUE;
+                case 'f': expectLiteral("false"); return Boolean.FALSE;
+                case 'n': expectLiteral("null"); return null;
+                case -1: throw syntaxError("Unexpected end of input");
+                default: return readNumber();
+            }
+        }
+
+        private Map<String, Object> readMap() throws IOException {
+            pos++; // '{'
+            Map<String, Object> map = new LinkedHashMap<>();
+            if (peekNonWhitespace() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                if (peekNonWhitespace() != '"') {
+                    throw syntaxError("Expected object key");
+                }
+                pos++;
+                String key = readString();
+                if (peekNonWhitespace() != ':') {
+                    throw syntaxError("Expected ':'");
+                }
+                pos++;
+                map.put(key, readValue());
+                int c = peekNonWhitespace();
+                pos++;
+                if (c == '}') {
+                    return map;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private List<Object> readList() throws IOException {
+            pos++; // '['
+            List<Object> list = new ArrayList<>();
+            if (peekNonWhitespace() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(readValue());
+                int c = peekNonWhitespace();
+                pos++;
+                if (c == ']') {
+                    return list;
+                }
+                if (c != ',') {
+                    throw syntaxError("Expected ',' or ']'");
+                }
+            }
+        }
+
+        private String readString() throws IOException {
+            scratch.setLength(0);
+            while (true) {
+                if (pos == limit && !fill()) {
+                    throw syntaxError("Unterminated string");
+                }
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return scratch.toString();
+                }
+                if (c != '\\') {
+                    scratch.append(c);
+                    continue;
+                }
+                char escaped = nextChar();
+                switch (escaped) {
+                    case 'n': scratch.append('\n'); break;
+                    case 't': scratch.append('\t'); break;
+                    case 'r': scratch.append('\r'); break;
+                    case 'b': scratch.append('\b'); break;
+                    case 'f': scratch.append('\f'); break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(nextChar(), 16);
+                            if (digit < 0) {
+                                throw syntaxError("Invalid \\u escape");
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        scratch.append((char) code);
+                        break;
+                    default: scratch.append(escaped);
+                }
+            }
+        }
+
+        private Object readNumber() throws IOException {
+            scratch.setLength(0);
+            boolean integral = true;
+            while (pos < limit || fill()) {
+                char c = buffer[pos];
+                if ((c >= '0' && c <= '9') || c == '-' || c == '+') {
+                    scratch.append(c);
+                } else if (c == '.' || c == 'e' || c == 'E') {
+                    integral = false;
+                    scratch.append(c);
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            if (scratch.length() == 0) {
+                throw syntaxError("Unexpected character");
+            }
+            try {
+                String text = scratch.toString();
+                if (integral && scratch.length() < 19) {
+                    return Long.parseLong(text);
+                }
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw syntaxError("Invalid number");
+            }
+        }
+
+        private void expectLiteral(String literal) throws IOException {
+            for (int i = 0; i < literal.length(); i++) {
+                if (nextChar() != literal.charAt(i)) {
+                    throw syntaxError("Expected " + literal);
+                }
+            }
+        }
+
+        private int peekNonWhitespace() throws IOException {
+            while (pos < limit || fill()) {
+                char c = buffer[pos];
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    return c;
+                }
+                pos++;
+            }
+            return -1;
+        }
+
+        private char nextChar() throws IOException {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unexpected end of input");
+            }
+            return buffer[pos++];
+        }
+
+        private boolean fill() throws IOException {
+            int read = reader.read(buffer, 0, buffer.length);
+            if (read <= 0) {
+                return false;
+            }
+            pos = 0;
+            limit = read;
+            return true;
+        }
+
+        private IOException syntaxError(String message) {
+            return new IOException("Malformed backend JSON: " + message);
+        }
+    }
+}
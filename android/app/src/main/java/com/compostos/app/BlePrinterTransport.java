@@ -0,0 +1,245 @@
+package com.compostos.app;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.BluetoothStatusCodes;
+import android.content.Context;
+import android.os.Build;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * BLE printer over its writable GATT characteristic.
+ *
+ * Writes are pipelined: with write-without-response, Android reports each packet as soon as
+ * the controller has queued it, and the next one goes out from that callback. The single
+ * in-flight slot is the flow control: a printer (or controller) that stops taking data holds
+ * the slot, and a write that can't get it within {@link #WRITE_STALL_MS} fails the job.
+ */
+final class BlePrinterTransport implements PrinterTransport {
+
+    // Services thermal printers expose their print characteristic on, most common first
+    static final UUID[] PRINTER_SERVICES = {
+        UUID.fromString("49535343-fe7d-4ae5-8fa9-9fafd205e455"),
+        UUID.fromString("000018f0-0000-1000-8000-00805f9b34fb"),
+        UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e"),
+        UUID.fromString("0000ffe0-0000-1000-8000-00805f9b34fb"),
+        UUID.fromString("0000ff00-0000-1000-8000-00805f9b34fb"),
+        UUID.fromString("0000fee7-0000-1000-8000-00805f9b34fb"),
+        UUID.fromString("0000ae00-0000-1000-8000-00805f9b34fb"),
+        UUID.fromString("0000af00-0000-1000-8000-00805f9b34fb"),
+    };
+
+    private static final int REQUESTED_MTU = 517;
+    // ATT header; the attribute value itself is capped at 512 bytes
+    private static final int ATT_OVERHEAD = 3;
+    private static final int MAX_CHUNK = 512;
+    private static final long WRITE_STALL_MS = 5000;
+    private static final long BUSY_RETRY_MS = 2;
+
+    private final BluetoothGatt gatt;
+    private final Callback callback;
+    private final BluetoothGattCharacteristic characteristic;
+    private final int writeType;
+    private final int chunkSize;
+
+    private BlePrinterTransport(BluetoothGatt gatt, Callback callback, BluetoothGattCharacteristic characteristic, int mtu) {
+        this.gatt = gatt;
+        this.callback = callback;
+        this.characteristic = characteristic;
+        this.writeType = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0
+            ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+            : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+        this.chunkSize = Math.min(MAX_CHUNK, mtu - ATT_OVERHEAD);
+    }
+
+    /**
+     * Connect, negotiate the MTU and find the print characteristic. Blocking; call off the
+     * main thread.
+     */
+    static BlePrinterTransport open(Context context, BluetoothDevice device, long timeoutMs) throws IOException {
+        Callback callback = new Callback();
+        BluetoothGatt gatt = device.connectGatt(context, false, callback, BluetoothDevice.TRANSPORT_LE);
+        if (gatt == null) {
+            throw new IOException("Could not start a GATT connection to " + device.getAddress());
+        }
+        try {
+            BluetoothGattCharacteristic characteristic = callback.ready.get(timeoutMs, TimeUnit.MILLISECONDS);
+            gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+            BlePrinterTransport transport = new BlePrinterTransport(gatt, callback, characteristic, callback.mtu);
+            PluginLog.d("🖨️ BLE printer {} ready: characteristic {}, MTU {}, {}", device.getAddress(),
+                characteristic.getUuid(), callback.mtu,
+                transport.writeType == BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE ? "write without response" : "write with response");
+            return transport;
+        } catch (ExecutionException e) {
+            gatt.close();
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            gatt.close();
+            throw new IOException("Timed out connecting to " + device.getAddress(), e);
+        } catch (InterruptedException e) {
+            gatt.close();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    @Override
+    public String kind() {
+        return "ble";
+    }
+
+    @Override
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        byte[] chunk = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+        try {
+            if (!callback.slot.tryAcquire(WRITE_STALL_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Printer stopped accepting data");
+            }
+            if (!callback.connected) {
+                callback.slot.release();
+                throw new IOException("Printer disconnected");
+            }
+            if (callback.writeStatus != BluetoothGatt.GATT_SUCCESS) {
+                int status = callback.writeStatus;
+                callback.slot.release();
+                throw new IOException("Write failed with GATT status " + status);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WRITE_STALL_MS);
+            // The stack can still be busy (e.g. with a connection-parameter update) after our slot frees up
+            while (!submit(chunk)) {
+                if (System.nanoTime() > deadline) {
+                    callback.slot.release();
+                    throw new IOException("Bluetooth stack stayed busy");
+                }
+                Thread.sleep(BUSY_RETRY_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return callback.connected;
+    }
+
+    @Override
+    public void close() {
+        callback.connected = false;
+        callback.slot.release();
+        gatt.disconnect();
+        gatt.close();
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean submit(byte[] chunk) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return gatt.writeCharacteristic(characteristic, chunk, writeType) == BluetoothStatusCodes.SUCCESS;
+        }
+        characteristic.setWriteType(writeType);
+        characteristic.setValue(chunk);
+        return gatt.writeCharacteristic(characteristic);
+    }
+
+    private static BluetoothGattCharacteristic findPrintCharacteristic(BluetoothGatt gatt) {
+        for (UUID uuid : PRINTER_SERVICES) {
+            BluetoothGattService service = gatt.getService(uuid);
+            BluetoothGattCharacteristic found = service != null ? writable(service) : null;
+            if (found != null) {
+                return found;
+            }
+        }
+        for (BluetoothGattService service : gatt.getServices()) {
+            BluetoothGattCharacteristic found = writable(service);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prefers a write-without-response characteristic.
+     */
+    private static BluetoothGattCharacteristic writable(BluetoothGattService service) {
+        BluetoothGattCharacteristic withResponse = null;
+        for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+            int properties = characteristic.getProperties();
+            if ((properties & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0) {
+                return characteristic;
+            }
+            if (withResponse == null && (properties & BluetoothGattCharacteristic.PROPERTY_WRITE) != 0) {
+                withResponse = characteristic;
+            }
+        }
+        return withResponse;
+    }
+
+    private static final class Callback extends BluetoothGattCallback {
+        final CompletableFuture<BluetoothGattCharacteristic> ready = new CompletableFuture<>();
+        // One GATT operation in flight; released by onCharacteristicWrite
+        final Semaphore slot = new Semaphore(1);
+        volatile boolean connected;
+        volatile int mtu = 23;
+        volatile int writeStatus = BluetoothGatt.GATT_SUCCESS;
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            if (newState == BluetoothProfile.STATE_CONNECTED && status == BluetoothGatt.GATT_SUCCESS) {
+                connected = true;
+                if (!gatt.requestMtu(REQUESTED_MTU)) {
+                    gatt.discoverServices();
+                }
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                connected = false;
+                ready.completeExceptionally(new IOException("Printer disconnected (GATT status " + status + ")"));
+                // Wake a writer waiting on the slot
+                slot.release();
+            }
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS) {
+                this.mtu = mtu;
+            }
+            gatt.discoverServices();
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            BluetoothGattCharacteristic characteristic = status == BluetoothGatt.GATT_SUCCESS ? findPrintCharacteristic(gatt) : null;
+            if (characteristic != null) {
+                ready.complete(characteristic);
+            } else {
+                ready.completeExceptionally(new IOException("No writable print characteristic found"));
+            }
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                writeStatus = status;
+            }
+            slot.release();
+        }
+    }
+}
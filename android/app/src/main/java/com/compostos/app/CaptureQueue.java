@@ -0,0 +1,392 @@
+package com.compostos.app;
+
+import android.content.SharedPreferences;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorized-but-uncaptured PaymentIntents (manual-capture mode) and their batched capture.
+ *
+ * With manual capture a sale ends once the card is approved; its intent is added here and
+ * written to preferences before the sale resolves. Pending intents are captured in batches
+ * of up to {@link #MAX_REQUEST_IDS} per backend call: when {@link Policy#intervalMs} has
+ * passed since the queue became non-empty, as soon as {@link Policy#batchSize} intents are
+ * waiting, or when {@link #flush} is called (e.g. at shift close). Flushes run one after
+ * another; every intent of a flush gets a {@link Result}. An intent the backend can't reach
+ * or answers for stays queued and is retried until the answer is final or the authorization
+ * has expired ({@link #AUTHORIZATION_TTL_MS}); an unreachable backend never gives up on one.
+ */
+final class CaptureQueue {
+
+    static final String PREF_MANUAL = "captureManual";
+    static final String PREF_BATCH_SIZE = "captureBatchSize";
+    static final String PREF_INTERVAL_MS = "captureIntervalMs";
+    static final String PREF_PENDING = "uncapturedIntents";
+
+    static final int MAX_REQUEST_IDS = 100;
+    // Card-present authorizations lapse after two days; past that a capture can't succeed
+    static final long AUTHORIZATION_TTL_MS = TimeUnit.DAYS.toMillis(2);
+
+    static final class Policy {
+        final int batchSize;
+        final long intervalMs;
+
+        Policy(int batchSize, long intervalMs) {
+            this.batchSize = batchSize;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    static final Policy DEFAULT_POLICY = new Policy(20, TimeUnit.MINUTES.toMillis(15));
+
+    static final class Pending {
+        final String paymentIntentId;
+        final long amount;
+        final String currency;
+        final long authorizedAtMs;
+        int attempts;
+
+        Pending(String paymentIntentId, long amount, String currency, long authorizedAtMs) {
+            this.paymentIntentId = paymentIntentId;
+            this.amount = amount;
+            this.currency = currency;
+            this.authorizedAtMs = authorizedAtMs;
+        }
+    }
+
+    /**
+     * The backend's answer for one intent of a capture request.
+     */
+    static final class Outcome {
+        final String paymentIntentId;
+        final boolean captured;
+        // Worth asking again later (rate limit, Stripe unreachable)
+        final boolean retryable;
+        final String error;
+
+        Outcome(String paymentIntentId, boolean captured, boolean retryable, String error) {
+            this.paymentIntentId = paymentIntentId;
+            this.captured = captured;
+            this.retryable = retryable;
+            this.error = error;
+        }
+    }
+
+    interface Backend {
+        /**
+         * Capture a batch of intents; intents missing from the answer are retried later.
+         * Throws when the request as a whole failed.
+         */
+        List<Outcome> capture(List<String> paymentIntentIds) throws IOException;
+    }
+
+    enum Status {
+        CAPTURED,
+        FAILED,
+        PENDING;
+
+        final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    static final class Result {
+        final Pending intent;
+        final Status status;
+        final String error;
+
+        Result(Pending intent, Status status, String error) {
+            this.intent = intent;
+            this.status = status;
+            this.error = error;
+        }
+    }
+
+    interface Listener {
+        void onResults(List<Result> results);
+    }
+
+    private final SharedPreferences prefs;
+    private final Backend backend;
+    private final Executor io;
+    private final ScheduledExecutorService timer;
+    private volatile Listener listener;
+
+    private final Object lock = new Object();
+    // Guarded by lock; in authorization order
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private boolean manual;
+    private Policy policy;
+    private ScheduledFuture<?> scheduled;
+    private CompletableFuture<List<Result>> tail = CompletableFuture.completedFuture(Collections.<Result>emptyList());
+
+    CaptureQueue(SharedPreferences prefs, Backend backend, Executor io, ScheduledExecutorService timer) {
+        this.prefs = prefs;
+        this.backend = backend;
+        this.io = io;
+        this.timer = timer;
+        manual = prefs.getBoolean(PREF_MANUAL, false);
+        policy = new Policy(prefs.getInt(PREF_BATCH_SIZE, DEFAULT_POLICY.batchSize),
+            prefs.getLong(PREF_INTERVAL_MS, DEFAULT_POLICY.intervalMs));
+        restore();
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    boolean isManual() {
+        synchronized (lock) {
+            return manual;
+        }
+    }
+
+    Policy policy() {
+        synchronized (lock) {
+            return policy;
+        }
+    }
+
+    /**
+     * Switch capture mode; persisted. Intents already queued are captured either way.
+     */
+    void configure(boolean manual, Policy policy) {
+        if (policy.batchSize <= 0 || policy.intervalMs <= 0) {
+            throw new IllegalArgumentException("Batch size and interval must be positive");
+        }
+        synchronized (lock) {
+            this.manual = manual;
+            this.policy = policy;
+            prefs.edit()
+                .putBoolean(PREF_MANUAL, manual)
+                .putInt(PREF_BATCH_SIZE, policy.batchSize)
+                .putLong(PREF_INTERVAL_MS, policy.intervalMs)
+                .apply();
+            cancelTimerLocked();
+            scheduleLocked();
+        }
+        if (pendingCount() >= policy.batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Queue an authorized intent, committing it to preferences on the calling thread (not the
+     * I/O pool, which may be full); a full batch starts a flush.
+     */
+    void add(Pending intent) {
+        boolean full;
+        synchronized (lock) {
+            pending.put(intent.paymentIntentId, intent);
+            persistLocked();
+            scheduleLocked();
+            full = pending.size() >= policy.batchSize;
+        }
+        PluginLog.d("🧾 PaymentIntent {} authorized, {} awaiting capture", intent.paymentIntentId, pendingCount());
+        if (full) {
+            flush();
+        }
+    }
+
+    int pendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    List<Pending> pending() {
+        synchronized (lock) {
+            return new ArrayList<>(pending.values());
+        }
+    }
+
+    /**
+     * Capture everything queued so far, after any flush already running. Completes with one
+     * result per intent that was attempted.
+     */
+    CompletableFuture<List<Result>> flush() {
+        synchronized (lock) {
+            cancelTimerLocked();
+            CompletableFuture<List<Result>> next = tail
+                .handle((ignored, error) -> null)
+                .thenApplyAsync(ignored -> drain(), io);
+            tail = next;
+            return next;
+        }
+    }
+
+    void close() {
+        synchronized (lock) {
+            cancelTimerLocked();
+        }
+    }
+
+    private List<Result> drain() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = new ArrayList<>(pending.values());
+        }
+        List<Result> results = new ArrayList<>(batch.size());
+        for (int from = 0; from < batch.size(); from += MAX_REQUEST_IDS) {
+            List<Pending> chunk = batch.subList(from, Math.min(batch.size(), from + MAX_REQUEST_IDS));
+            if (!captureChunk(chunk, results)) {
+                // Backend unreachable: leave the rest for the next flush
+                for (Pending intent : batch.subList(from + chunk.size(), batch.size())) {
+                    results.add(new Result(intent, Status.PENDING, "Not attempted"));
+                }
+                break;
+            }
+        }
+        synchronized (lock) {
+            scheduleLocked();
+        }
+        if (!results.isEmpty()) {
+            PluginLog.i("🧾 Capture flush: {} result(s), {} still pending", results.size(), pendingCount());
+            Listener l = listener;
+            if (l != null) {
+                l.onResults(results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * One backend call. Returns false if the request failed as a whole.
+     */
+    private boolean captureChunk(List<Pending> chunk, List<Result> results) {
+        List<String> ids = new ArrayList<>(chunk.size());
+        for (Pending intent : chunk) {
+            ids.add(intent.paymentIntentId);
+        }
+
+        Map<String, Outcome> outcomes = new HashMap<>();
+        IOException failure = null;
+        try {
+            for (Outcome outcome : backend.capture(ids)) {
+                outcomes.put(outcome.paymentIntentId, outcome);
+            }
+        } catch (IOException e) {
+            failure = e;
+            PluginLog.w("⚠️ Capture of {} intent(s) failed: {}", ids.size(), e.getMessage());
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            for (Pending intent : chunk) {
+                Outcome outcome = outcomes.get(intent.paymentIntentId);
+                Result result;
+                if (outcome != null && outcome.captured) {
+                    result = new Result(intent, Status.CAPTURED, null);
+                } else if (outcome != null && !outcome.retryable) {
+                    result = new Result(intent, Status.FAILED, outcome.error);
+                } else {
+                    String error = outcome != null ? outcome.error
+                        : failure != null ? failure.getMessage() : "No answer from backend";
+                    intent.attempts++;
+                    // The card stays authorized however often the backend was unreachable
+                    result = isExpired(intent, now)
+                        ? new Result(intent, Status.FAILED, "Authorization expired: " + error)
+                        : new Result(intent, Status.PENDING, error);
+                }
+                if (result.status != Status.PENDING) {
+                    pending.remove(intent.paymentIntentId);
+                }
+                if (result.status == Status.FAILED) {
+                    PluginLog.e("❌ Could not capture PaymentIntent {}: {}", intent.paymentIntentId, result.error);
+                }
+                results.add(result);
+            }
+            persistLocked();
+        }
+        return failure == null;
+    }
+
+    /**
+     * Intents restored from before authorizedAt was stored (0) are kept until captured.
+     */
+    private static boolean isExpired(Pending intent, long now) {
+        return intent.authorizedAtMs > 0 && now - intent.authorizedAtMs >= AUTHORIZATION_TTL_MS;
+    }
+
+    private void scheduleLocked() {
+        if (scheduled != null || pending.isEmpty() || timer.isShutdown()) {
+            return;
+        }
+        scheduled = timer.schedule(() -> {
+            synchronized (lock) {
+                scheduled = null;
+            }
+            flush();
+        }, policy.intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimerLocked() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    /**
+     * Synchronous commit: a queued intent must survive the process dying right after the sale.
+     */
+    private void persistLocked() {
+        List<Object> intents = new ArrayList<>(pending.size());
+        for (Pending intent : pending.values()) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("id", intent.paymentIntentId);
+            json.put("amount", intent.amount);
+            json.put("currency", intent.currency);
+            json.put("authorizedAt", intent.authorizedAtMs);
+            json.put("attempts", intent.attempts);
+            intents.add(json);
+        }
+        if (!prefs.edit().putString(PREF_PENDING, BackendJson.write(Collections.singletonMap("intents", intents))).commit()) {
+            PluginLog.e("❌ Failed to persist {} uncaptured intent(s)", intents.size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void restore() {
+        String stored = prefs.getString(PREF_PENDING, null);
+        if (stored == null) {
+            return;
+        }
+        try {
+            Object intents = BackendJson.readObject(stored).get("intents");
+            if (!(intents instanceof List)) {
+                return;
+            }
+            int restored;
+            synchronized (lock) {
+                for (Object item : (List<Object>) intents) {
+                    Map<String, Object> json = (Map<String, Object>) item;
+                    String id = BackendJson.getString(json, "id");
+                    Pending intent = new Pending(id, BackendJson.optLong(json, "amount", 0),
+                        BackendJson.optString(json, "currency"), BackendJson.optLong(json, "authorizedAt", 0));
+                    intent.attempts = (int) BackendJson.optLong(json, "attempts", 0);
+                    pending.put(id, intent);
+                }
+                restored = pending.size();
+                scheduleLocked();
+            }
+            if (restored > 0) {
+                PluginLog.i("🧾 {} uncaptured intent(s) restored", restored);
+            }
+        } catch (IOException | ClassCastException e) {
+            // Set aside rather than overwritten by the next sale, so the intents can still be found
+            PluginLog.e(e, "❌ Unreadable uncaptured intents: {}", e.getMessage());
+            prefs.edit().putString(PREF_PENDING + "Unreadable", stored).commit();
+        }
+    }
+}
@@ -0,0 +1,721 @@
+package com.compostos.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Products, categories, stock levels, open orders and expenses in SQLite, one row per record.
+ *
+ * Writes touch only the rows they change, in one transaction per batch. Product names, SKUs
+ * and barcodes are split into normalized terms (lowercase, no diacritics) in an indexed table,
+ * so word-prefix search is an index range scan; listings are keyset-paged on indexes too.
+ * Fields the store doesn't index are kept as a JSON document next to the columns and handed
+ * back unchanged. Everything runs in order on one store thread.
+ */
+final class CatalogStore {
+
+    static final class Query {
+        // Every word must start one of the product's terms
+        String prefix;
+        String categoryId;
+        boolean favoritesOnly;
+        String cursor;
+        int limit = 100;
+    }
+
+    static final class Page {
+        final List<JSONObject> records;
+        final String nextCursor;
+
+        Page(List<JSONObject> records, String nextCursor) {
+            this.records = records;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    private static final String DB_NAME = "catalog.db";
+    private static final int DB_VERSION = 1;
+    // Columns that are the source of truth for these fields; the rest of a record stays in data
+    private static final String[] PRODUCT_FIELDS = {"id", "name", "categoryId", "sku", "barcode", "price", "isFavorite", "isVisible"};
+    private static final String[] CATEGORY_FIELDS = {"id", "name", "position"};
+    private static final String[] EXPENSE_FIELDS = {"id", "name", "amount", "category", "date"};
+    private static final String PRODUCT_COLUMNS = "p.id, p.name, p.category_id, p.sku, p.barcode, p.price, p.favorite, p.visible, p.data, s.quantity";
+    private static final char CURSOR_SEPARATOR = '\u0001';
+
+    private static final class Helper extends SQLiteOpenHelper {
+        Helper(Context context) {
+            super(context, DB_NAME, null, DB_VERSION);
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE categories ("
+                + "id TEXT PRIMARY KEY,"
+                + " name TEXT NOT NULL,"
+                + " position INTEGER NOT NULL,"
+                + " data TEXT NOT NULL)");
+            db.execSQL("CREATE TABLE products ("
+                + "id TEXT PRIMARY KEY,"
+                + " name TEXT NOT NULL,"
+                + " name_key TEXT NOT NULL,"
+                + " category_id TEXT,"
+                + " sku TEXT,"
+                + " barcode TEXT,"
+                + " price REAL NOT NULL,"
+                + " favorite INTEGER NOT NULL,"
+                + " visible INTEGER NOT NULL,"
+                + " updated_at INTEGER NOT NULL,"
+                + " data TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_products_name ON products (name_key, id)");
+            db.execSQL("CREATE INDEX idx_products_category ON products (category_id, name_key, id)");
+            db.execSQL("CREATE INDEX idx_products_barcode ON products (barcode)");
+            db.execSQL("CREATE TABLE product_terms ("
+                + "term TEXT NOT NULL,"
+                + " product_id TEXT NOT NULL,"
+                + " PRIMARY KEY (term, product_id)) WITHOUT ROWID");
+            db.execSQL("CREATE INDEX idx_product_terms_product ON product_terms (product_id)");
+            db.execSQL("CREATE TABLE stock ("
+                + "product_id TEXT PRIMARY KEY,"
+                + " quantity REAL NOT NULL,"
+                + " updated_at INTEGER NOT NULL)");
+            db.execSQL("CREATE TABLE orders ("
+                + "id TEXT PRIMARY KEY,"
+                + " label TEXT,"
+                + " status TEXT NOT NULL,"
+                + " total REAL NOT NULL,"
+                + " item_count INTEGER NOT NULL,"
+                + " created_at INTEGER NOT NULL,"
+                + " updated_at INTEGER NOT NULL,"
+                + " data TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_orders_status ON orders (status, updated_at)");
+            db.execSQL("CREATE INDEX idx_orders_updated ON orders (updated_at)");
+            // date is the web store's ISO-8601 UTC string, which sorts chronologically as text
+            db.execSQL("CREATE TABLE expenses ("
+                + "id TEXT PRIMARY KEY,"
+                + " name TEXT NOT NULL,"
+                + " amount REAL NOT NULL,"
+                + " category TEXT,"
+                + " date TEXT NOT NULL,"
+                + " data TEXT NOT NULL)");
+            db.execSQL("CREATE INDEX idx_expenses_date ON expenses (date, id)");
+            db.execSQL("CREATE INDEX idx_expenses_category ON expenses (category, date, id)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // First version
+        }
+    }
+
+    private final Helper helper;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "CatalogStore");
+        t.setDaemon(true);
+        return t;
+    });
+
+    CatalogStore(Context context) {
+        helper = new Helper(context.getApplicationContext());
+    }
+
+    /**
+     * Lowercase, without diacritics or punctuation: "Čaj Earl-Grey" → "caj earl grey".
+     */
+    static String searchKey(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        return stripped.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+
+    static Set<String> terms(String... texts) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String text : texts) {
+            String key = searchKey(text);
+            if (!key.isEmpty()) {
+                for (String word : key.split(" ")) {
+                    terms.add(word);
+                }
+            }
+        }
+        return terms;
+    }
+
+    // --- Categories
+
+    CompletableFuture<Integer> upsertCategories(JSONArray categories) {
+        return write(db -> {
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO categories (id, name, position, data) VALUES (?, ?, ?, ?)");
+            for (int i = 0; i < categories.length(); i++) {
+                JSONObject category = categories.getJSONObject(i);
+                upsert.clearBindings();
+                upsert.bindString(1, requireId(category));
+                upsert.bindString(2, category.optString("name", ""));
+                upsert.bindLong(3, category.optLong("position", i));
+                upsert.bindString(4, rest(category, CATEGORY_FIELDS));
+                upsert.executeInsert();
+            }
+            upsert.close();
+            return categories.length();
+        });
+    }
+
+    /**
+     * Products in a deleted category become uncategorized.
+     */
+    CompletableFuture<Integer> deleteCategories(Collection<String> ids) {
+        return write(db -> {
+            SQLiteStatement delete = db.compileStatement("DELETE FROM categories WHERE id = ?");
+            SQLiteStatement orphan = db.compileStatement("UPDATE products SET category_id = NULL WHERE category_id = ?");
+            int deleted = 0;
+            for (String id : ids) {
+                delete.bindString(1, id);
+                deleted += delete.executeUpdateDelete();
+                orphan.bindString(1, id);
+                orphan.executeUpdateDelete();
+            }
+            delete.close();
+            orphan.close();
+            return deleted;
+        });
+    }
+
+    CompletableFuture<List<JSONObject>> categories() {
+        return read(db -> {
+            List<JSONObject> list = new ArrayList<>();
+            try (Cursor cursor = db.rawQuery("SELECT id, name, position, data FROM categories ORDER BY position, name", null)) {
+                while (cursor.moveToNext()) {
+                    JSONObject category = new JSONObject(cursor.getString(3));
+                    category.put("id", cursor.getString(0));
+                    category.put("name", cursor.getString(1));
+                    category.put("position", cursor.getLong(2));
+                    list.add(category);
+                }
+            }
+            return list;
+        });
+    }
+
+    // --- Products
+
+    CompletableFuture<Integer> upsertProducts(JSONArray products) {
+        return write(db -> {
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO products"
+                + " (id, name, name_key, category_id, sku, barcode, price, favorite, visible, updated_at, data)"
+                + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            SQLiteStatement clearTerms = db.compileStatement("DELETE FROM product_terms WHERE product_id = ?");
+            SQLiteStatement addTerm = db.compileStatement("INSERT OR IGNORE INTO product_terms (term, product_id) VALUES (?, ?)");
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < products.length(); i++) {
+                JSONObject product = products.getJSONObject(i);
+                String id = requireId(product);
+                String name = product.optString("name", "");
+                String sku = text(product, "sku");
+                String barcode = text(product, "barcode");
+                upsert.clearBindings();
+                upsert.bindString(1, id);
+                upsert.bindString(2, name);
+                upsert.bindString(3, searchKey(name));
+                bindNullable(upsert, 4, text(product, "categoryId"));
+                bindNullable(upsert, 5, sku);
+                bindNullable(upsert, 6, barcode);
+                upsert.bindDouble(7, product.optDouble("price", 0));
+                upsert.bindLong(8, product.optBoolean("isFavorite", false) ? 1 : 0);
+                upsert.bindLong(9, product.optBoolean("isVisible", true) ? 1 : 0);
+                upsert.bindLong(10, now);
+                upsert.bindString(11, rest(product, PRODUCT_FIELDS));
+                upsert.executeInsert();
+
+                clearTerms.bindString(1, id);
+                clearTerms.executeUpdateDelete();
+                for (String term : terms(name, sku, barcode)) {
+                    addTerm.bindString(1, term);
+                    addTerm.bindString(2, id);
+                    addTerm.executeInsert();
+                }
+            }
+            upsert.close();
+            clearTerms.close();
+            addTerm.close();
+            return products.length();
+        });
+    }
+
+    CompletableFuture<Integer> deleteProducts(Collection<String> ids) {
+        return write(db -> {
+            int deleted = 0;
+            for (String id : ids) {
+                String[] args = {id};
+                deleted += db.delete("products", "id = ?", args);
+                db.delete("product_terms", "product_id = ?", args);
+                db.delete("stock", "product_id = ?", args);
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Sorted by name; pass {@link Page#nextCursor} back for the following page.
+     */
+    CompletableFuture<Page> products(Query query) {
+        return read(db -> {
+            int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, query.limit));
+            StringBuilder where = new StringBuilder("1");
+            List<String> args = new ArrayList<>();
+            for (String word : terms(query.prefix)) {
+                where.append(" AND p.id IN (SELECT product_id FROM product_terms WHERE term >= ? AND term < ?)");
+                args.add(word);
+                args.add(word + '\uffff');
+            }
+            if (query.categoryId != null) {
+                where.append(" AND p.category_id = ?");
+                args.add(query.categoryId);
+            }
+            if (query.favoritesOnly) {
+                where.append(" AND p.favorite = 1");
+            }
+            if (query.cursor != null) {
+                int split = query.cursor.indexOf(CURSOR_SEPARATOR);
+                if (split < 0) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                where.append(" AND (p.name_key > ? OR (p.name_key = ? AND p.id > ?))");
+                args.add(query.cursor.substring(0, split));
+                args.add(query.cursor.substring(0, split));
+                args.add(query.cursor.substring(split + 1));
+            }
+            String sql = "SELECT " + PRODUCT_COLUMNS + ", p.name_key FROM products p LEFT JOIN stock s ON s.product_id = p.id"
+                + " WHERE " + where + " ORDER BY p.name_key, p.id LIMIT " + (limit + 1);
+
+            List<JSONObject> records = new ArrayList<>(limit);
+            String next = null;
+            try (Cursor cursor = db.rawQuery(sql, args.toArray(new String[0]))) {
+                String lastKey = null;
+                while (cursor.moveToNext()) {
+                    if (records.size() == limit) {
+                        JSONObject last = records.get(records.size() - 1);
+                        next = lastKey + CURSOR_SEPARATOR + last.getString("id");
+                        break;
+                    }
+                    records.add(readProduct(cursor));
+                    lastKey = cursor.getString(10);
+                }
+            }
+            return new Page(records, next);
+        });
+    }
+
+    CompletableFuture<List<JSONObject>> productsById(Collection<String> ids) {
+        return read(db -> {
+            List<JSONObject> records = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                try (Cursor cursor = db.rawQuery("SELECT " + PRODUCT_COLUMNS
+                    + " FROM products p LEFT JOIN stock s ON s.product_id = p.id WHERE p.id = ?", new String[] {id})) {
+                    if (cursor.moveToNext()) {
+                        records.add(readProduct(cursor));
+                    }
+                }
+            }
+            return records;
+        });
+    }
+
+    /**
+     * Product with this exact barcode, or null.
+     */
+    CompletableFuture<JSONObject> productByBarcode(String barcode) {
+        return read(db -> {
+            try (Cursor cursor = db.rawQuery("SELECT " + PRODUCT_COLUMNS
+                + " FROM products p LEFT JOIN stock s ON s.product_id = p.id WHERE p.barcode = ? LIMIT 1", new String[] {barcode})) {
+                return cursor.moveToNext() ? readProduct(cursor) : null;
+            }
+        });
+    }
+
+    // --- Stock
+
+    /**
+     * Set absolute levels ({@code productId}, {@code quantity}).
+     */
+    CompletableFuture<Integer> setStock(JSONArray levels) {
+        return write(db -> {
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO stock (product_id, quantity, updated_at) VALUES (?, ?, ?)");
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < levels.length(); i++) {
+                JSONObject level = levels.getJSONObject(i);
+                upsert.bindString(1, level.getString("productId"));
+                upsert.bindDouble(2, level.optDouble("quantity", 0));
+                upsert.bindLong(3, now);
+                upsert.executeInsert();
+            }
+            upsert.close();
+            return levels.length();
+        });
+    }
+
+    /**
+     * Apply relative changes ({@code productId}, {@code delta}) atomically; returns the new
+     * levels as {@code {productId, quantity}}.
+     */
+    CompletableFuture<List<JSONObject>> adjustStock(JSONArray deltas) {
+        return write(db -> {
+            SQLiteStatement seed = db.compileStatement("INSERT OR IGNORE INTO stock (product_id, quantity, updated_at) VALUES (?, 0, ?)");
+            SQLiteStatement adjust = db.compileStatement("UPDATE stock SET quantity = quantity + ?, updated_at = ? WHERE product_id = ?");
+            long now = System.currentTimeMillis();
+            List<JSONObject> levels = new ArrayList<>(deltas.length());
+            for (int i = 0; i < deltas.length(); i++) {
+                JSONObject delta = deltas.getJSONObject(i);
+                String productId = delta.getString("productId");
+                seed.bindString(1, productId);
+                seed.bindLong(2, now);
+                seed.executeInsert();
+                adjust.bindDouble(1, delta.optDouble("delta", 0));
+                adjust.bindLong(2, now);
+                adjust.bindString(3, productId);
+                adjust.executeUpdateDelete();
+                JSONObject result = new JSONObject();
+                result.put("productId", productId);
+                // simpleQueryForLong would truncate fractional (weighed) stock
+                try (Cursor cursor = db.rawQuery("SELECT quantity FROM stock WHERE product_id = ?", new String[] {productId})) {
+                    result.put("quantity", cursor.moveToNext() ? cursor.getDouble(0) : 0);
+                }
+                levels.add(result);
+            }
+            seed.close();
+            adjust.close();
+            return levels;
+        });
+    }
+
+    // --- Orders
+
+    /**
+     * Orders are stored whole; {@code status} (default "open"), {@code label}, the total and
+     * the item count are indexed alongside.
+     */
+    CompletableFuture<Integer> upsertOrders(JSONArray orders) {
+        return write(db -> {
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO orders"
+                + " (id, label, status, total, item_count, created_at, updated_at, data)"
+                + " VALUES (?, ?, ?, ?, ?, COALESCE((SELECT created_at FROM orders WHERE id = ?), ?), ?, ?)");
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < orders.length(); i++) {
+                JSONObject order = orders.getJSONObject(i);
+                String id = requireId(order);
+                double total = 0;
+                long count = 0;
+                JSONArray items = order.optJSONArray("items");
+                for (int j = 0; items != null && j < items.length(); j++) {
+                    JSONObject item = items.getJSONObject(j);
+                    double qty = item.optDouble("qty", 1);
+                    total += item.optDouble("unitPrice", 0) * qty;
+                    count += (long) Math.ceil(qty);
+                }
+                upsert.clearBindings();
+                upsert.bindString(1, id);
+                bindNullable(upsert, 2, text(order, "label"));
+                upsert.bindString(3, order.optString("status", "open"));
+                upsert.bindDouble(4, total);
+                upsert.bindLong(5, count);
+                upsert.bindString(6, id);
+                upsert.bindLong(7, now);
+                upsert.bindLong(8, now);
+                upsert.bindString(9, order.toString());
+                upsert.executeInsert();
+            }
+            upsert.close();
+            return orders.length();
+        });
+    }
+
+    CompletableFuture<Integer> deleteOrders(Collection<String> ids) {
+        return write(db -> {
+            int deleted = 0;
+            for (String id : ids) {
+                deleted += db.delete("orders", "id = ?", new String[] {id});
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Most recently updated first, optionally one status only.
+     */
+    CompletableFuture<Page> orders(String status, String cursor, int limit) {
+        return read(db -> {
+            int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+            StringBuilder where = new StringBuilder("1");
+            List<String> args = new ArrayList<>();
+            if (status != null) {
+                where.append(" AND status = ?");
+                args.add(status);
+            }
+            if (cursor != null) {
+                int split = cursor.indexOf(CURSOR_SEPARATOR);
+                long updatedAt;
+                try {
+                    updatedAt = Long.parseLong(cursor.substring(0, Math.max(0, split)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                where.append(" AND (updated_at < ? OR (updated_at = ? AND id < ?))");
+                args.add(Long.toString(updatedAt));
+                args.add(Long.toString(updatedAt));
+                args.add(cursor.substring(split + 1));
+            }
+            String sql = "SELECT id, label, status, total, item_count, created_at, updated_at, data FROM orders WHERE " + where
+                + " ORDER BY updated_at DESC, id DESC LIMIT " + (pageSize + 1);
+
+            List<JSONObject> records = new ArrayList<>(pageSize);
+            String next = null;
+            try (Cursor rows = db.rawQuery(sql, args.toArray(new String[0]))) {
+                long lastUpdatedAt = 0;
+                while (rows.moveToNext()) {
+                    if (records.size() == pageSize) {
+                        next = Long.toString(lastUpdatedAt) + CURSOR_SEPARATOR + records.get(records.size() - 1).getString("id");
+                        break;
+                    }
+                    JSONObject order = new JSONObject(rows.getString(7));
+                    order.put("id", rows.getString(0));
+                    order.put("status", rows.getString(2));
+                    order.put("total", rows.getDouble(3));
+                    order.put("itemCount", rows.getLong(4));
+                    order.put("createdAt", rows.getLong(5));
+                    order.put("updatedAt", rows.getLong(6));
+                    records.add(order);
+                    lastUpdatedAt = rows.getLong(6);
+                }
+            }
+            return new Page(records, next);
+        });
+    }
+
+    // --- Expenses
+
+    CompletableFuture<Integer> upsertExpenses(JSONArray expenses) {
+        return write(db -> {
+            SQLiteStatement upsert = db.compileStatement("INSERT OR REPLACE INTO expenses (id, name, amount, category, date, data)"
+                + " VALUES (?, ?, ?, ?, ?, ?)");
+            for (int i = 0; i < expenses.length(); i++) {
+                JSONObject expense = expenses.getJSONObject(i);
+                String date = text(expense, "date");
+                if (date == null) {
+                    throw new JSONException("Expense without date");
+                }
+                upsert.clearBindings();
+                upsert.bindString(1, requireId(expense));
+                upsert.bindString(2, expense.optString("name", ""));
+                upsert.bindDouble(3, expense.optDouble("amount", 0));
+                bindNullable(upsert, 4, text(expense, "category"));
+                upsert.bindString(5, date);
+                upsert.bindString(6, rest(expense, EXPENSE_FIELDS));
+                upsert.executeInsert();
+            }
+            upsert.close();
+            return expenses.length();
+        });
+    }
+
+    CompletableFuture<Integer> deleteExpenses(Collection<String> ids) {
+        return write(db -> {
+            int deleted = 0;
+            for (String id : ids) {
+                deleted += db.delete("expenses", "id = ?", new String[] {id});
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Newest first, optionally within [{@code from}, {@code to}) (ISO dates) and one category.
+     */
+    CompletableFuture<Page> expenses(String from, String to, String category, String cursor, int limit) {
+        return read(db -> {
+            int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+            StringBuilder where = new StringBuilder("1");
+            List<String> args = new ArrayList<>();
+            if (from != null) {
+                where.append(" AND date >= ?");
+                args.add(from);
+            }
+            if (to != null) {
+                where.append(" AND date < ?");
+                args.add(to);
+            }
+            if (category != null) {
+                where.append(" AND category = ?");
+                args.add(category);
+            }
+            if (cursor != null) {
+                int split = cursor.indexOf(CURSOR_SEPARATOR);
+                if (split < 0) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+                where.append(" AND (date < ? OR (date = ? AND id < ?))");
+                args.add(cursor.substring(0, split));
+                args.add(cursor.substring(0, split));
+                args.add(cursor.substring(split + 1));
+            }
+            String sql = "SELECT id, name, amount, category, date, data FROM expenses WHERE " + where
+                + " ORDER BY date DESC, id DESC LIMIT " + (pageSize + 1);
+
+            List<JSONObject> records = new ArrayList<>(pageSize);
+            String next = null;
+            try (Cursor rows = db.rawQuery(sql, args.toArray(new String[0]))) {
+                while (rows.moveToNext()) {
+                    if (records.size() == pageSize) {
+                        JSONObject last = records.get(records.size() - 1);
+                        next = last.getString("date") + CURSOR_SEPARATOR + last.getString("id");
+                        break;
+                    }
+                    JSONObject expense = new JSONObject(rows.getString(5));
+                    expense.put("id", rows.getString(0));
+                    expense.put("name", rows.getString(1));
+                    expense.put("amount", rows.getDouble(2));
+                    if (!rows.isNull(3)) {
+                        expense.put("category", rows.getString(3));
+                    }
+                    expense.put("date", rows.getString(4));
+                    records.add(expense);
+                }
+            }
+            return new Page(records, next);
+        });
+    }
+
+    CompletableFuture<JSONObject> stats() {
+        return read(db -> {
+            JSONObject stats = new JSONObject();
+            stats.put("categories", count(db, "SELECT COUNT(*) FROM categories"));
+            stats.put("products", count(db, "SELECT COUNT(*) FROM products"));
+            stats.put("terms", count(db, "SELECT COUNT(*) FROM product_terms"));
+            stats.put("stockLevels", count(db, "SELECT COUNT(*) FROM stock"));
+            stats.put("orders", count(db, "SELECT COUNT(*) FROM orders"));
+            stats.put("expenses", count(db, "SELECT COUNT(*) FROM expenses"));
+            return stats;
+        });
+    }
+
+    void close() {
+        thread.execute(helper::close);
+        thread.shutdown();
+    }
+
+    private interface Work<T> {
+        T run(SQLiteDatabase db) throws JSONException;
+    }
+
+    private <T> CompletableFuture<T> write(Work<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                T result = work.run(db);
+                db.setTransactionSuccessful();
+                return result;
+            } catch (JSONException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            } finally {
+                db.endTransaction();
+            }
+        }, thread);
+    }
+
+    private <T> CompletableFuture<T> read(Work<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return work.run(helper.getReadableDatabase());
+            } catch (JSONException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }, thread);
+    }
+
+    private static JSONObject readProduct(Cursor cursor) throws JSONException {
+        JSONObject product = new JSONObject(cursor.getString(8));
+        product.put("id", cursor.getString(0));
+        product.put("name", cursor.getString(1));
+        product.put("categoryId", cursor.isNull(2) ? JSONObject.NULL : cursor.getString(2));
+        if (!cursor.isNull(3)) {
+            product.put("sku", cursor.getString(3));
+        }
+        if (!cursor.isNull(4)) {
+            product.put("barcode", cursor.getString(4));
+        }
+        product.put("price", cursor.getDouble(5));
+        product.put("isFavorite", cursor.getInt(6) != 0);
+        product.put("isVisible", cursor.getInt(7) != 0);
+        if (!cursor.isNull(9)) {
+            product.put("stock", cursor.getDouble(9));
+        }
+        return product;
+    }
+
+    /**
+     * The record without the fields that live in columns.
+     */
+    private static String rest(JSONObject record, String[] columnFields) throws JSONException {
+        JSONObject rest = new JSONObject();
+        Iterator<String> keys = record.keys();
+        outer:
+        while (keys.hasNext()) {
+            String key = keys.next();
+            for (String field : columnFields) {
+                if (field.equals(key)) {
+                    continue outer;
+                }
+            }
+            rest.put(key, record.opt(key));
+        }
+        return rest.toString();
+    }
+
+    private static String requireId(JSONObject record) throws JSONException {
+        String id = text(record, "id");
+        if (id == null || id.isEmpty()) {
+            throw new JSONException("Record without id");
+        }
+        return id;
+    }
+
+    private static String text(JSONObject record, String key) {
+        return record.has(key) && !record.isNull(key) ? record.optString(key, null) : null;
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            return cursor.moveToNext() ? cursor.getLong(0) : 0;
+        }
+    }
+}
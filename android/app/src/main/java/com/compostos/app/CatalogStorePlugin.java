@@ -0,0 +1,267 @@
+package com.compostos.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Bridge to {@link CatalogStore}: batched upserts and deletes, search and paged listings,
+ * so the web stores keep only what is on screen instead of the whole catalog.
+ */
+@CapacitorPlugin(name = "CatalogStore")
+public class CatalogStorePlugin extends Plugin {
+
+    private CatalogStore store;
+
+    @Override
+    public void load() {
+        store = new CatalogStore(getContext());
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @PluginMethod
+    public void upsertCategories(PluginCall call) {
+        JSArray categories = requireArray(call, "categories");
+        if (categories != null) {
+            resolveCount(call, "upserted", store.upsertCategories(categories));
+        }
+    }
+
+    @PluginMethod
+    public void deleteCategories(PluginCall call) {
+        List<String> ids = requireIds(call);
+        if (ids != null) {
+            resolveCount(call, "deleted", store.deleteCategories(ids));
+        }
+    }
+
+    @PluginMethod
+    public void getCategories(PluginCall call) {
+        resolve(call, store.categories(), categories -> {
+            JSObject ret = new JSObject();
+            ret.put("categories", toArray(categories));
+            return ret;
+        });
+    }
+
+    /**
+     * Insert or replace whole products by id; only the given products are written.
+     */
+    @PluginMethod
+    public void upsertProducts(PluginCall call) {
+        JSArray products = requireArray(call, "products");
+        if (products != null) {
+            resolveCount(call, "upserted", store.upsertProducts(products));
+        }
+    }
+
+    @PluginMethod
+    public void deleteProducts(PluginCall call) {
+        List<String> ids = requireIds(call);
+        if (ids != null) {
+            resolveCount(call, "deleted", store.deleteProducts(ids));
+        }
+    }
+
+    /**
+     * One page of products by name, filtered by word prefix ({@code query}), category or
+     * favorites. Pass {@code nextCursor} back as {@code cursor} for the following page.
+     */
+    @PluginMethod
+    public void queryProducts(PluginCall call) {
+        CatalogStore.Query query = new CatalogStore.Query();
+        query.prefix = call.getString("query");
+        query.categoryId = call.getString("categoryId");
+        query.favoritesOnly = call.getBoolean("favoritesOnly", false);
+        query.cursor = call.getString("cursor");
+        query.limit = call.getInt("limit", 100);
+        resolve(call, store.products(query), CatalogStorePlugin::pageToJson);
+    }
+
+    @PluginMethod
+    public void getProducts(PluginCall call) {
+        List<String> ids = requireIds(call);
+        if (ids != null) {
+            resolve(call, store.productsById(ids), products -> {
+                JSObject ret = new JSObject();
+                ret.put("products", toArray(products));
+                return ret;
+            });
+        }
+    }
+
+    @PluginMethod
+    public void findByBarcode(PluginCall call) {
+        String barcode = call.getString("barcode");
+        if (barcode == null) {
+            call.reject("barcode is required");
+            return;
+        }
+        resolve(call, store.productByBarcode(barcode), product -> {
+            JSObject ret = new JSObject();
+            ret.put("product", product != null ? product : JSONObject.NULL);
+            return ret;
+        });
+    }
+
+    /**
+     * Absolute stock levels: {@code levels: [{productId, quantity}]}
+     */
+    @PluginMethod
+    public void setStock(PluginCall call) {
+        JSArray levels = requireArray(call, "levels");
+        if (levels != null) {
+            resolveCount(call, "updated", store.setStock(levels));
+        }
+    }
+
+    /**
+     * Relative stock changes, e.g. after a sale: {@code deltas: [{productId, delta}]}
+     */
+    @PluginMethod
+    public void adjustStock(PluginCall call) {
+        JSArray deltas = requireArray(call, "deltas");
+        if (deltas != null) {
+            resolve(call, store.adjustStock(deltas), levels -> {
+                JSObject ret = new JSObject();
+                ret.put("levels", toArray(levels));
+                return ret;
+            });
+        }
+    }
+
+    @PluginMethod
+    public void upsertOrders(PluginCall call) {
+        JSArray orders = requireArray(call, "orders");
+        if (orders != null) {
+            resolveCount(call, "upserted", store.upsertOrders(orders));
+        }
+    }
+
+    @PluginMethod
+    public void deleteOrders(PluginCall call) {
+        List<String> ids = requireIds(call);
+        if (ids != null) {
+            resolveCount(call, "deleted", store.deleteOrders(ids));
+        }
+    }
+
+    /**
+     * Most recently updated orders first, optionally of one {@code status}
+     */
+    @PluginMethod
+    public void queryOrders(PluginCall call) {
+        resolve(call, store.orders(call.getString("status"), call.getString("cursor"), call.getInt("limit", 50)),
+            CatalogStorePlugin::pageToJson);
+    }
+
+    @PluginMethod
+    public void upsertExpenses(PluginCall call) {
+        JSArray expenses = requireArray(call, "expenses");
+        if (expenses != null) {
+            resolveCount(call, "upserted", store.upsertExpenses(expenses));
+        }
+    }
+
+    @PluginMethod
+    public void deleteExpenses(PluginCall call) {
+        List<String> ids = requireIds(call);
+        if (ids != null) {
+            resolveCount(call, "deleted", store.deleteExpenses(ids));
+        }
+    }
+
+    /**
+     * Newest expenses first, optionally from {@code from} (inclusive) to {@code to} (exclusive)
+     * and of one {@code category}
+     */
+    @PluginMethod
+    public void queryExpenses(PluginCall call) {
+        resolve(call, store.expenses(call.getString("from"), call.getString("to"), call.getString("category"),
+                call.getString("cursor"), call.getInt("limit", 100)),
+            CatalogStorePlugin::pageToJson);
+    }
+
+    @PluginMethod
+    public void getStoreStats(PluginCall call) {
+        resolve(call, store.stats(), stats -> {
+            JSObject ret = new JSObject();
+            ret.put("counts", stats);
+            return ret;
+        });
+    }
+
+    private static JSObject pageToJson(CatalogStore.Page page) {
+        JSObject ret = new JSObject();
+        ret.put("records", toArray(page.records));
+        ret.put("nextCursor", page.nextCursor);
+        return ret;
+    }
+
+    private static JSArray toArray(List<JSONObject> records) {
+        JSArray array = new JSArray();
+        for (JSONObject record : records) {
+            array.put(record);
+        }
+        return array;
+    }
+
+    private static JSArray requireArray(PluginCall call, String key) {
+        JSArray array = call.getArray(key);
+        if (array == null) {
+            call.reject(key + " is required");
+        }
+        return array;
+    }
+
+    private static List<String> requireIds(PluginCall call) {
+        JSArray array = requireArray(call, "ids");
+        if (array == null) {
+            return null;
+        }
+        List<String> ids = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            String id = array.optString(i);
+            if (id != null && !id.isEmpty()) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static void resolveCount(PluginCall call, String key, CompletableFuture<Integer> future) {
+        resolve(call, future, count -> {
+            JSObject ret = new JSObject();
+            ret.put(key, count);
+            return ret;
+        });
+    }
+
+    private static <T> void resolve(PluginCall call, CompletableFuture<T> future, Function<T, JSObject> toJson) {
+        future.whenComplete((value, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                PluginLog.e(cause, "❌ Catalog store: {}", cause.getMessage());
+                call.reject(cause.getMessage());
+                return;
+            }
+            call.resolve(toJson.apply(value));
+        });
+    }
+}
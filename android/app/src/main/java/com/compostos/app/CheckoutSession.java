@@ -0,0 +1,477 @@
+package com.compostos.app;
+
+import com.stripe.stripeterminal.external.callable.Callback;
+import com.stripe.stripeterminal.external.callable.Cancelable;
+import com.stripe.stripeterminal.external.models.PaymentIntent;
+import com.stripe.stripeterminal.external.models.TerminalException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Serialises checkouts on the reader: one sale owns the collection slot, one more may wait
+ * in the queue, and a sale that has been collected is confirmed outside the slot.
+ *
+ * Stages run {@code QUEUED → PAYMENT_INTENT → (WAITING_FOR_READER) → COLLECTING →
+ * CONFIRMING}. As soon as a card is collected the slot passes to the queued sale, whose
+ * PaymentIntent is created while the previous sale confirms; it starts collecting once that
+ * confirm returns (the SDK runs one reader command at a time). Every stage has a deadline,
+ * and {@link #cancel} ends a sale in any stage but confirmation: the wait for a card is
+ * aborted through its {@link Cancelable} and an unused PaymentIntent is cancelled.
+ *
+ * Confirmation is never abandoned, since the card may still be charged. When its deadline
+ * passes the sale reports {@code confirm_delayed} and keeps waiting for the SDK's answer, so
+ * the app never sees a failure for a payment that then goes through.
+ */
+final class CheckoutSession {
+
+    enum Stage {
+        QUEUED,
+        PAYMENT_INTENT,
+        WAITING_FOR_READER,
+        COLLECTING,
+        CONFIRMING,
+        DONE
+    }
+
+    interface IntentSource {
+        CompletableFuture<PaymentIntent> acquire(long amount, String currency);
+    }
+
+    interface Listener {
+        void onStatus(Checkout checkout, String status, String message);
+    }
+
+    static final class Deadlines {
+        final long intentMs;
+        final long collectMs;
+        final long confirmMs;
+
+        Deadlines(long intentMs, long collectMs, long confirmMs) {
+            this.intentMs = intentMs;
+            this.collectMs = collectMs;
+            this.confirmMs = confirmMs;
+        }
+    }
+
+    static final Deadlines DEFAULT_DEADLINES = new Deadlines(30000, 120000, 30000);
+
+    static final class Checkout {
+        final long id;
+        final long amount;
+        final String currency;
+        final long startNanos = PaymentMetrics.start();
+        final CompletableFuture<PaymentIntent> result = new CompletableFuture<>();
+
+        // Guarded by the session lock
+        private volatile Stage stage = Stage.QUEUED;
+        private PaymentIntent intent;
+        private Cancelable collectCancelable;
+        private ScheduledFuture<?> deadline;
+        private final long[] stageNanos = new long[Stage.values().length];
+        private long stageStartNanos = startNanos;
+
+        Checkout(long id, long amount, String currency) {
+            this.id = id;
+            this.amount = amount;
+            this.currency = currency;
+        }
+
+        Stage stage() {
+            return stage;
+        }
+
+        /**
+         * Time spent in a stage; final once {@link #result} is done.
+         */
+        long stageMillis(Stage stage) {
+            return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()]);
+        }
+
+        /**
+         * Null until the intent stage has finished; final once {@link #result} is done.
+         */
+        String paymentIntentId() {
+            PaymentIntent current = intent;
+            return current != null ? current.getId() : null;
+        }
+
+        private void moveLocked(Stage next) {
+            long now = System.nanoTime();
+            stageNanos[stage.ordinal()] += now - stageStartNanos;
+            stageStartNanos = now;
+            stage = next;
+        }
+    }
+
+    private final TerminalStages stages;
+    private final IntentSource intents;
+    private final PaymentMetrics metrics;
+    private final ScheduledExecutorService timer;
+    // Cancel through the backend when the SDK can't (see PaymentIntentPool.Backend.cancelLater)
+    private final Consumer<String> cancelLater;
+    private volatile Listener listener;
+    private volatile Deadlines deadlines = DEFAULT_DEADLINES;
+
+    private final Object lock = new Object();
+    private long nextId = 1;
+    // Owns the collection slot (PAYMENT_INTENT, WAITING_FOR_READER, COLLECTING)
+    private Checkout active;
+    private Checkout confirming;
+    private Checkout queued;
+
+    CheckoutSession(TerminalStages stages, IntentSource intents, PaymentMetrics metrics,
+                    ScheduledExecutorService timer, Consumer<String> cancelLater) {
+        this.stages = stages;
+        this.intents = intents;
+        this.metrics = metrics;
+        this.timer = timer;
+        this.cancelLater = cancelLater;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    void setDeadlines(Deadlines deadlines) {
+        this.deadlines = deadlines;
+    }
+
+    Deadlines deadlines() {
+        return deadlines;
+    }
+
+    /**
+     * Start a sale, or queue it behind the active one when {@code queue} is set and the queue
+     * is free.
+     *
+     * @throws IllegalStateException if the reader is busy and the sale can't be queued
+     */
+    Checkout submit(long amount, String currency, boolean queue) {
+        Checkout checkout;
+        boolean startNow;
+        synchronized (lock) {
+            if (active != null && (!queue || queued != null)) {
+                throw new IllegalStateException(queue
+                    ? "A payment is already queued"
+                    : "A payment is already in progress");
+            }
+            checkout = new Checkout(nextId++, amount, currency);
+            startNow = active == null;
+            if (startNow) {
+                active = checkout;
+            } else {
+                queued = checkout;
+            }
+        }
+        checkout.result.whenComplete((intent, error) -> metrics.record(PaymentMetrics.Stage.CHECKOUT, checkout.startNanos, error));
+        if (startNow) {
+            startIntent(checkout);
+        } else {
+            notifyStatus(checkout, "queued", "Waiting for the current payment");
+        }
+        return checkout;
+    }
+
+    /**
+     * Cancel a sale (the active one, else the queued one, when {@code id} is 0).
+     * Returns the stage it was cancelled in.
+     *
+     * @throws IllegalStateException if there is no such sale or it is already confirming
+     */
+    Stage cancel(long id) {
+        Checkout target;
+        synchronized (lock) {
+            if (id == 0) {
+                target = active != null ? active : queued;
+            } else {
+                target = find(id);
+            }
+            if (target == null || target.stage == Stage.DONE) {
+                throw new IllegalStateException("No payment to cancel");
+            }
+            if (target.stage == Stage.CONFIRMING) {
+                throw new IllegalStateException("Payment is already being confirmed");
+            }
+        }
+        Stage stage = target.stage;
+        CrashBreadcrumbs.record("checkout", "cancel", stage.name());
+        finish(target, new TerminalStages.StageException("Payment cancelled",
+            new CancellationException("Cancelled while " + stage.name().toLowerCase(Locale.ROOT))));
+        return stage;
+    }
+
+    /**
+     * Sales in progress: the one confirming, the active one and the queued one.
+     */
+    List<Checkout> snapshot() {
+        synchronized (lock) {
+            List<Checkout> list = new ArrayList<>(3);
+            if (confirming != null) {
+                list.add(confirming);
+            }
+            if (active != null) {
+                list.add(active);
+            }
+            if (queued != null) {
+                list.add(queued);
+            }
+            return list;
+        }
+    }
+
+    private Checkout find(long id) {
+        for (Checkout checkout : new Checkout[] {active, confirming, queued}) {
+            if (checkout != null && checkout.id == id) {
+                return checkout;
+            }
+        }
+        return null;
+    }
+
+    private void startIntent(Checkout checkout) {
+        synchronized (lock) {
+            if (!enterLocked(checkout, Stage.PAYMENT_INTENT, deadlines.intentMs)) {
+                return;
+            }
+        }
+        CrashBreadcrumbs.record("checkout", "start", checkout.amount, checkout.currency);
+        intents.acquire(checkout.amount, checkout.currency).whenComplete((intent, error) -> {
+            if (error != null) {
+                finish(checkout, error);
+                return;
+            }
+            boolean collectNow;
+            synchronized (lock) {
+                if (checkout.stage != Stage.PAYMENT_INTENT) {
+                    // Cancelled or timed out while the intent was on its way
+                    collectNow = false;
+                } else {
+                    checkout.intent = intent;
+                    collectNow = confirming == null;
+                    if (!collectNow) {
+                        enterLocked(checkout, Stage.WAITING_FOR_READER, deadlines.confirmMs);
+                    }
+                }
+            }
+            if (checkout.stage == Stage.DONE) {
+                cancelIntent(intent);
+            } else if (collectNow) {
+                collect(checkout);
+            } else {
+                notifyStatus(checkout, "waiting_for_reader", "Finishing the previous payment");
+            }
+        });
+    }
+
+    private void collect(Checkout checkout) {
+        PaymentIntent intent;
+        synchronized (lock) {
+            if (!enterLocked(checkout, Stage.COLLECTING, deadlines.collectMs)) {
+                return;
+            }
+            intent = checkout.intent;
+        }
+        PluginLog.d("💳 Waiting for card tap (checkout {})...", checkout.id);
+        notifyStatus(checkout, "waiting_for_card", "Please tap your card");
+
+        metrics.time(PaymentMetrics.Stage.COLLECT_PAYMENT_METHOD, () -> stages.collectPaymentMethod(intent, cancelable -> {
+            boolean cancelNow;
+            synchronized (lock) {
+                checkout.collectCancelable = cancelable;
+                cancelNow = checkout.stage == Stage.DONE;
+            }
+            if (cancelNow) {
+                cancelQuietly(cancelable);
+            }
+        })).whenComplete((collected, error) -> {
+            Checkout next = null;
+            boolean proceed;
+            synchronized (lock) {
+                checkout.collectCancelable = null;
+                proceed = error == null && checkout.stage == Stage.COLLECTING;
+                if (proceed) {
+                    confirming = checkout;
+                    enterLocked(checkout, Stage.CONFIRMING, deadlines.confirmMs);
+                }
+                // The reader is free again: hand the slot to the queued sale
+                if (active == checkout) {
+                    active = null;
+                    next = promoteLocked();
+                }
+            }
+            if (!proceed) {
+                if (error != null) {
+                    finish(checkout, error);
+                }
+                cancelIntent(intent);
+            }
+            if (next != null) {
+                startIntent(next);
+            }
+            if (proceed) {
+                confirm(checkout, collected);
+            }
+        });
+    }
+
+    private void confirm(Checkout checkout, PaymentIntent collected) {
+        PluginLog.d("✅ Card collected, confirming checkout {}", checkout.id);
+        notifyStatus(checkout, "processing", "Processing payment...");
+
+        metrics.time(PaymentMetrics.Stage.CONFIRM_INTENT, () -> stages.confirmPaymentIntent(collected)).whenComplete((confirmed, error) -> {
+            Checkout waiting = null;
+            synchronized (lock) {
+                confirming = null;
+                if (active != null && active.stage == Stage.WAITING_FOR_READER) {
+                    waiting = active;
+                }
+                checkout.moveLocked(Stage.DONE);
+                cancelDeadlineLocked(checkout);
+            }
+            if (error != null) {
+                checkout.result.completeExceptionally(error);
+            } else {
+                checkout.result.complete(confirmed);
+            }
+            if (waiting != null) {
+                collect(waiting);
+            }
+        });
+    }
+
+    /**
+     * End a sale with an error. The slot is released here unless the SDK still holds the
+     * reader (collecting, confirming); then its callback releases it.
+     */
+    private void finish(Checkout checkout, Throwable error) {
+        Checkout next = null;
+        Cancelable collecting = null;
+        PaymentIntent unused = null;
+        synchronized (lock) {
+            Stage stage = checkout.stage;
+            if (stage == Stage.DONE) {
+                return;
+            }
+            checkout.moveLocked(Stage.DONE);
+            cancelDeadlineLocked(checkout);
+            switch (stage) {
+                case QUEUED:
+                    queued = null;
+                    break;
+                case PAYMENT_INTENT:
+                case WAITING_FOR_READER:
+                    unused = checkout.intent;
+                    active = null;
+                    next = promoteLocked();
+                    break;
+                case COLLECTING:
+                    collecting = checkout.collectCancelable;
+                    break;
+                default:
+                    break;
+            }
+        }
+        checkout.result.completeExceptionally(error);
+        if (collecting != null) {
+            cancelQuietly(collecting);
+        }
+        if (unused != null) {
+            cancelIntent(unused);
+        }
+        if (next != null) {
+            startIntent(next);
+        }
+    }
+
+    private Checkout promoteLocked() {
+        Checkout next = queued;
+        queued = null;
+        if (next != null) {
+            active = next;
+        }
+        return next;
+    }
+
+    private boolean enterLocked(Checkout checkout, Stage stage, long deadlineMs) {
+        if (checkout.stage == Stage.DONE) {
+            return false;
+        }
+        checkout.moveLocked(stage);
+        cancelDeadlineLocked(checkout);
+        if (!timer.isShutdown()) {
+            checkout.deadline = timer.schedule(() -> onDeadline(checkout, stage, deadlineMs), deadlineMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private void onDeadline(Checkout checkout, Stage stage, long deadlineMs) {
+        if (checkout.stage != stage) {
+            return;
+        }
+        if (stage == Stage.CONFIRMING) {
+            // Failing the sale now would invite a second charge; wait for the SDK's answer
+            PluginLog.w("⏱️ Checkout {} still confirming after {}ms", checkout.id, deadlineMs);
+            CrashBreadcrumbs.record("checkout", "confirmDelayed", null);
+            notifyStatus(checkout, "confirm_delayed", "Still confirming - don't ring the sale again");
+            return;
+        }
+        PluginLog.w("⏱️ Checkout {} timed out in {}", checkout.id, stage);
+        CrashBreadcrumbs.record("checkout", "timeout", stage.name());
+        finish(checkout, new TerminalStages.StageException("Payment timed out",
+            new TimeoutException(stage.name().toLowerCase(Locale.ROOT) + " took longer than " + deadlineMs + "ms")));
+    }
+
+    private void cancelDeadlineLocked(Checkout checkout) {
+        if (checkout.deadline != null) {
+            checkout.deadline.cancel(false);
+            checkout.deadline = null;
+        }
+    }
+
+    private void cancelIntent(PaymentIntent intent) {
+        if (intent == null) {
+            return;
+        }
+        stages.cancelPaymentIntent(intent).whenComplete((cancelled, error) -> {
+            if (error != null) {
+                PluginLog.w("⚠️ Could not cancel PaymentIntent {}: {}", intent.getId(), error.getMessage());
+                cancelLater.accept(intent.getId());
+            } else {
+                PluginLog.d("🗑️ Cancelled unused PaymentIntent {}", intent.getId());
+            }
+        });
+    }
+
+    private void notifyStatus(Checkout checkout, String status, String message) {
+        Listener l = listener;
+        if (l != null) {
+            l.onStatus(checkout, status, message);
+        }
+    }
+
+    private static void cancelQuietly(Cancelable cancelable) {
+        if (cancelable == null || cancelable.isCompleted()) {
+            return;
+        }
+        cancelable.cancel(new Callback() {
+            @Override
+            public void onSuccess() {
+                PluginLog.d("🛑 Card collection cancelled");
+            }
+
+            @Override
+            public void onFailure(TerminalException e) {
+                PluginLog.w("⚠️ Failed to cancel card collection: {}", e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,246 @@
+package com.compostos.app;
+
+import com.stripe.stripeterminal.external.callable.ConnectionTokenCallback;
+import com.stripe.stripeterminal.external.callable.ConnectionTokenProvider;
+import com.stripe.stripeterminal.external.models.ConnectionTokenException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection token provider that keeps one token ready ahead of the SDK asking for it.
+ *
+ * Concurrent requests (e.g. SDK retries) share a single in-flight backend fetch, and an
+ * unused token is replaced in the background before it goes stale. Tokens are handed
+ * out once; after a token is consumed the next one is prefetched.
+ */
+class ConnectionTokenCache implements ConnectionTokenProvider {
+
+    interface Fetcher {
+        /** Start a backend fetch; the future completes with the token or the final error. */
+        CompletableFuture<String> fetch();
+    }
+
+    private static final long DEFAULT_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final long DEFAULT_REFRESH_AHEAD_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Fetcher fetcher;
+    private final ScheduledExecutorService timer;
+    private final long maxAgeNanos;
+    private final long refreshAheadNanos;
+
+    private final Object lock = new Object();
+    private final List<ConnectionTokenCallback> waiters = new ArrayList<>();
+    private String cachedToken;
+    private long cachedAtNanos;
+    private boolean inFlight;
+    private ScheduledFuture<?> refreshTask;
+    // Bumped on invalidate() so a fetch started against an old backend is discarded
+    private int generation;
+    private boolean shutdown;
+
+    ConnectionTokenCache(Fetcher fetcher, PluginExecutor executor) {
+        this(fetcher, executor.timer(), DEFAULT_MAX_AGE_MS, DEFAULT_REFRESH_AHEAD_MS);
+    }
+
+    ConnectionTokenCache(Fetcher fetcher, ScheduledExecutorService timer, long maxAgeMs, long refreshAheadMs) {
+        this.fetcher = fetcher;
+        this.timer = timer;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMs);
+        this.refreshAheadNanos = TimeUnit.MILLISECONDS.toNanos(refreshAheadMs);
+    }
+
+    @Override
+    public void fetchConnectionToken(ConnectionTokenCallback callback) {
+        String token = null;
+        synchronized (lock) {
+            if (cachedToken != null && System.nanoTime() - cachedAtNanos < maxAgeNanos) {
+                token = cachedToken;
+                clearCachedLocked();
+            } else {
+                clearCachedLocked();
+                waiters.add(callback);
+                startFetchLocked();
+            }
+        }
+
+        if (token != null) {
+            PluginLog.d("🔑 Token served from cache");
+            callback.onSuccess(token);
+            prefetch();
+        } else {
+            PluginLog.d("🔑 Token requested - waiting for backend fetch...");
+        }
+    }
+
+    /**
+     * Start fetching a token in the background unless one is already cached or in flight.
+     */
+    void prefetch() {
+        synchronized (lock) {
+            if (cachedToken == null) {
+                startFetchLocked();
+            }
+        }
+    }
+
+    /**
+     * Replace the cached token now, while nothing is waiting on it, if the refresh timer would
+     * otherwise fire within {@code windowMs} (possibly during a payment). A fresher token is
+     * left alone. Fetches one if none is cached or in flight.
+     */
+    void refreshIfExpiringWithin(long windowMs) {
+        synchronized (lock) {
+            if (cachedToken != null) {
+                long refreshAtNanos = cachedAtNanos + maxAgeNanos - refreshAheadNanos;
+                if (refreshAtNanos - System.nanoTime() > TimeUnit.MILLISECONDS.toNanos(windowMs)) {
+                    return;
+                }
+            }
+            clearCachedLocked();
+            startFetchLocked();
+        }
+    }
+
+    /**
+     * Take a token obtained some other way (the bootstrap call). It goes to anyone already
+     * waiting, otherwise it is cached unless a token is cached already.
+     */
+    void offer(String token) {
+        List<ConnectionTokenCallback> pending;
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+            if (pending.isEmpty()) {
+                if (cachedToken == null) {
+                    cacheLocked(token);
+                    PluginLog.d("✅ Bootstrap token cached");
+                }
+                return;
+            }
+        }
+        for (ConnectionTokenCallback callback : pending) {
+            callback.onSuccess(token);
+        }
+        // The fetch those callers were waiting on will cache its token for the next request
+    }
+
+    /**
+     * Drop the cached token, e.g. after the backend URL changed.
+     */
+    void invalidate() {
+        synchronized (lock) {
+            clearCachedLocked();
+            generation++;
+            inFlight = false;
+        }
+    }
+
+    void shutdown() {
+        synchronized (lock) {
+            clearCachedLocked();
+            generation++;
+            shutdown = true;
+        }
+    }
+
+    private void startFetchLocked() {
+        if (inFlight || shutdown) {
+            return;
+        }
+        inFlight = true;
+        final int fetchGeneration = generation;
+        CompletableFuture<String> fetch;
+        try {
+            fetch = fetcher.fetch();
+        } catch (RuntimeException e) {
+            inFlight = false;
+            failWaitersLocked(e);
+            return;
+        }
+        fetch.whenComplete((token, error) -> onFetched(fetchGeneration, token,
+            error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+    }
+
+    private void onFetched(int fetchGeneration, String token, Throwable error) {
+        List<ConnectionTokenCallback> pending;
+        synchronized (lock) {
+            if (fetchGeneration != generation) {
+                // Invalidated while in flight: anyone waiting gets a fresh fetch instead
+                if (!waiters.isEmpty()) {
+                    startFetchLocked();
+                }
+                return;
+            }
+            inFlight = false;
+            pending = new ArrayList<>(waiters);
+            waiters.clear();
+            if (error == null && pending.isEmpty()) {
+                cacheLocked(token);
+            }
+        }
+
+        if (error != null) {
+            PluginLog.e(error, "❌ Failed to fetch token: {}", error.getMessage());
+            for (ConnectionTokenCallback callback : pending) {
+                callback.onFailure(new ConnectionTokenException("Failed to fetch connection token: " + error.getMessage(), error));
+            }
+            return;
+        }
+
+        if (pending.isEmpty()) {
+            PluginLog.d("✅ Token prefetched and cached");
+            return;
+        }
+
+        for (ConnectionTokenCallback callback : pending) {
+            callback.onSuccess(token);
+        }
+        prefetch();
+    }
+
+    private void refresh() {
+        synchronized (lock) {
+            refreshTask = null;
+            if (cachedToken == null) {
+                return;
+            }
+            cachedToken = null;
+            startFetchLocked();
+        }
+        PluginLog.d("🔄 Refreshing cached token before it goes stale");
+    }
+
+    private void failWaitersLocked(Exception error) {
+        PluginLog.e(error, "❌ Could not schedule token fetch: {}", error.getMessage());
+        List<ConnectionTokenCallback> pending = new ArrayList<>(waiters);
+        waiters.clear();
+        for (ConnectionTokenCallback callback : pending) {
+            callback.onFailure(new ConnectionTokenException("Failed to fetch connection token: " + error.getMessage(), error));
+        }
+    }
+
+    private void cacheLocked(String token) {
+        clearCachedLocked();
+        cachedToken = token;
+        cachedAtNanos = System.nanoTime();
+        long delayNanos = Math.max(0, maxAgeNanos - refreshAheadNanos);
+        refreshTask = timer.schedule(this::refresh, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void clearCachedLocked() {
+        cachedToken = null;
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+    }
+}
@@ -7,7 +7,14 @@ import android.widget.ScrollView;
 import android.widget.TextView;
 import android.graphics.Color;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
 public class CrashActivity extends Activity {
+    private static final int MAX_BREADCRUMBS = 60;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -17,7 +24,19 @@ public class CrashActivity extends Activity {
         
         TextView textView = new TextView(this);
         String error = getIntent().getStringExtra("error");
-        textView.setText("CRASH DETECTED:\n\n" + (error != null ? error : "Unknown Error"));
+        StringBuilder text = new StringBuilder("CRASH DETECTED:\n\n")
+            .append(error != null ? error : "Unknown Error");
+
+        // What the payment flow was doing, from the breadcrumb file the crashed process left
+        List<CrashBreadcrumbs.Breadcrumb> crumbs = CrashBreadcrumbs.readFile(getFilesDir());
+        if (!crumbs.isEmpty()) {
+            text.append("\n\nLAST STEPS:\n");
+            SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS", Locale.ROOT);
+            for (CrashBreadcrumbs.Breadcrumb crumb : crumbs.subList(Math.max(0, crumbs.size() - MAX_BREADCRUMBS), crumbs.size())) {
+                text.append(time.format(new Date(crumb.timeMillis))).append("  ").append(crumb.text).append('\n');
+            }
+        }
+        textView.setText(text);
         textView.setTextColor(Color.WHITE);
         textView.setPadding(40, 60, 40, 40);
         textView.setTextSize(14);
@@ -0,0 +1,232 @@
+package com.compostos.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size, memory-mapped ring of short breadcrumbs ("collectPaymentMethod ok 812ms").
+ *
+ * Writes go straight into the mapped page cache, so they survive the process being killed
+ * (not a power cut) at the cost of a few absolute puts and no allocation. The crash handler
+ * marks the file; the next launch keeps the crashed session's breadcrumbs for export, and
+ * {@code CrashActivity} (a separate process) reads the file directly.
+ *
+ * Layout: header {@code [magic:int][version:int][slots:int][slotSize:int][crashed:int]},
+ * then slots of {@code [seq:long][timeMillis:long][length:short][ascii bytes]}.
+ */
+final class CrashBreadcrumbs {
+
+    static final class Breadcrumb {
+        final long seq;
+        final long timeMillis;
+        final String text;
+
+        Breadcrumb(long seq, long timeMillis, String text) {
+            this.seq = seq;
+            this.timeMillis = timeMillis;
+            this.text = text;
+        }
+    }
+
+    static final String FILE_NAME = "stripe_breadcrumbs.bin";
+
+    private static final int MAGIC = 0x42524344; // "BRCD"
+    private static final int VERSION = 1;
+    private static final int SLOTS = 512;
+    private static final int SLOT_SIZE = 128;
+    private static final int HEADER_SIZE = 32;
+    private static final int CRASHED_OFFSET = 16;
+    private static final int TEXT_OFFSET = 8 + 8 + 2;
+    private static final int MAX_TEXT = SLOT_SIZE - TEXT_OFFSET;
+    private static final int FILE_SIZE = HEADER_SIZE + SLOTS * SLOT_SIZE;
+
+    private static volatile MappedByteBuffer buffer;
+    private static final AtomicLong next = new AtomicLong(1);
+    private static volatile List<Breadcrumb> crashedSession = Collections.emptyList();
+
+    private CrashBreadcrumbs() {
+    }
+
+    /**
+     * Map the file (creating it if needed) and resume after the last recorded sequence.
+     * Main process only: this consumes the crashed flag, so other processes use {@link #readFile}.
+     */
+    static synchronized void open(File dir) {
+        if (buffer != null) {
+            return;
+        }
+        File file = new File(dir, FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION
+                || mapped.getInt(8) != SLOTS || mapped.getInt(12) != SLOT_SIZE) {
+                for (int i = 0; i < FILE_SIZE; i++) {
+                    mapped.put(i, (byte) 0);
+                }
+                mapped.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, SLOTS).putInt(12, SLOT_SIZE);
+            }
+
+            List<Breadcrumb> previous = readAll(mapped);
+            if (mapped.getInt(CRASHED_OFFSET) != 0) {
+                crashedSession = Collections.unmodifiableList(previous);
+                mapped.putInt(CRASHED_OFFSET, 0);
+            }
+            long last = previous.isEmpty() ? 0 : previous.get(previous.size() - 1).seq;
+            next.set(last + 1);
+            buffer = mapped;
+        } catch (IOException e) {
+            PluginLog.w(e, "⚠️ Breadcrumbs unavailable: {}", e.getMessage());
+            return;
+        }
+        record("session", "start", null);
+    }
+
+    /**
+     * Append "{@code stage event detail}". No-op until {@link #open}; non-ASCII becomes '?'.
+     */
+    static void record(String stage, String event, String detail) {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return;
+        }
+        long seq = next.getAndIncrement();
+        int base = HEADER_SIZE + (int) (seq % SLOTS) * SLOT_SIZE;
+
+        // Invalidate first so a half-written slot is never read as complete
+        mapped.putLong(base, 0);
+        int length = 0;
+        length = put(mapped, base, length, stage);
+        length = put(mapped, base, length, " ");
+        length = put(mapped, base, length, event);
+        if (detail != null) {
+            length = put(mapped, base, length, " ");
+            length = put(mapped, base, length, detail);
+        }
+        mapped.putShort(base + 16, (short) length);
+        mapped.putLong(base + 8, System.currentTimeMillis());
+        mapped.putLong(base, seq);
+    }
+
+    /**
+     * Append "{@code stage event <value><unit>}" without building a string.
+     */
+    static void record(String stage, String event, long value, String unit) {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return;
+        }
+        long seq = next.getAndIncrement();
+        int base = HEADER_SIZE + (int) (seq % SLOTS) * SLOT_SIZE;
+
+        mapped.putLong(base, 0);
+        int length = 0;
+        length = put(mapped, base, length, stage);
+        length = put(mapped, base, length, " ");
+        length = put(mapped, base, length, event);
+        length = put(mapped, base, length, " ");
+        length = putDigits(mapped, base, length, value);
+        length = put(mapped, base, length, unit);
+        mapped.putShort(base + 16, (short) length);
+        mapped.putLong(base + 8, System.currentTimeMillis());
+        mapped.putLong(base, seq);
+    }
+
+    /**
+     * Called from the uncaught exception handler: record it and flag the session as crashed.
+     */
+    static void recordCrash(Throwable throwable) {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return;
+        }
+        record("crash", throwable.getClass().getSimpleName(), throwable.getMessage());
+        mapped.putInt(CRASHED_OFFSET, 1);
+        mapped.force();
+    }
+
+    /**
+     * Breadcrumbs of the previous session if it ended in a crash, oldest first.
+     */
+    static List<Breadcrumb> crashedSession() {
+        return crashedSession;
+    }
+
+    /**
+     * Current contents of the ring, oldest first.
+     */
+    static List<Breadcrumb> current() {
+        MappedByteBuffer mapped = buffer;
+        return mapped != null ? readAll(mapped) : Collections.<Breadcrumb>emptyList();
+    }
+
+    /**
+     * Read the file without mapping it for writing (used by CrashActivity's process).
+     */
+    static List<Breadcrumb> readFile(File dir) {
+        File file = new File(dir, FILE_NAME);
+        if (file.length() < FILE_SIZE) {
+            return Collections.emptyList();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer data = ByteBuffer.allocate(FILE_SIZE);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading
+            }
+            return data.getInt(0) == MAGIC ? readAll(data) : Collections.<Breadcrumb>emptyList();
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static int put(ByteBuffer mapped, int base, int length, String text) {
+        int offset = base + TEXT_OFFSET;
+        for (int i = 0; i < text.length() && length < MAX_TEXT; i++) {
+            char c = text.charAt(i);
+            mapped.put(offset + length++, (byte) (c >= 0x20 && c < 0x7f ? c : '?'));
+        }
+        return length;
+    }
+
+    private static int putDigits(ByteBuffer mapped, int base, int length, long value) {
+        if (value < 0) {
+            length = put(mapped, base, length, "-");
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        int offset = base + TEXT_OFFSET;
+        for (; divisor > 0 && length < MAX_TEXT; divisor /= 10) {
+            mapped.put(offset + length++, (byte) ('0' + (value / divisor) % 10));
+        }
+        return length;
+    }
+
+    private static List<Breadcrumb> readAll(ByteBuffer data) {
+        List<Breadcrumb> crumbs = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int base = HEADER_SIZE + slot * SLOT_SIZE;
+            long seq = data.getLong(base);
+            int length = data.getShort(base + 16);
+            if (seq <= 0 || seq % SLOTS != slot || length < 0 || length > MAX_TEXT) {
+                continue;
+            }
+            char[] text = new char[length];
+            for (int i = 0; i < length; i++) {
+                text[i] = (char) data.get(base + TEXT_OFFSET + i);
+            }
+            crumbs.add(new Breadcrumb(seq, data.getLong(base + 8), new String(text)));
+        }
+        Collections.sort(crumbs, (a, b) -> Long.compare(a.seq, b.seq));
+        return crumbs;
+    }
+}
@@ -0,0 +1,182 @@
+package com.compostos.app;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Appends ESC/POS commands and text to one growable byte buffer.
+ *
+ * Text goes through the printer's code page; characters it lacks are printed without their
+ * accent (č → c) and anything else becomes '?', instead of the raw UTF-16 low byte.
+ */
+final class EscPosEncoder {
+
+    static final byte ESC = 0x1B;
+    static final byte GS = 0x1D;
+    static final byte LF = 0x0A;
+
+    enum Align {
+        LEFT,
+        CENTER,
+        RIGHT
+    }
+
+    /**
+     * An ESC t code page and the charset that produces it.
+     */
+    enum CodePage {
+        PC437(0, "IBM437"),
+        PC850(2, "IBM850"),
+        PC852(18, "IBM852"),
+        WPC1250(45, "windows-1250"),
+        WPC1252(16, "windows-1252");
+
+        final int number;
+        final String charsetName;
+
+        CodePage(int number, String charsetName) {
+            this.number = number;
+            this.charsetName = charsetName;
+        }
+
+        Charset charset() {
+            return Charset.isSupported(charsetName) ? Charset.forName(charsetName) : StandardCharsets.US_ASCII;
+        }
+    }
+
+    private final CodePage codePage;
+    private final CharsetEncoder encoder;
+    private byte[] buffer;
+    private int size;
+
+    EscPosEncoder() {
+        this(CodePage.PC437, 4096);
+    }
+
+    EscPosEncoder(CodePage codePage, int initialCapacity) {
+        this.codePage = codePage;
+        buffer = new byte[Math.max(64, initialCapacity)];
+        encoder = codePage.charset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    /**
+     * ESC @ and ESC t: reset modes and select the code page.
+     */
+    EscPosEncoder initialize() {
+        return raw(ESC, '@', ESC, 't', codePage.number);
+    }
+
+    EscPosEncoder align(Align align) {
+        return raw(ESC, 'a', align.ordinal());
+    }
+
+    EscPosEncoder bold(boolean on) {
+        return raw(ESC, 'E', on ? 1 : 0);
+    }
+
+    /**
+     * GS ! with width and height multipliers of 1..8.
+     */
+    EscPosEncoder size(int width, int height) {
+        return raw(GS, '!', ((clamp(width) - 1) << 4) | (clamp(height) - 1));
+    }
+
+    EscPosEncoder text(String text) {
+        if (text.isEmpty()) {
+            return this;
+        }
+        if (encoder.canEncode(text)) {
+            return encode(text);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (encoder.canEncode(c)) {
+                encode(String.valueOf(c));
+                continue;
+            }
+            String base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            char plain = base.isEmpty() ? '?' : base.charAt(0);
+            ensure(1);
+            buffer[size++] = plain < 0x80 ? (byte) plain : (byte) '?';
+        }
+        return this;
+    }
+
+    EscPosEncoder line(String text) {
+        return text(text).feed(1);
+    }
+
+    EscPosEncoder feed(int lines) {
+        ensure(lines);
+        for (int i = 0; i < lines; i++) {
+            buffer[size++] = LF;
+        }
+        return this;
+    }
+
+    /**
+     * GS V A n: feed {@code n} dots, then partial cut.
+     */
+    EscPosEncoder cut(int feedDots) {
+        return raw(GS, 'V', 0x41, feedDots);
+    }
+
+    /**
+     * Append an already encoded raster (see {@link RasterImage#encode()}).
+     */
+    EscPosEncoder bytes(byte[] data) {
+        ensure(data.length);
+        System.arraycopy(data, 0, buffer, size, data.length);
+        size += data.length;
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private EscPosEncoder raw(int... values) {
+        ensure(values.length);
+        for (int value : values) {
+            buffer[size++] = (byte) value;
+        }
+        return this;
+    }
+
+    private EscPosEncoder encode(String text) {
+        try {
+            ByteBuffer encoded = encoder.reset().encode(CharBuffer.wrap(text));
+            ensure(encoded.remaining());
+            int length = encoded.remaining();
+            encoded.get(buffer, size, length);
+            size += length;
+        } catch (CharacterCodingException e) {
+            // canEncode said yes; unreachable
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private static int clamp(int multiplier) {
+        return Math.max(1, Math.min(8, multiplier));
+    }
+}
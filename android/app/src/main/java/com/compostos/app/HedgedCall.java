@@ -0,0 +1,269 @@
+package com.compostos.app;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deadline-bound retries with a hedged second request for one backend call.
+ *
+ * Each {@link #execute} runs attempts on the I/O pool. Transient failures (network errors,
+ * timeouts, 408/429/5xx) are retried after an exponentially growing, jittered backoff; other
+ * responses fail at once. If the running attempt has not answered within the p95 of recent
+ * successful attempts, one hedge is started alongside it and the first answer wins. The
+ * caller makes the call idempotent (e.g. one {@code Idempotency-Key} for all attempts), so
+ * a duplicate request never has a second effect.
+ */
+final class HedgedCall {
+
+    interface Attempt<T> {
+        T run() throws Exception;
+    }
+
+    static final class Policy {
+        final long deadlineMs;
+        final int maxAttempts;
+        final long initialBackoffMs;
+        final long maxBackoffMs;
+        // Hedge threshold until enough samples are in, and the range p95 is clamped to
+        final long defaultHedgeMs;
+        final long minHedgeMs;
+        final long maxHedgeMs;
+
+        Policy(long deadlineMs, int maxAttempts, long initialBackoffMs, long maxBackoffMs,
+               long defaultHedgeMs, long minHedgeMs, long maxHedgeMs) {
+            this.deadlineMs = deadlineMs;
+            this.maxAttempts = maxAttempts;
+            this.initialBackoffMs = initialBackoffMs;
+            this.maxBackoffMs = maxBackoffMs;
+            this.defaultHedgeMs = defaultHedgeMs;
+            this.minHedgeMs = minHedgeMs;
+            this.maxHedgeMs = maxHedgeMs;
+        }
+    }
+
+    static final int MIN_SAMPLES = 20;
+
+    private final Policy policy;
+    private final Executor io;
+    private final ScheduledExecutorService timer;
+    // Latency of successful single attempts (not of whole calls, which hedging shortens)
+    final LatencyHistogram attemptLatency = new LatencyHistogram();
+    final AtomicLong attempts = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong hedges = new AtomicLong();
+    final AtomicLong hedgeWins = new AtomicLong();
+
+    HedgedCall(Policy policy, Executor io, ScheduledExecutorService timer) {
+        this.policy = policy;
+        this.io = io;
+        this.timer = timer;
+    }
+
+    /**
+     * Run the attempt until one succeeds, a permanent error comes back, or the deadline passes.
+     */
+    <T> CompletableFuture<T> execute(Attempt<T> attempt) {
+        Run<T> run = new Run<>(attempt);
+        run.start();
+        return run.result;
+    }
+
+    /**
+     * How long an attempt may run before it is hedged.
+     */
+    long hedgeDelayMs() {
+        if (attemptLatency.count() < MIN_SAMPLES) {
+            return policy.defaultHedgeMs;
+        }
+        long p95 = (long) Math.ceil(attemptLatency.percentileMillis(0.95));
+        return Math.max(policy.minHedgeMs, Math.min(policy.maxHedgeMs, p95));
+    }
+
+    /**
+     * Backoff before the given retry (1-based): half fixed, half random.
+     */
+    long backoffMs(int retry) {
+        long ceiling = Math.min(policy.maxBackoffMs, policy.initialBackoffMs << Math.min(20, retry - 1));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof BackendClient.BackendException) {
+            int status = ((BackendClient.BackendException) error).statusCode;
+            return status == 408 || status == 429 || status >= 500;
+        }
+        // Connect/read timeouts, resets, DNS hiccups
+        return error instanceof IOException;
+    }
+
+    /**
+     * Zero the counters; attempt latency is kept since it drives the hedge threshold.
+     */
+    void resetStats() {
+        attempts.set(0);
+        retries.set(0);
+        hedges.set(0);
+        hedgeWins.set(0);
+    }
+
+    private final class Run<T> {
+        final Attempt<T> attempt;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.deadlineMs);
+
+        // Guarded by this
+        private int started;
+        private int inFlight;
+        private boolean hedged;
+        private Throwable lastError;
+        private ScheduledFuture<?> hedgeTask;
+        private ScheduledFuture<?> retryTask;
+        private ScheduledFuture<?> deadlineTask;
+
+        Run(Attempt<T> attempt) {
+            this.attempt = attempt;
+        }
+
+        void start() {
+            RuntimeException rejected;
+            synchronized (this) {
+                deadlineTask = timer.schedule(this::onDeadline, policy.deadlineMs, TimeUnit.MILLISECONDS);
+                rejected = launch(false);
+            }
+            if (rejected != null) {
+                result.completeExceptionally(rejected);
+            }
+            result.whenComplete((value, error) -> {
+                synchronized (this) {
+                    cancel(hedgeTask);
+                    cancel(retryTask);
+                    cancel(deadlineTask);
+                }
+            });
+        }
+
+        /**
+         * Start an attempt; returns the error if the pool refused it. Callers hold the lock and
+         * complete the result after releasing it, so dependants never run under it.
+         */
+        private RuntimeException launch(boolean hedge) {
+            if (result.isDone() || started >= policy.maxAttempts) {
+                return null;
+            }
+            started++;
+            inFlight++;
+            attempts.incrementAndGet();
+            if (hedge) {
+                hedges.incrementAndGet();
+            } else if (started > 1) {
+                retries.incrementAndGet();
+            }
+            final long attemptStart = System.nanoTime();
+            try {
+                io.execute(() -> runAttempt(attemptStart, hedge));
+            } catch (RuntimeException e) {
+                // Pool saturated: fail fast rather than queue behind it
+                inFlight--;
+                return e;
+            }
+            if (!hedged && !hedge && started < policy.maxAttempts) {
+                cancel(hedgeTask);
+                hedgeTask = timer.schedule(this::onHedge, hedgeDelayMs(), TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }
+
+        private void runAttempt(long attemptStart, boolean hedge) {
+            T value;
+            try {
+                value = attempt.run();
+            } catch (Exception e) {
+                if (onFailure(e)) {
+                    result.completeExceptionally(e);
+                }
+                return;
+            }
+            attemptLatency.recordNanos(System.nanoTime() - attemptStart);
+            synchronized (this) {
+                inFlight--;
+            }
+            if (result.complete(value) && hedge) {
+                hedgeWins.incrementAndGet();
+            }
+        }
+
+        /**
+         * Schedule a retry if this failure allows one; true if the call has failed for good.
+         */
+        private synchronized boolean onFailure(Exception error) {
+            inFlight--;
+            lastError = error;
+            if (result.isDone()) {
+                return false;
+            }
+            if (!isRetryable(error)) {
+                return true;
+            }
+            if (inFlight > 0) {
+                // The other attempt may still answer; retry only once it fails too
+                return false;
+            }
+            if (started >= policy.maxAttempts) {
+                return true;
+            }
+            long delayMs = backoffMs(started);
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs) >= deadlineNanos) {
+                return true;
+            }
+            cancel(hedgeTask);
+            retryTask = timer.schedule(this::onRetry, delayMs, TimeUnit.MILLISECONDS);
+            return false;
+        }
+
+        private void onRetry() {
+            RuntimeException rejected;
+            synchronized (this) {
+                retryTask = null;
+                rejected = launch(false);
+            }
+            if (rejected != null) {
+                result.completeExceptionally(rejected);
+            }
+        }
+
+        private synchronized void onHedge() {
+            hedgeTask = null;
+            if (result.isDone() || inFlight == 0 || hedged) {
+                return;
+            }
+            hedged = true;
+            // A refused hedge isn't fatal: the first attempt is still running
+            launch(true);
+        }
+
+        private void onDeadline() {
+            Throwable cause;
+            synchronized (this) {
+                cause = lastError;
+            }
+            TimeoutException timeout = new TimeoutException("No response within " + policy.deadlineMs + "ms");
+            if (cause != null) {
+                timeout.initCause(cause);
+            }
+            result.completeExceptionally(timeout);
+        }
+
+        private void cancel(ScheduledFuture<?> task) {
+            if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+}
@@ -7,6 +7,8 @@ public class MainActivity extends BridgeActivity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         registerPlugin(StripeTerminalPlugin.class);
+        registerPlugin(ReceiptPrinterPlugin.class);
+        registerPlugin(CatalogStorePlugin.class);
         super.onCreate(savedInstanceState);
     }
 }
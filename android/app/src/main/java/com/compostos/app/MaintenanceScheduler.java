@@ -0,0 +1,439 @@
+package com.compostos.app;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Background upkeep (token refresh, PaymentIntent refill, reader health, file compaction,
+ * upload flushes) that only runs while the till is idle.
+ *
+ * Tasks are registered with an interval and {@link Constraints}; one is due once its interval
+ * has passed since it last ran. Due tasks run one at a time, in registration order, once no
+ * payment has been active for {@code idleDelayMs}. {@link #pause} (a payment is starting)
+ * cancels the running task and starts the idle delay over; a cancelled task stays due. A task
+ * whose battery or network constraint isn't met is skipped and looked at again after
+ * {@link #RECHECK_MS} or when {@link #onDeviceStateChanged} is called.
+ */
+final class MaintenanceScheduler {
+
+    static final String PREF_ENABLED = "maintenanceEnabled";
+    static final String PREF_IDLE_DELAY_MS = "maintenanceIdleDelayMs";
+
+    static final long DEFAULT_IDLE_DELAY_MS = TimeUnit.SECONDS.toMillis(15);
+    static final long RECHECK_MS = TimeUnit.MINUTES.toMillis(1);
+    // How often a busy till is looked at again, whatever the idle delay
+    static final long BUSY_RECHECK_MS = 1000;
+    // A task still running after this is cancelled so the others get their turn
+    static final long TASK_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    enum Network {
+        ANY,
+        CONNECTED,
+        UNMETERED
+    }
+
+    static final class Constraints {
+        final Network network;
+        // Not checked while charging
+        final int minBatteryPercent;
+
+        Constraints(Network network, int minBatteryPercent) {
+            this.network = network;
+            this.minBatteryPercent = minBatteryPercent;
+        }
+    }
+
+    interface DeviceState {
+        /** 0-100, or -1 before the first battery broadcast */
+        int batteryPercent();
+
+        boolean isCharging();
+
+        /** A validated internet connection */
+        boolean isConnected();
+
+        boolean isUnmetered();
+    }
+
+    interface Task {
+        /** Start the work (called on the I/O pool); the future completes when it is done. */
+        CompletableFuture<?> run() throws Exception;
+    }
+
+    static final class TaskStatus {
+        final String name;
+        final long intervalMs;
+        final long runs;
+        final long failures;
+        // 0 until the task first ran
+        final long lastRunAtMs;
+        final long lastDurationMs;
+        final String lastError;
+        // "battery" or "network" while a due task waits on its constraints
+        final String blockedBy;
+
+        TaskStatus(String name, long intervalMs, long runs, long failures, long lastRunAtMs, long lastDurationMs,
+                   String lastError, String blockedBy) {
+            this.name = name;
+            this.intervalMs = intervalMs;
+            this.runs = runs;
+            this.failures = failures;
+            this.lastRunAtMs = lastRunAtMs;
+            this.lastDurationMs = lastDurationMs;
+            this.lastError = lastError;
+            this.blockedBy = blockedBy;
+        }
+    }
+
+    private static final class Registration {
+        final String name;
+        final long intervalMs;
+        final Constraints constraints;
+        final Task task;
+        // Guarded by the scheduler lock
+        boolean ran;
+        long lastRunNanos;
+        long runs;
+        long failures;
+        long lastRunAtMs;
+        long lastDurationMs;
+        String lastError;
+        String blockedBy;
+
+        Registration(String name, long intervalMs, Constraints constraints, Task task) {
+            this.name = name;
+            this.intervalMs = intervalMs;
+            this.constraints = constraints;
+            this.task = task;
+        }
+
+        long dueInNanos(long now) {
+            return ran ? lastRunNanos + TimeUnit.MILLISECONDS.toNanos(intervalMs) - now : 0;
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final DeviceState device;
+    private final Executor io;
+    private final ScheduledExecutorService timer;
+    private volatile BooleanSupplier busy = () -> false;
+
+    private final Object lock = new Object();
+    // Guarded by lock; registration order is priority order
+    private final List<Registration> tasks = new ArrayList<>();
+    private boolean enabled;
+    private long idleDelayMs;
+    private long lastBusyNanos;
+    private ScheduledFuture<?> scheduled;
+    // Non-null while a task runs; cancelled by pause()
+    private CompletableFuture<Object> running;
+    private boolean closed;
+
+    MaintenanceScheduler(SharedPreferences prefs, DeviceState device, Executor io, ScheduledExecutorService timer) {
+        this.prefs = prefs;
+        this.device = device;
+        this.io = io;
+        this.timer = timer;
+        enabled = prefs.getBoolean(PREF_ENABLED, true);
+        idleDelayMs = prefs.getLong(PREF_IDLE_DELAY_MS, DEFAULT_IDLE_DELAY_MS);
+        // Startup is busy enough: the first tasks wait a full idle delay
+        lastBusyNanos = System.nanoTime();
+    }
+
+    /**
+     * While this answers true (a payment is in progress) no task starts.
+     */
+    void setBusy(BooleanSupplier busy) {
+        this.busy = busy;
+    }
+
+    void register(String name, long intervalMs, Constraints constraints, Task task) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        synchronized (lock) {
+            tasks.add(new Registration(name, intervalMs, constraints, task));
+            scheduleLocked(idleRemainingMsLocked(System.nanoTime()));
+        }
+    }
+
+    boolean isEnabled() {
+        synchronized (lock) {
+            return enabled;
+        }
+    }
+
+    long idleDelayMs() {
+        synchronized (lock) {
+            return idleDelayMs;
+        }
+    }
+
+    /**
+     * Turn maintenance on or off and set how long the till must be idle first; persisted.
+     */
+    void configure(boolean enabled, long idleDelayMs) {
+        if (idleDelayMs < 0) {
+            throw new IllegalArgumentException("Idle delay must not be negative");
+        }
+        CompletableFuture<Object> current;
+        synchronized (lock) {
+            this.enabled = enabled;
+            this.idleDelayMs = idleDelayMs;
+            prefs.edit()
+                .putBoolean(PREF_ENABLED, enabled)
+                .putLong(PREF_IDLE_DELAY_MS, idleDelayMs)
+                .apply();
+            cancelTimerLocked();
+            current = enabled ? null : running;
+            scheduleLocked(idleRemainingMsLocked(System.nanoTime()));
+        }
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    /**
+     * A payment is starting: cancel the running task and hold the rest until the till has been
+     * idle for the idle delay again.
+     */
+    void pause() {
+        CompletableFuture<Object> current;
+        synchronized (lock) {
+            lastBusyNanos = System.nanoTime();
+            cancelTimerLocked();
+            current = running;
+            scheduleLocked(idleDelayMs);
+        }
+        if (current != null && current.cancel(false)) {
+            PluginLog.d("⏸️ Maintenance paused for a payment");
+        }
+    }
+
+    /**
+     * Battery or connectivity changed: look at blocked tasks now rather than on the next recheck.
+     */
+    void onDeviceStateChanged() {
+        synchronized (lock) {
+            if (running == null) {
+                cancelTimerLocked();
+                scheduleLocked(idleRemainingMsLocked(System.nanoTime()));
+            }
+        }
+    }
+
+    /**
+     * No payment active and none for the idle delay.
+     */
+    boolean isIdle() {
+        boolean busyNow = busy.getAsBoolean();
+        synchronized (lock) {
+            return !busyNow && idleRemainingMsLocked(System.nanoTime()) == 0;
+        }
+    }
+
+    List<TaskStatus> status() {
+        synchronized (lock) {
+            List<TaskStatus> list = new ArrayList<>(tasks.size());
+            for (Registration r : tasks) {
+                list.add(new TaskStatus(r.name, r.intervalMs, r.runs, r.failures, r.lastRunAtMs, r.lastDurationMs,
+                    r.lastError, r.blockedBy));
+            }
+            return list;
+        }
+    }
+
+    void close() {
+        CompletableFuture<Object> current;
+        synchronized (lock) {
+            closed = true;
+            cancelTimerLocked();
+            current = running;
+        }
+        if (current != null) {
+            current.cancel(false);
+        }
+    }
+
+    private void scheduleLocked(long delayMs) {
+        if (scheduled != null || running != null || !enabled || closed || tasks.isEmpty() || timer.isShutdown()) {
+            return;
+        }
+        scheduled = timer.schedule(() -> {
+            synchronized (lock) {
+                scheduled = null;
+            }
+            try {
+                io.execute(this::runNext);
+            } catch (RuntimeException e) {
+                // I/O pool saturated: that's not idle either
+                synchronized (lock) {
+                    scheduleLocked(RECHECK_MS);
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimerLocked() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    private long idleRemainingMsLocked(long now) {
+        return Math.max(0, idleDelayMs - TimeUnit.NANOSECONDS.toMillis(now - lastBusyNanos));
+    }
+
+    private void runNext() {
+        boolean busyNow = busy.getAsBoolean();
+        long startNanos = System.nanoTime();
+        Registration next;
+        CompletableFuture<Object> slot;
+        synchronized (lock) {
+            if (!enabled || closed || running != null || scheduled != null) {
+                return;
+            }
+            if (busyNow) {
+                lastBusyNanos = startNanos;
+                scheduleLocked(Math.max(idleDelayMs, BUSY_RECHECK_MS));
+                return;
+            }
+            long idleRemainingMs = idleRemainingMsLocked(startNanos);
+            if (idleRemainingMs > 0) {
+                scheduleLocked(idleRemainingMs);
+                return;
+            }
+            next = nextDueLocked(startNanos);
+            if (next == null) {
+                scheduleLocked(nextCheckMsLocked(startNanos));
+                return;
+            }
+            slot = new CompletableFuture<>();
+            running = slot;
+        }
+
+        CompletableFuture<?> work;
+        try {
+            // Paused between picking the task and starting it
+            work = slot.isDone() ? slot : next.task.run();
+        } catch (Exception e) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            work = failed;
+        }
+        CompletableFuture<?> started = work;
+        started.whenComplete((value, error) -> {
+            if (error != null) {
+                slot.completeExceptionally(error);
+            } else {
+                slot.complete(value);
+            }
+        });
+        ScheduledFuture<?> timeout = timer.isShutdown() ? null : timer.schedule(() -> slot.completeExceptionally(
+            new TimeoutException("No result after " + TASK_TIMEOUT_MS + "ms")), TASK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        slot.whenComplete((value, error) -> {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (error != null && !started.isDone()) {
+                // Paused or timed out: stop the work if it supports it
+                started.cancel(false);
+            }
+            finished(next, startNanos, error);
+        });
+    }
+
+    private void finished(Registration task, long startNanos, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TerminalStages.StageException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        boolean cancelled = cause instanceof CancellationException;
+        long now = System.nanoTime();
+        synchronized (lock) {
+            running = null;
+            if (!cancelled) {
+                task.ran = true;
+                task.lastRunNanos = now;
+                task.runs++;
+                task.blockedBy = null;
+                task.lastRunAtMs = System.currentTimeMillis();
+                task.lastDurationMs = TimeUnit.NANOSECONDS.toMillis(now - startNanos);
+                task.lastError = cause != null ? cause.getMessage() : null;
+                if (cause != null) {
+                    task.failures++;
+                }
+            }
+            // Straight on to the next due task, if the till is still idle
+            scheduleLocked(0);
+        }
+        if (cancelled) {
+            PluginLog.d("⏸️ Maintenance task {} cancelled, runs again when idle", task.name);
+        } else if (cause != null) {
+            PluginLog.w("⚠️ Maintenance task {} failed: {}", task.name, cause.getMessage());
+        } else {
+            PluginLog.d("🛠️ Maintenance task {} done in {}ms", task.name, TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+        }
+    }
+
+    /**
+     * First due task whose constraints are met; due tasks that are blocked record why.
+     */
+    private Registration nextDueLocked(long now) {
+        for (Registration task : tasks) {
+            if (task.dueInNanos(now) > 0) {
+                continue;
+            }
+            task.blockedBy = blockedBy(task.constraints);
+            if (task.blockedBy == null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private long nextCheckMsLocked(long now) {
+        long nextMs = RECHECK_MS;
+        for (Registration task : tasks) {
+            long dueInNanos = task.dueInNanos(now);
+            if (dueInNanos > 0) {
+                nextMs = Math.min(nextMs, TimeUnit.NANOSECONDS.toMillis(dueInNanos) + 1);
+            }
+        }
+        return nextMs;
+    }
+
+    private String blockedBy(Constraints constraints) {
+        switch (constraints.network) {
+            case CONNECTED:
+                if (!device.isConnected()) {
+                    return "network";
+                }
+                break;
+            case UNMETERED:
+                if (!device.isConnected() || !device.isUnmetered()) {
+                    return "network";
+                }
+                break;
+            default:
+                break;
+        }
+        int battery = device.batteryPercent();
+        if (battery >= 0 && battery < constraints.minBatteryPercent && !device.isCharging()) {
+            return "battery";
+        }
+        return null;
+    }
+}
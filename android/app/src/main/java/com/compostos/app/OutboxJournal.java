@@ -0,0 +1,440 @@
+package com.compostos.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, on-disk store-and-forward queue for backend calls that must not be lost
+ * when the backend is unreachable (payment records, receipts, cancellations).
+ *
+ * Appends are group-committed: records written within {@link #SYNC_DELAY_MS} share one
+ * fsync, and {@link #append} completes once its record is durable. A single replayer posts
+ * queued operations in order through {@link BackendClient}, backing off exponentially
+ * (with jitter) while the backend is down. Acknowledged records are compacted away; the
+ * dead-letter count survives as a single summary record.
+ *
+ * Record layout: {@code [len:int][seq:long][type:byte][payload:len][crc32:int]}.
+ */
+class OutboxJournal {
+
+    static final class Operation {
+        final long seq;
+        final String id;
+        final String path;
+        final Map<String, Object> body;
+        final long createdAtMs;
+
+        Operation(long seq, String id, String path, Map<String, Object> body, long createdAtMs) {
+            this.seq = seq;
+            this.id = id;
+            this.path = path;
+            this.body = body;
+            this.createdAtMs = createdAtMs;
+        }
+    }
+
+    private static final byte TYPE_OPERATION = 1;
+    private static final byte TYPE_ACK = 2;
+    private static final byte TYPE_DEAD = 3;
+    // Dead-letter total carried across compaction, which drops the TYPE_DEAD records it covers
+    private static final byte TYPE_DEAD_COUNT = 4;
+
+    private static final int HEADER_BYTES = 4 + 8 + 1;
+    private static final int MAX_PAYLOAD_BYTES = 256 * 1024;
+    private static final long SYNC_DELAY_MS = 20;
+    private static final int COMPACT_AFTER_ACKS = 128;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private final File file;
+    private final BackendClient backend;
+    private final Executor io;
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+    // Pending operations in sequence order
+    private final LinkedHashMap<Long, Operation> pending = new LinkedHashMap<>();
+    private final List<CompletableFuture<Void>> awaitingSync = new ArrayList<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private FileChannel channel;
+    private long nextSeq = 1;
+    private int acksSinceCompaction;
+    private boolean syncScheduled;
+    private long backoffMs = INITIAL_BACKOFF_MS;
+    private long deadLettered;
+
+    OutboxJournal(File file, BackendClient backend, Executor io, ScheduledExecutorService timer) {
+        this.file = file;
+        this.backend = backend;
+        this.io = io;
+        this.timer = timer;
+    }
+
+    /**
+     * Open the journal, recovering pending operations and truncating a torn tail.
+     */
+    void open() throws IOException {
+        synchronized (lock) {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            long validLength = recover();
+            if (validLength < channel.size()) {
+                PluginLog.w("⚠️ Outbox journal had a torn tail, truncating to {} bytes", validLength);
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+        }
+        PluginLog.d("📮 Outbox opened with {} pending operation(s)", pendingCount());
+        kick();
+    }
+
+    /**
+     * Queue a backend POST. Completes once the record is fsynced; delivery happens later.
+     */
+    CompletableFuture<Void> append(String path, Map<String, Object> body) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        try {
+            synchronized (lock) {
+                Operation op = new Operation(nextSeq++, UUID.randomUUID().toString(), path, body, System.currentTimeMillis());
+                Map<String, Object> payload = new LinkedHashMap<>();
+                payload.put("id", op.id);
+                payload.put("path", op.path);
+                payload.put("body", op.body);
+                payload.put("createdAt", op.createdAtMs);
+                writeRecordLocked(op.seq, TYPE_OPERATION, BackendJson.write(payload).getBytes(StandardCharsets.UTF_8));
+                pending.put(op.seq, op);
+                awaitingSync.add(durable);
+                scheduleSyncLocked();
+            }
+        } catch (IOException e) {
+            durable.completeExceptionally(e);
+        }
+        durable.thenRun(this::kick);
+        return durable;
+    }
+
+    int pendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    long deadLetteredCount() {
+        synchronized (lock) {
+            return deadLettered;
+        }
+    }
+
+    /**
+     * Try to deliver now (e.g. connectivity came back), resetting the backoff.
+     */
+    void onConnectivityRestored() {
+        synchronized (lock) {
+            backoffMs = INITIAL_BACKOFF_MS;
+        }
+        kick();
+    }
+
+    /**
+     * Drop delivered records from the file now rather than after {@link #COMPACT_AFTER_ACKS}
+     * deliveries; no-op when there are none.
+     */
+    void compact() throws IOException {
+        synchronized (lock) {
+            if (channel != null && acksSinceCompaction > 0) {
+                compactLocked();
+            }
+        }
+    }
+
+    void close() {
+        synchronized (lock) {
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                    channel.close();
+                }
+            } catch (IOException e) {
+                PluginLog.w("⚠️ Failed to close outbox: {}", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private void kick() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            io.execute(this::drain);
+        } catch (RuntimeException e) {
+            draining.set(false);
+        }
+    }
+
+    private void drain() {
+        boolean emptied = false;
+        try {
+            while (true) {
+                Operation op;
+                synchronized (lock) {
+                    if (pending.isEmpty() || channel == null) {
+                        emptied = true;
+                        return;
+                    }
+                    op = pending.values().iterator().next();
+                }
+
+                byte outcome;
+                try {
+                    backend.post(op.path, op.body, Collections.singletonMap("Idempotency-Key", "outbox-" + op.id));
+                    outcome = TYPE_ACK;
+                    PluginLog.d("📮 Delivered queued {} (#{})", op.path, op.seq);
+                } catch (BackendClient.BackendException e) {
+                    if (isRetryable(e.statusCode)) {
+                        scheduleRetry(e);
+                        return;
+                    }
+                    // The backend rejected it for good; don't block the queue behind it
+                    outcome = TYPE_DEAD;
+                    PluginLog.e("❌ Dropping queued {} (#{}): {}", op.path, op.seq, e.getMessage());
+                } catch (IOException e) {
+                    scheduleRetry(e);
+                    return;
+                }
+
+                try {
+                    complete(op, outcome);
+                } catch (IOException e) {
+                    // Delivered but not recorded: it is replayed later under the same idempotency key
+                    PluginLog.e(e, "❌ Failed to record outbox delivery: {}", e.getMessage());
+                    scheduleRetry(e);
+                    return;
+                }
+            }
+        } finally {
+            draining.set(false);
+            // An append that became durable after the empty check lost the kick to us
+            if (emptied) {
+                boolean more;
+                synchronized (lock) {
+                    more = !pending.isEmpty() && channel != null;
+                }
+                if (more) {
+                    kick();
+                }
+            }
+        }
+    }
+
+    private void scheduleRetry(IOException cause) {
+        long delay;
+        synchronized (lock) {
+            delay = backoffMs + ThreadLocalRandom.current().nextLong(backoffMs / 2 + 1);
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+        PluginLog.d("📮 Backend unreachable ({}), retrying outbox in {}ms", cause.getMessage(), delay);
+        if (!timer.isShutdown()) {
+            timer.schedule(this::kick, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void complete(Operation op, byte type) throws IOException {
+        synchronized (lock) {
+            writeRecordLocked(op.seq, type, new byte[0]);
+            channel.force(false);
+            pending.remove(op.seq);
+            backoffMs = INITIAL_BACKOFF_MS;
+            if (type == TYPE_DEAD) {
+                deadLettered++;
+            }
+            if (++acksSinceCompaction >= COMPACT_AFTER_ACKS) {
+                // The outcome is already durable; a failed compaction is retried on the next one
+                try {
+                    compactLocked();
+                } catch (IOException e) {
+                    PluginLog.w("⚠️ Outbox compaction failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+    }
+
+    private void scheduleSyncLocked() {
+        if (syncScheduled) {
+            return;
+        }
+        syncScheduled = true;
+        timer.schedule(() -> {
+            try {
+                io.execute(this::sync);
+            } catch (RuntimeException e) {
+                sync();
+            }
+        }, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void sync() {
+        List<CompletableFuture<Void>> batch;
+        IOException failure = null;
+        synchronized (lock) {
+            syncScheduled = false;
+            batch = new ArrayList<>(awaitingSync);
+            awaitingSync.clear();
+            try {
+                if (channel == null) {
+                    throw new IOException("Outbox is closed");
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        for (CompletableFuture<Void> future : batch) {
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the file with the dead-letter count and the pending operations, then atomically
+     * swap it in.
+     */
+    private void compactLocked() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileChannel out = new RandomAccessFile(tmp, "rw").getChannel()) {
+            out.truncate(0);
+            if (deadLettered > 0) {
+                writeRecord(out, 0, TYPE_DEAD_COUNT, ByteBuffer.allocate(8).putLong(deadLettered).array());
+            }
+            for (Operation op : pending.values()) {
+                Map<String, Object> payload = new LinkedHashMap<>();
+                payload.put("id", op.id);
+                payload.put("path", op.path);
+                payload.put("body", op.body);
+                payload.put("createdAt", op.createdAtMs);
+                writeRecord(out, op.seq, TYPE_OPERATION, BackendJson.write(payload).getBytes(StandardCharsets.UTF_8));
+            }
+            out.force(true);
+        }
+        channel.close();
+        boolean swapped = tmp.renameTo(file);
+        // Reopen whichever file is in place so appends keep working if the swap failed
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel = null;
+            throw e;
+        }
+        if (!swapped) {
+            tmp.delete();
+            throw new IOException("Failed to swap compacted outbox into place");
+        }
+        acksSinceCompaction = 0;
+        PluginLog.d("🧹 Outbox compacted, {} pending operation(s) kept", pending.size());
+    }
+
+    private void writeRecordLocked(long seq, byte type, byte[] payload) throws IOException {
+        if (channel == null) {
+            throw new IOException("Outbox is closed");
+        }
+        writeRecord(channel, seq, type, payload);
+    }
+
+    private static void writeRecord(FileChannel out, long seq, byte type, byte[] payload) throws IOException {
+        if (payload.length > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Outbox record too large (" + payload.length + " bytes)");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length + 4);
+        buffer.putInt(payload.length).putLong(seq).put(type).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, 8 + 1 + payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Scan the file, rebuilding the pending set. Returns the length of the valid prefix.
+     */
+    private long recover() throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES + 4 <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            long seq = header.getLong();
+            byte type = header.get();
+            if (length < 0 || length > MAX_PAYLOAD_BYTES || position + HEADER_BYTES + length + 4 > size) {
+                break;
+            }
+            ByteBuffer rest = ByteBuffer.allocate(length + 4);
+            channel.read(rest, position + HEADER_BYTES);
+            rest.flip();
+            byte[] payload = new byte[length];
+            rest.get(payload);
+            int storedCrc = rest.getInt();
+
+            CRC32 crc = new CRC32();
+            ByteBuffer check = ByteBuffer.allocate(8 + 1).putLong(seq).put(type);
+            crc.update(check.array());
+            crc.update(payload);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+
+            if (type == TYPE_OPERATION) {
+                Map<String, Object> json = BackendJson.readObject(new String(payload, StandardCharsets.UTF_8));
+                @SuppressWarnings("unchecked")
+                Map<String, Object> body = (Map<String, Object>) json.get("body");
+                pending.put(seq, new Operation(seq, BackendJson.getString(json, "id"), BackendJson.getString(json, "path"),
+                    body, BackendJson.optLong(json, "createdAt", 0)));
+            } else if (type == TYPE_DEAD_COUNT) {
+                if (length == 8) {
+                    deadLettered += ByteBuffer.wrap(payload).getLong();
+                }
+            } else {
+                pending.remove(seq);
+                acksSinceCompaction++;
+                if (type == TYPE_DEAD) {
+                    deadLettered++;
+                }
+            }
+            nextSeq = Math.max(nextSeq, seq + 1);
+            position += HEADER_BYTES + length + 4;
+        }
+        return position;
+    }
+}
@@ -0,0 +1,166 @@
+package com.compostos.app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * The backend calls on the checkout path (connection token, PaymentIntent create and update)
+ * and the batched capture behind it, with their retry/hedging budgets and stage metrics.
+ * Shared by the runtime, the plugin and the JVM load simulation.
+ */
+final class PaymentBackend {
+
+    // Retry and hedging budgets for the two calls that sit on the checkout path
+    static final HedgedCall.Policy TOKEN_POLICY = new HedgedCall.Policy(15000, 4, 250, 2000, 2000, 300, 5000);
+    static final HedgedCall.Policy CREATE_INTENT_POLICY = new HedgedCall.Policy(20000, 4, 250, 2000, 1500, 300, 4000);
+
+    final BackendClient client;
+    final HedgedCall tokenCall;
+    final HedgedCall createIntentCall;
+    private final PaymentMetrics metrics;
+    // New intents are created for manual capture (see CaptureQueue)
+    private volatile boolean manualCapture;
+    // Backend URL that has no batch capture endpoint; null while unknown or supported
+    private volatile String batchCaptureUnsupportedUrl;
+
+    PaymentBackend(BackendClient client, PaymentMetrics metrics, Executor io, ScheduledExecutorService timer) {
+        this(client, metrics, new HedgedCall(TOKEN_POLICY, io, timer), new HedgedCall(CREATE_INTENT_POLICY, io, timer));
+    }
+
+    PaymentBackend(BackendClient client, PaymentMetrics metrics, HedgedCall tokenCall, HedgedCall createIntentCall) {
+        this.client = client;
+        this.metrics = metrics;
+        this.tokenCall = tokenCall;
+        this.createIntentCall = createIntentCall;
+    }
+
+    void setManualCapture(boolean manualCapture) {
+        this.manualCapture = manualCapture;
+    }
+
+    boolean isManualCapture() {
+        return manualCapture;
+    }
+
+    /**
+     * Fetch a connection token, retried and hedged. A duplicate token from a hedge is simply
+     * unused, so no idempotency key is needed.
+     */
+    CompletableFuture<String> fetchConnectionToken() {
+        long startNanos = PaymentMetrics.start();
+        return tokenCall.execute(() -> {
+            Map<String, Object> json = client.post("/connection_token", Collections.<String, Object>emptyMap());
+            return BackendJson.getString(json, "secret");
+        }).whenComplete((secret, error) -> metrics.record(PaymentMetrics.Stage.TOKEN_FETCH, startNanos, error));
+    }
+
+    /**
+     * Create a PaymentIntent and complete with its client secret. All attempts share one
+     * {@code Idempotency-Key}, so a retry or hedge never creates a second intent.
+     */
+    CompletableFuture<String> createPaymentIntent(long amount, String currency) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("amount", amount);
+        body.put("currency", currency);
+        if (manualCapture) {
+            body.put("capture_method", "manual");
+        }
+        Map<String, String> headers = Collections.singletonMap("Idempotency-Key", "create-" + UUID.randomUUID());
+
+        long startNanos = PaymentMetrics.start();
+        return createIntentCall.execute(() -> {
+            Map<String, Object> json = client.post("/create_payment_intent", body, headers);
+            return BackendJson.getString(json, "client_secret");
+        }).whenComplete((clientSecret, error) -> metrics.record(PaymentMetrics.Stage.BACKEND_CREATE_INTENT, startNanos, error));
+    }
+
+    /**
+     * Change the amount of a prepared (not yet collected) PaymentIntent
+     */
+    void updatePaymentIntentAmount(String paymentIntentId, long amount) throws Exception {
+        Map<String, Object> body = new HashMap<>();
+        body.put("payment_intent_id", paymentIntentId);
+        body.put("amount", amount);
+
+        client.post("/update_payment_intent", body);
+    }
+
+    /**
+     * Capture authorized PaymentIntents in one {@code /capture_payment_intents} call, with one
+     * outcome per intent. Backends without that endpoint get one {@code /capture_payment_intent}
+     * call per intent instead.
+     */
+    List<CaptureQueue.Outcome> capturePaymentIntents(List<String> paymentIntentIds) throws IOException {
+        long startNanos = PaymentMetrics.start();
+        try {
+            List<CaptureQueue.Outcome> outcomes = client.getBaseUrl().equals(batchCaptureUnsupportedUrl)
+                ? captureOneByOne(paymentIntentIds)
+                : captureBatch(paymentIntentIds);
+            metrics.recordSuccess(PaymentMetrics.Stage.CAPTURE, startNanos);
+            return outcomes;
+        } catch (IOException e) {
+            metrics.recordFailure(PaymentMetrics.Stage.CAPTURE, startNanos, e);
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CaptureQueue.Outcome> captureBatch(List<String> paymentIntentIds) throws IOException {
+        String url = client.getBaseUrl();
+        Map<String, Object> json;
+        try {
+            json = client.post("/capture_payment_intents", Collections.singletonMap("payment_intent_ids", paymentIntentIds));
+        } catch (BackendClient.BackendException e) {
+            if (e.statusCode == 404 || e.statusCode == 405 || e.statusCode == 501) {
+                batchCaptureUnsupportedUrl = url;
+                return captureOneByOne(paymentIntentIds);
+            }
+            throw e;
+        }
+
+        List<CaptureQueue.Outcome> outcomes = new ArrayList<>(paymentIntentIds.size());
+        Object results = json.get("results");
+        if (results instanceof List) {
+            for (Object item : (List<Object>) results) {
+                if (!(item instanceof Map)) {
+                    continue;
+                }
+                Map<String, Object> result = (Map<String, Object>) item;
+                String id = BackendJson.optString(result, "id");
+                if (id == null) {
+                    continue;
+                }
+                String status = BackendJson.optString(result, "status");
+                String error = BackendJson.optString(result, "error");
+                outcomes.add(new CaptureQueue.Outcome(id, "succeeded".equals(status), Boolean.TRUE.equals(result.get("retryable")),
+                    error != null ? error : "PaymentIntent is " + status));
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Older backends answer every failure with a 5xx, so those count as retryable; the queue
+     * gives up only once the authorization has expired.
+     */
+    private List<CaptureQueue.Outcome> captureOneByOne(List<String> paymentIntentIds) throws IOException {
+        List<CaptureQueue.Outcome> outcomes = new ArrayList<>(paymentIntentIds.size());
+        for (String id : paymentIntentIds) {
+            try {
+                Map<String, Object> json = client.post("/capture_payment_intent", Collections.singletonMap("payment_intent_id", id));
+                outcomes.add(new CaptureQueue.Outcome(id, "succeeded".equals(BackendJson.optString(json, "status")), true, null));
+            } catch (BackendClient.BackendException e) {
+                outcomes.add(new CaptureQueue.Outcome(id, false, e.statusCode >= 500 || e.statusCode == 429, e.getMessage()));
+            }
+        }
+        return outcomes;
+    }
+}
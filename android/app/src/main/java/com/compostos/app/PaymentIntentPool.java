@@ -0,0 +1,334 @@
+package com.compostos.app;
+
+import com.stripe.stripeterminal.external.models.PaymentIntent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speculatively creates and retrieves the PaymentIntent for the cart being built, so that
+ * {@code collectPayment} can go straight to {@code collectPaymentMethod}.
+ *
+ * Operations are serialised on a single chain: each {@link #prepare} adjusts whatever the
+ * previous one produced (reuse, update the amount, or replace), and {@link #acquire} hands
+ * the result to the payment and empties the slot. An unused intent is cancelled once it
+ * expires or is discarded.
+ *
+ * Intents pre-created in bulk by {@code /bootstrap} wait in a small queue; whenever a new
+ * intent is needed one of those is used first (its placeholder amount updated), saving the
+ * create round trip.
+ */
+class PaymentIntentPool {
+
+    interface Backend {
+        /** Create a PaymentIntent (retries included) and complete with its client secret. */
+        CompletableFuture<String> create(long amount, String currency);
+
+        /** Change the amount of an existing, unconfirmed PaymentIntent. */
+        void updateAmount(String paymentIntentId, long amount) throws Exception;
+
+        /** Cancel through the backend once it is reachable (SDK cancel failed). */
+        void cancelLater(String paymentIntentId);
+    }
+
+    static final class Prepared {
+        final String clientSecret;
+        final PaymentIntent intent;
+        final long amount;
+        final String currency;
+        final long createdAtNanos;
+
+        Prepared(String clientSecret, PaymentIntent intent, long amount, String currency, long createdAtNanos) {
+            this.clientSecret = clientSecret;
+            this.intent = intent;
+            this.amount = amount;
+            this.currency = currency;
+            this.createdAtNanos = createdAtNanos;
+        }
+    }
+
+    private static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private final Backend backend;
+    private final TerminalStages stages;
+    private final PaymentMetrics metrics;
+    private final Executor io;
+    private final ScheduledExecutorService timer;
+    private final long ttlNanos;
+
+    private final Object lock = new Object();
+    // Latest prepare operation; null when nothing is prepared
+    private CompletableFuture<Prepared> slot;
+    private ScheduledFuture<?> expiryTask;
+    // Client secrets from /bootstrap, oldest first; not yet retrieved by the SDK
+    private final ArrayDeque<SessionBootstrap.PooledIntent> pooled = new ArrayDeque<>();
+
+    PaymentIntentPool(Backend backend, TerminalStages stages, PaymentMetrics metrics, PluginExecutor executor) {
+        this(backend, stages, metrics, executor.io(), executor.timer(), DEFAULT_TTL_MS);
+    }
+
+    PaymentIntentPool(Backend backend, TerminalStages stages, PaymentMetrics metrics, Executor io,
+                      ScheduledExecutorService timer, long ttlMs) {
+        this.backend = backend;
+        this.stages = stages;
+        this.metrics = metrics;
+        this.io = io;
+        this.timer = timer;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * Create (or adjust) the prepared intent for this amount, ahead of the cashier pressing pay.
+     */
+    CompletableFuture<Prepared> prepare(long amount, String currency) {
+        CompletableFuture<Prepared> next;
+        synchronized (lock) {
+            CompletableFuture<Prepared> previous = slot;
+            next = settled(previous).thenCompose(prepared -> adjust(prepared, amount, currency));
+            slot = next;
+            cancelExpiryLocked();
+        }
+        next.thenAccept(prepared -> scheduleExpiry(next));
+        return next;
+    }
+
+    /**
+     * Hand the prepared intent to a payment, adjusting or creating it if needed. Empties the slot.
+     */
+    CompletableFuture<PaymentIntent> acquire(long amount, String currency) {
+        CompletableFuture<Prepared> previous;
+        synchronized (lock) {
+            previous = slot;
+            slot = null;
+            cancelExpiryLocked();
+        }
+        if (previous != null) {
+            PluginLog.d("⚡ Using speculatively prepared PaymentIntent");
+        }
+        return settled(previous)
+            .thenCompose(prepared -> adjust(prepared, amount, currency))
+            .thenApply(prepared -> prepared.intent);
+    }
+
+    /**
+     * Drop and cancel whatever is prepared (cart cleared, register closed).
+     */
+    void discard() {
+        CompletableFuture<Prepared> previous;
+        synchronized (lock) {
+            previous = slot;
+            slot = null;
+            cancelExpiryLocked();
+        }
+        settled(previous).thenAccept(this::cancelQuietly);
+    }
+
+    /**
+     * Queue intents created ahead of time by the bootstrap call.
+     */
+    void offer(Collection<SessionBootstrap.PooledIntent> intents) {
+        synchronized (lock) {
+            pooled.addAll(intents);
+        }
+    }
+
+    /**
+     * Cancel all queued bootstrap intents (e.g. the backend changed).
+     */
+    void discardPooled() {
+        List<SessionBootstrap.PooledIntent> dropped;
+        synchronized (lock) {
+            dropped = new ArrayList<>(pooled);
+            pooled.clear();
+        }
+        for (SessionBootstrap.PooledIntent intent : dropped) {
+            backend.cancelLater(intent.id);
+        }
+    }
+
+    int pooledCount() {
+        synchronized (lock) {
+            return pooled.size();
+        }
+    }
+
+    boolean hasPrepared() {
+        synchronized (lock) {
+            return slot != null;
+        }
+    }
+
+    private CompletableFuture<Prepared> adjust(Prepared prepared, long amount, String currency) {
+        if (prepared != null && isExpired(prepared)) {
+            cancelQuietly(prepared);
+            prepared = null;
+        }
+        if (prepared != null && !prepared.currency.equalsIgnoreCase(currency)) {
+            cancelQuietly(prepared);
+            prepared = null;
+        }
+        if (prepared == null) {
+            return create(amount, currency);
+        }
+        if (prepared.amount == amount) {
+            return CompletableFuture.completedFuture(prepared);
+        }
+
+        final Prepared stale = prepared;
+        return TerminalStages
+            .supply("Backend error", () -> {
+                backend.updateAmount(stale.intent.getId(), amount);
+                return stale.clientSecret;
+            }, io)
+            // Re-retrieve so the SDK's PaymentIntent carries the new amount
+            .thenCompose(this::retrieve)
+            .thenApply(intent -> new Prepared(stale.clientSecret, intent, amount, currency, stale.createdAtNanos))
+            .exceptionally(error -> null)
+            .thenCompose(updated -> {
+                if (updated != null) {
+                    return CompletableFuture.completedFuture(updated);
+                }
+                // Backend can't update in place (older backend, or intent no longer updatable)
+                cancelQuietly(stale);
+                return create(amount, currency);
+            });
+    }
+
+    private CompletableFuture<Prepared> create(long amount, String currency) {
+        SessionBootstrap.PooledIntent bootstrapped = takePooled(currency);
+        if (bootstrapped != null) {
+            return fromPooled(bootstrapped, amount, currency);
+        }
+        final long createdAt = System.nanoTime();
+        CompletableFuture<String> secret = new CompletableFuture<>();
+        backend.create(amount, currency).whenComplete((clientSecret, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                secret.completeExceptionally(new TerminalStages.StageException("Backend error", cause));
+            } else {
+                secret.complete(clientSecret);
+            }
+        });
+        return secret.thenCompose(clientSecret -> retrieve(clientSecret)
+            .thenApply(intent -> new Prepared(clientSecret, intent, amount, currency, createdAt)));
+    }
+
+    /**
+     * Use a bootstrap intent: set the real amount, then retrieve. Falls back to a fresh create.
+     */
+    private CompletableFuture<Prepared> fromPooled(SessionBootstrap.PooledIntent pooledIntent, long amount, String currency) {
+        PluginLog.d("⚡ Using bootstrap PaymentIntent {}", pooledIntent.id);
+        return TerminalStages
+            .supply("Backend error", () -> {
+                if (pooledIntent.amount != amount) {
+                    backend.updateAmount(pooledIntent.id, amount);
+                }
+                return pooledIntent.clientSecret;
+            }, io)
+            .thenCompose(this::retrieve)
+            .thenApply(intent -> new Prepared(pooledIntent.clientSecret, intent, amount, currency, pooledIntent.createdAtNanos))
+            .exceptionally(error -> null)
+            .thenCompose(prepared -> {
+                if (prepared != null) {
+                    return CompletableFuture.completedFuture(prepared);
+                }
+                PluginLog.w("⚠️ Bootstrap PaymentIntent {} unusable - creating a new one", pooledIntent.id);
+                backend.cancelLater(pooledIntent.id);
+                return create(amount, currency);
+            });
+    }
+
+    /**
+     * Oldest unexpired queued intent in this currency; expired ones are cancelled on the way.
+     */
+    private SessionBootstrap.PooledIntent takePooled(String currency) {
+        SessionBootstrap.PooledIntent match = null;
+        List<SessionBootstrap.PooledIntent> expired = new ArrayList<>();
+        synchronized (lock) {
+            Iterator<SessionBootstrap.PooledIntent> it = pooled.iterator();
+            while (it.hasNext()) {
+                SessionBootstrap.PooledIntent intent = it.next();
+                if (System.nanoTime() - intent.createdAtNanos >= ttlNanos) {
+                    it.remove();
+                    expired.add(intent);
+                } else if (intent.currency.equalsIgnoreCase(currency)) {
+                    it.remove();
+                    match = intent;
+                    break;
+                }
+            }
+        }
+        for (SessionBootstrap.PooledIntent intent : expired) {
+            backend.cancelLater(intent.id);
+        }
+        return match;
+    }
+
+    private CompletableFuture<PaymentIntent> retrieve(String clientSecret) {
+        return metrics.time(PaymentMetrics.Stage.RETRIEVE_INTENT, () -> stages.retrievePaymentIntent(clientSecret));
+    }
+
+    private boolean isExpired(Prepared prepared) {
+        return System.nanoTime() - prepared.createdAtNanos >= ttlNanos;
+    }
+
+    private void scheduleExpiry(CompletableFuture<Prepared> prepared) {
+        synchronized (lock) {
+            if (slot != prepared || timer.isShutdown()) {
+                return;
+            }
+            cancelExpiryLocked();
+            expiryTask = timer.schedule(() -> {
+                synchronized (lock) {
+                    if (slot != prepared) {
+                        return;
+                    }
+                    slot = null;
+                    expiryTask = null;
+                }
+                PluginLog.d("⌛ Prepared PaymentIntent expired unused - cancelling");
+                prepared.thenAccept(this::cancelQuietly);
+            }, ttlNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void cancelExpiryLocked() {
+        if (expiryTask != null) {
+            expiryTask.cancel(false);
+            expiryTask = null;
+        }
+    }
+
+    private void cancelQuietly(Prepared prepared) {
+        if (prepared == null) {
+            return;
+        }
+        stages.cancelPaymentIntent(prepared.intent).whenComplete((intent, error) -> {
+            if (error != null) {
+                PluginLog.w("⚠️ Could not cancel unused PaymentIntent {}: {}", prepared.intent.getId(), error.getMessage());
+                backend.cancelLater(prepared.intent.getId());
+            } else {
+                PluginLog.d("🗑️ Cancelled unused PaymentIntent {}", prepared.intent.getId());
+            }
+        });
+    }
+
+    /**
+     * The previous operation's result, or null if there was none or it failed.
+     */
+    private static CompletableFuture<Prepared> settled(CompletableFuture<Prepared> previous) {
+        if (previous == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return previous.handle((prepared, error) -> error == null ? prepared : null);
+    }
+}
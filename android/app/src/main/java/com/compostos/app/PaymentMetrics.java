@@ -0,0 +1,154 @@
+package com.compostos.app;
+
+import com.stripe.stripeterminal.external.models.TerminalException;
+
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Per-stage latency histograms and success/failure counters for the payment path.
+ *
+ * Failures are bucketed by {@link TerminalException} error code, backend HTTP status
+ * ({@code HTTP_500}) or exception type, so slow or failing checkouts can be pinned on the
+ * backend, the network or the reader.
+ */
+class PaymentMetrics {
+
+    enum Stage {
+        TOKEN_FETCH("tokenFetch"),
+        BOOTSTRAP("bootstrap"),
+        DISCOVERY("discovery"),
+        CONNECT_READER("connectReader"),
+        BACKEND_CREATE_INTENT("backendCreatePaymentIntent"),
+        RETRIEVE_INTENT("retrievePaymentIntent"),
+        COLLECT_PAYMENT_METHOD("collectPaymentMethod"),
+        CONFIRM_INTENT("confirmPaymentIntent"),
+        CAPTURE("capturePaymentIntents"),
+        CHECKOUT("checkout");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    static final class StageMetrics {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong successes = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final Map<String, AtomicLong> failuresByCode = new ConcurrentHashMap<>();
+
+        void reset() {
+            latency.reset();
+            successes.set(0);
+            failures.set(0);
+            failuresByCode.clear();
+        }
+    }
+
+    interface Listener {
+        /** Every sample as it is recorded; {@code errorCode} is null for a success. */
+        void onSample(Stage stage, long elapsedNanos, String errorCode);
+    }
+
+    private final Map<Stage, StageMetrics> stages = new EnumMap<>(Stage.class);
+    private volatile Listener listener;
+
+    PaymentMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new StageMetrics());
+        }
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start timestamp for {@link #record}.
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    void recordSuccess(Stage stage, long startNanos) {
+        StageMetrics m = stages.get(stage);
+        long elapsed = System.nanoTime() - startNanos;
+        m.latency.recordNanos(elapsed);
+        m.successes.incrementAndGet();
+        CrashBreadcrumbs.record(stage.key, "ok", elapsed / 1_000_000, "ms");
+        notifySample(stage, elapsed, null);
+    }
+
+    void recordFailure(Stage stage, long startNanos, Throwable error) {
+        StageMetrics m = stages.get(stage);
+        long elapsed = System.nanoTime() - startNanos;
+        m.latency.recordNanos(elapsed);
+        m.failures.incrementAndGet();
+        String code = errorCode(error);
+        m.failuresByCode.computeIfAbsent(code, c -> new AtomicLong()).incrementAndGet();
+        CrashBreadcrumbs.record(stage.key, "failed", code);
+        notifySample(stage, elapsed, code);
+    }
+
+    private void notifySample(Stage stage, long elapsedNanos, String errorCode) {
+        Listener l = listener;
+        if (l != null) {
+            l.onSample(stage, elapsedNanos, errorCode);
+        }
+    }
+
+    void record(Stage stage, long startNanos, Throwable errorOrNull) {
+        if (errorOrNull == null) {
+            recordSuccess(stage, startNanos);
+        } else {
+            recordFailure(stage, startNanos, errorOrNull);
+        }
+    }
+
+    /**
+     * Time an async stage from now until its future completes.
+     */
+    <T> CompletableFuture<T> time(Stage stage, Supplier<CompletableFuture<T>> work) {
+        final long startNanos = start();
+        CrashBreadcrumbs.record(stage.key, "start", null);
+        CompletableFuture<T> future = work.get();
+        future.whenComplete((value, error) -> record(stage, startNanos, error));
+        return future;
+    }
+
+    StageMetrics get(Stage stage) {
+        return stages.get(stage);
+    }
+
+    void reset() {
+        for (StageMetrics m : stages.values()) {
+            m.reset();
+        }
+    }
+
+    static String errorCode(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof TerminalStages.StageException)
+            && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof TerminalException && ((TerminalException) cause).getErrorCode() != null) {
+            return ((TerminalException) cause).getErrorCode().name();
+        }
+        if (cause instanceof BackendClient.BackendException) {
+            return "HTTP_" + ((BackendClient.BackendException) cause).statusCode;
+        }
+        if (cause instanceof SocketTimeoutException) {
+            return "TIMEOUT";
+        }
+        return cause.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,156 @@
+package com.compostos.app;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plugin-wide execution layer: a small, named, bounded pool for blocking I/O (backend calls)
+ * and a single timer thread for delayed work. Replaces ad-hoc {@code new Thread(...)}.
+ *
+ * All threads start before anything is queued, so a checkout's create-intent call (and its
+ * hedge) isn't stuck behind a couple of slow background calls. Idle threads time out. The
+ * I/O queue is bounded; when it is full {@link #io()} rejects with
+ * {@link RejectedExecutionException} so callers can fail fast
+ * instead of piling up work during a rush.
+ */
+class PluginExecutor {
+
+    private static final int IO_THREADS = 4;
+    private static final int IO_QUEUE_CAPACITY = 32;
+    private static final long IO_KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor ioPool;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Executor instrumentedIo;
+
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong totalRunNanos = new AtomicLong();
+    private final AtomicLong maxRunNanos = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    PluginExecutor() {
+        ioPool = new ThreadPoolExecutor(
+            IO_THREADS,
+            IO_THREADS,
+            IO_KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(IO_QUEUE_CAPACITY),
+            namedFactory("StripeTerminal-io"),
+            (r, executor) -> {
+                rejectedTasks.incrementAndGet();
+                throw new RejectedExecutionException("StripeTerminal I/O queue is full");
+            }
+        );
+        ioPool.allowCoreThreadTimeOut(true);
+
+        timer = new ScheduledThreadPoolExecutor(1, namedFactory("StripeTerminal-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+
+        instrumentedIo = command -> {
+            final long enqueuedAt = System.nanoTime();
+            ioPool.execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    command.run();
+                } finally {
+                    record(startedAt - enqueuedAt, System.nanoTime() - startedAt);
+                }
+            });
+        };
+    }
+
+    /**
+     * Bounded pool for blocking network and disk work.
+     */
+    Executor io() {
+        return instrumentedIo;
+    }
+
+    /**
+     * Single timer thread; scheduled tasks must be short or hop onto {@link #io()}.
+     */
+    ScheduledExecutorService timer() {
+        return timer;
+    }
+
+    Stats stats() {
+        long completed = completedTasks.get();
+        return new Stats(
+            ioPool.getQueue().size(),
+            ioPool.getActiveCount(),
+            ioPool.getPoolSize(),
+            completed,
+            rejectedTasks.get(),
+            completed == 0 ? 0 : totalRunNanos.get() / completed,
+            maxRunNanos.get(),
+            completed == 0 ? 0 : totalQueueNanos.get() / completed,
+            maxQueueNanos.get()
+        );
+    }
+
+    void shutdown() {
+        ioPool.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private void record(long queueNanos, long runNanos) {
+        completedTasks.incrementAndGet();
+        totalQueueNanos.addAndGet(queueNanos);
+        totalRunNanos.addAndGet(runNanos);
+        updateMax(maxQueueNanos, queueNanos);
+        updateMax(maxRunNanos, runNanos);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static ThreadFactory namedFactory(String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    static final class Stats {
+        final int queueDepth;
+        final int activeThreads;
+        final int poolSize;
+        final long completedTasks;
+        final long rejectedTasks;
+        final long avgRunNanos;
+        final long maxRunNanos;
+        final long avgQueueNanos;
+        final long maxQueueNanos;
+
+        Stats(int queueDepth, int activeThreads, int poolSize, long completedTasks, long rejectedTasks,
+              long avgRunNanos, long maxRunNanos, long avgQueueNanos, long maxQueueNanos) {
+            this.queueDepth = queueDepth;
+            this.activeThreads = activeThreads;
+            this.poolSize = poolSize;
+            this.completedTasks = completedTasks;
+            this.rejectedTasks = rejectedTasks;
+            this.avgRunNanos = avgRunNanos;
+            this.maxRunNanos = maxRunNanos;
+            this.avgQueueNanos = avgQueueNanos;
+            this.maxQueueNanos = maxQueueNanos;
+        }
+    }
+}
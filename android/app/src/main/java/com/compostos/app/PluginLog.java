@@ -0,0 +1,168 @@
+package com.compostos.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Level-gated logging for the plugin, with the most recent events kept in memory.
+ *
+ * Messages are templates with {@code {}} placeholders and are only formatted when logcat
+ * output is enabled for that level, or when the ring buffer is read. Every event at or above
+ * the ring level is stored unformatted in a fixed-size, lock-free ring (one small object per
+ * event), so the last few thousand events survive even when logcat is quiet.
+ */
+final class PluginLog {
+
+    enum Level {
+        VERBOSE(android.util.Log.VERBOSE),
+        DEBUG(android.util.Log.DEBUG),
+        INFO(android.util.Log.INFO),
+        WARN(android.util.Log.WARN),
+        ERROR(android.util.Log.ERROR),
+        NONE(Integer.MAX_VALUE);
+
+        final int priority;
+
+        Level(int priority) {
+            this.priority = priority;
+        }
+    }
+
+    static final class Entry {
+        final long timeMillis;
+        final Level level;
+        final String template;
+        final Object[] args;
+        final Throwable error;
+
+        Entry(long timeMillis, Level level, String template, Object[] args, Throwable error) {
+            this.timeMillis = timeMillis;
+            this.level = level;
+            this.template = template;
+            this.args = args;
+            this.error = error;
+        }
+
+        String message() {
+            String message = format(template, args);
+            return error != null ? message + " (" + error + ")" : message;
+        }
+    }
+
+    static final String TAG = "StripeTerminal";
+    static final int RING_CAPACITY = 4096; // power of two
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(RING_CAPACITY);
+    private static final AtomicLong next = new AtomicLong();
+
+    private static volatile int logcatPriority = Level.DEBUG.priority;
+    private static volatile int ringPriority = Level.DEBUG.priority;
+
+    private PluginLog() {
+    }
+
+    static void setLogcatLevel(Level level) {
+        logcatPriority = level.priority;
+    }
+
+    static void setRingLevel(Level level) {
+        ringPriority = level.priority;
+    }
+
+    static boolean isEnabled(Level level) {
+        return level.priority >= logcatPriority || level.priority >= ringPriority;
+    }
+
+    static void v(String template, Object... args) {
+        log(Level.VERBOSE, null, template, args);
+    }
+
+    static void d(String template, Object... args) {
+        log(Level.DEBUG, null, template, args);
+    }
+
+    static void i(String template, Object... args) {
+        log(Level.INFO, null, template, args);
+    }
+
+    static void w(String template, Object... args) {
+        log(Level.WARN, null, template, args);
+    }
+
+    static void w(Throwable error, String template, Object... args) {
+        log(Level.WARN, error, template, args);
+    }
+
+    static void e(String template, Object... args) {
+        log(Level.ERROR, null, template, args);
+    }
+
+    static void e(Throwable error, String template, Object... args) {
+        log(Level.ERROR, error, template, args);
+    }
+
+    static void log(Level level, Throwable error, String template, Object[] args) {
+        int priority = level.priority;
+        boolean toLogcat = priority >= logcatPriority;
+        boolean toRing = priority >= ringPriority;
+        if (!toLogcat && !toRing) {
+            return;
+        }
+        Object[] safeArgs = args != null ? args : NO_ARGS;
+        if (toRing) {
+            long slot = next.getAndIncrement();
+            ring.set((int) (slot & (RING_CAPACITY - 1)), new Entry(System.currentTimeMillis(), level, template, safeArgs, error));
+        }
+        if (toLogcat) {
+            String message = format(template, safeArgs);
+            if (error != null) {
+                android.util.Log.println(priority, TAG, message + '\n' + android.util.Log.getStackTraceString(error));
+            } else {
+                android.util.Log.println(priority, TAG, message);
+            }
+        }
+    }
+
+    /**
+     * Up to {@code limit} most recent events at or above {@code minLevel}, oldest first.
+     */
+    static List<Entry> recent(int limit, Level minLevel) {
+        long end = next.get();
+        long start = Math.max(0, end - RING_CAPACITY);
+        List<Entry> entries = new ArrayList<>();
+        for (long i = end - 1; i >= start && entries.size() < limit; i--) {
+            Entry entry = ring.get((int) (i & (RING_CAPACITY - 1)));
+            if (entry != null && entry.level.priority >= minLevel.priority) {
+                entries.add(entry);
+            }
+        }
+        Collections.reverse(entries);
+        return entries;
+    }
+
+    static void clear() {
+        for (int i = 0; i < RING_CAPACITY; i++) {
+            ring.set(i, null);
+        }
+    }
+
+    static String format(String template, Object[] args) {
+        if (args.length == 0) {
+            return template;
+        }
+        StringBuilder out = new StringBuilder(template.length() + 16 * args.length);
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while (argIndex < args.length && (at = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, at).append(args[argIndex++]);
+            from = at + 2;
+        }
+        out.append(template, from, template.length());
+        return out.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.compostos.app;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An open printer link plus what is cached for that printer: paper width and the encoded
+ * logo and QR rasters, so receipts after the first only pay for their text.
+ */
+final class PrinterConnection {
+
+    static final class Raster {
+        final String key;
+        final byte[] encoded;
+        final int width;
+        final int height;
+
+        Raster(String key, byte[] encoded, int width, int height) {
+            this.key = key;
+            this.encoded = encoded;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    final String address;
+    final PrinterTransport transport;
+    final int paperWidthMm;
+    // Optional pacing for printers that overrun without telling the link; 0 = as fast as the link takes it
+    final int bytesPerSecond;
+
+    volatile Raster logo;
+    volatile Raster qrCode;
+
+    long jobs;
+    long bytesSent;
+    long lastSendMs;
+
+    PrinterConnection(String address, PrinterTransport transport, int paperWidthMm, int bytesPerSecond) {
+        this.address = address;
+        this.transport = transport;
+        this.paperWidthMm = paperWidthMm;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Stream a whole job, chunk after chunk, without waiting on the printer between chunks
+     * beyond what the link's flow control imposes. One job at a time per printer.
+     */
+    synchronized long send(byte[] data) throws IOException {
+        long start = System.nanoTime();
+        int chunk = transport.chunkSize();
+        for (int offset = 0; offset < data.length; offset += chunk) {
+            int length = Math.min(chunk, data.length - offset);
+            transport.write(data, offset, length);
+            if (bytesPerSecond > 0) {
+                pace(start, offset + length);
+            }
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        jobs++;
+        bytesSent += data.length;
+        lastSendMs = elapsedMs;
+        return elapsedMs;
+    }
+
+    void close() {
+        transport.close();
+    }
+
+    private void pace(long startNanos, long sent) throws IOException {
+        long dueNanos = startNanos + sent * 1_000_000_000L / bytesPerSecond;
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
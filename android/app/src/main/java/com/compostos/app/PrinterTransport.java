@@ -0,0 +1,31 @@
+package com.compostos.app;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Byte link to a receipt printer (Classic Bluetooth SPP or BLE GATT).
+ */
+interface PrinterTransport extends Closeable {
+
+    /**
+     * "spp" or "ble"
+     */
+    String kind();
+
+    /**
+     * Largest write the link takes in one piece.
+     */
+    int chunkSize();
+
+    /**
+     * Hand one chunk of at most {@link #chunkSize()} bytes to the link. Returns as soon as the
+     * Bluetooth stack has queued it and blocks only while the link is flow-controlled.
+     */
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    boolean isOpen();
+
+    @Override
+    void close();
+}
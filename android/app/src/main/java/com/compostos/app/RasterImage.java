@@ -0,0 +1,105 @@
+package com.compostos.app;
+
+/**
+ * A 1-bit image for thermal paper: dithered once from ARGB pixels, then encoded as GS v 0
+ * raster bands.
+ *
+ * Dithering matches the web receipt service (lightened by 60, threshold 90, Floyd-Steinberg)
+ * so native and web prints look the same.
+ */
+final class RasterImage {
+
+    // Rows per GS v 0 command; cheap printers drop rasters larger than their receive buffer
+    static final int BAND_ROWS = 128;
+
+    private static final int LIGHTEN = 60;
+    private static final int THRESHOLD = 90;
+
+    final int width;
+    final int height;
+    final int bytesPerRow;
+    // Row-major, MSB first, 1 = black
+    final byte[] bits;
+
+    private RasterImage(int width, int height, byte[] bits) {
+        this.width = width;
+        this.height = height;
+        this.bytesPerRow = (width + 7) / 8;
+        this.bits = bits;
+    }
+
+    /**
+     * Dither {@code argb} (as returned by {@code Bitmap.getPixels}); transparency prints as
+     * white paper.
+     */
+    static RasterImage dither(int[] argb, int width, int height) {
+        if (width <= 0 || height <= 0 || argb.length < width * height) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        float[] gray = new float[width * height];
+        for (int i = 0; i < gray.length; i++) {
+            int pixel = argb[i];
+            int alpha = pixel >>> 24;
+            int r = blendOnWhite((pixel >> 16) & 0xFF, alpha);
+            int g = blendOnWhite((pixel >> 8) & 0xFF, alpha);
+            int b = blendOnWhite(pixel & 0xFF, alpha);
+            gray[i] = Math.min(255, r + LIGHTEN) * 0.299f
+                + Math.min(255, g + LIGHTEN) * 0.587f
+                + Math.min(255, b + LIGHTEN) * 0.114f;
+        }
+
+        int bytesPerRow = (width + 7) / 8;
+        byte[] bits = new byte[bytesPerRow * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                float old = gray[i];
+                boolean black = old < THRESHOLD;
+                float error = old - (black ? 0 : 255);
+                if (black) {
+                    bits[y * bytesPerRow + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
+                }
+                if (x + 1 < width) {
+                    gray[i + 1] += error * 7 / 16;
+                }
+                if (y + 1 < height) {
+                    if (x > 0) {
+                        gray[i + width - 1] += error * 3 / 16;
+                    }
+                    gray[i + width] += error * 5 / 16;
+                    if (x + 1 < width) {
+                        gray[i + width + 1] += error / 16;
+                    }
+                }
+            }
+        }
+        return new RasterImage(width, height, bits);
+    }
+
+    /**
+     * GS v 0 commands for the whole image, {@link #BAND_ROWS} rows per command.
+     */
+    byte[] encode() {
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        byte[] out = new byte[bands * 8 + bits.length];
+        int pos = 0;
+        for (int top = 0; top < height; top += BAND_ROWS) {
+            int rows = Math.min(BAND_ROWS, height - top);
+            out[pos++] = EscPosEncoder.GS;
+            out[pos++] = 'v';
+            out[pos++] = '0';
+            out[pos++] = 0;
+            out[pos++] = (byte) (bytesPerRow & 0xFF);
+            out[pos++] = (byte) (bytesPerRow >> 8);
+            out[pos++] = (byte) (rows & 0xFF);
+            out[pos++] = (byte) (rows >> 8);
+            System.arraycopy(bits, top * bytesPerRow, out, pos, rows * bytesPerRow);
+            pos += rows * bytesPerRow;
+        }
+        return out;
+    }
+
+    private static int blendOnWhite(int channel, int alpha) {
+        return (channel * alpha + 255 * (255 - alpha)) / 255;
+    }
+}
@@ -0,0 +1,176 @@
+package com.compostos.app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Discovered readers keyed by serial number, with change notifications coalesced per window.
+ *
+ * Discovery callbacks only update the index. Changes are published as a diff against what
+ * was last sent: the first update in a quiet period goes out immediately, later ones within
+ * {@code debounceMs} are folded into one trailing diff, so intermediate states never cross
+ * the bridge. {@link #get} is a lock-free hash lookup.
+ *
+ * Generic over the reader type so it stays free of Stripe classes.
+ */
+final class ReaderIndex<R> {
+
+    interface Listener {
+        void onReadersChanged(Diff diff);
+    }
+
+    static final class Diff {
+        final List<ReaderInfo> added;
+        final List<ReaderInfo> changed;
+        final List<String> removed;
+
+        Diff(List<ReaderInfo> added, List<ReaderInfo> changed, List<String> removed) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private static final class Entry<R> {
+        final R reader;
+        final ReaderInfo info;
+
+        Entry(R reader, ReaderInfo info) {
+            this.reader = reader;
+            this.info = info;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry<R>> current = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final long debounceNanos;
+    private final Listener listener;
+
+    private final Object lock = new Object();
+    // What the listener has been told about, by serial
+    private Map<String, ReaderInfo> published = new HashMap<>();
+    private long lastPublishNanos;
+    private boolean flushScheduled;
+
+    ReaderIndex(ScheduledExecutorService timer, long debounceMs, Listener listener) {
+        this.timer = timer;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMs);
+        this.listener = listener;
+        this.lastPublishNanos = System.nanoTime() - debounceNanos;
+    }
+
+    /**
+     * Replace the discovered set with the SDK's latest full list.
+     */
+    void update(List<R> readers, Function<R, ReaderInfo> describe) {
+        Set<String> seen = new HashSet<>(readers.size() * 2);
+        for (R reader : readers) {
+            ReaderInfo info = describe.apply(reader);
+            seen.add(info.serialNumber);
+            // Always keep the newest SDK object; connect needs the live instance
+            current.put(info.serialNumber, new Entry<>(reader, info));
+        }
+        current.keySet().retainAll(seen);
+        requestFlush();
+    }
+
+    /**
+     * Reader for this serial from the latest update, or null.
+     */
+    R get(String serialNumber) {
+        Entry<R> entry = current.get(serialNumber);
+        return entry != null ? entry.reader : null;
+    }
+
+    List<ReaderInfo> snapshot() {
+        List<ReaderInfo> infos = new ArrayList<>(current.size());
+        for (Entry<R> entry : current.values()) {
+            infos.add(entry.info);
+        }
+        return infos;
+    }
+
+    int size() {
+        return current.size();
+    }
+
+    /**
+     * Forget everything (new discovery session) without notifying.
+     */
+    void clear() {
+        synchronized (lock) {
+            current.clear();
+            published = new HashMap<>();
+        }
+    }
+
+    private void requestFlush() {
+        long delayNanos;
+        synchronized (lock) {
+            if (flushScheduled) {
+                return;
+            }
+            delayNanos = lastPublishNanos + debounceNanos - System.nanoTime();
+            if (delayNanos > 0) {
+                flushScheduled = true;
+            }
+        }
+        if (delayNanos <= 0) {
+            flush();
+        } else {
+            timer.schedule(this::flush, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        Diff diff;
+        synchronized (lock) {
+            flushScheduled = false;
+            lastPublishNanos = System.nanoTime();
+            diff = diffLocked();
+        }
+        if (!diff.isEmpty()) {
+            listener.onReadersChanged(diff);
+        }
+    }
+
+    private Diff diffLocked() {
+        Map<String, ReaderInfo> next = new HashMap<>(current.size() * 2);
+        List<ReaderInfo> added = new ArrayList<>();
+        List<ReaderInfo> changed = new ArrayList<>();
+        for (Entry<R> entry : current.values()) {
+            ReaderInfo info = entry.info;
+            next.put(info.serialNumber, info);
+            ReaderInfo before = published.get(info.serialNumber);
+            if (before == null) {
+                added.add(info);
+            } else if (!before.equals(info)) {
+                changed.add(info);
+            }
+        }
+        List<String> removed = Collections.emptyList();
+        for (String serial : published.keySet()) {
+            if (!next.containsKey(serial)) {
+                if (removed.isEmpty()) {
+                    removed = new ArrayList<>();
+                }
+                removed.add(serial);
+            }
+        }
+        published = next;
+        return new Diff(added, changed, removed);
+    }
+}
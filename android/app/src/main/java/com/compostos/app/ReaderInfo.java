@@ -0,0 +1,65 @@
+package com.compostos.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * SDK-independent snapshot of a discovered reader, and its bridge (JSON) form.
+ *
+ * Kept free of Stripe types so serialization can be benchmarked on a plain JVM.
+ */
+final class ReaderInfo {
+
+    final String serialNumber;
+    final String deviceType;
+    final String locationId;
+
+    ReaderInfo(String serialNumber, String deviceType, String locationId) {
+        this.serialNumber = serialNumber;
+        this.deviceType = deviceType;
+        this.locationId = locationId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ReaderInfo)) {
+            return false;
+        }
+        ReaderInfo other = (ReaderInfo) o;
+        return serialNumber.equals(other.serialNumber)
+            && Objects.equals(deviceType, other.deviceType)
+            && Objects.equals(locationId, other.locationId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serialNumber, deviceType, locationId);
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("serialNumber", serialNumber);
+        if (deviceType != null) {
+            json.put("deviceType", deviceType);
+        }
+        if (locationId != null) {
+            json.put("locationId", locationId);
+        }
+        return json;
+    }
+
+    static JSONArray toJsonArray(Collection<ReaderInfo> readers) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (ReaderInfo reader : readers) {
+            array.put(reader.toJson());
+        }
+        return array;
+    }
+}
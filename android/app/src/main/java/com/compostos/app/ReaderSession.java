@@ -0,0 +1,327 @@
+package com.compostos.app;
+
+import android.content.SharedPreferences;
+
+import com.stripe.stripeterminal.external.callable.Callback;
+import com.stripe.stripeterminal.external.callable.Cancelable;
+import com.stripe.stripeterminal.external.callable.DiscoveryListener;
+import com.stripe.stripeterminal.external.callable.ReaderCallback;
+import com.stripe.stripeterminal.external.callable.TapToPayReaderListener;
+import com.stripe.stripeterminal.external.models.ConnectionConfiguration;
+import com.stripe.stripeterminal.external.models.DisconnectReason;
+import com.stripe.stripeterminal.external.models.DiscoveryConfiguration;
+import com.stripe.stripeterminal.external.models.Reader;
+import com.stripe.stripeterminal.external.models.TerminalException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Owns the reader connection: connects, remembers the last good reader and location, and
+ * brings the session back without the JS discover/connect round trips.
+ *
+ * {@link #reconnect} runs one discovery pass and connects to the remembered reader as soon as
+ * it shows up. Unexpected disconnects are retried with exponential backoff while auto
+ * reconnect is on.
+ */
+class ReaderSession implements TapToPayReaderListener {
+
+    static final class LastReader {
+        final String serialNumber;
+        final String locationId;
+        final boolean simulated;
+
+        LastReader(String serialNumber, String locationId, boolean simulated) {
+            this.serialNumber = serialNumber;
+            this.locationId = locationId;
+            this.simulated = simulated;
+        }
+    }
+
+    interface Listener {
+        void onReaderDisconnected(DisconnectReason reason, boolean reconnecting);
+
+        void onReaderReconnected(Reader reader);
+
+        void onReconnectFailed(Throwable error, boolean willRetry);
+    }
+
+    private static final String PREF_LAST_SERIAL = "lastReaderSerial";
+    private static final String PREF_LAST_LOCATION = "lastReaderLocation";
+    private static final String PREF_LAST_SIMULATED = "lastReaderSimulated";
+    private static final String PREF_AUTO_RECONNECT = "autoReconnect";
+
+    private static final long DISCOVERY_TIMEOUT_MS = 15000;
+    private static final long INITIAL_RETRY_MS = 1000;
+    private static final long MAX_RETRY_MS = 30000;
+    private static final int MAX_RETRIES = 6;
+
+    private final SharedPreferences prefs;
+    private final TerminalGateway terminal;
+    private final PaymentMetrics metrics;
+    private final ScheduledExecutorService timer;
+    private volatile Listener listener;
+
+    private final Object lock = new Object();
+    // Single-flight reconnect; null when none is running
+    private CompletableFuture<Reader> reconnecting;
+    private ScheduledFuture<?> retryTask;
+    private int retryAttempt;
+
+    ReaderSession(SharedPreferences prefs, TerminalGateway terminal, PaymentMetrics metrics, ScheduledExecutorService timer) {
+        this.prefs = prefs;
+        this.terminal = terminal;
+        this.metrics = metrics;
+        this.timer = timer;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    LastReader lastReader() {
+        String serial = prefs.getString(PREF_LAST_SERIAL, null);
+        if (serial == null) {
+            return null;
+        }
+        return new LastReader(serial, prefs.getString(PREF_LAST_LOCATION, null), prefs.getBoolean(PREF_LAST_SIMULATED, false));
+    }
+
+    void forgetLastReader() {
+        prefs.edit().remove(PREF_LAST_SERIAL).remove(PREF_LAST_LOCATION).remove(PREF_LAST_SIMULATED).apply();
+    }
+
+    boolean isAutoReconnect() {
+        return prefs.getBoolean(PREF_AUTO_RECONNECT, true);
+    }
+
+    void setAutoReconnect(boolean enabled) {
+        prefs.edit().putBoolean(PREF_AUTO_RECONNECT, enabled).apply();
+        if (!enabled) {
+            synchronized (lock) {
+                cancelRetryLocked();
+            }
+        }
+    }
+
+    /**
+     * Connect to a discovered reader and remember it for {@link #reconnect}.
+     */
+    CompletableFuture<Reader> connect(Reader reader, String locationId, boolean simulated) {
+        // SDK v5 requires ConnectionConfiguration for Tap to Pay
+        ConnectionConfiguration connectionConfig = new ConnectionConfiguration.TapToPayConnectionConfiguration(
+            locationId,
+            false, // failIfInUse
+            this   // TapToPayReaderListener
+        );
+
+        CompletableFuture<Reader> future = new CompletableFuture<>();
+        CrashBreadcrumbs.record("connectReader", "start", reader.getSerialNumber());
+        final long connectStart = PaymentMetrics.start();
+        terminal.connectReader(reader, connectionConfig, new ReaderCallback() {
+            @Override
+            public void onSuccess(Reader connected) {
+                metrics.recordSuccess(PaymentMetrics.Stage.CONNECT_READER, connectStart);
+                prefs.edit()
+                    .putString(PREF_LAST_SERIAL, connected.getSerialNumber())
+                    .putString(PREF_LAST_LOCATION, locationId)
+                    .putBoolean(PREF_LAST_SIMULATED, simulated)
+                    .apply();
+                future.complete(connected);
+            }
+
+            @Override
+            public void onFailure(TerminalException e) {
+                metrics.recordFailure(PaymentMetrics.Stage.CONNECT_READER, connectStart, e);
+                future.completeExceptionally(new TerminalStages.StageException("Failed to connect to reader", e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Restore the session with the last reader: one short discovery pass, then connect.
+     * Concurrent callers share the attempt; resolves at once if a reader is already connected.
+     */
+    CompletableFuture<Reader> reconnect() {
+        Reader connected = terminal.getConnectedReader();
+        if (connected != null) {
+            return CompletableFuture.completedFuture(connected);
+        }
+        LastReader last = lastReader();
+        if (last == null) {
+            CompletableFuture<Reader> none = new CompletableFuture<>();
+            none.completeExceptionally(new TerminalStages.StageException("Reconnect failed", new IllegalStateException("No previously connected reader")));
+            return none;
+        }
+
+        CompletableFuture<Reader> attempt;
+        synchronized (lock) {
+            if (reconnecting != null) {
+                return reconnecting;
+            }
+            attempt = new CompletableFuture<>();
+            reconnecting = attempt;
+        }
+        attempt.whenComplete((reader, error) -> {
+            synchronized (lock) {
+                if (reconnecting == attempt) {
+                    reconnecting = null;
+                }
+            }
+        });
+
+        PluginLog.d("⚡ Reconnecting to last reader {} at {}", last.serialNumber, last.locationId);
+        discoverAndConnect(last)
+            .whenComplete((reader, error) -> {
+                if (error != null) {
+                    attempt.completeExceptionally(error);
+                } else {
+                    attempt.complete(reader);
+                }
+            });
+        return attempt;
+    }
+
+    /**
+     * Discovery until the remembered reader (or, on a serial change, the device's only Tap to
+     * Pay reader) appears, then connect to it. Connecting ends the discovery session; any
+     * failure cancels it so the next retry can discover again.
+     */
+    private CompletableFuture<Reader> discoverAndConnect(LastReader last) {
+        CompletableFuture<Reader> found = new CompletableFuture<>();
+        CrashBreadcrumbs.record("discovery", "start", "reconnect");
+        final long discoveryStart = PaymentMetrics.start();
+
+        DiscoveryListener discoveryListener = new DiscoveryListener() {
+            @Override
+            public void onUpdateDiscoveredReaders(List<Reader> readers) {
+                if (readers.isEmpty() || found.isDone()) {
+                    return;
+                }
+                Reader match = readers.get(0);
+                for (Reader reader : readers) {
+                    if (last.serialNumber.equals(reader.getSerialNumber())) {
+                        match = reader;
+                        break;
+                    }
+                }
+                if (found.complete(match)) {
+                    metrics.recordSuccess(PaymentMetrics.Stage.DISCOVERY, discoveryStart);
+                }
+            }
+        };
+
+        final Cancelable discovery = terminal.discoverReaders(
+            new DiscoveryConfiguration.TapToPayDiscoveryConfiguration(last.simulated),
+            discoveryListener,
+            new Callback() {
+                @Override
+                public void onSuccess() {
+                    // Discovery session ended (normally because we connected)
+                }
+
+                @Override
+                public void onFailure(TerminalException e) {
+                    if (found.completeExceptionally(new TerminalStages.StageException("Discovery failed", e))) {
+                        metrics.recordFailure(PaymentMetrics.Stage.DISCOVERY, discoveryStart, e);
+                    }
+                }
+            }
+        );
+
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            TimeoutException notFound = new TimeoutException("Reader " + last.serialNumber + " not found");
+            if (found.completeExceptionally(new TerminalStages.StageException("Discovery failed", notFound))) {
+                metrics.recordFailure(PaymentMetrics.Stage.DISCOVERY, discoveryStart, notFound);
+            }
+        }, DISCOVERY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        found.whenComplete((reader, error) -> timeout.cancel(false));
+        CompletableFuture<Reader> connected = found.thenCompose(reader -> connect(reader, last.locationId, last.simulated));
+        connected.whenComplete((reader, error) -> {
+            if (error != null) {
+                cancelQuietly(discovery);
+            }
+        });
+        return connected;
+    }
+
+    @Override
+    public void onDisconnect(DisconnectReason reason) {
+        boolean retry = reason != DisconnectReason.DISCONNECT_REQUESTED && isAutoReconnect() && lastReader() != null;
+        PluginLog.w("⚠️ Reader disconnected: {}{}", reason, retry ? " - reconnecting" : "");
+        Listener l = listener;
+        if (l != null) {
+            l.onReaderDisconnected(reason, retry);
+        }
+        if (retry) {
+            synchronized (lock) {
+                retryAttempt = 0;
+                scheduleRetryLocked(0);
+            }
+        }
+    }
+
+    private void scheduleRetryLocked(long delayMs) {
+        cancelRetryLocked();
+        if (timer.isShutdown()) {
+            return;
+        }
+        retryTask = timer.schedule(this::retry, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void retry() {
+        reconnect().whenComplete((reader, error) -> {
+            Listener l = listener;
+            if (error == null) {
+                PluginLog.d("✅ Reader reconnected: {}", reader.getSerialNumber());
+                synchronized (lock) {
+                    retryAttempt = 0;
+                }
+                if (l != null) {
+                    l.onReaderReconnected(reader);
+                }
+                return;
+            }
+            boolean willRetry;
+            synchronized (lock) {
+                willRetry = isAutoReconnect() && ++retryAttempt < MAX_RETRIES;
+                if (willRetry) {
+                    long delay = Math.min(MAX_RETRY_MS, INITIAL_RETRY_MS << (retryAttempt - 1));
+                    scheduleRetryLocked(delay);
+                }
+            }
+            PluginLog.w("⚠️ Reconnect failed: {}{}", TerminalStages.unwrap(error).getMessage(), willRetry ? " - retrying" : "");
+            if (l != null) {
+                l.onReconnectFailed(error, willRetry);
+            }
+        });
+    }
+
+    private void cancelRetryLocked() {
+        if (retryTask != null) {
+            retryTask.cancel(false);
+            retryTask = null;
+        }
+    }
+
+    private static void cancelQuietly(Cancelable cancelable) {
+        if (cancelable == null || cancelable.isCompleted()) {
+            return;
+        }
+        cancelable.cancel(new Callback() {
+            @Override
+            public void onSuccess() {
+            }
+
+            @Override
+            public void onFailure(TerminalException e) {
+                PluginLog.w("⚠️ Failed to cancel discovery: {}", e.getMessage());
+            }
+        });
+    }
+}
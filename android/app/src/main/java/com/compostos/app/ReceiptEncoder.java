@@ -0,0 +1,182 @@
+package com.compostos.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lays a receipt out as ESC/POS bytes, line for line like the web receipt service, in one
+ * pass into one buffer. Logos and QR codes come in pre-encoded (see {@link RasterImage}) so
+ * they are dithered once, not per receipt.
+ */
+final class ReceiptEncoder {
+
+    static final class Item {
+        String name;
+        double quantity;
+        double price;
+    }
+
+    static final class Receipt {
+        String storeName;
+        String storeAddress;
+        String storePhone;
+        String orderId;
+        String date;
+        String time;
+        String cashierName;
+        final List<Item> items = new ArrayList<>();
+        double subtotal;
+        double tax;
+        double taxRate;
+        double total;
+        String currencySymbol = "$";
+    }
+
+    /**
+     * The receipt settings from the app's printer configuration.
+     */
+    static final class Layout {
+        boolean showDate = true;
+        boolean showTime = true;
+        boolean showOrderId = true;
+        boolean showCashier = true;
+        boolean monospace = true;
+        String separatorStyle = "Dashed";
+        String footerMessage;
+        boolean showQrCode;
+        int paperWidthMm = 58;
+        EscPosEncoder.CodePage codePage = EscPosEncoder.CodePage.PC437;
+
+        int charsPerLine() {
+            return paperWidthMm >= 80 ? 48 : 32;
+        }
+
+        int dotsPerLine() {
+            return paperWidthMm >= 80 ? 576 : 384;
+        }
+    }
+
+    private ReceiptEncoder() {
+    }
+
+    /**
+     * @param logo encoded raster printed above the store name, or null
+     * @param qrCode encoded raster printed under the footer when enabled, or null
+     */
+    static byte[] encode(Receipt receipt, Layout layout, byte[] logo, byte[] qrCode) {
+        int width = layout.charsPerLine();
+        int rasterBytes = (logo != null ? logo.length : 0) + (qrCode != null ? qrCode.length : 0);
+        EscPosEncoder out = new EscPosEncoder(layout.codePage, 1024 + rasterBytes + receipt.items.size() * (width + 1));
+        out.initialize();
+
+        if (logo != null) {
+            out.align(EscPosEncoder.Align.CENTER).bytes(logo);
+        }
+        if (receipt.storeName != null && !receipt.storeName.isEmpty()) {
+            out.align(EscPosEncoder.Align.CENTER).bold(true).line(receipt.storeName).bold(false);
+        }
+        if (notEmpty(receipt.storeAddress) || notEmpty(receipt.storePhone)) {
+            out.align(EscPosEncoder.Align.CENTER);
+            if (notEmpty(receipt.storeAddress)) {
+                out.line(receipt.storeAddress);
+            }
+            if (notEmpty(receipt.storePhone)) {
+                out.line("Tel: " + receipt.storePhone);
+            }
+        }
+        out.feed(1).align(EscPosEncoder.Align.LEFT);
+
+        if (layout.showOrderId && notEmpty(receipt.orderId)) {
+            separator(out, layout.separatorStyle, width);
+            out.line("Receipt #: " + receipt.orderId);
+        }
+        boolean date = layout.showDate && notEmpty(receipt.date);
+        boolean time = layout.showTime && notEmpty(receipt.time);
+        if (date || time) {
+            out.line("Date: " + (date ? receipt.date : "") + (date && time ? " " : "") + (time ? receipt.time : ""));
+        }
+        if (layout.showCashier && notEmpty(receipt.cashierName)) {
+            out.line("Cashier: " + receipt.cashierName);
+        }
+        separator(out, layout.separatorStyle, width);
+
+        for (Item item : receipt.items) {
+            out.line(itemLine(item, receipt.currencySymbol, layout.monospace, width));
+        }
+        separator(out, layout.separatorStyle, width);
+
+        out.line(totalLine("Subtotal", receipt.subtotal, receipt.currencySymbol, width));
+        out.line(totalLine(String.format(Locale.ROOT, "Tax (%.1f%%)", receipt.taxRate * 100), receipt.tax, receipt.currencySymbol, width));
+        out.feed(1);
+        out.bold(true).line(totalLine("TOTAL", receipt.total, receipt.currencySymbol, width)).bold(false);
+        separator(out, layout.separatorStyle, width);
+
+        if (notEmpty(layout.footerMessage)) {
+            out.align(EscPosEncoder.Align.CENTER).feed(1).line(layout.footerMessage);
+        }
+        if (layout.showQrCode && qrCode != null) {
+            // Extra lines keep the code clear of the cutter
+            out.align(EscPosEncoder.Align.CENTER).feed(1).bytes(qrCode).feed(5);
+        }
+
+        return out.align(EscPosEncoder.Align.CENTER).feed(4).cut(3).toByteArray();
+    }
+
+    static String itemLine(Item item, String currencySymbol, boolean monospace, int width) {
+        String name = item.quantity > 1 ? item.name + " x" + quantity(item.quantity) : item.name;
+        String price = currencySymbol + money(item.price * item.quantity);
+        if (!monospace) {
+            return name + " - " + price;
+        }
+        int nameMax = width - price.length() - 1;
+        if (name.length() > nameMax) {
+            name = name.substring(0, Math.max(0, nameMax - 3)) + "...";
+        }
+        return name + spaces(width - name.length() - price.length()) + price;
+    }
+
+    static String totalLine(String label, double amount, String currencySymbol, int width) {
+        String value = currencySymbol + money(amount);
+        return label + spaces(width - label.length() - value.length()) + value;
+    }
+
+    private static void separator(EscPosEncoder out, String style, int width) {
+        String line;
+        switch (style != null ? style : "") {
+            case "Dashed":
+                line = repeat("- ", width / 2);
+                break;
+            case "Dotted":
+                line = repeat(". ", width / 2);
+                break;
+            default:
+                line = repeat("-", width);
+        }
+        out.feed(1).line(line.length() > width ? line.substring(0, width) : line).feed(1);
+    }
+
+    private static String money(double amount) {
+        return String.format(Locale.ROOT, "%.2f", amount);
+    }
+
+    private static String quantity(double quantity) {
+        return quantity == Math.rint(quantity) ? Long.toString((long) quantity) : Double.toString(quantity);
+    }
+
+    private static String spaces(int count) {
+        return repeat(" ", Math.max(1, count));
+    }
+
+    private static String repeat(String unit, int count) {
+        StringBuilder sb = new StringBuilder(unit.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(unit);
+        }
+        return sb.toString();
+    }
+
+    private static boolean notEmpty(String value) {
+        return value != null && !value.isEmpty();
+    }
+}
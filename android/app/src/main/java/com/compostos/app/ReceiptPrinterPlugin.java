@@ -0,0 +1,543 @@
+package com.compostos.app;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PermissionState;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.annotation.Permission;
+import com.getcapacitor.annotation.PermissionCallback;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import android.Manifest;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * ESC/POS receipt printing over Classic Bluetooth (SPP) or BLE, without the WebView in the
+ * byte path: receipts are encoded natively and streamed to the printer in one go.
+ *
+ * Logo and QR rasters are dithered once per printer and paper width; the logo is also kept
+ * on disk so it survives restarts without being sent over the bridge again.
+ */
+@CapacitorPlugin(
+    name = "ReceiptPrinter",
+    permissions = {
+        @Permission(
+            alias = "bluetooth",
+            strings = {
+                Manifest.permission.BLUETOOTH_SCAN,
+                Manifest.permission.BLUETOOTH_CONNECT
+            }
+        )
+    }
+)
+public class ReceiptPrinterPlugin extends Plugin {
+
+    private static final long DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    // Logo width as a share of the printable width, as on the web receipts
+    private static final double DEFAULT_LOGO_WIDTH_RATIO = 0.4;
+    private static final double QR_WIDTH_RATIO = 0.5;
+
+    private final Map<String, PrinterConnection> connections = new ConcurrentHashMap<>();
+    // Connects and print jobs block on Bluetooth; keep them off the bridge thread and in order
+    private ExecutorService io;
+    private BluetoothAdapter adapter;
+    private File logoDir;
+
+    @Override
+    public void load() {
+        io = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ReceiptPrinter-io");
+            t.setDaemon(true);
+            return t;
+        });
+        BluetoothManager manager = (BluetoothManager) getContext().getSystemService(Context.BLUETOOTH_SERVICE);
+        adapter = manager != null ? manager.getAdapter() : null;
+        logoDir = new File(getContext().getFilesDir(), "receipt_printer");
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        for (PrinterConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+        io.shutdown();
+    }
+
+    /**
+     * Printers paired in Android settings (Classic, BLE or dual-mode)
+     */
+    @PluginMethod
+    public void getPairedPrinters(PluginCall call) {
+        if (!checkBluetooth(call)) {
+            return;
+        }
+        JSArray printers = new JSArray();
+        for (BluetoothDevice device : adapter.getBondedDevices()) {
+            JSObject json = new JSObject();
+            json.put("address", device.getAddress());
+            json.put("name", device.getName());
+            json.put("type", deviceType(device));
+            json.put("connected", connections.containsKey(device.getAddress()));
+            printers.put(json);
+        }
+        JSObject ret = new JSObject();
+        ret.put("printers", printers);
+        call.resolve(ret);
+    }
+
+    /**
+     * Open a printer. {@code transport: 'auto'} prefers SPP on Classic and dual-mode
+     * printers (more throughput than BLE) and falls back to BLE.
+     */
+    @PluginMethod
+    public void connect(PluginCall call) {
+        if (!checkBluetooth(call)) {
+            return;
+        }
+        String address = call.getString("address");
+        if (address == null || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            call.reject("A valid printer address is required");
+            return;
+        }
+        String transport = call.getString("transport", "auto");
+        int paperWidthMm = call.getInt("paperWidth", 58);
+        int bytesPerSecond = call.getInt("bytesPerSecond", 0);
+        long timeoutMs = call.getLong("timeoutMs", DEFAULT_CONNECT_TIMEOUT_MS);
+        if (!"auto".equals(transport) && !"spp".equals(transport) && !"ble".equals(transport)) {
+            call.reject("transport must be auto, spp or ble");
+            return;
+        }
+
+        io.execute(() -> {
+            PrinterConnection previous = connections.remove(address);
+            if (previous != null) {
+                previous.close();
+            }
+            BluetoothDevice device = adapter.getRemoteDevice(address);
+            long start = System.nanoTime();
+            try {
+                PrinterConnection connection = new PrinterConnection(address, open(device, transport, timeoutMs), paperWidthMm, bytesPerSecond);
+                connection.logo = loadLogo(address, paperWidthMm);
+                connections.put(address, connection);
+                long connectMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                PluginLog.i("🖨️ Printer {} connected over {} in {}ms", address, connection.transport.kind(), connectMs);
+
+                JSObject ret = new JSObject();
+                ret.put("connected", true);
+                ret.put("address", address);
+                ret.put("transport", connection.transport.kind());
+                ret.put("chunkSize", connection.transport.chunkSize());
+                ret.put("logoCached", connection.logo != null);
+                ret.put("connectMs", connectMs);
+                call.resolve(ret);
+            } catch (IOException e) {
+                PluginLog.e(e, "❌ Printer {} connect failed: {}", address, e.getMessage());
+                call.reject("Printer connect failed: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void disconnect(PluginCall call) {
+        String address = call.getString("address");
+        PrinterConnection connection = address != null ? connections.remove(address) : null;
+        if (connection != null) {
+            // Not queued behind a running job: closing the link is what aborts it
+            connection.close();
+        }
+        call.resolve();
+    }
+
+    /**
+     * Dither a logo for this printer once; receipts then print it with {@code logo: true}.
+     * {@code image} is base64 or a data URL.
+     */
+    @PluginMethod
+    public void setLogo(PluginCall call) {
+        PrinterConnection connection = connection(call);
+        String image = call.getString("image");
+        if (connection == null) {
+            return;
+        }
+        if (image == null) {
+            call.reject("image is required");
+            return;
+        }
+        double widthRatio = call.getDouble("widthRatio", DEFAULT_LOGO_WIDTH_RATIO);
+        io.execute(() -> {
+            try {
+                String key = digest(image + "@" + widthRatio);
+                PrinterConnection.Raster logo = connection.logo;
+                boolean cached = logo != null && logo.key.equals(key);
+                if (!cached) {
+                    logo = rasterize(image, key, connection.paperWidthMm, widthRatio);
+                    connection.logo = logo;
+                    storeLogo(connection.address, connection.paperWidthMm, logo);
+                }
+                JSObject ret = new JSObject();
+                ret.put("cached", cached);
+                ret.put("width", logo.width);
+                ret.put("height", logo.height);
+                ret.put("bytes", logo.encoded.length);
+                call.resolve(ret);
+            } catch (IOException | IllegalArgumentException e) {
+                call.reject("Invalid logo: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clearLogo(PluginCall call) {
+        PrinterConnection connection = connection(call);
+        if (connection == null) {
+            return;
+        }
+        connection.logo = null;
+        io.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            logoFile(connection.address, connection.paperWidthMm).delete();
+            call.resolve();
+        });
+    }
+
+    /**
+     * Encode and print a receipt: {@code receipt} mirrors the web ReceiptData and
+     * {@code layout} the ReceiptConfig.
+     */
+    @PluginMethod
+    public void printReceipt(PluginCall call) {
+        PrinterConnection connection = connection(call);
+        if (connection == null) {
+            return;
+        }
+        ReceiptEncoder.Receipt receipt;
+        ReceiptEncoder.Layout layout;
+        try {
+            receipt = parseReceipt(call.getObject("receipt"));
+            layout = parseLayout(call.getObject("layout"), connection.paperWidthMm);
+        } catch (JSONException | IllegalArgumentException e) {
+            call.reject("Invalid receipt: " + e.getMessage());
+            return;
+        }
+        boolean withLogo = call.getBoolean("logo", true);
+        String qrImage = layout.showQrCode ? call.getString("qrCode") : null;
+
+        io.execute(() -> {
+            try {
+                long start = System.nanoTime();
+                byte[] qr = null;
+                if (qrImage != null) {
+                    PrinterConnection.Raster cached = connection.qrCode;
+                    String key = digest(qrImage);
+                    if (cached == null || !cached.key.equals(key)) {
+                        cached = rasterize(qrImage, key, connection.paperWidthMm, QR_WIDTH_RATIO);
+                        connection.qrCode = cached;
+                    }
+                    qr = cached.encoded;
+                }
+                PrinterConnection.Raster logo = withLogo ? connection.logo : null;
+                byte[] data = ReceiptEncoder.encode(receipt, layout, logo != null ? logo.encoded : null, qr);
+                long encodeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                long sendMs = connection.send(data);
+                PluginLog.d("🖨️ Receipt: {} bytes, encoded in {}ms, sent in {}ms", data.length, encodeMs, sendMs);
+
+                JSObject ret = new JSObject();
+                ret.put("bytes", data.length);
+                ret.put("encodeMs", encodeMs);
+                ret.put("sendMs", sendMs);
+                call.resolve(ret);
+            } catch (IOException | IllegalArgumentException e) {
+                failJob(call, connection, e);
+            }
+        });
+    }
+
+    /**
+     * Send bytes that were already encoded elsewhere (base64 {@code data}).
+     */
+    @PluginMethod
+    public void printRaw(PluginCall call) {
+        PrinterConnection connection = connection(call);
+        String base64 = call.getString("data");
+        if (connection == null) {
+            return;
+        }
+        if (base64 == null) {
+            call.reject("data is required");
+            return;
+        }
+        io.execute(() -> {
+            try {
+                byte[] data = Base64.decode(base64, Base64.DEFAULT);
+                long sendMs = connection.send(data);
+                JSObject ret = new JSObject();
+                ret.put("bytes", data.length);
+                ret.put("sendMs", sendMs);
+                call.resolve(ret);
+            } catch (IOException | IllegalArgumentException e) {
+                failJob(call, connection, e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getPrinterStatus(PluginCall call) {
+        PrinterConnection connection = connection(call);
+        if (connection == null) {
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("connected", connection.transport.isOpen());
+        ret.put("transport", connection.transport.kind());
+        ret.put("chunkSize", connection.transport.chunkSize());
+        ret.put("paperWidth", connection.paperWidthMm);
+        ret.put("logoCached", connection.logo != null);
+        synchronized (connection) {
+            ret.put("jobs", connection.jobs);
+            ret.put("bytesSent", connection.bytesSent);
+            ret.put("lastSendMs", connection.lastSendMs);
+        }
+        call.resolve(ret);
+    }
+
+    @PermissionCallback
+    private void bluetoothPermissionCallback(PluginCall call) {
+        if (getPermissionState("bluetooth") != PermissionState.GRANTED) {
+            call.reject("Bluetooth permission is required to print");
+            return;
+        }
+        if ("connect".equals(call.getMethodName())) {
+            connect(call);
+        } else {
+            getPairedPrinters(call);
+        }
+    }
+
+    private boolean checkBluetooth(PluginCall call) {
+        if (adapter == null) {
+            call.reject("Bluetooth is not available on this device");
+            return false;
+        }
+        if (getPermissionState("bluetooth") != PermissionState.GRANTED) {
+            requestPermissionForAlias("bluetooth", call, "bluetoothPermissionCallback");
+            return false;
+        }
+        if (!adapter.isEnabled()) {
+            call.reject("Bluetooth is turned off");
+            return false;
+        }
+        return true;
+    }
+
+    private PrinterConnection connection(PluginCall call) {
+        String address = call.getString("address");
+        PrinterConnection connection = address != null ? connections.get(address) : null;
+        if (connection == null) {
+            call.reject("Printer " + address + " is not connected");
+        }
+        return connection;
+    }
+
+    private PrinterTransport open(BluetoothDevice device, String transport, long timeoutMs) throws IOException {
+        if ("ble".equals(transport) || ("auto".equals(transport) && device.getType() == BluetoothDevice.DEVICE_TYPE_LE)) {
+            return BlePrinterTransport.open(getContext(), device, timeoutMs);
+        }
+        try {
+            return SppPrinterTransport.open(adapter, device);
+        } catch (IOException e) {
+            if (!"auto".equals(transport) || device.getType() == BluetoothDevice.DEVICE_TYPE_CLASSIC) {
+                throw e;
+            }
+            PluginLog.w("⚠️ SPP connect to {} failed ({}), trying BLE", device.getAddress(), e.getMessage());
+            return BlePrinterTransport.open(getContext(), device, timeoutMs);
+        }
+    }
+
+    private void failJob(PluginCall call, PrinterConnection connection, Exception e) {
+        PluginLog.e(e, "❌ Print to {} failed: {}", connection.address, e.getMessage());
+        if (!connection.transport.isOpen()) {
+            connections.remove(connection.address, connection);
+            connection.close();
+        }
+        call.reject("Print failed: " + e.getMessage(), e);
+    }
+
+    private static PrinterConnection.Raster rasterize(String image, String key, int paperWidthMm, double widthRatio) throws IOException {
+        int comma = image.indexOf(',');
+        byte[] bytes = Base64.decode(image.startsWith("data:") && comma > 0 ? image.substring(comma + 1) : image, Base64.DEFAULT);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+        if (bitmap == null) {
+            throw new IOException("not a decodable image");
+        }
+        ReceiptEncoder.Layout layout = new ReceiptEncoder.Layout();
+        layout.paperWidthMm = paperWidthMm;
+        int width = Math.min(bitmap.getWidth(), (int) (layout.dotsPerLine() * Math.max(0.05, Math.min(1, widthRatio))));
+        width = Math.max(8, width / 8 * 8);
+        int height = Math.max(1, Math.round(bitmap.getHeight() * (float) width / bitmap.getWidth()));
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        int[] pixels = new int[width * height];
+        scaled.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (scaled != bitmap) {
+            scaled.recycle();
+        }
+        bitmap.recycle();
+        RasterImage raster = RasterImage.dither(pixels, width, height);
+        return new PrinterConnection.Raster(key, raster.encode(), width, height);
+    }
+
+    private File logoFile(String address, int paperWidthMm) {
+        return new File(logoDir, address.replace(":", "") + "-" + paperWidthMm + "mm.logo");
+    }
+
+    private PrinterConnection.Raster loadLogo(String address, int paperWidthMm) {
+        File file = logoFile(address, paperWidthMm);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            String key = in.readUTF();
+            int width = in.readInt();
+            int height = in.readInt();
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            return new PrinterConnection.Raster(key, encoded, width, height);
+        } catch (IOException e) {
+            PluginLog.w("⚠️ Dropping unreadable logo cache {}: {}", file.getName(), e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    private void storeLogo(String address, int paperWidthMm, PrinterConnection.Raster logo) throws IOException {
+        File file = logoFile(address, paperWidthMm);
+        File tmp = new File(file.getPath() + ".tmp");
+        //noinspection ResultOfMethodCallIgnored
+        logoDir.mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+            out.writeUTF(logo.key);
+            out.writeInt(logo.width);
+            out.writeInt(logo.height);
+            out.writeInt(logo.encoded.length);
+            out.write(logo.encoded);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static ReceiptEncoder.Receipt parseReceipt(JSONObject json) throws JSONException {
+        if (json == null) {
+            throw new IllegalArgumentException("receipt is required");
+        }
+        ReceiptEncoder.Receipt receipt = new ReceiptEncoder.Receipt();
+        receipt.storeName = text(json, "storeName");
+        receipt.storeAddress = text(json, "storeAddress");
+        receipt.storePhone = text(json, "storePhone");
+        receipt.orderId = text(json, "orderId");
+        receipt.date = text(json, "date");
+        receipt.time = text(json, "time");
+        receipt.cashierName = text(json, "cashierName");
+        receipt.subtotal = json.optDouble("subtotal", 0);
+        receipt.tax = json.optDouble("tax", 0);
+        receipt.taxRate = json.optDouble("taxRate", 0);
+        receipt.total = json.optDouble("total", 0);
+        String symbol = text(json, "currencySymbol");
+        if (symbol != null) {
+            receipt.currencySymbol = symbol;
+        }
+        JSONArray items = json.optJSONArray("items");
+        for (int i = 0; items != null && i < items.length(); i++) {
+            JSONObject itemJson = items.getJSONObject(i);
+            ReceiptEncoder.Item item = new ReceiptEncoder.Item();
+            item.name = itemJson.getString("name");
+            item.quantity = itemJson.optDouble("quantity", 1);
+            item.price = itemJson.optDouble("price", 0);
+            receipt.items.add(item);
+        }
+        return receipt;
+    }
+
+    private static ReceiptEncoder.Layout parseLayout(JSONObject json, int paperWidthMm) {
+        ReceiptEncoder.Layout layout = new ReceiptEncoder.Layout();
+        layout.paperWidthMm = paperWidthMm;
+        if (json == null) {
+            return layout;
+        }
+        layout.showDate = json.optBoolean("showDate", layout.showDate);
+        layout.showTime = json.optBoolean("showTime", layout.showTime);
+        layout.showOrderId = json.optBoolean("showOrderId", layout.showOrderId);
+        layout.showCashier = json.optBoolean("showCashier", layout.showCashier);
+        layout.monospace = !"Sans Serif".equals(text(json, "fontFamily"));
+        String separator = text(json, "separatorStyle");
+        if (separator != null) {
+            layout.separatorStyle = separator;
+        }
+        layout.footerMessage = text(json, "footerMessage");
+        layout.showQrCode = json.optBoolean("showQrCode", false);
+        String codePage = text(json, "codePage");
+        if (codePage != null) {
+            layout.codePage = EscPosEncoder.CodePage.valueOf(codePage.toUpperCase(Locale.ROOT));
+        }
+        return layout;
+    }
+
+    private static String text(JSONObject json, String key) {
+        return json.has(key) && !json.isNull(key) ? json.optString(key, null) : null;
+    }
+
+    private static String deviceType(BluetoothDevice device) {
+        switch (device.getType()) {
+            case BluetoothDevice.DEVICE_TYPE_CLASSIC:
+                return "classic";
+            case BluetoothDevice.DEVICE_TYPE_LE:
+                return "le";
+            case BluetoothDevice.DEVICE_TYPE_DUAL:
+                return "dual";
+            default:
+                return "unknown";
+        }
+    }
+
+    private static String digest(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hex.append(String.format(Locale.ROOT, "%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.compostos.app;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One {@code /bootstrap} round trip at shift start: a connection token, the Terminal location
+ * and a few PaymentIntent client secrets, instead of a request per endpoint.
+ *
+ * Backends without the endpoint answer 404/405/501; that is remembered per backend URL and
+ * {@link #fetch} returns null, so the caller keeps using {@code /connection_token} and
+ * {@code /create_payment_intent} as before without probing again.
+ */
+final class SessionBootstrap {
+
+    static final String PATH = "/bootstrap";
+    static final int MAX_INTENTS = 5;
+
+    static final class PooledIntent {
+        final String id;
+        final String clientSecret;
+        // Placeholder amount the backend created it with
+        final long amount;
+        final String currency;
+        final long createdAtNanos;
+
+        PooledIntent(String id, String clientSecret, long amount, String currency, long createdAtNanos) {
+            this.id = id;
+            this.clientSecret = clientSecret;
+            this.amount = amount;
+            this.currency = currency;
+            this.createdAtNanos = createdAtNanos;
+        }
+    }
+
+    static final class Result {
+        final String connectionToken;
+        final String locationId;
+        final String locationName;
+        final List<PooledIntent> intents;
+
+        Result(String connectionToken, String locationId, String locationName, List<PooledIntent> intents) {
+            this.connectionToken = connectionToken;
+            this.locationId = locationId;
+            this.locationName = locationName;
+            this.intents = intents;
+        }
+    }
+
+    private final BackendClient backendClient;
+    // Backend URL that answered "no such endpoint"; null while unknown or supported
+    private volatile String unsupportedUrl;
+
+    SessionBootstrap(BackendClient backendClient) {
+        this.backendClient = backendClient;
+    }
+
+    /**
+     * False once the current backend has answered without the endpoint.
+     */
+    boolean isSupported() {
+        String url = unsupportedUrl;
+        return url == null || !url.equals(backendClient.getBaseUrl());
+    }
+
+    /**
+     * Run the batched call. Returns null if the backend doesn't offer it; network and server
+     * errors are thrown so the caller can fall back for this attempt only.
+     *
+     * @param intents  number of PaymentIntents to pre-create (clamped to {@link #MAX_INTENTS})
+     * @param amount   placeholder amount in minor units, or 0 for the backend default
+     */
+    Result fetch(int intents, long amount, String currency) throws IOException {
+        return fetch(intents, amount, currency, false);
+    }
+
+    /**
+     * As {@link #fetch(int, long, String)}, with the intents created for manual capture when
+     * {@code manualCapture} is set.
+     */
+    Result fetch(int intents, long amount, String currency, boolean manualCapture) throws IOException {
+        String url = backendClient.getBaseUrl();
+        if (!isSupported()) {
+            return null;
+        }
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("intents", Math.max(0, Math.min(MAX_INTENTS, intents)));
+        body.put("currency", currency);
+        if (amount > 0) {
+            body.put("amount", amount);
+        }
+        if (manualCapture) {
+            body.put("capture_method", "manual");
+        }
+
+        Map<String, Object> json;
+        try {
+            json = backendClient.post(PATH, body);
+        } catch (BackendClient.BackendException e) {
+            if (e.statusCode == 404 || e.statusCode == 405 || e.statusCode == 501) {
+                unsupportedUrl = url;
+                return null;
+            }
+            throw e;
+        }
+        return parse(json, currency, System.nanoTime());
+    }
+
+    @SuppressWarnings("unchecked")
+    static Result parse(Map<String, Object> json, String requestedCurrency, long receivedAtNanos) throws IOException {
+        String token = null;
+        Object tokenJson = json.get("connection_token");
+        if (tokenJson instanceof Map) {
+            token = BackendJson.optString((Map<String, Object>) tokenJson, "secret");
+        }
+
+        String locationId = null;
+        String locationName = null;
+        Object locationJson = json.get("location");
+        if (locationJson instanceof Map) {
+            locationId = BackendJson.optString((Map<String, Object>) locationJson, "id");
+            locationName = BackendJson.optString((Map<String, Object>) locationJson, "display_name");
+        }
+
+        List<PooledIntent> intents = new ArrayList<>();
+        Object intentsJson = json.get("payment_intents");
+        if (intentsJson instanceof List) {
+            for (Object item : (List<Object>) intentsJson) {
+                if (!(item instanceof Map)) {
+                    continue;
+                }
+                Map<String, Object> intent = (Map<String, Object>) item;
+                String id = BackendJson.optString(intent, "id");
+                String secret = BackendJson.optString(intent, "client_secret");
+                long amount = BackendJson.optLong(intent, "amount", 0);
+                if (id == null || secret == null || amount <= 0) {
+                    continue;
+                }
+                String currency = BackendJson.optString(intent, "currency");
+                intents.add(new PooledIntent(id, secret, amount,
+                    currency != null ? currency : requestedCurrency, receivedAtNanos));
+            }
+        }
+
+        if (token == null && locationId == null && intents.isEmpty()) {
+            throw new IOException("Bootstrap response has no token, location or intents");
+        }
+        return new Result(token, locationId, locationName, Collections.unmodifiableList(intents));
+    }
+}
@@ -0,0 +1,78 @@
+package com.compostos.app;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * Classic Bluetooth printer over the Serial Port Profile. RFCOMM is credit-based, so a write
+ * blocks exactly as long as the printer's buffer is full; large writes keep the link busy
+ * without a round trip per chunk.
+ */
+final class SppPrinterTransport implements PrinterTransport {
+
+    static final UUID SPP_UUID = UUID.fromString("00001101-0000-1000-8000-00805f9b34fb");
+
+    private static final int CHUNK_SIZE = 4096;
+
+    private final BluetoothSocket socket;
+    private final OutputStream out;
+
+    private SppPrinterTransport(BluetoothSocket socket) throws IOException {
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+    }
+
+    /**
+     * Blocking; call off the main thread.
+     */
+    static SppPrinterTransport open(BluetoothAdapter adapter, BluetoothDevice device) throws IOException {
+        // An ongoing discovery slows the RFCOMM connect down considerably
+        adapter.cancelDiscovery();
+        BluetoothSocket socket = device.createRfcommSocketToServiceRecord(SPP_UUID);
+        try {
+            socket.connect();
+            return new SppPrinterTransport(socket);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    @Override
+    public String kind() {
+        return "spp";
+    }
+
+    @Override
+    public int chunkSize() {
+        return CHUNK_SIZE;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        out.write(data, offset, length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return socket.isConnected();
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(socket);
+    }
+
+    private static void closeQuietly(BluetoothSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
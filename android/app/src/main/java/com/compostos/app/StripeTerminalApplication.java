@@ -1,12 +1,17 @@
 package com.compostos.app;
 
+import android.app.ActivityManager;
 import android.app.Application;
+import android.os.Build;
 import com.stripe.stripeterminal.TerminalApplicationDelegate;
 import com.stripe.stripeterminal.taptopay.TapToPay;
 
+import java.util.List;
+
 public class StripeTerminalApplication extends Application {
     @Override
     public void onCreate() {
+        final long onCreateStartedAt = android.os.SystemClock.elapsedRealtime();
         super.onCreate();
         
         // Setup Crash Handler to display errors on screen
@@ -14,6 +19,7 @@ public class StripeTerminalApplication extends Application {
         Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
             try {
                 android.util.Log.e("AppCrash", "Uncaught Exception", throwable);
+                CrashBreadcrumbs.recordCrash(throwable);
                 android.content.Intent intent = new android.content.Intent(getApplicationContext(), CrashActivity.class);
                 intent.setFlags(android.content.Intent.FLAG_ACTIVITY_NEW_TASK | android.content.Intent.FLAG_ACTIVITY_CLEAR_TASK);
                 intent.putExtra("error", android.util.Log.getStackTraceString(throwable));
@@ -31,11 +37,38 @@ public class StripeTerminalApplication extends Application {
         // The SDK spawns a separate process for NFC transactions, and we must NOT
         // call TerminalApplicationDelegate.onCreate() in that process or we get:
         // "AidlRpcException: Service never connected"
-        if (!TapToPay.isInTapToPayProcess()) {
+        // Nothing else runs there either: that process only hosts the SDK's NFC service.
+        if (TapToPay.isInTapToPayProcess()) {
+            PluginLog.d("🔒 Tap to Pay process - skipping main init");
+        } else if (!isMainProcess()) {
+            // :crash_handler - opening the breadcrumbs here would clear the crash the next
+            // launch is meant to report
+            PluginLog.d("🔒 Secondary process - skipping main init");
+        } else {
             TerminalApplicationDelegate.onCreate(this);
-            android.util.Log.d("StripeTerminal", "✅ Main process - TerminalApplicationDelegate initialized");
+            PluginLog.d("✅ Main process - TerminalApplicationDelegate initialized");
+
+            // Terminal init, capability checks and token prefetch, off the main thread
+            TerminalRuntime.prewarm(this, onCreateStartedAt);
+        }
+    }
+
+    private boolean isMainProcess() {
+        String processName = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            processName = Application.getProcessName();
         } else {
-            android.util.Log.d("StripeTerminal", "🔒 Tap to Pay process - skipping main init");
+            ActivityManager am = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+            List<ActivityManager.RunningAppProcessInfo> processes = am != null ? am.getRunningAppProcesses() : null;
+            if (processes != null) {
+                int pid = android.os.Process.myPid();
+                for (ActivityManager.RunningAppProcessInfo info : processes) {
+                    if (info.pid == pid) {
+                        processName = info.processName;
+                    }
+                }
+            }
         }
+        return getPackageName().equals(processName);
     }
 }
@@ -0,0 +1,69 @@
+package com.compostos.app;
+
+import android.content.Context;
+
+import com.stripe.stripeterminal.Terminal;
+import com.stripe.stripeterminal.external.callable.Callback;
+import com.stripe.stripeterminal.external.callable.Cancelable;
+import com.stripe.stripeterminal.external.callable.ConnectionTokenProvider;
+import com.stripe.stripeterminal.external.callable.DiscoveryListener;
+import com.stripe.stripeterminal.external.callable.PaymentIntentCallback;
+import com.stripe.stripeterminal.external.callable.ReaderCallback;
+import com.stripe.stripeterminal.external.callable.TerminalListener;
+import com.stripe.stripeterminal.external.models.ConnectionConfiguration;
+import com.stripe.stripeterminal.external.models.DiscoveryConfiguration;
+import com.stripe.stripeterminal.external.models.PaymentIntent;
+import com.stripe.stripeterminal.external.models.Reader;
+import com.stripe.stripeterminal.log.LogLevel;
+
+/**
+ * {@link TerminalGateway} backed by the real Stripe Terminal SDK.
+ */
+class StripeTerminalGateway implements TerminalGateway {
+
+    @Override
+    public boolean isInitialized() {
+        return Terminal.isInitialized();
+    }
+
+    @Override
+    public void init(Context context, LogLevel logLevel, ConnectionTokenProvider tokenProvider, TerminalListener listener) {
+        // SDK v5: Terminal.init() with required event listener
+        Terminal.init(context, logLevel, tokenProvider, listener, null);
+    }
+
+    @Override
+    public Cancelable discoverReaders(DiscoveryConfiguration config, DiscoveryListener listener, Callback callback) {
+        return Terminal.getInstance().discoverReaders(config, listener, callback);
+    }
+
+    @Override
+    public void connectReader(Reader reader, ConnectionConfiguration config, ReaderCallback callback) {
+        Terminal.getInstance().connectReader(reader, config, callback);
+    }
+
+    @Override
+    public Reader getConnectedReader() {
+        return Terminal.getInstance().getConnectedReader();
+    }
+
+    @Override
+    public void retrievePaymentIntent(String clientSecret, PaymentIntentCallback callback) {
+        Terminal.getInstance().retrievePaymentIntent(clientSecret, callback);
+    }
+
+    @Override
+    public Cancelable collectPaymentMethod(PaymentIntent paymentIntent, PaymentIntentCallback callback) {
+        return Terminal.getInstance().collectPaymentMethod(paymentIntent, callback);
+    }
+
+    @Override
+    public void confirmPaymentIntent(PaymentIntent paymentIntent, PaymentIntentCallback callback) {
+        Terminal.getInstance().confirmPaymentIntent(paymentIntent, callback);
+    }
+
+    @Override
+    public void cancelPaymentIntent(PaymentIntent paymentIntent, PaymentIntentCallback callback) {
+        Terminal.getInstance().cancelPaymentIntent(paymentIntent, callback);
+    }
+}
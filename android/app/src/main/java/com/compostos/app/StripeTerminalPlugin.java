@@ -1,41 +1,49 @@
 package com.compostos.app;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
-import com.stripe.stripeterminal.Terminal;
 import com.stripe.stripeterminal.external.callable.Callback;
 import com.stripe.stripeterminal.external.callable.Cancelable;
-import com.stripe.stripeterminal.external.callable.ConnectionTokenCallback;
-import com.stripe.stripeterminal.external.callable.ConnectionTokenProvider;
 import com.stripe.stripeterminal.external.callable.DiscoveryListener;
-import com.stripe.stripeterminal.external.callable.ReaderCallback;
-import com.stripe.stripeterminal.external.callable.TerminalListener;
-import com.stripe.stripeterminal.external.models.ConnectionConfiguration;
 import com.stripe.stripeterminal.external.models.ConnectionStatus;
-import com.stripe.stripeterminal.external.models.ConnectionTokenException;
 import com.stripe.stripeterminal.external.models.DiscoveryConfiguration;
+import com.stripe.stripeterminal.external.models.PaymentIntentStatus;
 import com.stripe.stripeterminal.external.models.PaymentStatus;
 import com.stripe.stripeterminal.external.models.Reader;
 import com.stripe.stripeterminal.external.models.TerminalException;
 import com.stripe.stripeterminal.log.LogLevel;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 import android.Manifest;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
 import com.getcapacitor.PermissionState;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 @CapacitorPlugin(
@@ -60,191 +68,644 @@ import org.json.JSONObject;
 )
 public class StripeTerminalPlugin extends Plugin {
 
+    // Rapid discovery callbacks are folded into one readersChanged event per window
+    private static final long READER_UPDATE_DEBOUNCE_MS = 150;
+
     private Cancelable discoveryCancelable;
-    private List<Reader> discoveredReaders = new ArrayList<>();
-    
-    // Stripe backend URL - update this with your ngrok URL
-    private String backendUrl = "http://10.0.2.2:4242"; // 10.0.2.2 is localhost from Android emulator
-    private String locationId = "tml_test_simulated_location"; // Default to test location
-    private boolean useSimulatedMode = false;  // Set to true for development/debugging
+    private ReaderIndex<Reader> discoveredReaders;
+
+    // Backend URLs, location and simulated mode live in runtime.config(), set through configure
+
+    // Process-wide SDK state, possibly pre-warmed at application start
+    private TerminalRuntime runtime;
+    // Stripe Terminal SDK, behind an interface so it can be faked off-device
+    private TerminalGateway terminal;
+    private TerminalStages stages;
+    // Connects and remembers the last reader for fast reconnects
+    private ReaderSession readerSession;
+    // Shared, bounded worker pool for backend calls and timers
+    private PluginExecutor executor;
+    // Keep-alive HTTP client for the configured backend URLs
+    private BackendClient backendClient;
+    // PaymentIntent created ahead of time by preparePayment
+    private PaymentIntentPool paymentIntentPool;
+    // One sale on the reader at a time, plus one queued
+    private CheckoutSession checkoutSession;
+    // Batched token/location/intents call at shift start
+    private SessionBootstrap sessionBootstrap;
+    // Store-and-forward queue for backend calls that must survive outages
+    private OutboxJournal outbox;
+    private ConnectivityManager.NetworkCallback networkCallback;
+    // Per-stage latency histograms, exposed through getMetrics
+    private PaymentMetrics metrics;
+    // Keeps a connection token ready so (re)connects don't wait on the backend
+    private ConnectionTokenCache tokenCache;
+    // Indexed history of every checkout outcome, for reports and shift close
+    private TransactionJournal journal;
+    // Authorized intents awaiting batched capture (manual-capture mode)
+    private CaptureQueue captureQueue;
+    // Token refresh, intent refill, reader health, compaction and flushes, run while idle
+    private MaintenanceScheduler maintenance;
+    // What the last bootstrapSession asked for; maintenance keeps the pool at this size
+    private volatile int pooledIntentTarget;
+    private volatile String pooledIntentCurrency = "czk";
+
+    @Override
+    public void load() {
+        runtime = TerminalRuntime.get(getContext());
+        terminal = runtime.terminal;
+        stages = runtime.stages;
+        readerSession = runtime.readerSession;
+        runtime.events.setSink(this::notifyTerminalEvents);
+        executor = runtime.executor;
+        backendClient = runtime.backendClient;
+        metrics = runtime.metrics;
+        tokenCache = runtime.tokenCache;
+        paymentIntentPool = new PaymentIntentPool(new PaymentIntentPool.Backend() {
+            @Override
+            public CompletableFuture<String> create(long amount, String currency) {
+                return fetchPaymentIntentClientSecret(amount, currency);
+            }
+
+            @Override
+            public void updateAmount(String paymentIntentId, long amount) throws Exception {
+                updatePaymentIntentAmount(paymentIntentId, amount);
+            }
+
+            @Override
+            public void cancelLater(String paymentIntentId) {
+                cancelPaymentIntentLater(paymentIntentId);
+            }
+        }, stages, metrics, executor);
+        checkoutSession = new CheckoutSession(stages, paymentIntentPool::acquire, metrics, executor.timer(), this::cancelPaymentIntentLater);
+        checkoutSession.setListener(this::notifyPaymentStatus);
+        // Telemetry uploads and maintenance wait while a sale is on the reader
+        BooleanSupplier paymentActive = () -> !checkoutSession.snapshot().isEmpty();
+        runtime.telemetry.setBusy(paymentActive);
+        journal = new TransactionJournal(getContext());
+        captureQueue = new CaptureQueue(runtime.prefs, runtime.paymentBackend::capturePaymentIntents, executor.io(), executor.timer());
+        captureQueue.setListener(this::onCaptureResults);
+        runtime.paymentBackend.setManualCapture(captureQueue.isManual());
+        sessionBootstrap = new SessionBootstrap(backendClient);
+
+        discoveredReaders = new ReaderIndex<>(executor.timer(), READER_UPDATE_DEBOUNCE_MS, this::notifyReadersChanged);
+
+        outbox = new OutboxJournal(
+            new File(getContext().getFilesDir(), "stripe_outbox/journal.log"),
+            backendClient,
+            executor.io(),
+            executor.timer()
+        );
+        // Opened before load() returns so no cancellation can reach a closed outbox; the file is small
+        try {
+            outbox.open();
+        } catch (IOException e) {
+            PluginLog.e(e, "❌ Failed to open outbox journal: {}", e.getMessage());
+        }
+        maintenance = new MaintenanceScheduler(runtime.prefs, runtime.deviceState(), executor.io(), executor.timer());
+        maintenance.setBusy(paymentActive);
+        registerMaintenanceTasks();
+        registerNetworkCallback();
+    }
+
+    /**
+     * Work that used to wait for the next JS call or a payment, in priority order.
+     */
+    private void registerMaintenanceTasks() {
+        MaintenanceScheduler.Constraints online = new MaintenanceScheduler.Constraints(MaintenanceScheduler.Network.CONNECTED, 15);
+        // Renew a token whose refresh timer would fire before the next run, so it doesn't fire
+        // mid-payment. Only while no reader is connected: the SDK asks for a token to connect.
+        long tokenRefreshMs = TimeUnit.MINUTES.toMillis(1);
+        maintenance.register("tokenRefresh", tokenRefreshMs, online, () -> {
+            if (terminal.isInitialized() && terminal.getConnectedReader() == null) {
+                tokenCache.refreshIfExpiringWithin(tokenRefreshMs);
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        maintenance.register("intentRefill", TimeUnit.MINUTES.toMillis(2), online, this::refillPooledIntents);
+        maintenance.register("readerHealth", TimeUnit.MINUTES.toMillis(2),
+            new MaintenanceScheduler.Constraints(MaintenanceScheduler.Network.CONNECTED, 20), this::checkReaderHealth);
+        maintenance.register("compaction", TimeUnit.MINUTES.toMillis(30),
+            new MaintenanceScheduler.Constraints(MaintenanceScheduler.Network.ANY, 30), () -> {
+                outbox.compact();
+                return CompletableFuture.completedFuture(null);
+            });
+        maintenance.register("uploadFlush", TimeUnit.MINUTES.toMillis(10), online, () -> {
+            runtime.telemetry.flush();
+            outbox.onConnectivityRestored();
+            return CompletableFuture.completedFuture(null);
+        });
+    }
 
     /**
-     * Set the backend URL (e.g., ngrok URL for real device testing)
+     * Top the bootstrap queue back up to what bootstrapSession last asked for.
+     */
+    private CompletableFuture<?> refillPooledIntents() {
+        int missing = pooledIntentTarget - paymentIntentPool.pooledCount();
+        if (missing <= 0 || !sessionBootstrap.isSupported()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String currency = pooledIntentCurrency;
+        return TerminalStages.supply("Intent refill failed",
+                () -> sessionBootstrap.fetch(missing, 0, currency, runtime.paymentBackend.isManualCapture()), executor.io())
+            .thenAccept(result -> {
+                if (result != null) {
+                    applyBootstrap(result);
+                }
+            });
+    }
+
+    /**
+     * Bring the last reader back if it dropped and the SDK's own reconnect gave up.
+     */
+    private CompletableFuture<?> checkReaderHealth() {
+        ReaderSession.LastReader last = readerSession.lastReader();
+        if (!terminal.isInitialized() || terminal.getConnectedReader() != null
+            || !readerSession.isAutoReconnect() || last == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PluginLog.i("🩺 Reader {} not connected while idle - reconnecting", last.serialNumber);
+        // A dependent stage: pausing maintenance must not cancel an attempt JS may have joined
+        return readerSession.reconnect().thenApply(reader -> null);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (networkCallback != null) {
+            ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+            cm.unregisterNetworkCallback(networkCallback);
+        }
+        if (outbox != null) {
+            outbox.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (captureQueue != null) {
+            captureQueue.close();
+        }
+        if (maintenance != null) {
+            maintenance.close();
+        }
+        // Executor and token cache belong to TerminalRuntime: the SDK keeps using them
+    }
+
+    private void cancelPaymentIntentLater(String paymentIntentId) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("payment_intent_id", paymentIntentId);
+        outbox.append("/cancel_payment_intent", body).whenComplete((ignored, error) -> {
+            if (error != null) {
+                PluginLog.e(error, "❌ Failed to queue cancellation of {}: {}", paymentIntentId, error.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Replay queued backend operations as soon as the network comes back
+     */
+    private void registerNetworkCallback() {
+        ConnectivityManager cm = (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return;
+        }
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                PluginLog.d("📶 Network available - flushing outbox");
+                outbox.onConnectivityRestored();
+                maintenance.onDeviceStateChanged();
+            }
+        };
+        cm.registerDefaultNetworkCallback(networkCallback);
+    }
+
+    /**
+     * Queue a backend POST (payment record, receipt, cancellation...) durably on the device.
+     * Resolves once it is on disk; it is delivered in order when the backend is reachable.
      */
     @PluginMethod
-    public void setBackendUrl(PluginCall call) {
-        String url = call.getString("url");
-        if (url != null && !url.isEmpty()) {
-            this.backendUrl = url;
-            android.util.Log.d("StripeTerminal", "🔗 Backend URL set to: " + url);
-            call.resolve();
-        } else {
-            call.reject("URL is required");
+    public void queueBackendOperation(PluginCall call) {
+        String path = call.getString("path");
+        JSObject body = call.getObject("body", new JSObject());
+        if (path == null || !path.startsWith("/")) {
+            call.reject("Path is required (e.g. /payment_records)");
+            return;
+        }
+
+        Map<String, Object> decoded;
+        try {
+            decoded = BackendJson.readObject(body.toString());
+        } catch (IOException e) {
+            call.reject("Invalid body: " + e.getMessage());
+            return;
         }
+
+        outbox.append(path, decoded).whenComplete((ignored, error) -> {
+            if (error != null) {
+                PluginLog.e(error, "❌ Failed to queue {}: {}", path, error.getMessage());
+                call.reject("Failed to queue operation: " + error.getMessage());
+                return;
+            }
+            JSObject ret = new JSObject();
+            ret.put("queued", true);
+            ret.put("pending", outbox.pendingCount());
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getOutboxStatus(PluginCall call) {
+        JSObject ret = new JSObject();
+        ret.put("pending", outbox.pendingCount());
+        ret.put("deadLettered", outbox.deadLetteredCount());
+        call.resolve(ret);
     }
 
     /**
-     * Set the Stripe Location ID (required for real transactions)
+     * Set plugin log levels (logcat and in-memory buffer) and the Stripe SDK log level.
+     * Levels persist; the SDK level applies from the next Terminal.init.
      */
     @PluginMethod
-    public void setLocationId(PluginCall call) {
-        String id = call.getString("locationId");
-        if (id != null && !id.isEmpty()) {
-            this.locationId = id;
-            android.util.Log.d("StripeTerminal", "📍 Location ID set to: " + id);
-            call.resolve();
-        } else {
-            call.reject("Location ID is required");
+    public void setLogLevel(PluginCall call) {
+        PluginLog.Level logcat;
+        PluginLog.Level buffer;
+        LogLevel sdk;
+        try {
+            logcat = optLevel(call.getString("level"));
+            buffer = optLevel(call.getString("bufferLevel"));
+            String sdkName = call.getString("sdkLevel");
+            sdk = sdkName != null ? LogLevel.valueOf(sdkName.toUpperCase(Locale.ROOT)) : null;
+        } catch (IllegalArgumentException e) {
+            call.reject("Unknown log level: " + e.getMessage());
+            return;
+        }
+
+        runtime.setLogLevels(logcat, buffer);
+        if (sdk != null) {
+            runtime.setSdkLogLevel(sdk);
         }
+        PluginLog.i("🪵 Log levels set: level={} bufferLevel={} sdkLevel={}", logcat, buffer, sdk);
+
+        JSObject ret = new JSObject();
+        ret.put("sdkLevel", runtime.sdkLogLevel().name());
+        ret.put("sdkLevelPendingRestart", sdk != null && terminal.isInitialized());
+        call.resolve(ret);
     }
 
     /**
-     * Enable or disable simulated mode for development/debugging
-     * When simulated mode is enabled, no real NFC hardware is used
+     * Recent plugin log events from the in-memory ring buffer, oldest first
      */
     @PluginMethod
-    public void setSimulatedMode(PluginCall call) {
-        Boolean simulated = call.getBoolean("simulated", false);
-        this.useSimulatedMode = simulated;
-        android.util.Log.d("StripeTerminal", "🔧 Simulated mode set to: " + simulated);
-        call.resolve();
+    public void getRecentLogs(PluginCall call) {
+        int limit = call.getInt("limit", 500);
+        PluginLog.Level minLevel;
+        try {
+            PluginLog.Level requested = optLevel(call.getString("minLevel"));
+            minLevel = requested != null ? requested : PluginLog.Level.VERBOSE;
+        } catch (IllegalArgumentException e) {
+            call.reject("Unknown log level: " + e.getMessage());
+            return;
+        }
+
+        JSArray entries = new JSArray();
+        for (PluginLog.Entry entry : PluginLog.recent(limit, minLevel)) {
+            JSObject json = new JSObject();
+            json.put("time", entry.timeMillis);
+            json.put("level", entry.level.name());
+            json.put("message", entry.message());
+            entries.put(json);
+        }
+        JSObject ret = new JSObject();
+        ret.put("entries", entries);
+        call.resolve(ret);
+    }
+
+    private static PluginLog.Level optLevel(String name) {
+        return name != null ? PluginLog.Level.valueOf(name.toUpperCase(Locale.ROOT)) : null;
     }
 
     /**
-     * Fetch connection token from backend server
+     * Breadcrumbs left by the previous session if it crashed (optionally also the current ones)
      */
-    private String fetchConnectionTokenFromBackend() throws Exception {
-        android.util.Log.d("StripeTerminal", "🔑 Fetching connection token from: " + backendUrl + "/connection_token");
-        
-        URL url = new URL(backendUrl + "/connection_token");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(10000);
-        
-        // Send empty body
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write("{}".getBytes());
+    @PluginMethod
+    public void exportCrashBreadcrumbs(PluginCall call) {
+        List<CrashBreadcrumbs.Breadcrumb> crashed = CrashBreadcrumbs.crashedSession();
+        JSObject ret = new JSObject();
+        ret.put("lastSessionCrashed", !crashed.isEmpty());
+        ret.put("breadcrumbs", breadcrumbsToJson(crashed));
+        if (call.getBoolean("includeCurrent", false)) {
+            ret.put("current", breadcrumbsToJson(CrashBreadcrumbs.current()));
         }
-        
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new Exception("Backend returned " + responseCode);
+        call.resolve(ret);
+    }
+
+    private static JSArray breadcrumbsToJson(List<CrashBreadcrumbs.Breadcrumb> crumbs) {
+        JSArray array = new JSArray();
+        for (CrashBreadcrumbs.Breadcrumb crumb : crumbs) {
+            JSObject json = new JSObject();
+            json.put("seq", crumb.seq);
+            json.put("time", crumb.timeMillis);
+            json.put("text", crumb.text);
+            array.put(json);
         }
-        
-        // Read response
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                response.append(line);
+        return array;
+    }
+
+    /**
+     * Report worker pool queue depth and task latency
+     */
+    @PluginMethod
+    public void getExecutorStats(PluginCall call) {
+        PluginExecutor.Stats stats = executor.stats();
+        JSObject ret = new JSObject();
+        ret.put("queueDepth", stats.queueDepth);
+        ret.put("activeThreads", stats.activeThreads);
+        ret.put("poolSize", stats.poolSize);
+        ret.put("completedTasks", stats.completedTasks);
+        ret.put("rejectedTasks", stats.rejectedTasks);
+        ret.put("avgRunMs", stats.avgRunNanos / 1e6);
+        ret.put("maxRunMs", stats.maxRunNanos / 1e6);
+        ret.put("avgQueueWaitMs", stats.avgQueueNanos / 1e6);
+        ret.put("maxQueueWaitMs", stats.maxQueueNanos / 1e6);
+        call.resolve(ret);
+    }
+
+    /**
+     * Replace the plugin settings in one call: {@code backendUrls} (in order of preference,
+     * e.g. cloud first, in-store LAN server second; {@code backendUrl} for a single one),
+     * {@code locationId} (null to use the bootstrap location) and {@code simulated}. Omitted
+     * keys keep their current value. Everything is validated before anything changes; the
+     * result is persisted and used from the next operation on. Resolves with the new settings.
+     */
+    @PluginMethod
+    public void configure(PluginCall call) {
+        TerminalConfig current = runtime.config();
+        List<String> urls = current.backendUrls;
+        try {
+            if (call.getData().has("backendUrls")) {
+                urls = new ArrayList<>();
+                JSArray array = call.getArray("backendUrls");
+                if (array != null) {
+                    for (Object url : array.<Object>toList()) {
+                        if (!(url instanceof String)) {
+                            call.reject("backendUrls must be strings");
+                            return;
+                        }
+                        urls.add((String) url);
+                    }
+                }
+            } else if (call.getData().has("backendUrl")) {
+                urls = Collections.singletonList(call.getString("backendUrl", ""));
             }
+        } catch (JSONException e) {
+            call.reject("Invalid URL list: " + e.getMessage());
+            return;
         }
-        
-        // Parse JSON to get secret
-        JSONObject json = new JSONObject(response.toString());
-        String secret = json.getString("secret");
-        
-        android.util.Log.d("StripeTerminal", "✅ Got connection token from backend");
-        return secret;
+        String locationId = call.getData().has("locationId")
+            ? (call.getData().isNull("locationId") ? null : call.getString("locationId"))
+            : current.locationId;
+        TerminalConfig next = new TerminalConfig(urls, locationId, null, call.getBoolean("simulated", current.simulated));
+
+        TerminalConfig previous;
+        try {
+            previous = runtime.configure(next);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        if (!previous.backendUrls.equals(next.backendUrls)) {
+            // Intents were created on the old backend
+            paymentIntentPool.discard();
+            paymentIntentPool.discardPooled();
+        }
+        TerminalConfig applied = runtime.config();
+        PluginLog.i("⚙️ Configured: backend={} location={} simulated={}",
+            applied.backendUrls, applied.effectiveLocationId(), applied.simulated);
+        call.resolve(configToJson(applied));
     }
 
     /**
-     * Fetch PaymentIntent client secret from backend
+     * Current settings, as persisted natively (available before JS has configured anything)
      */
-    private String fetchPaymentIntentClientSecret(long amount, String currency) throws Exception {
-        android.util.Log.d("StripeTerminal", "💳 Requesting PaymentIntent from backend for " + amount + " " + currency);
-        
-        URL url = new URL(backendUrl + "/create_payment_intent");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        
-        JSONObject body = new JSONObject();
-        body.put("amount", amount);
-        body.put("currency", currency);
-        
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(body.toString().getBytes());
-        }
-        
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new Exception("Backend returned " + responseCode);
+    @PluginMethod
+    public void getConfig(PluginCall call) {
+        call.resolve(configToJson(runtime.config()));
+    }
+
+    private static JSObject configToJson(TerminalConfig config) {
+        JSArray urls = new JSArray();
+        for (String url : config.backendUrls) {
+            urls.put(url);
         }
-        
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                response.append(line);
+        JSObject ret = new JSObject();
+        ret.put("backendUrls", urls);
+        ret.put("locationId", config.locationId != null ? config.locationId : JSONObject.NULL);
+        ret.put("effectiveLocationId", config.effectiveLocationId());
+        ret.put("simulated", config.simulated);
+        return ret;
+    }
+
+    /**
+     * Health of each backend URL and which one requests currently use
+     */
+    @PluginMethod
+    public void getBackendStatus(PluginCall call) {
+        String active = backendClient.getBaseUrl();
+        JSArray endpoints = new JSArray();
+        for (BackendEndpoints.Endpoint endpoint : backendClient.endpoints().all()) {
+            JSObject json = new JSObject();
+            json.put("url", endpoint.url);
+            json.put("state", endpoint.state().name());
+            json.put("active", endpoint.url.equals(active));
+            double rtt = endpoint.rttMs();
+            if (rtt >= 0) {
+                json.put("rttMs", rtt);
             }
+            json.put("errorRate", endpoint.errorRate());
+            json.put("consecutiveFailures", endpoint.consecutiveFailures());
+            json.put("successes", endpoint.successes());
+            json.put("failures", endpoint.failures());
+            endpoints.put(json);
         }
-        
-        JSONObject json = new JSONObject(response.toString());
-        return json.getString("client_secret");
+        JSObject ret = new JSObject();
+        ret.put("activeUrl", active);
+        ret.put("endpoints", endpoints);
+        call.resolve(ret);
     }
 
+    /**
+     * Shift start: fetch a connection token, the location and a few PaymentIntents in one
+     * backend round trip. Falls back to the per-endpoint calls (token prefetch now, intents
+     * on demand) when the backend has no /bootstrap endpoint or the call fails.
+     */
     @PluginMethod
-    public void initialize(PluginCall call) {
-        android.util.Log.d("StripeTerminal", "🚀 Initialize called");
-        
-        try {
-            if (!Terminal.isInitialized()) {
-                android.util.Log.d("StripeTerminal", "📱 Terminal not initialized yet, initializing...");
-                
-                // Connection token provider - fetches REAL tokens from backend
-                ConnectionTokenProvider provider = new ConnectionTokenProvider() {
-                    @Override
-                    public void fetchConnectionToken(ConnectionTokenCallback callback) {
-                        android.util.Log.d("StripeTerminal", "🔑 Token requested - fetching from backend...");
-                        
-                        // Run network request on background thread
-                        new Thread(() -> {
-                            try {
-                                String token = fetchConnectionTokenFromBackend();
-                                callback.onSuccess(token);
-                            } catch (Exception e) {
-                                android.util.Log.e("StripeTerminal", "❌ Failed to fetch token: " + e.getMessage(), e);
-                                callback.onFailure(new ConnectionTokenException("Failed to fetch connection token: " + e.getMessage(), e));
-                            }
-                        }).start();
+    public void bootstrapSession(PluginCall call) {
+        int intents = call.getInt("intents", 2);
+        String currency = call.getString("currency", "czk");
+        Double amount = call.getDouble("amount");
+        long placeholder = amount != null ? toStripeAmount(amount, currency) : 0;
+        pooledIntentTarget = Math.min(intents, SessionBootstrap.MAX_INTENTS);
+        pooledIntentCurrency = currency;
+
+        long startNanos = PaymentMetrics.start();
+        TerminalStages.supply("Bootstrap failed", () -> sessionBootstrap.fetch(intents, placeholder, currency, runtime.paymentBackend.isManualCapture()), executor.io())
+            .whenComplete((result, error) -> {
+                JSObject ret = new JSObject();
+                if (result == null) {
+                    // Older backend or transient failure: the usual per-endpoint path
+                    if (error != null) {
+                        TerminalStages.StageException failure = TerminalStages.unwrap(error);
+                        metrics.recordFailure(PaymentMetrics.Stage.BOOTSTRAP, startNanos, failure.getCause());
+                        PluginLog.w("⚠️ Bootstrap failed, using per-endpoint calls: {}", failure.getMessage());
+                        ret.put("error", failure.getMessage());
+                    } else {
+                        PluginLog.d("⏭️ Backend has no {} endpoint, using per-endpoint calls", SessionBootstrap.PATH);
                     }
-                };
-
-                // Create a TerminalListener (required in SDK v5)
-                TerminalListener eventListener = new TerminalListener() {
-                    // TerminalListener interface methods
-                };
-
-                // SDK v5: Terminal.init() with required event listener
-                Terminal.init(
-                    getContext().getApplicationContext(), 
-                    LogLevel.VERBOSE, 
-                    provider,
-                    eventListener,
-                    null
-                );
-                android.util.Log.d("StripeTerminal", "✅ Terminal initialized successfully");
-            } else {
-                android.util.Log.d("StripeTerminal", "✅ Terminal already initialized");
+                    tokenCache.prefetch();
+                    ret.put("batched", false);
+                    ret.put("locationId", runtime.config().effectiveLocationId());
+                    ret.put("pooledIntents", paymentIntentPool.pooledCount());
+                    call.resolve(ret);
+                    return;
+                }
+
+                metrics.recordSuccess(PaymentMetrics.Stage.BOOTSTRAP, startNanos);
+                applyBootstrap(result);
+
+                ret.put("batched", true);
+                ret.put("locationId", runtime.config().effectiveLocationId());
+                ret.put("locationName", result.locationName);
+                ret.put("pooledIntents", paymentIntentPool.pooledCount());
+                call.resolve(ret);
+            });
+    }
+
+    private void applyBootstrap(SessionBootstrap.Result result) {
+        if (result.connectionToken != null) {
+            tokenCache.offer(result.connectionToken);
+        } else {
+            tokenCache.prefetch();
+        }
+        if (result.locationId != null) {
+            runtime.setBootstrapLocation(result.locationId);
+        }
+        paymentIntentPool.offer(result.intents);
+        PluginLog.d("🚀 Bootstrapped: token={} location={} intents={}",
+            result.connectionToken != null, result.locationId, result.intents.size());
+    }
+
+    /**
+     * Override connect/read deadlines for one backend endpoint (e.g. "/create_payment_intent")
+     */
+    @PluginMethod
+    public void setBackendTimeouts(PluginCall call) {
+        String endpoint = call.getString("endpoint");
+        Integer connectTimeoutMs = call.getInt("connectTimeoutMs", BackendClient.DEFAULT_CONNECT_TIMEOUT_MS);
+        Integer readTimeoutMs = call.getInt("readTimeoutMs", BackendClient.DEFAULT_READ_TIMEOUT_MS);
+        if (endpoint == null || !endpoint.startsWith("/")) {
+            call.reject("Endpoint path is required (e.g. /create_payment_intent)");
+            return;
+        }
+        if (connectTimeoutMs <= 0 || readTimeoutMs <= 0) {
+            call.reject("Timeouts must be positive");
+            return;
+        }
+        backendClient.setTimeouts(endpoint, connectTimeoutMs, readTimeoutMs);
+        PluginLog.d("⏱️ Timeouts for {}: connect={}ms read={}ms", endpoint, connectTimeoutMs, readTimeoutMs);
+        call.resolve();
+    }
+
+    /**
+     * Fetch PaymentIntent client secret from backend. Retries and the hedged request share one
+     * Idempotency-Key, so the backend creates at most one intent per call.
+     */
+    private CompletableFuture<String> fetchPaymentIntentClientSecret(long amount, String currency) {
+        PluginLog.d("💳 Requesting PaymentIntent from backend for {} {}", amount, currency);
+        return runtime.paymentBackend.createPaymentIntent(amount, currency);
+    }
+
+    /**
+     * Change the amount of a prepared (not yet collected) PaymentIntent
+     */
+    private void updatePaymentIntentAmount(String paymentIntentId, long amount) throws Exception {
+        PluginLog.d("✏️ Updating PaymentIntent {} to {}", paymentIntentId, amount);
+        runtime.paymentBackend.updatePaymentIntentAmount(paymentIntentId, amount);
+    }
+
+    /**
+     * Convert a JS amount (major units) to the Stripe amount in minor units
+     */
+    private long toStripeAmount(double amount, String currency) {
+        long amountInCents = Amounts.toMinorUnits(amount);
+
+        // In simulated mode, ALWAYS override to a safe amount to ensure successful testing
+        // This prevents "minimum amount" errors (e.g. < 15 CZK) and "magic number" errors (e.g. requires chip/pin)
+        // 25.00 CZK (2500 cents) is a safe "approved" amount in Stripe test mode.
+        if (runtime.config().simulated) {
+             PluginLog.d("🔧 Simulated mode: Overriding amount to 2500 cents (25.00 {}) to ensure safe test transaction", currency);
+             amountInCents = 2500;
+        }
+        return amountInCents;
+    }
+
+    @PluginMethod
+    public void initialize(PluginCall call) {
+        PluginLog.d("🚀 Initialize called");
+
+        // Usually already done (or in flight) from StripeTerminalApplication
+        final long waitStart = android.os.SystemClock.elapsedRealtime();
+        runtime.initializeTerminal().whenComplete((ignored, error) -> {
+            if (error != null) {
+                PluginLog.e(error, "❌ Failed to initialize Terminal: {}", error.getMessage());
+                call.reject("Failed to initialize Terminal: " + error.getMessage());
+                return;
             }
+            long waitedMs = android.os.SystemClock.elapsedRealtime() - waitStart;
+            runtime.recordPhase("initializeWait", waitedMs);
+            PluginLog.d("✅ Terminal ready (waited {}ms)", waitedMs);
             call.resolve();
-        } catch (Exception e) {
-            android.util.Log.e("StripeTerminal", "❌ Failed to initialize Terminal: " + e.getMessage(), e);
-            call.reject("Failed to initialize Terminal: " + e.getMessage());
+        });
+    }
+
+    /**
+     * Enable or disable Terminal pre-warm at application start (takes effect next launch)
+     */
+    @PluginMethod
+    public void setPrewarmEnabled(PluginCall call) {
+        Boolean enabled = call.getBoolean("enabled", true);
+        runtime.setPrewarmEnabled(enabled);
+        PluginLog.d("🔥 Pre-warm set to: {}", enabled);
+        call.resolve();
+    }
+
+    /**
+     * Startup phase timings and device capability checks
+     */
+    @PluginMethod
+    public void getStartupInfo(PluginCall call) {
+        JSObject phases = new JSObject();
+        for (Map.Entry<String, Long> phase : runtime.startupPhases().entrySet()) {
+            phases.put(phase.getKey(), phase.getValue());
         }
+        TerminalRuntime.Capabilities caps = runtime.capabilities();
+        JSObject capabilities = new JSObject();
+        capabilities.put("nfcSupported", caps.nfcSupported);
+        capabilities.put("nfcEnabled", caps.nfcEnabled);
+        capabilities.put("locationPermission", caps.locationGranted);
+
+        JSObject ret = new JSObject();
+        ret.put("prewarmed", runtime.isPrewarmed());
+        ret.put("phasesMs", phases);
+        ret.put("capabilities", capabilities);
+        call.resolve(ret);
     }
 
     @PluginMethod
     public void discoverReaders(PluginCall call) {
-        android.util.Log.d("StripeTerminal", "🔍 discoverReaders called");
+        PluginLog.d("🔍 discoverReaders called");
         
-        if (!Terminal.isInitialized()) {
-            android.util.Log.e("StripeTerminal", "❌ Terminal not initialized");
+        if (!terminal.isInitialized()) {
+            PluginLog.e("❌ Terminal not initialized");
             call.reject("Terminal not initialized");
             return;
         }
@@ -252,12 +713,12 @@ public class StripeTerminalPlugin extends Plugin {
         // Check NFC
         android.nfc.NfcAdapter nfcAdapter = android.nfc.NfcAdapter.getDefaultAdapter(getContext());
         if (nfcAdapter == null) {
-            android.util.Log.e("StripeTerminal", "❌ NFC not available");
+            PluginLog.e("❌ NFC not available");
             call.reject("NFC is not available on this device");
             return;
         }
         if (!nfcAdapter.isEnabled()) {
-            android.util.Log.e("StripeTerminal", "❌ NFC disabled");
+            PluginLog.e("❌ NFC disabled");
             call.reject("NFC is disabled. Please enable it in system settings.");
             return;
         }
@@ -265,11 +726,11 @@ public class StripeTerminalPlugin extends Plugin {
         boolean hasLocation = getPermissionState("location") == PermissionState.GRANTED;
         boolean hasBluetooth = getPermissionState("bluetooth") == PermissionState.GRANTED;
         
-        android.util.Log.d("StripeTerminal", "📍 Location permission: " + hasLocation);
-        android.util.Log.d("StripeTerminal", "📶 Bluetooth permission: " + hasBluetooth);
+        PluginLog.d("📍 Location permission: {}", hasLocation);
+        PluginLog.d("📶 Bluetooth permission: {}", hasBluetooth);
 
         if (!hasLocation || !hasBluetooth) {
-            android.util.Log.d("StripeTerminal", "⚠️ Requesting permissions...");
+            PluginLog.d("⚠️ Requesting permissions...");
             requestPermissionForAliases(new String[]{"location", "bluetooth"}, call, "permissionCallback");
         } else {
             startDiscovery(call);
@@ -281,82 +742,77 @@ public class StripeTerminalPlugin extends Plugin {
         boolean hasLocation = getPermissionState("location") == PermissionState.GRANTED;
         boolean hasBluetooth = getPermissionState("bluetooth") == PermissionState.GRANTED;
         
-        android.util.Log.d("StripeTerminal", "📍 Location after request: " + hasLocation);
-        android.util.Log.d("StripeTerminal", "📶 Bluetooth after request: " + hasBluetooth);
+        PluginLog.d("📍 Location after request: {}", hasLocation);
+        PluginLog.d("📶 Bluetooth after request: {}", hasBluetooth);
 
         if (hasLocation && hasBluetooth) {
             startDiscovery(call);
         } else {
-            android.util.Log.e("StripeTerminal", "❌ Permissions denied");
+            PluginLog.e("❌ Permissions denied");
             call.reject("Location and Bluetooth permissions are required for discovery. Please enable them in App Settings.");
         }
     }
 
     private void startDiscovery(PluginCall call) {
-        android.util.Log.d("StripeTerminal", "🚀 Starting discovery process...");
-        android.util.Log.d("StripeTerminal", "📍 Simulated mode: " + useSimulatedMode);
+        PluginLog.d("🚀 Starting discovery process...");
+        // One snapshot for the whole discovery
+        final boolean simulated = runtime.config().simulated;
+        PluginLog.d("📍 Simulated mode: {}", simulated);
         
         // Log device info for debugging
-        android.util.Log.d("StripeTerminal", "📱 Device: " + android.os.Build.MODEL);
-        android.util.Log.d("StripeTerminal", "📱 Android: " + android.os.Build.VERSION.SDK_INT);
+        PluginLog.d("📱 Device: {}", android.os.Build.MODEL);
+        PluginLog.d("📱 Android: {}", android.os.Build.VERSION.SDK_INT);
         
         // Tap to Pay -> TapToPayDiscoveryConfiguration
         DiscoveryConfiguration config = new DiscoveryConfiguration.TapToPayDiscoveryConfiguration(
-            useSimulatedMode  // Use simulated mode for debugging if real NFC fails
+            simulated  // Use simulated mode for debugging if real NFC fails
         );
         
-        android.util.Log.d("StripeTerminal", "⚙️ Config created: TapToPayDiscoveryConfiguration (simulated=" + useSimulatedMode + ")");
+        PluginLog.d("⚙️ Config created: TapToPayDiscoveryConfiguration (simulated={})", simulated);
+
+        // Discovery latency = time until the first reader shows up
+        CrashBreadcrumbs.record("discovery", "start", simulated ? "simulated" : null);
+        final long discoveryStart = PaymentMetrics.start();
+        final AtomicBoolean discoveryRecorded = new AtomicBoolean(false);
 
         DiscoveryListener listener = new DiscoveryListener() {
             @Override
             public void onUpdateDiscoveredReaders(List<Reader> readers) {
-                android.util.Log.d("StripeTerminal", "📡 onUpdateDiscoveredReaders called! Found " + readers.size() + " reader(s)");
-                
-                discoveredReaders = readers;
-                JSObject ret = new JSObject();
-                com.getcapacitor.JSArray readersJson = new com.getcapacitor.JSArray();
-                
-                for (Reader reader : readers) {
-                    android.util.Log.d("StripeTerminal", "  📱 Reader: " + reader.getSerialNumber() + " - Type: " + reader.getDeviceType());
-                    
-                    JSObject readerJson = new JSObject();
-                    readerJson.put("serialNumber", reader.getSerialNumber());
-                    if (reader.getDeviceType() != null) {
-                        readerJson.put("deviceType", reader.getDeviceType().toString());
-                    }
-                    if (reader.getLocation() != null) {
-                         readerJson.put("locationId", reader.getLocation().getId());
-                    }
-                    readersJson.put(readerJson);
+                PluginLog.d("📡 onUpdateDiscoveredReaders called! Found {} reader(s)", readers.size());
+                if (!readers.isEmpty() && discoveryRecorded.compareAndSet(false, true)) {
+                    metrics.recordSuccess(PaymentMetrics.Stage.DISCOVERY, discoveryStart);
                 }
                 
-                ret.put("readers", readersJson);
-                notifyListeners("readersDiscovered", ret);
+                discoveredReaders.update(readers, StripeTerminalPlugin::describeReader);
             }
         };
 
         Callback statusCallback = new Callback() {
             @Override
             public void onSuccess() {
-                android.util.Log.d("StripeTerminal", "✅ Discovery session started");
+                PluginLog.d("✅ Discovery session started");
                 call.resolve();
             }
 
             @Override
             public void onFailure(TerminalException e) {
-                android.util.Log.e("StripeTerminal", "❌ Discovery failed: " + e.getErrorCode() + " - " + e.getMessage(), e);
+                PluginLog.e(e, "❌ Discovery failed: {} - {}", e.getErrorCode(), e.getMessage());
+                if (discoveryRecorded.compareAndSet(false, true)) {
+                    metrics.recordFailure(PaymentMetrics.Stage.DISCOVERY, discoveryStart, e);
+                }
                 call.reject("Discovery failed: " + e.getMessage() + " (" + e.getErrorCode() + ")");
             }
         };
 
-        android.util.Log.d("StripeTerminal", "📞 Calling Terminal.discoverReaders()...");
-        discoveryCancelable = Terminal.getInstance().discoverReaders(config, listener, statusCallback);
-        android.util.Log.d("StripeTerminal", "📋 Discovery request sent, waiting for callbacks...");
+        discoveredReaders.clear();
+        PluginLog.d("📞 Calling Terminal.discoverReaders()...");
+        discoveryCancelable = terminal.discoverReaders(config, listener, statusCallback);
+        PluginLog.d("📋 Discovery request sent, waiting for callbacks...");
     }
     
     @PluginMethod
     public void connectReader(PluginCall call) {
-        android.util.Log.d("StripeTerminal", "🔌 connectReader called");
+        PluginLog.d("🔌 connectReader called");
         
         String serialNumber = call.getString("serialNumber");
         if (serialNumber == null) {
@@ -364,58 +820,174 @@ public class StripeTerminalPlugin extends Plugin {
             return;
         }
         
-        android.util.Log.d("StripeTerminal", "🔍 Looking for reader: " + serialNumber);
-        
-        // Find the reader from discovered list
-        Reader readerToConnect = null;
-        for (Reader reader : discoveredReaders) {
-            if (reader.getSerialNumber().equals(serialNumber)) {
-                readerToConnect = reader;
-                break;
-            }
-        }
+        PluginLog.d("🔍 Looking for reader: {}", serialNumber);
         
+        Reader readerToConnect = discoveredReaders.get(serialNumber);
         if (readerToConnect == null) {
-            android.util.Log.e("StripeTerminal", "❌ Reader not found: " + serialNumber);
+            PluginLog.e("❌ Reader not found: {}", serialNumber);
             call.reject("Reader not found");
             return;
         }
         
         final Reader finalReader = readerToConnect;
-        android.util.Log.d("StripeTerminal", "📱 Connecting to reader: " + finalReader.getSerialNumber() + " at location: " + locationId);
-        
-        // SDK v5 requires ConnectionConfiguration for Tap to Pay
-        ConnectionConfiguration connectionConfig = new ConnectionConfiguration.TapToPayConnectionConfiguration(
-            locationId,
-            false, // failIfInUse
-            null   // TapToPayReaderListener
-        );
-        
-        Terminal.getInstance().connectReader(
-            finalReader,
-            connectionConfig,
-            new ReaderCallback() {
-                @Override
-                public void onSuccess(Reader reader) {
-                    android.util.Log.d("StripeTerminal", "✅ Reader connected successfully!");
-                    JSObject ret = new JSObject();
-                    ret.put("connected", true);
-                    ret.put("serialNumber", reader.getSerialNumber());
-                    call.resolve(ret);
-                }
-                
-                @Override
-                public void onFailure(TerminalException e) {
-                    android.util.Log.e("StripeTerminal", "❌ Failed to connect: " + e.getErrorCode() + " - " + e.getMessage(), e);
-                    call.reject("Failed to connect to reader: " + e.getMessage() + " (" + e.getErrorCode() + ")");
-                }
+        TerminalConfig config = runtime.config();
+        PluginLog.d("📱 Connecting to reader: {} at location: {}", finalReader.getSerialNumber(), config.effectiveLocationId());
+
+        readerSession.connect(finalReader, config.effectiveLocationId(), config.simulated).whenComplete((reader, error) -> {
+            if (error != null) {
+                TerminalStages.StageException failure = TerminalStages.unwrap(error);
+                PluginLog.e(failure.getCause(), "❌ Failed to connect: {}", failure.getMessage());
+                call.reject(failure.getMessage(), failure.exception());
+                return;
             }
+            PluginLog.d("✅ Reader connected successfully!");
+            JSObject ret = new JSObject();
+            ret.put("connected", true);
+            ret.put("serialNumber", reader.getSerialNumber());
+            call.resolve(ret);
+        });
+    }
+
+    /**
+     * Restore the last connected reader without a JS discover/connect cycle.
+     * Resolves immediately if a reader is already connected (or joins the startup reconnect).
+     */
+    @PluginMethod
+    public void reconnectLastReader(PluginCall call) {
+        ReaderSession.LastReader last = readerSession.lastReader();
+        if (last == null) {
+            call.reject("No previously connected reader");
+            return;
+        }
+        if (getPermissionState("location") != PermissionState.GRANTED) {
+            call.reject("Location permission is required. Call discoverReaders to request it.");
+            return;
+        }
+
+        runtime.initializeTerminal()
+            .thenCompose(ignored -> readerSession.reconnect())
+            .whenComplete((reader, error) -> {
+                if (error != null) {
+                    TerminalStages.StageException failure = TerminalStages.unwrap(error);
+                    PluginLog.e(failure.getCause(), "❌ Reconnect failed: {}", failure.getMessage());
+                    call.reject(failure.getMessage(), failure.exception());
+                    return;
+                }
+                JSObject ret = new JSObject();
+                ret.put("connected", true);
+                ret.put("serialNumber", reader.getSerialNumber());
+                ret.put("locationId", last.locationId);
+                call.resolve(ret);
+            });
+    }
+
+    /**
+     * Reconnect automatically at startup and after unexpected disconnects (default on)
+     */
+    @PluginMethod
+    public void setAutoReconnect(PluginCall call) {
+        Boolean enabled = call.getBoolean("enabled", true);
+        readerSession.setAutoReconnect(enabled);
+        PluginLog.d("🔁 Auto reconnect set to: {}", enabled);
+        call.resolve();
+    }
+
+    /**
+     * Forget the remembered reader (e.g. moving the till to another location)
+     */
+    @PluginMethod
+    public void forgetLastReader(PluginCall call) {
+        readerSession.forgetLastReader();
+        call.resolve();
+    }
+
+    /**
+     * Full list of readers from the current discovery session (for late subscribers)
+     */
+    @PluginMethod
+    public void getDiscoveredReaders(PluginCall call) {
+        JSObject ret = new JSObject();
+        try {
+            ret.put("readers", ReaderInfo.toJsonArray(discoveredReaders.snapshot()));
+        } catch (JSONException e) {
+            call.reject("Failed to serialize readers: " + e.getMessage(), e);
+            return;
+        }
+        call.resolve(ret);
+    }
+
+    private static ReaderInfo describeReader(Reader reader) {
+        return new ReaderInfo(
+            reader.getSerialNumber(),
+            reader.getDeviceType() != null ? reader.getDeviceType().toString() : null,
+            reader.getLocation() != null ? reader.getLocation().getId() : null
         );
     }
-    
+
+    /**
+     * Send only what changed since the last event (coalesced by ReaderIndex)
+     */
+    private void notifyReadersChanged(ReaderIndex.Diff diff) {
+        PluginLog.d("📡 Readers: +{} ~{} -{}", diff.added.size(), diff.changed.size(), diff.removed.size());
+        JSObject ret = new JSObject();
+        try {
+            ret.put("added", ReaderInfo.toJsonArray(diff.added));
+            ret.put("changed", ReaderInfo.toJsonArray(diff.changed));
+            ret.put("removed", new JSArray(diff.removed));
+        } catch (JSONException e) {
+            PluginLog.e(e, "❌ Failed to serialize readers: {}", e.getMessage());
+            return;
+        }
+        notifyListeners("readersChanged", ret);
+    }
+
+    /**
+     * Create and retrieve the PaymentIntent while the cart is being built.
+     * Call again whenever the total changes; collectPayment then skips both round trips.
+     */
+    @PluginMethod
+    public void preparePayment(PluginCall call) {
+        Double amount = call.getDouble("amount");
+        if (amount == null) {
+            call.reject("Amount is required");
+            return;
+        }
+        String currency = call.getString("currency", "czk");
+        long amountInCents = toStripeAmount(amount, currency);
+
+        PluginLog.d("⚡ Preparing PaymentIntent for {} {}", amountInCents, currency);
+
+        paymentIntentPool.prepare(amountInCents, currency).whenComplete((prepared, error) -> {
+            if (error != null) {
+                TerminalStages.StageException failure = TerminalStages.unwrap(error);
+                PluginLog.e(failure.getCause(), "❌ Prepare failed: {}", failure.getMessage());
+                call.reject(failure.getMessage(), failure.exception());
+                return;
+            }
+            JSObject ret = new JSObject();
+            ret.put("prepared", true);
+            ret.put("paymentIntentId", prepared.intent.getId());
+            ret.put("amount", amount);
+            call.resolve(ret);
+        });
+    }
+
+    /**
+     * Cancel the prepared PaymentIntent (e.g. cart cleared)
+     */
+    @PluginMethod
+    public void cancelPreparedPayment(PluginCall call) {
+        paymentIntentPool.discard();
+        call.resolve();
+    }
+
+    /**
+     * Take a card payment. With {@code queue: true} a sale that arrives while another is on
+     * the reader waits for it instead of being rejected.
+     */
     @PluginMethod
     public void collectPayment(PluginCall call) {
-        android.util.Log.d("StripeTerminal", "💳 collectPayment called");
+        PluginLog.d("💳 collectPayment called");
         
         Double amount = call.getDouble("amount");
         if (amount == null) {
@@ -423,109 +995,641 @@ public class StripeTerminalPlugin extends Plugin {
             return;
         }
         
-        // Convert dollars to cents (Stripe uses cents)
-        long amountInCents = Math.round(amount * 100);
         String currency = call.getString("currency", "czk");
+        long amountInCents = toStripeAmount(amount, currency);
         
-        android.util.Log.d("StripeTerminal", "💰 Collecting payment: " + amount + " " + currency + " (" + amountInCents + " cents)");
-
-        // In simulated mode, ALWAYS override to a safe amount to ensure successful testing
-        // This prevents "minimum amount" errors (e.g. < 15 CZK) and "magic number" errors (e.g. requires chip/pin)
-        // 25.00 CZK (2500 cents) is a safe "approved" amount in Stripe test mode.
-        if (useSimulatedMode) {
-             android.util.Log.d("StripeTerminal", "🔧 Simulated mode: Overriding amount to 2500 cents (25.00 " + currency + ") to ensure safe test transaction");
-             amountInCents = 2500;
-        }
+        PluginLog.d("💰 Collecting payment: {} {} ({} cents)", amount, currency, amountInCents);
         
         // Check if terminal is connected
-        Reader connectedReader = Terminal.getInstance().getConnectedReader();
+        Reader connectedReader = terminal.getConnectedReader();
         if (connectedReader == null) {
-            android.util.Log.e("StripeTerminal", "❌ No reader connected");
+            PluginLog.e("❌ No reader connected");
             call.reject("No reader connected. Please connect a reader first.");
             return;
         }
         
-        android.util.Log.d("StripeTerminal", "📱 Connected reader: " + connectedReader.getSerialNumber());
-        
-        
-        final long finalAmountInCents = amountInCents;
+        String readerSerial = connectedReader.getSerialNumber();
+        PluginLog.d("📱 Connected reader: {}", readerSerial);
 
-        // Fetch PaymentIntent from backend (required for REAL payments)
-        new Thread(() -> {
-            try {
-                String clientSecret = fetchPaymentIntentClientSecret(finalAmountInCents, currency);
-                
-                // Step 1: Retrieve the PaymentIntent
-                Terminal.getInstance().retrievePaymentIntent(clientSecret, new com.stripe.stripeterminal.external.callable.PaymentIntentCallback() {
-                    @Override
-                    public void onSuccess(com.stripe.stripeterminal.external.models.PaymentIntent paymentIntent) {
-                        android.util.Log.d("StripeTerminal", "✅ PaymentIntent retrieved: " + paymentIntent.getId());
-                        
-                        // Step 2: Collect payment method (this triggers the "tap card" flow)
-                        android.util.Log.d("StripeTerminal", "💳 Waiting for card tap...");
-                        notifyPaymentStatus("waiting_for_card", "Please tap your card");
-                        
-                        Terminal.getInstance().collectPaymentMethod(
-                            paymentIntent,
-                            new com.stripe.stripeterminal.external.callable.PaymentIntentCallback() {
-                                @Override
-                                public void onSuccess(com.stripe.stripeterminal.external.models.PaymentIntent collectedIntent) {
-                                    android.util.Log.d("StripeTerminal", "✅ Card tapped! Payment method collected");
-                                    notifyPaymentStatus("processing", "Processing payment...");
-                                    
-                                    // Step 3: Confirm the payment
-                                    android.util.Log.d("StripeTerminal", "🔄 Confirming payment...");
-                                    
-                                    Terminal.getInstance().confirmPaymentIntent(
-                                        collectedIntent,
-                                        new com.stripe.stripeterminal.external.callable.PaymentIntentCallback() {
-                                            @Override
-                                            public void onSuccess(com.stripe.stripeterminal.external.models.PaymentIntent confirmedIntent) {
-                                                android.util.Log.d("StripeTerminal", "✅ Payment confirmed!");
-                                                
-                                                JSObject ret = new JSObject();
-                                                ret.put("success", true);
-                                                ret.put("amount", amount);
-                                                ret.put("paymentIntentId", confirmedIntent.getId());
-                                                ret.put("simulated", false);
-                                                call.resolve(ret);
-                                            }
-                                            
-                                            @Override
-                                            public void onFailure(TerminalException e) {
-                                                android.util.Log.e("StripeTerminal", "❌ Confirm failed: " + e.getMessage(), e);
-                                                call.reject("Payment confirmation failed: " + e.getMessage(), e);
-                                            }
-                                        }
-                                    );
-                                }
-                                
-                                @Override
-                                public void onFailure(TerminalException e) {
-                                    android.util.Log.e("StripeTerminal", "❌ Collect failed: " + e.getMessage(), e);
-                                    call.reject("Card collection failed: " + e.getMessage(), e);
-                                }
-                            }
-                        );
-                    }
-                    
-                    @Override
-                    public void onFailure(TerminalException e) {
-                        android.util.Log.e("StripeTerminal", "❌ Retrieve PaymentIntent failed: " + e.getMessage(), e);
-                        call.reject("Failed to retrieve payment: " + e.getMessage(), e);
-                    }
-                });
-            } catch (Exception e) {
-                android.util.Log.e("StripeTerminal", "❌ Backend error: " + e.getMessage(), e);
-                call.reject("Backend error: " + e.getMessage());
+        // Nothing in the background competes with the tap
+        maintenance.pause();
+
+        // (prepared or fetched) PaymentIntent → collect (tap card) → confirm
+        CheckoutSession.Checkout checkout;
+        try {
+            checkout = checkoutSession.submit(amountInCents, currency, call.getBoolean("queue", false));
+        } catch (IllegalStateException e) {
+            PluginLog.w("⚠️ {}", e.getMessage());
+            call.reject(e.getMessage());
+            return;
+        }
+        checkout.result.whenComplete((confirmedIntent, error) -> {
+            recordTransaction(checkout, readerSerial, error);
+            if (error != null) {
+                TerminalStages.StageException failure = TerminalStages.unwrap(error);
+                PluginLog.e(failure.getCause(), "❌ {}", failure.getMessage());
+                call.reject(failure.getMessage(), failure.exception());
+                return;
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("success", true);
+            ret.put("amount", amount);
+            ret.put("checkoutId", checkout.id);
+            ret.put("paymentIntentId", confirmedIntent.getId());
+            ret.put("simulated", false);
+            if (confirmedIntent.getStatus() != PaymentIntentStatus.REQUIRES_CAPTURE) {
+                PluginLog.d("✅ Payment confirmed!");
+                ret.put("captured", true);
+                call.resolve(ret);
+                return;
             }
-        }).start();
+            // Manual capture: the card is approved; capture happens later in a batch
+            PluginLog.d("✅ Payment authorized, capture deferred");
+            ret.put("captured", false);
+            captureQueue.add(new CaptureQueue.Pending(confirmedIntent.getId(), checkout.amount, checkout.currency, System.currentTimeMillis()));
+            call.resolve(ret);
+        });
+    }
+
+    /**
+     * Abort a sale in whatever stage it is in (the active one, else the queued one, when no
+     * checkoutId is given). A sale that is already confirming can't be cancelled.
+     */
+    @PluginMethod
+    public void cancelPayment(PluginCall call) {
+        Long checkoutId = call.getLong("checkoutId");
+        try {
+            CheckoutSession.Stage stage = checkoutSession.cancel(checkoutId == null ? 0 : checkoutId);
+            JSObject ret = new JSObject();
+            ret.put("cancelled", true);
+            ret.put("stage", stage.name().toLowerCase(Locale.ROOT));
+            call.resolve(ret);
+        } catch (IllegalStateException e) {
+            call.reject(e.getMessage());
+        }
+    }
+
+    /**
+     * Sales on the reader or waiting for it, and the per-stage deadlines
+     */
+    @PluginMethod
+    public void getCheckoutState(PluginCall call) {
+        JSArray checkouts = new JSArray();
+        for (CheckoutSession.Checkout checkout : checkoutSession.snapshot()) {
+            JSObject json = new JSObject();
+            json.put("checkoutId", checkout.id);
+            json.put("stage", checkout.stage().name().toLowerCase(Locale.ROOT));
+            json.put("amount", checkout.amount);
+            json.put("currency", checkout.currency);
+            json.put("elapsedMs", (System.nanoTime() - checkout.startNanos) / 1_000_000);
+            checkouts.put(json);
+        }
+        CheckoutSession.Deadlines deadlines = checkoutSession.deadlines();
+        JSObject ret = new JSObject();
+        ret.put("checkouts", checkouts);
+        ret.put("intentTimeoutMs", deadlines.intentMs);
+        ret.put("collectTimeoutMs", deadlines.collectMs);
+        ret.put("confirmTimeoutMs", deadlines.confirmMs);
+        call.resolve(ret);
+    }
+
+    /**
+     * Per-stage deadlines; a stage that overruns fails the sale with "Payment timed out", except
+     * confirmation, which only reports {@code confirm_delayed} and keeps waiting
+     */
+    @PluginMethod
+    public void setCheckoutTimeouts(PluginCall call) {
+        CheckoutSession.Deadlines current = checkoutSession.deadlines();
+        long intentMs = call.getLong("intentTimeoutMs", current.intentMs);
+        long collectMs = call.getLong("collectTimeoutMs", current.collectMs);
+        long confirmMs = call.getLong("confirmTimeoutMs", current.confirmMs);
+        if (intentMs <= 0 || collectMs <= 0 || confirmMs <= 0) {
+            call.reject("Timeouts must be positive");
+            return;
+        }
+        checkoutSession.setDeadlines(new CheckoutSession.Deadlines(intentMs, collectMs, confirmMs));
+        call.resolve();
     }
     
-    private void notifyPaymentStatus(String status, String message) {
+    /**
+     * Per-stage latency percentiles and failure counts since launch (or the last reset)
+     */
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        JSObject stages = new JSObject();
+        for (PaymentMetrics.Stage stage : PaymentMetrics.Stage.values()) {
+            PaymentMetrics.StageMetrics m = metrics.get(stage);
+            JSObject stageJson = new JSObject();
+            stageJson.put("count", m.latency.count());
+            stageJson.put("successes", m.successes.get());
+            stageJson.put("failures", m.failures.get());
+            stageJson.put("p50Ms", m.latency.percentileMillis(0.50));
+            stageJson.put("p95Ms", m.latency.percentileMillis(0.95));
+            stageJson.put("p99Ms", m.latency.percentileMillis(0.99));
+            stageJson.put("maxMs", m.latency.maxMillis());
+            JSObject errors = new JSObject();
+            for (Map.Entry<String, AtomicLong> entry : m.failuresByCode.entrySet()) {
+                errors.put(entry.getKey(), entry.getValue().get());
+            }
+            stageJson.put("errors", errors);
+            stages.put(stage.key, stageJson);
+        }
+
+        JSObject hedging = new JSObject();
+        hedging.put("connectionToken", hedgingToJson(runtime.paymentBackend.tokenCall));
+        hedging.put("createPaymentIntent", hedgingToJson(runtime.paymentBackend.createIntentCall));
+
+        JSObject ret = new JSObject();
+        ret.put("stages", stages);
+        ret.put("hedging", hedging);
+        if (call.getBoolean("reset", false)) {
+            metrics.reset();
+            runtime.paymentBackend.tokenCall.resetStats();
+            runtime.paymentBackend.createIntentCall.resetStats();
+        }
+        call.resolve(ret);
+    }
+
+    /**
+     * Manual capture: collectPayment resolves once the card is approved and the intent is
+     * captured later, in batches of {@code batchSize} or after {@code intervalMs}, at the
+     * latest at endShift. Applies to intents created from now on.
+     */
+    @PluginMethod
+    public void setCaptureMode(PluginCall call) {
+        String mode = call.getString("mode");
+        if (!"manual".equals(mode) && !"automatic".equals(mode)) {
+            call.reject("Mode must be 'manual' or 'automatic'");
+            return;
+        }
+        boolean manual = "manual".equals(mode);
+        CaptureQueue.Policy current = captureQueue.policy();
+        CaptureQueue.Policy policy = new CaptureQueue.Policy(call.getInt("batchSize", current.batchSize),
+            call.getLong("intervalMs", current.intervalMs));
+        try {
+            captureQueue.configure(manual, policy);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        if (runtime.paymentBackend.isManualCapture() != manual) {
+            runtime.paymentBackend.setManualCapture(manual);
+            // Prepared and bootstrap intents were created with the other capture method
+            paymentIntentPool.discard();
+            paymentIntentPool.discardPooled();
+        }
+        PluginLog.i("🧾 Capture mode {} (batch {}, every {}ms)", mode, policy.batchSize, policy.intervalMs);
+        call.resolve();
+    }
+
+    /**
+     * Capture all authorized intents now; resolves with one result per intent
+     */
+    @PluginMethod
+    public void capturePendingPayments(PluginCall call) {
+        captureQueue.flush().whenComplete((results, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                call.reject(cause.getMessage());
+                return;
+            }
+            JSObject ret = new JSObject();
+            ret.put("results", captureResultsToJson(results));
+            ret.put("pending", captureQueue.pendingCount());
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getCaptureStatus(PluginCall call) {
+        CaptureQueue.Policy policy = captureQueue.policy();
+        JSArray pending = new JSArray();
+        for (CaptureQueue.Pending intent : captureQueue.pending()) {
+            pending.put(pendingCaptureToJson(intent));
+        }
         JSObject ret = new JSObject();
-        ret.put("status", status);
-        ret.put("message", message);
-        notifyListeners("paymentStatus", ret);
+        ret.put("mode", captureQueue.isManual() ? "manual" : "automatic");
+        ret.put("batchSize", policy.batchSize);
+        ret.put("intervalMs", policy.intervalMs);
+        ret.put("pending", pending);
+        call.resolve(ret);
+    }
+
+    private static JSObject pendingCaptureToJson(CaptureQueue.Pending intent) {
+        JSObject json = new JSObject();
+        json.put("paymentIntentId", intent.paymentIntentId);
+        json.put("amountMinor", intent.amount);
+        json.put("currency", intent.currency);
+        json.put("authorizedAt", intent.authorizedAtMs);
+        json.put("attempts", intent.attempts);
+        return json;
+    }
+
+    private static JSArray captureResultsToJson(List<CaptureQueue.Result> results) {
+        JSArray array = new JSArray();
+        for (CaptureQueue.Result result : results) {
+            JSObject json = pendingCaptureToJson(result.intent);
+            json.put("status", result.status.key);
+            json.put("error", result.error);
+            array.put(json);
+        }
+        return array;
+    }
+
+    /**
+     * Per-intent capture outcomes go to JS as events; a capture that failed for good undoes
+     * the sale in the journal.
+     */
+    private void onCaptureResults(List<CaptureQueue.Result> results) {
+        for (CaptureQueue.Result result : results) {
+            if (result.status == CaptureQueue.Status.PENDING) {
+                continue;
+            }
+            Map<String, Object> data = new HashMap<>();
+            data.put("paymentIntentId", result.intent.paymentIntentId);
+            data.put("status", result.status.key);
+            data.put("error", result.error);
+            runtime.events.publish("paymentCaptured", data);
+            if (result.status == CaptureQueue.Status.FAILED) {
+                journal.updateStatus(result.intent.paymentIntentId, TransactionJournal.Status.FAILED);
+            }
+        }
+    }
+
+    /**
+     * Telemetry upload settings: {@code enabled}, backend {@code path}, and the batch bounds
+     * ({@code batchSize} records, {@code intervalMs} after the first buffered record)
+     */
+    @PluginMethod
+    public void configureTelemetry(PluginCall call) {
+        TelemetryUploader.Config current = runtime.telemetry.config();
+        TelemetryUploader.Config next = new TelemetryUploader.Config(
+            call.getBoolean("enabled", current.enabled),
+            call.getString("path", current.path),
+            call.getInt("batchSize", current.batchSize),
+            call.getLong("intervalMs", current.intervalMs));
+        try {
+            runtime.telemetry.configure(next);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        call.resolve();
+    }
+
+    /**
+     * Buffer and upload counters; {@code flush: true} uploads what is buffered now
+     */
+    @PluginMethod
+    public void getTelemetryStatus(PluginCall call) {
+        if (call.getBoolean("flush", false)) {
+            runtime.telemetry.flush();
+        }
+        TelemetryUploader.Config config = runtime.telemetry.config();
+        TelemetryUploader.Stats stats = runtime.telemetry.stats();
+        JSObject ret = new JSObject();
+        ret.put("enabled", config.enabled);
+        ret.put("path", config.path);
+        ret.put("batchSize", config.batchSize);
+        ret.put("intervalMs", config.intervalMs);
+        ret.put("buffered", stats.buffered);
+        ret.put("uploadedRecords", stats.uploadedRecords);
+        ret.put("uploadedBatches", stats.uploadedBatches);
+        ret.put("uploadedBytes", stats.uploadedBytes);
+        ret.put("dropped", stats.dropped);
+        ret.put("lastError", stats.lastError);
+        call.resolve(ret);
+    }
+
+    /**
+     * Idle-time maintenance: {@code enabled}, and {@code idleDelayMs} without a payment before
+     * any task runs
+     */
+    @PluginMethod
+    public void configureMaintenance(PluginCall call) {
+        try {
+            maintenance.configure(call.getBoolean("enabled", maintenance.isEnabled()),
+                call.getLong("idleDelayMs", maintenance.idleDelayMs()));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getMaintenanceStatus(PluginCall call) {
+        JSArray tasks = new JSArray();
+        for (MaintenanceScheduler.TaskStatus status : maintenance.status()) {
+            JSObject json = new JSObject();
+            json.put("name", status.name);
+            json.put("intervalMs", status.intervalMs);
+            json.put("runs", status.runs);
+            json.put("failures", status.failures);
+            json.put("lastRunAt", status.lastRunAtMs);
+            json.put("lastDurationMs", status.lastDurationMs);
+            json.put("lastError", status.lastError);
+            json.put("blockedBy", status.blockedBy);
+            tasks.put(json);
+        }
+        JSObject ret = new JSObject();
+        ret.put("enabled", maintenance.isEnabled());
+        ret.put("idle", maintenance.isIdle());
+        ret.put("idleDelayMs", maintenance.idleDelayMs());
+        ret.put("tasks", tasks);
+        call.resolve(ret);
+    }
+
+    /**
+     * Journaled checkouts, newest first. Pass {@code nextCursor} back as {@code cursor} for
+     * the following page.
+     */
+    @PluginMethod
+    public void getTransactions(PluginCall call) {
+        TransactionJournal.Query query = new TransactionJournal.Query();
+        query.fromMs = call.getLong("from", 0L);
+        query.toMs = call.getLong("to", Long.MAX_VALUE);
+        query.shiftId = call.getString("shiftId");
+        query.cursor = call.getString("cursor");
+        query.limit = call.getInt("limit", 50);
+        String status = call.getString("status");
+        try {
+            query.status = status != null ? TransactionJournal.Status.fromKey(status) : null;
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        journal.page(query).whenComplete((page, error) -> {
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                call.reject(cause.getMessage());
+                return;
+            }
+            JSArray transactions = new JSArray();
+            for (TransactionJournal.Entry entry : page.entries) {
+                transactions.put(transactionToJson(entry));
+            }
+            JSObject ret = new JSObject();
+            ret.put("transactions", transactions);
+            ret.put("nextCursor", page.nextCursor);
+            call.resolve(ret);
+        });
+    }
+
+    /**
+     * Per-day, per-currency totals between two timestamps (default: today)
+     */
+    @PluginMethod
+    public void getDailyTotals(PluginCall call) {
+        long now = System.currentTimeMillis();
+        int fromDay = TransactionJournal.dayOf(call.getLong("from", now));
+        int toDay = TransactionJournal.dayOf(call.getLong("to", now));
+        journal.dailyTotals(fromDay, toDay).whenComplete((totals, error) -> resolveTotals(call, totals, error, null));
+    }
+
+    /**
+     * File subsequent checkouts under a shift (a generated id unless one is given)
+     */
+    @PluginMethod
+    public void startShift(PluginCall call) {
+        if (runtime.currentShiftId() != null) {
+            call.reject("Shift " + runtime.currentShiftId() + " is already open");
+            return;
+        }
+        String shiftId = call.getString("shiftId", UUID.randomUUID().toString());
+        long startedAt = System.currentTimeMillis();
+        runtime.startShift(shiftId, startedAt);
+        PluginLog.i("🕘 Shift {} started", shiftId);
+        JSObject ret = new JSObject();
+        ret.put("shiftId", shiftId);
+        ret.put("startedAt", startedAt);
+        call.resolve(ret);
+    }
+
+    /**
+     * Close the current shift and resolve with its totals
+     */
+    @PluginMethod
+    public void endShift(PluginCall call) {
+        String shiftId = runtime.currentShiftId();
+        if (shiftId == null) {
+            call.reject("No shift is open");
+            return;
+        }
+        long startedAt = runtime.shiftStartedAt();
+        runtime.endShift();
+        PluginLog.i("🕔 Shift {} ended", shiftId);
+        long endedAt = System.currentTimeMillis();
+        // Capture what the shift authorized, so failed captures are out of its totals
+        CompletableFuture<List<CaptureQueue.Result>> captures = captureQueue.pendingCount() > 0
+            ? captureQueue.flush()
+            : CompletableFuture.completedFuture(Collections.<CaptureQueue.Result>emptyList());
+        captures.whenComplete((results, captureError) -> journal.shiftTotals(shiftId).whenComplete((totals, error) -> {
+            JSObject shift = new JSObject();
+            shift.put("shiftId", shiftId);
+            shift.put("startedAt", startedAt);
+            shift.put("endedAt", endedAt);
+            shift.put("captures", captureResultsToJson(results != null ? results : Collections.<CaptureQueue.Result>emptyList()));
+            shift.put("uncaptured", captureQueue.pendingCount());
+            resolveTotals(call, totals, error, shift);
+        }));
+    }
+
+    /**
+     * Totals of a shift (default: the open one)
+     */
+    @PluginMethod
+    public void getShiftTotals(PluginCall call) {
+        String shiftId = call.getString("shiftId", runtime.currentShiftId());
+        if (shiftId == null) {
+            call.reject("No shift is open");
+            return;
+        }
+        journal.shiftTotals(shiftId).whenComplete((totals, error) -> {
+            JSObject shift = new JSObject();
+            shift.put("shiftId", shiftId);
+            resolveTotals(call, totals, error, shift);
+        });
+    }
+
+    private static void resolveTotals(PluginCall call, List<TransactionJournal.Totals> totals, Throwable error, JSObject ret) {
+        if (error != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            call.reject(cause.getMessage());
+            return;
+        }
+        JSArray array = new JSArray();
+        for (TransactionJournal.Totals t : totals) {
+            JSObject json = new JSObject();
+            if (t.day != 0) {
+                json.put("day", formatDay(t.day));
+            }
+            json.put("currency", t.currency);
+            json.put("count", t.count);
+            json.put("succeeded", t.succeeded);
+            json.put("failed", t.failed);
+            json.put("cancelled", t.cancelled);
+            json.put("timedOut", t.timedOut);
+            json.put("grossAmountMinor", t.grossAmount);
+            json.put("avgTotalMs", t.avgTotalMs);
+            json.put("maxTotalMs", t.maxTotalMs);
+            array.put(json);
+        }
+        if (ret == null) {
+            ret = new JSObject();
+        }
+        ret.put("totals", array);
+        call.resolve(ret);
+    }
+
+    private static JSObject transactionToJson(TransactionJournal.Entry entry) {
+        JSObject json = new JSObject();
+        json.put("id", entry.id);
+        json.put("paymentIntentId", entry.paymentIntentId);
+        json.put("checkoutId", entry.checkoutId);
+        json.put("createdAt", entry.createdAtMs);
+        json.put("day", formatDay(entry.day));
+        json.put("status", entry.status.key);
+        json.put("amountMinor", entry.amount);
+        json.put("currency", entry.currency);
+        json.put("readerSerial", entry.readerSerial);
+        json.put("shiftId", entry.shiftId);
+        json.put("errorCode", entry.errorCode);
+        json.put("errorMessage", entry.errorMessage);
+        JSObject timings = new JSObject();
+        timings.put("intentMs", entry.intentMs);
+        timings.put("collectMs", entry.collectMs);
+        timings.put("confirmMs", entry.confirmMs);
+        timings.put("totalMs", entry.totalMs);
+        json.put("timings", timings);
+        return json;
+    }
+
+    private static String formatDay(int day) {
+        return String.format(Locale.ROOT, "%04d-%02d-%02d", day / 10000, day / 100 % 100, day % 100);
+    }
+
+    private static JSObject hedgingToJson(HedgedCall hedgedCall) {
+        JSObject json = new JSObject();
+        json.put("attempts", hedgedCall.attempts.get());
+        json.put("retries", hedgedCall.retries.get());
+        json.put("hedges", hedgedCall.hedges.get());
+        json.put("hedgeWins", hedgedCall.hedgeWins.get());
+        json.put("hedgeAfterMs", hedgedCall.hedgeDelayMs());
+        return json;
+    }
+
+    private void recordTransaction(CheckoutSession.Checkout checkout, String readerSerial, Throwable error) {
+        TransactionJournal.Entry entry = new TransactionJournal.Entry();
+        entry.paymentIntentId = checkout.paymentIntentId();
+        entry.checkoutId = checkout.id;
+        entry.createdAtMs = System.currentTimeMillis();
+        entry.day = TransactionJournal.dayOf(entry.createdAtMs);
+        entry.amount = checkout.amount;
+        entry.currency = checkout.currency;
+        entry.readerSerial = readerSerial;
+        entry.shiftId = runtime.currentShiftId();
+        entry.intentMs = checkout.stageMillis(CheckoutSession.Stage.PAYMENT_INTENT)
+            + checkout.stageMillis(CheckoutSession.Stage.WAITING_FOR_READER);
+        entry.collectMs = checkout.stageMillis(CheckoutSession.Stage.COLLECTING);
+        entry.confirmMs = checkout.stageMillis(CheckoutSession.Stage.CONFIRMING);
+        entry.totalMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checkout.startNanos);
+        if (error == null) {
+            entry.status = TransactionJournal.Status.SUCCEEDED;
+        } else {
+            TerminalStages.StageException failure = TerminalStages.unwrap(error);
+            Throwable cause = failure.getCause();
+            if (cause instanceof CancellationException) {
+                entry.status = TransactionJournal.Status.CANCELLED;
+            } else if (cause instanceof TimeoutException) {
+                entry.status = TransactionJournal.Status.TIMED_OUT;
+            } else {
+                entry.status = TransactionJournal.Status.FAILED;
+            }
+            entry.errorCode = PaymentMetrics.errorCode(error);
+            entry.errorMessage = failure.getMessage();
+        }
+        journal.record(entry).exceptionally(e -> {
+            PluginLog.e(e, "❌ Failed to journal checkout {}: {}", checkout.id, e.getMessage());
+            return null;
+        });
+        runtime.telemetry.recordCheckout(entry.createdAtMs, entry.status.key, entry.intentMs, entry.collectMs,
+            entry.confirmMs, entry.totalMs, entry.errorCode, readerSerial);
+    }
+
+    private void notifyPaymentStatus(CheckoutSession.Checkout checkout, String status, String message) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("checkoutId", checkout.id);
+        data.put("status", status);
+        data.put("message", message);
+        // Discrete, not latest-wins: a late outcome and the next sale's status can land in one window
+        runtime.events.publish("checkoutStatus", data);
+    }
+
+    /**
+     * One bridge crossing per coalesced frame
+     */
+    private void notifyTerminalEvents(long frameSeq, List<TerminalEventStream.Event> events, long dropped) {
+        JSArray array = new JSArray();
+        for (TerminalEventStream.Event event : events) {
+            JSObject json = new JSObject();
+            json.put("seq", event.seq);
+            json.put("type", event.type);
+            for (Map.Entry<String, Object> field : event.data.entrySet()) {
+                json.put(field.getKey(), field.getValue());
+            }
+            array.put(json);
+        }
+        JSObject ret = new JSObject();
+        ret.put("frame", frameSeq);
+        ret.put("dropped", dropped);
+        ret.put("events", array);
+        notifyListeners("terminalEvents", ret);
+    }
+
+    /**
+     * Tune the terminalEvents stream: coalescing window and ack-based back-pressure
+     */
+    @PluginMethod
+    public void configureEventStream(PluginCall call) {
+        Integer windowMs = call.getInt("windowMs", (int) TerminalEventStream.DEFAULT_WINDOW_MS);
+        Boolean requireAck = call.getBoolean("requireAck", false);
+        if (windowMs < 0) {
+            call.reject("windowMs must not be negative");
+            return;
+        }
+        runtime.events.configure(windowMs, requireAck);
+        call.resolve();
+    }
+
+    /**
+     * Acknowledge a terminalEvents frame (only needed with requireAck)
+     */
+    @PluginMethod
+    public void ackTerminalEvents(PluginCall call) {
+        Long frame = call.getLong("frame");
+        if (frame == null) {
+            call.reject("frame is required");
+            return;
+        }
+        runtime.events.ack(frame);
+        call.resolve();
+    }
+
+    /**
+     * Latest value of every state event (connectionStatus, paymentStatus, readerBattery...)
+     */
+    @PluginMethod
+    public void getTerminalState(PluginCall call) {
+        JSObject ret = new JSObject();
+        for (Map.Entry<String, Map<String, Object>> state : runtime.events.currentStates().entrySet()) {
+            JSObject json = new JSObject();
+            for (Map.Entry<String, Object> field : state.getValue().entrySet()) {
+                json.put(field.getKey(), field.getValue());
+            }
+            ret.put(state.getKey(), json);
+        }
+        call.resolve(ret);
     }
 }
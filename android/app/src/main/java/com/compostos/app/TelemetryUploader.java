@@ -0,0 +1,439 @@
+package com.compostos.app;
+
+import android.content.SharedPreferences;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Buffers compact performance records (checkouts, discovery, reader connects) and uploads
+ * them in gzip batches to a path on the backend, for a fleet-wide view of till latency.
+ *
+ * Records are serialised once when recorded and kept in a bounded buffer
+ * ({@link #MAX_BUFFERED} records / {@link #MAX_BUFFERED_BYTES}); on overflow the oldest are
+ * dropped and counted. A batch goes out once {@link Config#batchSize} records are waiting or
+ * {@link Config#intervalMs} after the first one, capped at {@link #MAX_BATCH_BYTES}, with a
+ * per-kind summary (count, failures, p50/p95/max) computed on the device. Uploads wait while
+ * a payment is in progress, so they never compete with the checkout for the network.
+ */
+final class TelemetryUploader {
+
+    static final String PREF_ENABLED = "telemetryEnabled";
+    static final String PREF_PATH = "telemetryPath";
+    static final String PREF_BATCH_SIZE = "telemetryBatchSize";
+    static final String PREF_INTERVAL_MS = "telemetryIntervalMs";
+
+    static final int MAX_BUFFERED = 2000;
+    static final int MAX_BUFFERED_BYTES = 512 * 1024;
+    // Uncompressed; stays under the backend's JSON body limit
+    static final int MAX_BATCH_BYTES = 64 * 1024;
+    static final long BUSY_RETRY_MS = 5000;
+
+    static final class Config {
+        final boolean enabled;
+        final String path;
+        final int batchSize;
+        final long intervalMs;
+
+        Config(boolean enabled, String path, int batchSize, long intervalMs) {
+            this.enabled = enabled;
+            this.path = path;
+            this.batchSize = batchSize;
+            this.intervalMs = intervalMs;
+        }
+    }
+
+    static final Config DEFAULT_CONFIG = new Config(true, "/telemetry", 200, TimeUnit.MINUTES.toMillis(5));
+
+    static final class Stats {
+        final int buffered;
+        final long uploadedRecords;
+        final long uploadedBatches;
+        final long uploadedBytes;
+        final long dropped;
+        final String lastError;
+
+        Stats(int buffered, long uploadedRecords, long uploadedBatches, long uploadedBytes, long dropped, String lastError) {
+            this.buffered = buffered;
+            this.uploadedRecords = uploadedRecords;
+            this.uploadedBatches = uploadedBatches;
+            this.uploadedBytes = uploadedBytes;
+            this.dropped = dropped;
+            this.lastError = lastError;
+        }
+    }
+
+    private static final class Entry {
+        final String kind;
+        final long millis;
+        final boolean failed;
+        final String json;
+
+        Entry(String kind, long millis, boolean failed, String json) {
+            this.kind = kind;
+            this.millis = millis;
+            this.failed = failed;
+            this.json = json;
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final BackendClient backend;
+    private final Executor io;
+    private final ScheduledExecutorService timer;
+    // Device, app and SDK fields sent with every batch
+    private final Supplier<Map<String, Object>> header;
+    private volatile BooleanSupplier busy = () -> false;
+
+    private final Object lock = new Object();
+    // Guarded by lock, oldest first
+    private final ArrayDeque<Entry> buffer = new ArrayDeque<>();
+    private final AtomicBoolean uploading = new AtomicBoolean(false);
+    private Config config;
+    private int bufferedBytes;
+    private ScheduledFuture<?> scheduled;
+    // Dropped since the last successful upload, reported with the next batch
+    private long droppedUnreported;
+    private long dropped;
+    private long uploadedRecords;
+    private long uploadedBatches;
+    private long uploadedBytes;
+    private String lastError;
+
+    TelemetryUploader(SharedPreferences prefs, BackendClient backend, Executor io, ScheduledExecutorService timer,
+                      Supplier<Map<String, Object>> header) {
+        this.prefs = prefs;
+        this.backend = backend;
+        this.io = io;
+        this.timer = timer;
+        this.header = header;
+        config = new Config(
+            prefs.getBoolean(PREF_ENABLED, DEFAULT_CONFIG.enabled),
+            prefs.getString(PREF_PATH, DEFAULT_CONFIG.path),
+            prefs.getInt(PREF_BATCH_SIZE, DEFAULT_CONFIG.batchSize),
+            prefs.getLong(PREF_INTERVAL_MS, DEFAULT_CONFIG.intervalMs));
+    }
+
+    /**
+     * While this answers true (a payment is running) uploads are postponed.
+     */
+    void setBusy(BooleanSupplier busy) {
+        this.busy = busy;
+    }
+
+    Config config() {
+        synchronized (lock) {
+            return config;
+        }
+    }
+
+    /**
+     * Change the endpoint path, batch bounds or turn uploads off (buffered records are
+     * discarded then); persisted.
+     */
+    void configure(Config next) {
+        if (next.path == null || !next.path.startsWith("/")) {
+            throw new IllegalArgumentException("Telemetry path must start with /");
+        }
+        if (next.batchSize <= 0 || next.intervalMs <= 0) {
+            throw new IllegalArgumentException("Batch size and interval must be positive");
+        }
+        synchronized (lock) {
+            config = next;
+            prefs.edit()
+                .putBoolean(PREF_ENABLED, next.enabled)
+                .putString(PREF_PATH, next.path)
+                .putInt(PREF_BATCH_SIZE, next.batchSize)
+                .putLong(PREF_INTERVAL_MS, next.intervalMs)
+                .apply();
+            cancelTimerLocked();
+            if (!next.enabled) {
+                buffer.clear();
+                bufferedBytes = 0;
+                return;
+            }
+            scheduleLocked(buffer.size() >= next.batchSize ? 0 : next.intervalMs);
+        }
+    }
+
+    /**
+     * One checkout: outcome, per-stage latencies, error code and reader.
+     */
+    void recordCheckout(long atMs, String outcome, long intentMs, long collectMs, long confirmMs, long totalMs,
+                        String errorCode, String readerSerial) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("t", atMs);
+        record.put("kind", "checkout");
+        record.put("outcome", outcome);
+        record.put("ms", totalMs);
+        record.put("intentMs", intentMs);
+        record.put("collectMs", collectMs);
+        record.put("confirmMs", confirmMs);
+        if (errorCode != null) {
+            record.put("err", errorCode);
+        }
+        if (readerSerial != null) {
+            record.put("reader", readerSerial);
+        }
+        add("checkout", totalMs, !"succeeded".equals(outcome), record);
+    }
+
+    /**
+     * A timed stage outside the checkout (discovery, reader connect, bootstrap, capture).
+     */
+    void recordStage(long atMs, String kind, long millis, String errorCode, String readerSerial) {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("t", atMs);
+        record.put("kind", kind);
+        record.put("ms", millis);
+        if (errorCode != null) {
+            record.put("err", errorCode);
+        }
+        if (readerSerial != null) {
+            record.put("reader", readerSerial);
+        }
+        add(kind, millis, errorCode != null, record);
+    }
+
+    /**
+     * Upload what is buffered now instead of waiting for the batch bounds.
+     */
+    void flush() {
+        synchronized (lock) {
+            if (!buffer.isEmpty()) {
+                cancelTimerLocked();
+                scheduleLocked(0);
+            }
+        }
+    }
+
+    Stats stats() {
+        synchronized (lock) {
+            return new Stats(buffer.size(), uploadedRecords, uploadedBatches, uploadedBytes, dropped, lastError);
+        }
+    }
+
+    void close() {
+        synchronized (lock) {
+            cancelTimerLocked();
+        }
+    }
+
+    private void add(String kind, long millis, boolean failed, Map<String, Object> record) {
+        Entry entry = new Entry(kind, millis, failed, BackendJson.write(record));
+        synchronized (lock) {
+            if (!config.enabled) {
+                return;
+            }
+            buffer.addLast(entry);
+            bufferedBytes += entry.json.length();
+            trimLocked();
+            if (buffer.size() >= config.batchSize) {
+                cancelTimerLocked();
+                scheduleLocked(0);
+            } else {
+                scheduleLocked(config.intervalMs);
+            }
+        }
+    }
+
+    private void trimLocked() {
+        while (buffer.size() > MAX_BUFFERED || bufferedBytes > MAX_BUFFERED_BYTES) {
+            Entry oldest = buffer.removeFirst();
+            bufferedBytes -= oldest.json.length();
+            dropped++;
+            droppedUnreported++;
+        }
+    }
+
+    private void scheduleLocked(long delayMs) {
+        if (scheduled != null || buffer.isEmpty() || timer.isShutdown()) {
+            return;
+        }
+        scheduled = timer.schedule(() -> {
+            synchronized (lock) {
+                scheduled = null;
+            }
+            if (!uploading.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                io.execute(this::upload);
+            } catch (RuntimeException e) {
+                // I/O pool saturated: try again on the next interval
+                uploading.set(false);
+                synchronized (lock) {
+                    scheduleLocked(config.intervalMs);
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTimerLocked() {
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            scheduled = null;
+        }
+    }
+
+    private void upload() {
+        try {
+            while (true) {
+                if (busy.getAsBoolean()) {
+                    synchronized (lock) {
+                        scheduleLocked(BUSY_RETRY_MS);
+                    }
+                    return;
+                }
+                List<Entry> batch;
+                String path;
+                long droppedBefore;
+                synchronized (lock) {
+                    if (buffer.isEmpty() || !config.enabled) {
+                        return;
+                    }
+                    path = config.path;
+                    droppedBefore = droppedUnreported;
+                    batch = takeBatchLocked(config.batchSize);
+                }
+
+                byte[] body;
+                try {
+                    body = gzip(encode(batch, droppedBefore));
+                    backend.postGzip(path, body);
+                } catch (IOException e) {
+                    onFailure(batch, e);
+                    return;
+                }
+
+                synchronized (lock) {
+                    uploadedRecords += batch.size();
+                    uploadedBatches++;
+                    uploadedBytes += body.length;
+                    droppedUnreported -= droppedBefore;
+                    lastError = null;
+                    if (buffer.size() < config.batchSize) {
+                        scheduleLocked(config.intervalMs);
+                        PluginLog.d("📈 Uploaded {} telemetry record(s) in {} bytes", batch.size(), body.length);
+                        return;
+                    }
+                }
+            }
+        } finally {
+            uploading.set(false);
+        }
+    }
+
+    private List<Entry> takeBatchLocked(int maxRecords) {
+        List<Entry> batch = new ArrayList<>(Math.min(maxRecords, buffer.size()));
+        int bytes = 0;
+        while (!buffer.isEmpty() && batch.size() < maxRecords) {
+            Entry next = buffer.peekFirst();
+            if (!batch.isEmpty() && bytes + next.json.length() > MAX_BATCH_BYTES) {
+                break;
+            }
+            buffer.removeFirst();
+            bufferedBytes -= next.json.length();
+            bytes += next.json.length();
+            batch.add(next);
+        }
+        return batch;
+    }
+
+    private void onFailure(List<Entry> batch, IOException error) {
+        boolean rejected = error instanceof BackendClient.BackendException
+            && ((BackendClient.BackendException) error).statusCode < 500
+            && ((BackendClient.BackendException) error).statusCode != 408
+            && ((BackendClient.BackendException) error).statusCode != 429;
+        synchronized (lock) {
+            lastError = error.getMessage();
+            if (rejected) {
+                // Endpoint missing or batch refused: sending it again won't help
+                dropped += batch.size();
+                droppedUnreported += batch.size();
+            } else {
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    buffer.addFirst(batch.get(i));
+                    bufferedBytes += batch.get(i).json.length();
+                }
+                trimLocked();
+            }
+            scheduleLocked(config.intervalMs);
+        }
+        PluginLog.w("⚠️ Telemetry upload of {} record(s) failed{}: {}", batch.size(),
+            rejected ? ", dropped" : ", will retry", error.getMessage());
+    }
+
+    /**
+     * {@code {...header, dropped, summary: {kind: {count, failures, p50Ms, p95Ms, maxMs}}, records: [...]}}
+     */
+    private byte[] encode(List<Entry> batch, long droppedBefore) {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        Map<String, long[]> counts = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            LatencyHistogram histogram = latencies.get(entry.kind);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                latencies.put(entry.kind, histogram);
+                counts.put(entry.kind, new long[2]);
+            }
+            histogram.recordMicros(entry.millis * 1000);
+            long[] c = counts.get(entry.kind);
+            c[0]++;
+            if (entry.failed) {
+                c[1]++;
+            }
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (Map.Entry<String, LatencyHistogram> kind : latencies.entrySet()) {
+            LatencyHistogram histogram = kind.getValue();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", counts.get(kind.getKey())[0]);
+            stats.put("failures", counts.get(kind.getKey())[1]);
+            stats.put("p50Ms", histogram.percentileMillis(0.50));
+            stats.put("p95Ms", histogram.percentileMillis(0.95));
+            stats.put("maxMs", histogram.maxMillis());
+            summary.put(kind.getKey(), stats);
+        }
+
+        Map<String, Object> head = new LinkedHashMap<>(header.get());
+        head.put("sentAt", System.currentTimeMillis());
+        head.put("dropped", droppedBefore);
+        head.put("summary", summary);
+        String json = BackendJson.write(head);
+
+        // Records are already JSON: splice them in rather than parsing them back
+        StringBuilder out = new StringBuilder(json.length() + 16 + batch.size() * 160);
+        out.append(json, 0, json.length() - 1).append(",\"records\":[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(batch.get(i).json);
+        }
+        out.append("]}");
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
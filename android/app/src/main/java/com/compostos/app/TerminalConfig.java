@@ -0,0 +1,110 @@
+package com.compostos.app;
+
+import android.content.SharedPreferences;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One immutable set of plugin settings: backend URLs, Stripe Location and simulated mode.
+ *
+ * {@link TerminalRuntime} holds the current snapshot in a volatile field and replaces it
+ * whole, so a discovery, connect or payment reads one consistent configuration with a single
+ * read. Snapshots are persisted and loaded with the runtime, before the WebView has booted.
+ */
+final class TerminalConfig {
+
+    static final String PREF_BACKEND_URL = "backendUrl";
+    static final String PREF_BACKEND_URLS = "backendUrls";
+    static final String PREF_LOCATION_ID = "locationId";
+    static final String PREF_SIMULATED = "simulatedMode";
+    static final String DEFAULT_BACKEND_URL = "http://10.0.2.2:4242"; // 10.0.2.2 is localhost from Android emulator
+    static final String DEFAULT_LOCATION_ID = "tml_test_simulated_location";
+
+    final List<String> backendUrls;
+    // Set through configure; null to use the location from /bootstrap
+    final String locationId;
+    // From the last /bootstrap; not persisted
+    final String bootstrapLocationId;
+    final boolean simulated;
+
+    TerminalConfig(List<String> backendUrls, String locationId, String bootstrapLocationId, boolean simulated) {
+        this.backendUrls = Collections.unmodifiableList(new ArrayList<>(backendUrls));
+        this.locationId = locationId;
+        this.bootstrapLocationId = bootstrapLocationId;
+        this.simulated = simulated;
+    }
+
+    String backendUrl() {
+        return backendUrls.get(0);
+    }
+
+    /**
+     * The Location readers connect to: the configured one, else the bootstrap one.
+     */
+    String effectiveLocationId() {
+        if (locationId != null) {
+            return locationId;
+        }
+        return bootstrapLocationId != null ? bootstrapLocationId : DEFAULT_LOCATION_ID;
+    }
+
+    TerminalConfig withBootstrapLocation(String bootstrapLocationId) {
+        return new TerminalConfig(backendUrls, locationId, bootstrapLocationId, simulated);
+    }
+
+    /**
+     * Throws {@link IllegalArgumentException} naming the first invalid setting.
+     */
+    void validate() {
+        if (backendUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one backend URL is required");
+        }
+        for (String url : backendUrls) {
+            try {
+                URI uri = new URI(url);
+                if (!("http".equals(uri.getScheme()) || "https".equals(uri.getScheme())) || uri.getHost() == null) {
+                    throw new IllegalArgumentException("Backend URL must be http(s)://host[:port]: " + url);
+                }
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid backend URL: " + url);
+            }
+        }
+        if (locationId != null && !locationId.startsWith("tml_")) {
+            throw new IllegalArgumentException("Location ID must start with tml_: " + locationId);
+        }
+    }
+
+    static TerminalConfig load(SharedPreferences prefs) {
+        List<String> urls;
+        String joined = prefs.getString(PREF_BACKEND_URLS, null);
+        if (joined != null && !joined.isEmpty()) {
+            urls = Arrays.asList(joined.split("\n"));
+        } else {
+            urls = Collections.singletonList(prefs.getString(PREF_BACKEND_URL, DEFAULT_BACKEND_URL));
+        }
+        return new TerminalConfig(urls, prefs.getString(PREF_LOCATION_ID, null), null,
+            prefs.getBoolean(PREF_SIMULATED, false));
+    }
+
+    void save(SharedPreferences prefs) {
+        StringBuilder joined = new StringBuilder();
+        for (String url : backendUrls) {
+            joined.append(joined.length() > 0 ? "\n" : "").append(url);
+        }
+        SharedPreferences.Editor editor = prefs.edit()
+            .putString(PREF_BACKEND_URL, backendUrl())
+            .putString(PREF_BACKEND_URLS, joined.toString())
+            .putBoolean(PREF_SIMULATED, simulated);
+        if (locationId != null) {
+            editor.putString(PREF_LOCATION_ID, locationId);
+        } else {
+            editor.remove(PREF_LOCATION_ID);
+        }
+        editor.apply();
+    }
+}
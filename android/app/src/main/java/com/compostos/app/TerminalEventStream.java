@@ -0,0 +1,216 @@
+package com.compostos.app;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One ordered, coalescing channel for Terminal events on their way to JS.
+ *
+ * State events (connection status, payment status, battery...) keep only the latest value
+ * per type and are dropped when unchanged since the last frame. Discrete events
+ * (disconnects, reconnects) are kept in order, dropping the oldest past {@code maxPending}.
+ * Everything published within one window goes out as a single frame; every event carries
+ * a monotonic sequence number. With {@code requireAck} the next frame waits for JS to ack
+ * the previous one (or for the ack timeout), so a busy WebView is sent fewer, larger frames.
+ */
+final class TerminalEventStream {
+
+    static final class Event {
+        final long seq;
+        final String type;
+        final Map<String, Object> data;
+
+        Event(long seq, String type, Map<String, Object> data) {
+            this.seq = seq;
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    interface Sink {
+        void onFrame(long frameSeq, List<Event> events, long dropped);
+    }
+
+    static final long DEFAULT_WINDOW_MS = 50;
+    static final long ACK_TIMEOUT_MS = 2000;
+    private static final int DEFAULT_MAX_PENDING = 256;
+
+    private final ScheduledExecutorService timer;
+    private final int maxPending;
+
+    private final Object lock = new Object();
+    private final Map<String, Event> pendingStates = new LinkedHashMap<>();
+    private final ArrayDeque<Event> pendingEvents = new ArrayDeque<>();
+    // Last state sent per type, to drop no-op updates
+    private final Map<String, Map<String, Object>> sentStates = new HashMap<>();
+    private Sink sink;
+    private long nextSeq = 1;
+    private long nextFrameSeq = 1;
+    private long dropped;
+    private long windowNanos;
+    private boolean requireAck;
+    private long unackedFrame;
+    private long unackedSinceNanos;
+    private long lastFrameNanos;
+    private ScheduledFuture<?> flushTask;
+
+    TerminalEventStream(ScheduledExecutorService timer) {
+        this(timer, DEFAULT_WINDOW_MS, DEFAULT_MAX_PENDING);
+    }
+
+    TerminalEventStream(ScheduledExecutorService timer, long windowMs, int maxPending) {
+        this.timer = timer;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxPending = maxPending;
+        this.lastFrameNanos = System.nanoTime() - windowNanos;
+    }
+
+    /**
+     * Start delivering; events published before a sink is attached are held (states coalesced).
+     */
+    void setSink(Sink sink) {
+        synchronized (lock) {
+            this.sink = sink;
+            unackedFrame = 0;
+        }
+        requestFlush();
+    }
+
+    void configure(long windowMs, boolean requireAck) {
+        synchronized (lock) {
+            this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+            this.requireAck = requireAck;
+            if (!requireAck) {
+                unackedFrame = 0;
+            }
+            cancelFlushLocked();
+        }
+        requestFlush();
+    }
+
+    /**
+     * Latest-wins state; replaces any unsent value of the same type.
+     */
+    void publishState(String type, Map<String, Object> data) {
+        synchronized (lock) {
+            pendingStates.put(type, new Event(nextSeq++, type, data));
+        }
+        requestFlush();
+    }
+
+    /**
+     * Discrete event; kept in order until delivered.
+     */
+    void publish(String type, Map<String, Object> data) {
+        synchronized (lock) {
+            if (pendingEvents.size() >= maxPending) {
+                pendingEvents.removeFirst();
+                dropped++;
+            }
+            pendingEvents.addLast(new Event(nextSeq++, type, data));
+        }
+        requestFlush();
+    }
+
+    /**
+     * JS processed this frame (and everything before it).
+     */
+    void ack(long frameSeq) {
+        synchronized (lock) {
+            if (unackedFrame != 0 && frameSeq >= unackedFrame) {
+                unackedFrame = 0;
+                cancelFlushLocked();
+            }
+        }
+        requestFlush();
+    }
+
+    /**
+     * Latest value of each state type that has been sent, for late subscribers.
+     */
+    Map<String, Map<String, Object>> currentStates() {
+        synchronized (lock) {
+            Map<String, Map<String, Object>> states = new LinkedHashMap<>(sentStates);
+            for (Event event : pendingStates.values()) {
+                states.put(event.type, event.data);
+            }
+            return states;
+        }
+    }
+
+    private void requestFlush() {
+        synchronized (lock) {
+            if (flushTask != null || sink == null || (pendingStates.isEmpty() && pendingEvents.isEmpty())) {
+                return;
+            }
+            long now = System.nanoTime();
+            long delayNanos = lastFrameNanos + windowNanos - now;
+            if (requireAck && unackedFrame != 0) {
+                delayNanos = Math.max(delayNanos, unackedSinceNanos + TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MS) - now);
+            }
+            // Always hop to the timer so publishers (SDK callbacks) never run the sink
+            flushTask = timer.schedule(this::flush, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void cancelFlushLocked() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    private void flush() {
+        Sink target;
+        long frameSeq;
+        long droppedSoFar;
+        List<Event> frame;
+        synchronized (lock) {
+            flushTask = null;
+            target = sink;
+            if (target == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            long ackDeadline = unackedSinceNanos + TimeUnit.MILLISECONDS.toNanos(ACK_TIMEOUT_MS);
+            if (requireAck && unackedFrame != 0 && now < ackDeadline) {
+                // Still waiting on JS; ack() reschedules sooner
+                flushTask = timer.schedule(this::flush, ackDeadline - now, TimeUnit.NANOSECONDS);
+                return;
+            }
+
+            frame = new ArrayList<>(pendingStates.size() + pendingEvents.size());
+            for (Event state : pendingStates.values()) {
+                if (!Objects.equals(sentStates.get(state.type), state.data)) {
+                    sentStates.put(state.type, state.data);
+                    frame.add(state);
+                }
+            }
+            pendingStates.clear();
+            frame.addAll(pendingEvents);
+            pendingEvents.clear();
+            if (frame.isEmpty()) {
+                return;
+            }
+            Collections.sort(frame, (a, b) -> Long.compare(a.seq, b.seq));
+
+            frameSeq = nextFrameSeq++;
+            droppedSoFar = dropped;
+            lastFrameNanos = now;
+            if (requireAck) {
+                unackedFrame = frameSeq;
+                unackedSinceNanos = now;
+            }
+        }
+        target.onFrame(frameSeq, frame, droppedSoFar);
+    }
+}
@@ -0,0 +1,41 @@
+package com.compostos.app;
+
+import android.content.Context;
+
+import com.stripe.stripeterminal.external.callable.Callback;
+import com.stripe.stripeterminal.external.callable.Cancelable;
+import com.stripe.stripeterminal.external.callable.ConnectionTokenProvider;
+import com.stripe.stripeterminal.external.callable.DiscoveryListener;
+import com.stripe.stripeterminal.external.callable.PaymentIntentCallback;
+import com.stripe.stripeterminal.external.callable.ReaderCallback;
+import com.stripe.stripeterminal.external.callable.TerminalListener;
+import com.stripe.stripeterminal.external.models.ConnectionConfiguration;
+import com.stripe.stripeterminal.external.models.DiscoveryConfiguration;
+import com.stripe.stripeterminal.external.models.PaymentIntent;
+import com.stripe.stripeterminal.external.models.Reader;
+import com.stripe.stripeterminal.log.LogLevel;
+
+/**
+ * The subset of the Stripe {@code Terminal} singleton the plugin uses, so it can be faked
+ * in JVM tests, benchmarks and load simulations.
+ */
+interface TerminalGateway {
+
+    boolean isInitialized();
+
+    void init(Context context, LogLevel logLevel, ConnectionTokenProvider tokenProvider, TerminalListener listener);
+
+    Cancelable discoverReaders(DiscoveryConfiguration config, DiscoveryListener listener, Callback callback);
+
+    void connectReader(Reader reader, ConnectionConfiguration config, ReaderCallback callback);
+
+    Reader getConnectedReader();
+
+    void retrievePaymentIntent(String clientSecret, PaymentIntentCallback callback);
+
+    Cancelable collectPaymentMethod(PaymentIntent paymentIntent, PaymentIntentCallback callback);
+
+    void confirmPaymentIntent(PaymentIntent paymentIntent, PaymentIntentCallback callback);
+
+    void cancelPaymentIntent(PaymentIntent paymentIntent, PaymentIntentCallback callback);
+}
@@ -0,0 +1,542 @@
+package com.compostos.app;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.nfc.NfcAdapter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.stripe.stripeterminal.external.callable.TerminalListener;
+import com.stripe.stripeterminal.external.models.ConnectionStatus;
+import com.stripe.stripeterminal.external.models.DisconnectReason;
+import com.stripe.stripeterminal.external.models.PaymentStatus;
+import com.stripe.stripeterminal.external.models.Reader;
+import com.stripe.stripeterminal.log.LogLevel;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Process-wide Terminal state: worker pool, backend client, token cache and the SDK itself.
+ *
+ * It outlives the plugin instance, which is recreated with the Activity while the SDK keeps
+ * the token provider it was initialised with. {@link #prewarm} starts all of this from
+ * {@code Application.onCreate} on a background thread, so {@code initialize()} usually only
+ * has to wait for work that is already done.
+ */
+final class TerminalRuntime {
+
+    static final String PREFS = "stripe_terminal";
+    static final String PREF_PREWARM = "prewarm";
+    static final String PREF_LOG_LEVEL = "logLevel";
+    static final String PREF_BUFFER_LOG_LEVEL = "bufferLogLevel";
+    static final String PREF_SDK_LOG_LEVEL = "sdkLogLevel";
+    static final String PREF_SHIFT_ID = "shiftId";
+    static final String PREF_SHIFT_STARTED_AT = "shiftStartedAt";
+
+    static final class Capabilities {
+        final boolean nfcSupported;
+        final boolean nfcEnabled;
+        final boolean locationGranted;
+
+        Capabilities(boolean nfcSupported, boolean nfcEnabled, boolean locationGranted) {
+            this.nfcSupported = nfcSupported;
+            this.nfcEnabled = nfcEnabled;
+            this.locationGranted = locationGranted;
+        }
+    }
+
+    private static final Object INSTANCE_LOCK = new Object();
+    private static volatile TerminalRuntime instance;
+
+    final Context appContext;
+    final SharedPreferences prefs;
+    final boolean debuggable;
+    final PluginExecutor executor;
+    final BackendClient backendClient;
+    final PaymentMetrics metrics = new PaymentMetrics();
+    final ConnectionTokenCache tokenCache;
+    // Token and PaymentIntent calls, retried and hedged
+    final PaymentBackend paymentBackend;
+    final TerminalGateway terminal = new StripeTerminalGateway();
+    final TerminalStages stages = new TerminalStages(terminal);
+    final ReaderSession readerSession;
+    // Connection, payment, battery and reader events, coalesced on their way to JS
+    final TerminalEventStream events;
+    // Performance records for the fleet view, uploaded in gzip batches
+    final TelemetryUploader telemetry;
+
+    // Startup phase durations in ms, in the order they finished
+    private final Map<String, Long> startupPhases = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final Object initLock = new Object();
+    private CompletableFuture<Void> initFuture;
+    private volatile Capabilities capabilities;
+    private volatile boolean prewarmed;
+    private volatile long firstTokenRequestedAt;
+    // From the battery broadcast; -1 until the first one
+    private volatile int batteryPercent = -1;
+    private volatile boolean charging;
+    // Replaced whole under configLock; read without locking
+    private final Object configLock = new Object();
+    private volatile TerminalConfig config;
+
+    private TerminalRuntime(Context context) {
+        appContext = context.getApplicationContext();
+        prefs = appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        debuggable = (appContext.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        applyLogLevels();
+        CrashBreadcrumbs.open(appContext.getFilesDir());
+        executor = new PluginExecutor();
+        config = TerminalConfig.load(prefs);
+        backendClient = new BackendClient(config.backendUrls);
+        paymentBackend = new PaymentBackend(backendClient, metrics, executor.io(), executor.timer());
+        tokenCache = new ConnectionTokenCache(this::fetchConnectionToken, executor);
+        readerSession = new ReaderSession(prefs, terminal, metrics, executor.timer());
+        events = new TerminalEventStream(executor.timer());
+        telemetry = new TelemetryUploader(prefs, backendClient, executor.io(), executor.timer(), this::telemetryHeader);
+        metrics.setListener(this::onStageSample);
+        readerSession.setListener(new ReaderSession.Listener() {
+            @Override
+            public void onReaderDisconnected(DisconnectReason reason, boolean reconnecting) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("reason", reason.name());
+                data.put("reconnecting", reconnecting);
+                events.publish("readerDisconnected", data);
+            }
+
+            @Override
+            public void onReaderReconnected(Reader reader) {
+                events.publish("readerReconnected", Collections.<String, Object>singletonMap("serialNumber", reader.getSerialNumber()));
+            }
+
+            @Override
+            public void onReconnectFailed(Throwable error, boolean willRetry) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("error", TerminalStages.unwrap(error).getMessage());
+                data.put("willRetry", willRetry);
+                events.publish("readerReconnectFailed", data);
+            }
+        });
+        backendClient.setListener((endpoint, state) -> {
+            if (state == BackendEndpoints.State.OPEN) {
+                PluginLog.w("⚠️ Backend {} failing - switching to {}", endpoint.url, backendClient.getBaseUrl());
+            } else {
+                PluginLog.i("✅ Backend {} healthy again", endpoint.url);
+            }
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("url", endpoint.url);
+            data.put("state", state.name());
+            data.put("activeUrl", backendClient.getBaseUrl());
+            events.publish("backendEndpoint", data);
+        });
+        backendClient.startHealthProbes(executor.io(), executor.timer());
+        registerBatteryReceiver();
+    }
+
+    /**
+     * With Tap to Pay the phone is the reader, so its battery is the reader battery.
+     */
+    private void registerBatteryReceiver() {
+        appContext.registerReceiver(new BroadcastReceiver() {
+            private int lastPercent = -1;
+            private boolean lastCharging;
+
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+                int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+                if (level < 0 || scale <= 0) {
+                    return;
+                }
+                int percent = level * 100 / scale;
+                boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+                batteryPercent = percent;
+                TerminalRuntime.this.charging = charging;
+                // The broadcast fires on every voltage/temperature change; only forward what JS shows
+                if (percent == lastPercent && charging == lastCharging) {
+                    return;
+                }
+                lastPercent = percent;
+                lastCharging = charging;
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("level", percent / 100.0);
+                data.put("charging", charging);
+                events.publishState("readerBattery", data);
+            }
+        }, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    }
+
+    /**
+     * Battery and network state for the maintenance constraints.
+     */
+    MaintenanceScheduler.DeviceState deviceState() {
+        return new MaintenanceScheduler.DeviceState() {
+            @Override
+            public int batteryPercent() {
+                return batteryPercent;
+            }
+
+            @Override
+            public boolean isCharging() {
+                return charging;
+            }
+
+            @Override
+            public boolean isConnected() {
+                NetworkCapabilities caps = networkCapabilities();
+                return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+            }
+
+            @Override
+            public boolean isUnmetered() {
+                NetworkCapabilities caps = networkCapabilities();
+                return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            }
+        };
+    }
+
+    private NetworkCapabilities networkCapabilities() {
+        ConnectivityManager cm = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        Network network = cm != null ? cm.getActiveNetwork() : null;
+        return network != null ? cm.getNetworkCapabilities(network) : null;
+    }
+
+    static TerminalRuntime get(Context context) {
+        TerminalRuntime runtime = instance;
+        if (runtime == null) {
+            synchronized (INSTANCE_LOCK) {
+                runtime = instance;
+                if (runtime == null) {
+                    runtime = new TerminalRuntime(context);
+                    instance = runtime;
+                }
+            }
+        }
+        return runtime;
+    }
+
+    /**
+     * Kick off capability checks, a token prefetch and Terminal init in the background.
+     * Main process only (the application checks); returns immediately. With pre-warm turned
+     * off the runtime isn't built here at all, only when the plugin first needs it.
+     */
+    static void prewarm(Context context, long onCreateStartedAt) {
+        final Context appContext = context.getApplicationContext();
+        final long processStart = android.os.Process.getStartElapsedRealtime();
+        final long delegateDone = SystemClock.elapsedRealtime();
+
+        Thread warmup = new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            if (!appContext.getSharedPreferences(PREFS, Context.MODE_PRIVATE).getBoolean(PREF_PREWARM, true)) {
+                PluginLog.d("⏭️ Terminal pre-warm disabled");
+                return;
+            }
+            long start = SystemClock.elapsedRealtime();
+            TerminalRuntime runtime = get(appContext);
+            runtime.recordPhase("processToApplication", onCreateStartedAt - processStart);
+            runtime.recordPhase("applicationDelegate", delegateDone - onCreateStartedAt);
+            runtime.recordPhase("runtime", SystemClock.elapsedRealtime() - start);
+            runtime.warmUp();
+        }, "StripeTerminal-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
+    }
+
+    private void warmUp() {
+        long start = SystemClock.elapsedRealtime();
+        Capabilities caps = checkCapabilities();
+        recordPhase("capabilities", SystemClock.elapsedRealtime() - start);
+
+        firstTokenRequestedAt = SystemClock.elapsedRealtime();
+        tokenCache.prefetch();
+
+        if (!caps.locationGranted) {
+            // The SDK refuses to init without location access; initialize() retries after the prompt
+            PluginLog.d("⏭️ Skipping Terminal pre-init: location permission not granted yet");
+            return;
+        }
+        prewarmed = true;
+        initializeTerminal().whenComplete((ignored, error) -> {
+            if (error != null) {
+                PluginLog.w("⚠️ Terminal pre-init failed, initialize() will retry: {}", error.getMessage());
+            } else {
+                PluginLog.d("🔥 Terminal pre-warmed in {}ms", SystemClock.elapsedRealtime() - start);
+                reconnectLastReader(start);
+            }
+        });
+    }
+
+    /**
+     * Auto mode: bring back the last reader before JS asks (reconnectLastReader joins this attempt).
+     */
+    private void reconnectLastReader(long startedAt) {
+        if (!readerSession.isAutoReconnect() || readerSession.lastReader() == null) {
+            return;
+        }
+        readerSession.reconnect().whenComplete((reader, error) -> {
+            if (error != null) {
+                PluginLog.w("⚠️ Startup reconnect failed: {}", TerminalStages.unwrap(error).getMessage());
+                return;
+            }
+            recordPhase("readerReconnect", SystemClock.elapsedRealtime() - startedAt);
+            PluginLog.d("✅ Reader {} restored at startup", reader.getSerialNumber());
+        });
+    }
+
+    /**
+     * Initialise the SDK once; concurrent and repeated calls share the same result.
+     * A failed attempt is retried on the next call.
+     */
+    CompletableFuture<Void> initializeTerminal() {
+        CompletableFuture<Void> future;
+        synchronized (initLock) {
+            if (initFuture != null && !initFuture.isCompletedExceptionally()) {
+                return initFuture;
+            }
+            future = new CompletableFuture<>();
+            initFuture = future;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        try {
+            if (!terminal.isInitialized()) {
+                if (firstTokenRequestedAt == 0) {
+                    firstTokenRequestedAt = start;
+                }
+                tokenCache.prefetch();
+
+                // Forward SDK state into the coalesced event stream
+                TerminalListener eventListener = new TerminalListener() {
+                    @Override
+                    public void onConnectionStatusChange(ConnectionStatus status) {
+                        CrashBreadcrumbs.record("connection", status.name(), null);
+                        events.publishState("connectionStatus", Collections.<String, Object>singletonMap("status", status.name()));
+                    }
+
+                    @Override
+                    public void onPaymentStatusChange(PaymentStatus status) {
+                        events.publishState("paymentStatus", Collections.<String, Object>singletonMap("status", status.name()));
+                    }
+                };
+
+                terminal.init(appContext, sdkLogLevel(), tokenCache, eventListener);
+                recordPhase("terminalInit", SystemClock.elapsedRealtime() - start);
+                PluginLog.d("✅ Terminal initialized successfully");
+            }
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    Capabilities checkCapabilities() {
+        NfcAdapter nfc = NfcAdapter.getDefaultAdapter(appContext);
+        boolean location = appContext.checkSelfPermission(Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED
+            || appContext.checkSelfPermission(Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+        Capabilities caps = new Capabilities(nfc != null, nfc != null && nfc.isEnabled(), location);
+        capabilities = caps;
+        return caps;
+    }
+
+    /**
+     * Last capability check, running one now if pre-warm didn't.
+     */
+    Capabilities capabilities() {
+        Capabilities caps = capabilities;
+        return caps != null ? caps : checkCapabilities();
+    }
+
+    boolean isPrewarmed() {
+        return prewarmed;
+    }
+
+    /**
+     * Current settings snapshot; callers read it once per operation.
+     */
+    TerminalConfig config() {
+        return config;
+    }
+
+    /**
+     * Validate, persist and swap in a new snapshot; returns the one it replaced. New backend
+     * URLs take effect immediately and invalidate the cached token. Invalid settings throw
+     * {@link IllegalArgumentException} and change nothing.
+     */
+    TerminalConfig configure(TerminalConfig next) {
+        next.validate();
+        synchronized (configLock) {
+            TerminalConfig previous = config;
+            boolean backendChanged = !previous.backendUrls.equals(next.backendUrls);
+            if (!backendChanged) {
+                // A bootstrap location stays valid while the backend does
+                next = next.withBootstrapLocation(previous.bootstrapLocationId);
+            }
+            next.save(prefs);
+            config = next;
+            if (backendChanged) {
+                backendClient.setBaseUrls(next.backendUrls);
+                tokenCache.invalidate();
+            }
+            return previous;
+        }
+    }
+
+    /**
+     * Location the backend reported at bootstrap; used while none is configured.
+     */
+    void setBootstrapLocation(String locationId) {
+        synchronized (configLock) {
+            config = config.withBootstrapLocation(locationId);
+        }
+    }
+
+    void setPrewarmEnabled(boolean enabled) {
+        prefs.edit().putBoolean(PREF_PREWARM, enabled).apply();
+    }
+
+    /**
+     * Shift that new journal entries are filed under; null outside a shift.
+     */
+    String currentShiftId() {
+        return prefs.getString(PREF_SHIFT_ID, null);
+    }
+
+    long shiftStartedAt() {
+        return prefs.getLong(PREF_SHIFT_STARTED_AT, 0);
+    }
+
+    void startShift(String shiftId, long startedAtMs) {
+        prefs.edit()
+            .putString(PREF_SHIFT_ID, shiftId)
+            .putLong(PREF_SHIFT_STARTED_AT, startedAtMs)
+            .apply();
+    }
+
+    void endShift() {
+        prefs.edit().remove(PREF_SHIFT_ID).remove(PREF_SHIFT_STARTED_AT).apply();
+    }
+
+    /**
+     * Stages outside the checkout go to telemetry as they happen; checkouts are recorded by
+     * the plugin with all their stages at once.
+     */
+    private void onStageSample(PaymentMetrics.Stage stage, long elapsedNanos, String errorCode) {
+        switch (stage) {
+            case DISCOVERY:
+            case CONNECT_READER:
+            case BOOTSTRAP:
+            case CAPTURE:
+                ReaderSession.LastReader reader = readerSession.lastReader();
+                telemetry.recordStage(System.currentTimeMillis(), stage.key, elapsedNanos / 1_000_000, errorCode,
+                    stage == PaymentMetrics.Stage.CONNECT_READER && reader != null ? reader.serialNumber : null);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Map<String, Object> telemetryHeader() {
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("device", Build.MODEL);
+        header.put("androidSdk", Build.VERSION.SDK_INT);
+        header.put("appVersion", BuildConfig.VERSION_NAME);
+        header.put("sdkVersion", BuildConfig.STRIPE_TERMINAL_VERSION);
+        ReaderSession.LastReader reader = readerSession.lastReader();
+        header.put("locationId", reader != null ? reader.locationId : null);
+        header.put("shiftId", currentShiftId());
+        return header;
+    }
+
+    /**
+     * Plugin log levels: logcat is quiet in release builds, the in-memory buffer keeps DEBUG.
+     */
+    private void applyLogLevels() {
+        PluginLog.setLogcatLevel(logLevel(PREF_LOG_LEVEL, debuggable ? PluginLog.Level.DEBUG : PluginLog.Level.WARN));
+        PluginLog.setRingLevel(logLevel(PREF_BUFFER_LOG_LEVEL, PluginLog.Level.DEBUG));
+    }
+
+    private PluginLog.Level logLevel(String key, PluginLog.Level fallback) {
+        String name = prefs.getString(key, null);
+        if (name != null) {
+            try {
+                return PluginLog.Level.valueOf(name);
+            } catch (IllegalArgumentException ignored) {
+                // Stale value from an older build
+            }
+        }
+        return fallback;
+    }
+
+    void setLogLevels(PluginLog.Level logcat, PluginLog.Level buffer) {
+        SharedPreferences.Editor editor = prefs.edit();
+        if (logcat != null) {
+            editor.putString(PREF_LOG_LEVEL, logcat.name());
+        }
+        if (buffer != null) {
+            editor.putString(PREF_BUFFER_LOG_LEVEL, buffer.name());
+        }
+        editor.apply();
+        applyLogLevels();
+    }
+
+    /**
+     * Stripe SDK log level; it is fixed at Terminal.init, so a change applies from the next launch.
+     */
+    LogLevel sdkLogLevel() {
+        String name = prefs.getString(PREF_SDK_LOG_LEVEL, null);
+        if (name != null) {
+            try {
+                return LogLevel.valueOf(name);
+            } catch (IllegalArgumentException ignored) {
+                // Level not offered by this SDK version
+            }
+        }
+        return debuggable ? LogLevel.VERBOSE : LogLevel.NONE;
+    }
+
+    void setSdkLogLevel(LogLevel level) {
+        prefs.edit().putString(PREF_SDK_LOG_LEVEL, level.name()).apply();
+    }
+
+    void recordPhase(String phase, long millis) {
+        startupPhases.put(phase, millis);
+    }
+
+    Map<String, Long> startupPhases() {
+        synchronized (startupPhases) {
+            return new LinkedHashMap<>(startupPhases);
+        }
+    }
+
+    /**
+     * Fetch connection token from backend server (see {@link PaymentBackend#fetchConnectionToken}).
+     */
+    private CompletableFuture<String> fetchConnectionToken() {
+        PluginLog.d("🔑 Fetching connection token from: {}/connection_token", backendClient.getBaseUrl());
+
+        return paymentBackend.fetchConnectionToken().whenComplete((secret, error) -> {
+            if (error != null) {
+                return;
+            }
+            long requestedAt = firstTokenRequestedAt;
+            if (requestedAt != 0 && !startupPhases.containsKey("firstToken")) {
+                recordPhase("firstToken", SystemClock.elapsedRealtime() - requestedAt);
+            }
+            PluginLog.d("✅ Got connection token from backend");
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.compostos.app;
+
+import com.stripe.stripeterminal.external.callable.Cancelable;
+import com.stripe.stripeterminal.external.callable.PaymentIntentCallback;
+import com.stripe.stripeterminal.external.models.PaymentIntent;
+import com.stripe.stripeterminal.external.models.TerminalException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * CompletableFuture adapters over {@link TerminalGateway} for the payment flow, so
+ * fetch → retrieve → collect → confirm can be written as one stage chain instead of nested callbacks.
+ *
+ * Every failure is wrapped in a {@link StageException} that carries the user-facing message
+ * prefix of the stage that failed.
+ */
+final class TerminalStages {
+
+    private final TerminalGateway terminal;
+
+    TerminalStages(TerminalGateway terminal) {
+        this.terminal = terminal;
+    }
+
+    /**
+     * Run blocking work (e.g. a backend call) on the given executor.
+     */
+    static <T> CompletableFuture<T> supply(String failurePrefix, Callable<T> work, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(work.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(new StageException(failurePrefix, e));
+                }
+            });
+        } catch (RuntimeException e) {
+            // Pool saturated or shut down
+            future.completeExceptionally(new StageException(failurePrefix, e));
+        }
+        return future;
+    }
+
+    CompletableFuture<PaymentIntent> retrievePaymentIntent(String clientSecret) {
+        CompletableFuture<PaymentIntent> future = new CompletableFuture<>();
+        terminal.retrievePaymentIntent(clientSecret, callback("Failed to retrieve payment", future));
+        return future;
+    }
+
+    /**
+     * Collect, handing the SDK's {@link Cancelable} to {@code started} so the wait for a card
+     * can be aborted.
+     */
+    CompletableFuture<PaymentIntent> collectPaymentMethod(PaymentIntent paymentIntent, Consumer<Cancelable> started) {
+        CompletableFuture<PaymentIntent> future = new CompletableFuture<>();
+        Cancelable cancelable = terminal.collectPaymentMethod(paymentIntent, callback("Card collection failed", future));
+        started.accept(cancelable);
+        return future;
+    }
+
+    CompletableFuture<PaymentIntent> confirmPaymentIntent(PaymentIntent paymentIntent) {
+        CompletableFuture<PaymentIntent> future = new CompletableFuture<>();
+        terminal.confirmPaymentIntent(paymentIntent, callback("Payment confirmation failed", future));
+        return future;
+    }
+
+    CompletableFuture<PaymentIntent> cancelPaymentIntent(PaymentIntent paymentIntent) {
+        CompletableFuture<PaymentIntent> future = new CompletableFuture<>();
+        terminal.cancelPaymentIntent(paymentIntent, callback("Failed to cancel payment", future));
+        return future;
+    }
+
+    /**
+     * Unwrap the {@link StageException} behind a failed chain.
+     */
+    static StageException unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof StageException) {
+            return (StageException) cause;
+        }
+        return new StageException("Payment failed", cause);
+    }
+
+    private static PaymentIntentCallback callback(String failurePrefix, CompletableFuture<PaymentIntent> future) {
+        return new PaymentIntentCallback() {
+            @Override
+            public void onSuccess(PaymentIntent paymentIntent) {
+                future.complete(paymentIntent);
+            }
+
+            @Override
+            public void onFailure(TerminalException e) {
+                future.completeExceptionally(new StageException(failurePrefix, e));
+            }
+        };
+    }
+
+    static final class StageException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final String failurePrefix;
+
+        StageException(String failurePrefix, Throwable cause) {
+            super(failurePrefix + ": " + cause.getMessage(), cause);
+            this.failurePrefix = failurePrefix;
+        }
+
+        /**
+         * The original exception, for {@code call.reject(message, exception)}.
+         */
+        Exception exception() {
+            Throwable cause = getCause();
+            return cause instanceof Exception ? (Exception) cause : this;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.compostos.app;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device record of every checkout outcome (intent, amount, reader, stage timings,
+ * status), kept in SQLite so reports never parse the whole history in the WebView.
+ *
+ * Rows are indexed by time, status + time, business day and shift: paged history reads one
+ * page of rows, day and shift totals are one aggregate query each. Writes and queries run
+ * in order on one journal thread, away from the bridge and the payment path.
+ */
+final class TransactionJournal {
+
+    enum Status {
+        SUCCEEDED,
+        FAILED,
+        CANCELLED,
+        TIMED_OUT;
+
+        final String key = name().toLowerCase(Locale.ROOT);
+
+        static Status fromKey(String key) {
+            for (Status status : values()) {
+                if (status.key.equals(key)) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("Unknown status: " + key);
+        }
+    }
+
+    static final class Entry {
+        long id;
+        String paymentIntentId;
+        long checkoutId;
+        long createdAtMs;
+        // Local business day, yyyyMMdd
+        int day;
+        Status status;
+        long amount;
+        String currency;
+        String readerSerial;
+        String shiftId;
+        String errorCode;
+        String errorMessage;
+        long intentMs;
+        long collectMs;
+        long confirmMs;
+        long totalMs;
+    }
+
+    static final class Query {
+        long fromMs = 0;
+        long toMs = Long.MAX_VALUE;
+        Status status;
+        String shiftId;
+        // From the previous page; null for the newest rows
+        String cursor;
+        int limit = 50;
+    }
+
+    static final class Page {
+        final List<Entry> entries;
+        final String nextCursor;
+
+        Page(List<Entry> entries, String nextCursor) {
+            this.entries = entries;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    /**
+     * Totals for one day (or shift) and currency; amounts in minor units.
+     */
+    static final class Totals {
+        int day;
+        String currency;
+        long count;
+        long succeeded;
+        long failed;
+        long cancelled;
+        long timedOut;
+        long grossAmount;
+        long avgTotalMs;
+        long maxTotalMs;
+    }
+
+    static final int MAX_PAGE_SIZE = 500;
+
+    private static final String DB_NAME = "stripe_transactions.db";
+    private static final int DB_VERSION = 1;
+    private static final String TABLE = "transactions";
+    private static final String COLUMNS = "id, payment_intent_id, checkout_id, created_at, day, status, amount, currency,"
+        + " reader_serial, shift_id, error_code, error_message, intent_ms, collect_ms, confirm_ms, total_ms";
+    private static final String TOTALS = "COUNT(*),"
+        + " SUM(status = 'succeeded'), SUM(status = 'failed'), SUM(status = 'cancelled'), SUM(status = 'timed_out'),"
+        + " SUM(CASE WHEN status = 'succeeded' THEN amount ELSE 0 END), AVG(total_ms), MAX(total_ms)";
+
+    private static final class Helper extends SQLiteOpenHelper {
+        Helper(Context context) {
+            super(context, DB_NAME, null, DB_VERSION);
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT,"
+                + " payment_intent_id TEXT,"
+                + " checkout_id INTEGER NOT NULL,"
+                + " created_at INTEGER NOT NULL,"
+                + " day INTEGER NOT NULL,"
+                + " status TEXT NOT NULL,"
+                + " amount INTEGER NOT NULL,"
+                + " currency TEXT NOT NULL,"
+                + " reader_serial TEXT,"
+                + " shift_id TEXT,"
+                + " error_code TEXT,"
+                + " error_message TEXT,"
+                + " intent_ms INTEGER NOT NULL,"
+                + " collect_ms INTEGER NOT NULL,"
+                + " confirm_ms INTEGER NOT NULL,"
+                + " total_ms INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX idx_transactions_created ON " + TABLE + " (created_at)");
+            db.execSQL("CREATE INDEX idx_transactions_status ON " + TABLE + " (status, created_at)");
+            db.execSQL("CREATE INDEX idx_transactions_day ON " + TABLE + " (day)");
+            db.execSQL("CREATE INDEX idx_transactions_shift ON " + TABLE + " (shift_id, created_at)");
+            db.execSQL("CREATE INDEX idx_transactions_intent ON " + TABLE + " (payment_intent_id)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // First version
+        }
+    }
+
+    private final Helper helper;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "StripeTerminal-journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    TransactionJournal(Context context) {
+        helper = new Helper(context.getApplicationContext());
+    }
+
+    /**
+     * yyyyMMdd of the given time on the device's calendar.
+     */
+    static int dayOf(long timeMs) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getDefault());
+        calendar.setTimeInMillis(timeMs);
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100 + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    CompletableFuture<Long> record(Entry entry) {
+        return CompletableFuture.supplyAsync(() -> {
+            ContentValues values = new ContentValues();
+            values.put("payment_intent_id", entry.paymentIntentId);
+            values.put("checkout_id", entry.checkoutId);
+            values.put("created_at", entry.createdAtMs);
+            values.put("day", entry.day);
+            values.put("status", entry.status.key);
+            values.put("amount", entry.amount);
+            values.put("currency", entry.currency);
+            values.put("reader_serial", entry.readerSerial);
+            values.put("shift_id", entry.shiftId);
+            values.put("error_code", entry.errorCode);
+            values.put("error_message", entry.errorMessage);
+            values.put("intent_ms", entry.intentMs);
+            values.put("collect_ms", entry.collectMs);
+            values.put("confirm_ms", entry.confirmMs);
+            values.put("total_ms", entry.totalMs);
+            return helper.getWritableDatabase().insert(TABLE, null, values);
+        }, thread);
+    }
+
+    /**
+     * Correct the outcome of an intent (e.g. a confirm that finished after its deadline).
+     */
+    CompletableFuture<Integer> updateStatus(String paymentIntentId, Status status) {
+        return CompletableFuture.supplyAsync(() -> {
+            ContentValues values = new ContentValues();
+            values.put("status", status.key);
+            return helper.getWritableDatabase().update(TABLE, values, "payment_intent_id = ?", new String[] {paymentIntentId});
+        }, thread);
+    }
+
+    /**
+     * Newest first; pass {@link Page#nextCursor} back for the following page.
+     */
+    CompletableFuture<Page> page(Query query) {
+        return CompletableFuture.supplyAsync(() -> {
+            int limit = Math.max(1, Math.min(MAX_PAGE_SIZE, query.limit));
+            StringBuilder where = new StringBuilder("created_at >= ? AND created_at < ?");
+            List<String> args = new ArrayList<>();
+            args.add(Long.toString(query.fromMs));
+            args.add(Long.toString(query.toMs));
+            if (query.status != null) {
+                where.append(" AND status = ?");
+                args.add(query.status.key);
+            }
+            if (query.shiftId != null) {
+                where.append(" AND shift_id = ?");
+                args.add(query.shiftId);
+            }
+            if (query.cursor != null) {
+                long[] position = parseCursor(query.cursor);
+                where.append(" AND (created_at < ? OR (created_at = ? AND id < ?))");
+                args.add(Long.toString(position[0]));
+                args.add(Long.toString(position[0]));
+                args.add(Long.toString(position[1]));
+            }
+            String sql = "SELECT " + COLUMNS + " FROM " + TABLE + " WHERE " + where
+                + " ORDER BY created_at DESC, id DESC LIMIT " + (limit + 1);
+
+            List<Entry> entries = new ArrayList<>(limit);
+            boolean more = false;
+            try (Cursor cursor = helper.getReadableDatabase().rawQuery(sql, args.toArray(new String[0]))) {
+                while (cursor.moveToNext()) {
+                    if (entries.size() == limit) {
+                        more = true;
+                        break;
+                    }
+                    entries.add(readEntry(cursor));
+                }
+            }
+            String next = null;
+            if (more) {
+                Entry last = entries.get(entries.size() - 1);
+                next = last.createdAtMs + ":" + last.id;
+            }
+            return new Page(entries, next);
+        }, thread);
+    }
+
+    /**
+     * Per-day, per-currency totals for business days {@code fromDay..toDay} (yyyyMMdd).
+     */
+    CompletableFuture<List<Totals>> dailyTotals(int fromDay, int toDay) {
+        return CompletableFuture.supplyAsync(() -> totals(
+            "SELECT day, currency, " + TOTALS + " FROM " + TABLE
+                + " WHERE day BETWEEN ? AND ? GROUP BY day, currency ORDER BY day, currency",
+            new String[] {Integer.toString(fromDay), Integer.toString(toDay)}), thread);
+    }
+
+    /**
+     * Per-currency totals for one shift.
+     */
+    CompletableFuture<List<Totals>> shiftTotals(String shiftId) {
+        return CompletableFuture.supplyAsync(() -> totals(
+            "SELECT 0, currency, " + TOTALS + " FROM " + TABLE
+                + " WHERE shift_id = ? GROUP BY currency ORDER BY currency",
+            new String[] {shiftId}), thread);
+    }
+
+    void close() {
+        thread.execute(helper::close);
+        thread.shutdown();
+    }
+
+    private List<Totals> totals(String sql, String[] args) {
+        List<Totals> list = new ArrayList<>();
+        try (Cursor cursor = helper.getReadableDatabase().rawQuery(sql, args)) {
+            while (cursor.moveToNext()) {
+                Totals totals = new Totals();
+                totals.day = cursor.getInt(0);
+                totals.currency = cursor.getString(1);
+                totals.count = cursor.getLong(2);
+                totals.succeeded = cursor.getLong(3);
+                totals.failed = cursor.getLong(4);
+                totals.cancelled = cursor.getLong(5);
+                totals.timedOut = cursor.getLong(6);
+                totals.grossAmount = cursor.getLong(7);
+                totals.avgTotalMs = Math.round(cursor.getDouble(8));
+                totals.maxTotalMs = cursor.getLong(9);
+                list.add(totals);
+            }
+        }
+        return list.isEmpty() ? Collections.<Totals>emptyList() : list;
+    }
+
+    private static Entry readEntry(Cursor cursor) {
+        Entry entry = new Entry();
+        entry.id = cursor.getLong(0);
+        entry.paymentIntentId = cursor.getString(1);
+        entry.checkoutId = cursor.getLong(2);
+        entry.createdAtMs = cursor.getLong(3);
+        entry.day = cursor.getInt(4);
+        entry.status = Status.fromKey(cursor.getString(5));
+        entry.amount = cursor.getLong(6);
+        entry.currency = cursor.getString(7);
+        entry.readerSerial = cursor.getString(8);
+        entry.shiftId = cursor.getString(9);
+        entry.errorCode = cursor.getString(10);
+        entry.errorMessage = cursor.getString(11);
+        entry.intentMs = cursor.getLong(12);
+        entry.collectMs = cursor.getLong(13);
+        entry.confirmMs = cursor.getLong(14);
+        entry.totalMs = cursor.getLong(15);
+        return entry;
+    }
+
+    private static long[] parseCursor(String cursor) {
+        int colon = cursor.indexOf(':');
+        try {
+            return new long[] {Long.parseLong(cursor.substring(0, colon)), Long.parseLong(cursor.substring(colon + 1))};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
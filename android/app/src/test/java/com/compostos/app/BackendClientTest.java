@@ -0,0 +1,221 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs {@link BackendClient} against a local stand-in for the register backend.
+ */
+public class BackendClientTest {
+
+    private HttpServer server;
+    private BackendClient client;
+    private volatile String lastRequestBody;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/connection_token", exchange -> {
+            lastRequestBody = readAll(exchange.getRequestBody());
+            respond(exchange, 200, "{\"secret\":\"pst_test_123\"}", false);
+        });
+        server.createContext("/create_payment_intent", exchange -> {
+            lastRequestBody = readAll(exchange.getRequestBody());
+            boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            respond(exchange, 200, "{\"client_secret\":\"pi_1_secret_x\",\"id\":\"pi_1\",\"meta\":{\"tags\":[1,2.5,true,null]}}", gzip);
+        });
+        server.createContext("/broken", exchange -> {
+            readAll(exchange.getRequestBody());
+            respond(exchange, 500, "{\"error\":\"No such key\"}", false);
+        });
+        server.createContext("/slow", exchange -> {
+            readAll(exchange.getRequestBody());
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "{}", false);
+        });
+        server.start();
+        client = new BackendClient("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void postsJsonAndDecodesResponse() throws IOException {
+        Map<String, Object> body = new HashMap<>();
+        body.put("amount", 2500L);
+        Map<String, Object> json = client.post("/connection_token", body);
+
+        assertEquals("pst_test_123", BackendJson.getString(json, "secret"));
+        assertEquals("{\"amount\":2500}", lastRequestBody);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void decodesGzipAndNestedValues() throws IOException {
+        Map<String, Object> json = client.post("/create_payment_intent", new HashMap<String, Object>());
+
+        assertEquals("pi_1_secret_x", json.get("client_secret"));
+        List<Object> tags = (List<Object>) ((Map<String, Object>) json.get("meta")).get("tags");
+        assertEquals(1L, tags.get(0));
+        assertEquals(2.5, (Double) tags.get(1), 0.0);
+        assertEquals(Boolean.TRUE, tags.get(2));
+        assertNull(tags.get(3));
+    }
+
+    @Test
+    public void surfacesStatusAndErrorDetail() {
+        try {
+            client.post("/broken", new HashMap<String, Object>());
+            fail("Expected BackendException");
+        } catch (BackendClient.BackendException e) {
+            assertEquals(500, e.statusCode);
+            assertEquals("Backend returned 500 (No such key)", e.getMessage());
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+    }
+
+    @Test
+    public void honoursPerEndpointReadTimeout() {
+        client.setTimeouts("/slow", 1000, 200);
+        try {
+            client.post("/slow", new HashMap<String, Object>());
+            fail("Expected timeout");
+        } catch (SocketTimeoutException expected) {
+            // deadline applied
+        } catch (IOException e) {
+            fail("Unexpected " + e);
+        }
+    }
+
+    @Test
+    public void failsOverWhenAnEndpointRefusesConnections() throws IOException {
+        String live = "http://127.0.0.1:" + server.getAddress().getPort();
+        BackendClient failover = new BackendClient(Arrays.asList(unusedUrl(), live));
+
+        for (int i = 0; i < BackendEndpoints.FAILURES_TO_OPEN; i++) {
+            Map<String, Object> json = failover.post("/connection_token", new HashMap<String, Object>());
+            assertEquals("pst_test_123", BackendJson.getString(json, "secret"));
+        }
+        BackendEndpoints.Endpoint dead = failover.endpoints().all().get(0);
+        assertEquals(BackendEndpoints.State.OPEN, dead.state());
+        assertEquals(live, failover.getBaseUrl());
+    }
+
+    @Test
+    public void serverErrorsOpenTheCircuitButClientErrorsDoNot() {
+        for (int i = 0; i < BackendEndpoints.FAILURES_TO_OPEN; i++) {
+            try {
+                client.post("/broken", new HashMap<String, Object>());
+                fail("Expected BackendException");
+            } catch (IOException expected) {
+                // 500
+            }
+        }
+        assertEquals(BackendEndpoints.State.OPEN, client.endpoints().all().get(0).state());
+
+        BackendEndpoints.Endpoint endpoint = new BackendEndpoints.Endpoint("http://x", 0);
+        endpoint.recordFailure(System.nanoTime());
+        endpoint.recordSuccess();
+        endpoint.recordFailure(System.nanoTime());
+        endpoint.recordFailure(System.nanoTime());
+        assertEquals(BackendEndpoints.State.CLOSED, endpoint.state());
+    }
+
+    @Test
+    public void prefersClearlyFasterEndpointAndClosesOnHealthyProbe() {
+        BackendEndpoints endpoints = new BackendEndpoints(Arrays.asList("http://cloud", "http://lan"));
+        BackendEndpoints.Endpoint cloud = endpoints.all().get(0);
+        BackendEndpoints.Endpoint lan = endpoints.all().get(1);
+        long now = System.nanoTime();
+
+        assertTrue(cloud.startProbe(now, true));
+        cloud.finishProbe(now, 100_000_000L, true);
+        assertTrue(lan.startProbe(now, true));
+        lan.finishProbe(now, 90_000_000L, true);
+        assertSame(cloud, endpoints.current()); // not faster by enough to switch
+
+        assertTrue(lan.startProbe(now + 31_000_000_000L, true));
+        lan.finishProbe(now, 5_000_000L, true);
+        assertSame(lan, endpoints.current());
+
+        for (int i = 0; i < BackendEndpoints.FAILURES_TO_OPEN; i++) {
+            lan.recordFailure(now);
+        }
+        assertSame(cloud, endpoints.current());
+        assertFalse(lan.startProbe(now, true)); // still cooling down
+        long afterCooldown = now + BackendEndpoints.INITIAL_OPEN_MS * 1_000_000L;
+        assertTrue(lan.startProbe(afterCooldown, true));
+        assertTrue(lan.finishProbe(afterCooldown, 5_000_000L, true));
+        assertEquals(BackendEndpoints.State.CLOSED, lan.state());
+    }
+
+    @Test
+    public void rejectsMalformedJson() {
+        try {
+            BackendJson.readObject("{\"secret\": ");
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Malformed backend JSON"));
+        }
+    }
+
+    private static String unusedUrl() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, int status, String body, boolean gzip) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                out.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
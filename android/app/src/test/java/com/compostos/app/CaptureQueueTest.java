@@ -0,0 +1,141 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manual-capture batching through {@link CaptureQueue} and {@link PaymentBackend} against
+ * {@link StubBackendServer}.
+ */
+public class CaptureQueueTest {
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private StubBackendServer server;
+    private ExecutorService io;
+    private ScheduledExecutorService timer;
+    private PaymentBackend backend;
+    private InMemoryPreferences prefs;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubBackendServer();
+        io = Executors.newCachedThreadPool();
+        timer = Executors.newSingleThreadScheduledExecutor();
+        backend = new PaymentBackend(new BackendClient(server.baseUrl()), new PaymentMetrics(), io, timer);
+        prefs = new InMemoryPreferences();
+    }
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+        io.shutdownNow();
+        server.stop();
+    }
+
+    @Test
+    public void capturesAFullBatchInOneCallWithAResultPerIntent() throws Exception {
+        server.uncapturable.add("pi_2");
+        CaptureQueue queue = newQueue(new CaptureQueue.Policy(3, HOUR_MS));
+        LinkedBlockingQueue<List<CaptureQueue.Result>> flushes = new LinkedBlockingQueue<>();
+        queue.setListener(flushes::add);
+
+        for (int i = 1; i <= 3; i++) {
+            queue.add(pending("pi_" + i));
+        }
+        List<CaptureQueue.Result> results = flushes.poll(5, TimeUnit.SECONDS);
+
+        assertNotNull("Reaching the batch size starts a flush", results);
+        assertEquals(3, results.size());
+        assertEquals(CaptureQueue.Status.CAPTURED, results.get(0).status);
+        assertEquals(CaptureQueue.Status.FAILED, results.get(1).status);
+        assertEquals("Authorization expired", results.get(1).error);
+        assertEquals(CaptureQueue.Status.CAPTURED, results.get(2).status);
+        assertEquals(1, server.captureRequests.get());
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    public void keepsIntentsAcrossRestartsUntilTheBackendAnswers() throws Exception {
+        CaptureQueue queue = newQueue(new CaptureQueue.Policy(10, HOUR_MS));
+        queue.add(pending("pi_1"));
+        queue.add(pending("pi_2"));
+
+        queue.add(new CaptureQueue.Pending("pi_old", 2500, "czk",
+            System.currentTimeMillis() - CaptureQueue.AUTHORIZATION_TTL_MS - HOUR_MS));
+
+        server.failureRate = 1;
+        List<CaptureQueue.Result> failed = queue.flush().get(5, TimeUnit.SECONDS);
+        assertEquals(CaptureQueue.Status.PENDING, failed.get(0).status);
+        assertEquals(CaptureQueue.Status.PENDING, failed.get(1).status);
+        // Only an expired authorization is given up on when the backend can't be reached
+        assertEquals(CaptureQueue.Status.FAILED, failed.get(2).status);
+        queue.close();
+
+        // A new process reads the queue back from preferences
+        server.failureRate = 0;
+        CaptureQueue restarted = newQueue(new CaptureQueue.Policy(10, HOUR_MS));
+        assertEquals(2, restarted.pendingCount());
+        assertEquals(1, restarted.pending().get(0).attempts);
+        assertEquals("pi_1", restarted.pending().get(0).paymentIntentId);
+
+        List<CaptureQueue.Result> results = restarted.flush().get(5, TimeUnit.SECONDS);
+        assertEquals(2, results.size());
+        assertEquals(CaptureQueue.Status.CAPTURED, results.get(1).status);
+        assertTrue(server.captured.contains("pi_2"));
+        assertEquals(0, newQueue(new CaptureQueue.Policy(10, HOUR_MS)).pendingCount());
+    }
+
+    @Test
+    public void flushesOnTheTimer() throws Exception {
+        CaptureQueue queue = newQueue(new CaptureQueue.Policy(10, 50));
+        LinkedBlockingQueue<List<CaptureQueue.Result>> flushes = new LinkedBlockingQueue<>();
+        queue.setListener(flushes::add);
+
+        queue.add(pending("pi_1"));
+
+        List<CaptureQueue.Result> results = flushes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(results);
+        assertEquals(CaptureQueue.Status.CAPTURED, results.get(0).status);
+    }
+
+    @Test
+    public void capturesOneByOneOnBackendsWithoutTheBatchEndpoint() throws Exception {
+        server.batchCapture = false;
+        server.uncapturable.add("pi_3");
+        CaptureQueue queue = newQueue(new CaptureQueue.Policy(10, HOUR_MS));
+        for (int i = 1; i <= 3; i++) {
+            queue.add(pending("pi_" + i));
+        }
+
+        List<CaptureQueue.Result> results = queue.flush().get(5, TimeUnit.SECONDS);
+
+        assertEquals(CaptureQueue.Status.CAPTURED, results.get(0).status);
+        assertEquals(CaptureQueue.Status.CAPTURED, results.get(1).status);
+        // A 500 from the single endpoint could be transient, so it is retried later
+        assertEquals(CaptureQueue.Status.PENDING, results.get(2).status);
+        assertEquals(3, server.captureRequests.get());
+        assertEquals(1, queue.pendingCount());
+    }
+
+    private CaptureQueue newQueue(CaptureQueue.Policy policy) {
+        CaptureQueue queue = new CaptureQueue(prefs, backend::capturePaymentIntents, io, timer);
+        queue.configure(true, policy);
+        return queue;
+    }
+
+    private static CaptureQueue.Pending pending(String paymentIntentId) {
+        return new CaptureQueue.Pending(paymentIntentId, 2500, "czk", System.currentTimeMillis());
+    }
+}
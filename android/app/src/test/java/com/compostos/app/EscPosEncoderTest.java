@@ -0,0 +1,147 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte-level output of {@link EscPosEncoder}, {@link RasterImage} and {@link ReceiptEncoder}.
+ */
+public class EscPosEncoderTest {
+
+    @Test
+    public void encodesCommandsAndText() {
+        byte[] bytes = new EscPosEncoder()
+            .initialize()
+            .align(EscPosEncoder.Align.CENTER)
+            .bold(true)
+            .line("Hi")
+            .cut(3)
+            .toByteArray();
+
+        assertArrayEquals(new byte[] {
+            0x1B, '@', 0x1B, 't', 0,
+            0x1B, 'a', 1,
+            0x1B, 'E', 1,
+            'H', 'i', 0x0A,
+            0x1D, 'V', 0x41, 3
+        }, bytes);
+    }
+
+    @Test
+    public void selectsTheCodePageAndEncodesThroughIt() {
+        byte[] bytes = new EscPosEncoder(EscPosEncoder.CodePage.WPC1250, 64)
+            .initialize()
+            .text("č")
+            .toByteArray();
+
+        assertEquals(45, bytes[4]);
+        assertEquals((byte) 0xE8, bytes[5]);
+    }
+
+    @Test
+    public void dropsAccentsTheCodePageLacks() {
+        byte[] bytes = new EscPosEncoder().text("K\u00e1va \u010d \u2615").toByteArray();
+
+        // á is in PC437 (0xA0), č is not and loses its caron; the cup has no plain form
+        assertArrayEquals(new byte[] {'K', (byte) 0xA0, 'v', 'a', ' ', 'c', ' ', '?'}, bytes);
+    }
+
+    @Test
+    public void growsPastTheInitialCapacity() {
+        EscPosEncoder encoder = new EscPosEncoder(EscPosEncoder.CodePage.PC437, 1);
+        char[] text = new char[10000];
+        Arrays.fill(text, 'x');
+        encoder.text(new String(text));
+
+        assertEquals(10000, encoder.size());
+    }
+
+    @Test
+    public void dithersToMsbFirstBitsWithWhitePadding() {
+        int black = 0xFF000000;
+        int white = 0xFFFFFFFF;
+        int transparent = 0x00000000;
+        int[] pixels = {
+            black, white, black, white, black, white, black, white, black, white,
+            transparent, transparent, transparent, transparent, transparent, transparent, transparent, transparent, transparent, transparent,
+        };
+        RasterImage raster = RasterImage.dither(pixels, 10, 2);
+
+        assertEquals(2, raster.bytesPerRow);
+        assertEquals((byte) 0b10101010, raster.bits[0]);
+        assertEquals((byte) 0b10000000, raster.bits[1]);
+        assertEquals(0, raster.bits[2]);
+        assertEquals(0, raster.bits[3]);
+    }
+
+    @Test
+    public void splitsTallRastersIntoBands() {
+        int height = RasterImage.BAND_ROWS + 10;
+        int[] pixels = new int[16 * height];
+        Arrays.fill(pixels, 0xFF000000);
+        byte[] encoded = RasterImage.dither(pixels, 16, height).encode();
+
+        assertEquals(2 * 8 + 2 * height, encoded.length);
+        assertArrayEquals(new byte[] {0x1D, 'v', '0', 0, 2, 0, (byte) RasterImage.BAND_ROWS, 0}, Arrays.copyOfRange(encoded, 0, 8));
+        int second = 8 + 2 * RasterImage.BAND_ROWS;
+        assertArrayEquals(new byte[] {0x1D, 'v', '0', 0, 2, 0, 10, 0}, Arrays.copyOfRange(encoded, second, second + 8));
+    }
+
+    @Test
+    public void laysOutItemAndTotalLinesToTheLineWidth() {
+        ReceiptEncoder.Item item = new ReceiptEncoder.Item();
+        item.name = "Croissant";
+        item.quantity = 2;
+        item.price = 4;
+
+        assertEquals("Croissant x2" + repeat(' ', 15) + "$8.00", ReceiptEncoder.itemLine(item, "$", true, 32));
+        assertEquals("Croissant x2 - $8.00", ReceiptEncoder.itemLine(item, "$", false, 32));
+        assertEquals("TOTAL" + repeat(' ', 21) + "$24.30", ReceiptEncoder.totalLine("TOTAL", 24.3, "$", 32));
+
+        item.name = "Extra large oat milk cappuccino with vanilla";
+        item.quantity = 1;
+        // Name cut to leave a space before "$4.00", ellipsis included
+        assertEquals(item.name.substring(0, 23) + "... $4.00", ReceiptEncoder.itemLine(item, "$", true, 32));
+    }
+
+    @Test
+    public void encodesAWholeReceipt() {
+        ReceiptEncoder.Receipt receipt = new ReceiptEncoder.Receipt();
+        receipt.storeName = "ComPOSt";
+        receipt.orderId = "A-17";
+        receipt.cashierName = "Eva";
+        ReceiptEncoder.Item item = new ReceiptEncoder.Item();
+        item.name = "Latte";
+        item.quantity = 1;
+        item.price = 6.5;
+        receipt.items.add(item);
+        receipt.subtotal = 6.5;
+        receipt.taxRate = 0.08;
+        receipt.tax = 0.52;
+        receipt.total = 7.02;
+        ReceiptEncoder.Layout layout = new ReceiptEncoder.Layout();
+        layout.paperWidthMm = 80;
+        byte[] logo = {0x1D, 'v', '0', 0, 1, 0, 1, 0, (byte) 0xFF};
+
+        byte[] bytes = ReceiptEncoder.encode(receipt, layout, logo, null);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+
+        assertTrue(text.startsWith("\u001B@\u001Bt\u0000\u001Ba\u0001" + new String(logo, StandardCharsets.ISO_8859_1)));
+        assertTrue(text.contains("\u001BE\u0001ComPOSt\n\u001BE\u0000"));
+        assertTrue(text.contains("Receipt #: A-17\n"));
+        assertTrue(text.contains("Cashier: Eva\n"));
+        assertTrue(text.contains("Tax (8.0%)"));
+        assertTrue(text.contains("Latte" + repeat(' ', 48 - 5 - 5) + "$6.50\n"));
+        assertTrue(text.endsWith("\n\n\n\n\u001DVA\u0003"));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,231 @@
+package com.compostos.app;
+
+import static org.mockito.Mockito.mock;
+
+import android.content.Context;
+
+import com.stripe.stripeterminal.external.callable.Callback;
+import com.stripe.stripeterminal.external.callable.Cancelable;
+import com.stripe.stripeterminal.external.callable.ConnectionTokenCallback;
+import com.stripe.stripeterminal.external.callable.ConnectionTokenProvider;
+import com.stripe.stripeterminal.external.callable.DiscoveryListener;
+import com.stripe.stripeterminal.external.callable.PaymentIntentCallback;
+import com.stripe.stripeterminal.external.callable.ReaderCallback;
+import com.stripe.stripeterminal.external.callable.TerminalListener;
+import com.stripe.stripeterminal.external.models.ConnectionConfiguration;
+import com.stripe.stripeterminal.external.models.ConnectionTokenException;
+import com.stripe.stripeterminal.external.models.DiscoveryConfiguration;
+import com.stripe.stripeterminal.external.models.PaymentIntent;
+import com.stripe.stripeterminal.external.models.Reader;
+import com.stripe.stripeterminal.external.models.TerminalErrorCode;
+import com.stripe.stripeterminal.external.models.TerminalException;
+import com.stripe.stripeterminal.log.LogLevel;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory {@link TerminalGateway}: one Tap to Pay reader, callbacks delivered on an "SDK"
+ * thread after a random latency, and injectable declines and stalled card reads.
+ *
+ * Like the real SDK it fetches a connection token from the provider when connecting. Reader
+ * commands (collect, confirm, cancel) that overlap are counted, since the SDK would reject
+ * them.
+ */
+class FakeTerminalGateway implements TerminalGateway {
+
+    private final ScheduledExecutorService sdkThread;
+    private final String serialNumber;
+
+    volatile long minLatencyMs = 0;
+    volatile long maxLatencyMs = 2;
+    // Fraction of confirms declined, and of card reads that never complete until cancelled
+    volatile double declineRate;
+    volatile double stallRate;
+
+    final AtomicLong discoveries = new AtomicLong();
+    final AtomicLong connects = new AtomicLong();
+    final AtomicLong collects = new AtomicLong();
+    final AtomicLong confirms = new AtomicLong();
+    final AtomicLong declines = new AtomicLong();
+    final AtomicLong stalls = new AtomicLong();
+    final AtomicLong cancelledCollects = new AtomicLong();
+    final AtomicLong cancelledIntents = new AtomicLong();
+    final AtomicLong overlappingCommands = new AtomicLong();
+
+    private final AtomicInteger readerBusy = new AtomicInteger();
+    private volatile ConnectionTokenProvider tokenProvider;
+    private volatile Reader connectedReader;
+
+    FakeTerminalGateway(ScheduledExecutorService sdkThread, String serialNumber) {
+        this.sdkThread = sdkThread;
+        this.serialNumber = serialNumber;
+    }
+
+    static Reader reader(String serialNumber) {
+        return mock(Reader.class, invocation -> "getSerialNumber".equals(invocation.getMethod().getName()) ? serialNumber : null);
+    }
+
+    static PaymentIntent paymentIntent(String id) {
+        return mock(PaymentIntent.class, invocation -> "getId".equals(invocation.getMethod().getName()) ? id : null);
+    }
+
+    /**
+     * Drop the reader, as if the phone went out of range.
+     */
+    void disconnect() {
+        connectedReader = null;
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return tokenProvider != null;
+    }
+
+    @Override
+    public void init(Context context, LogLevel logLevel, ConnectionTokenProvider tokenProvider, TerminalListener listener) {
+        this.tokenProvider = tokenProvider;
+    }
+
+    @Override
+    public Cancelable discoverReaders(DiscoveryConfiguration config, DiscoveryListener listener, Callback callback) {
+        discoveries.incrementAndGet();
+        AtomicBoolean done = new AtomicBoolean();
+        later(() -> {
+            if (!done.get()) {
+                listener.onUpdateDiscoveredReaders(Collections.singletonList(reader(serialNumber)));
+            }
+        });
+        return new Cancelable() {
+            @Override
+            public void cancel(Callback cancelCallback) {
+                if (done.compareAndSet(false, true)) {
+                    callback.onSuccess();
+                }
+                cancelCallback.onSuccess();
+            }
+
+            @Override
+            public boolean isCompleted() {
+                return done.get();
+            }
+        };
+    }
+
+    @Override
+    public void connectReader(Reader reader, ConnectionConfiguration config, ReaderCallback callback) {
+        connects.incrementAndGet();
+        tokenProvider.fetchConnectionToken(new ConnectionTokenCallback() {
+            @Override
+            public void onSuccess(String token) {
+                later(() -> {
+                    connectedReader = reader;
+                    callback.onSuccess(reader);
+                });
+            }
+
+            @Override
+            public void onFailure(ConnectionTokenException e) {
+                later(() -> callback.onFailure(new TerminalException(TerminalErrorCode.UNEXPECTED_SDK_ERROR, "No connection token")));
+            }
+        });
+    }
+
+    @Override
+    public Reader getConnectedReader() {
+        return connectedReader;
+    }
+
+    @Override
+    public void retrievePaymentIntent(String clientSecret, PaymentIntentCallback callback) {
+        int end = clientSecret.indexOf("_secret");
+        PaymentIntent intent = paymentIntent(end > 0 ? clientSecret.substring(0, end) : clientSecret);
+        later(() -> callback.onSuccess(intent));
+    }
+
+    @Override
+    public Cancelable collectPaymentMethod(PaymentIntent paymentIntent, PaymentIntentCallback callback) {
+        collects.incrementAndGet();
+        enterCommand();
+        AtomicBoolean done = new AtomicBoolean();
+        boolean stall = ThreadLocalRandom.current().nextDouble() < stallRate;
+        ScheduledFuture<?> read;
+        if (stall) {
+            stalls.incrementAndGet();
+            read = null;
+        } else {
+            read = later(() -> {
+                if (done.compareAndSet(false, true)) {
+                    exitCommand();
+                    callback.onSuccess(paymentIntent);
+                }
+            });
+        }
+        return new Cancelable() {
+            @Override
+            public void cancel(Callback cancelCallback) {
+                if (!done.compareAndSet(false, true)) {
+                    cancelCallback.onFailure(new TerminalException(TerminalErrorCode.UNEXPECTED_SDK_ERROR, "Already completed"));
+                    return;
+                }
+                if (read != null) {
+                    read.cancel(false);
+                }
+                cancelledCollects.incrementAndGet();
+                later(() -> {
+                    exitCommand();
+                    callback.onFailure(new TerminalException(TerminalErrorCode.CANCELED, "Collection cancelled"));
+                    cancelCallback.onSuccess();
+                });
+            }
+
+            @Override
+            public boolean isCompleted() {
+                return done.get();
+            }
+        };
+    }
+
+    @Override
+    public void confirmPaymentIntent(PaymentIntent paymentIntent, PaymentIntentCallback callback) {
+        confirms.incrementAndGet();
+        enterCommand();
+        boolean decline = ThreadLocalRandom.current().nextDouble() < declineRate;
+        later(() -> {
+            exitCommand();
+            if (decline) {
+                declines.incrementAndGet();
+                callback.onFailure(new TerminalException(TerminalErrorCode.DECLINED_BY_STRIPE_API, "Your card was declined"));
+            } else {
+                callback.onSuccess(paymentIntent);
+            }
+        });
+    }
+
+    @Override
+    public void cancelPaymentIntent(PaymentIntent paymentIntent, PaymentIntentCallback callback) {
+        cancelledIntents.incrementAndGet();
+        later(() -> callback.onSuccess(paymentIntent));
+    }
+
+    private void enterCommand() {
+        if (readerBusy.incrementAndGet() > 1) {
+            overlappingCommands.incrementAndGet();
+        }
+    }
+
+    private void exitCommand() {
+        readerBusy.decrementAndGet();
+    }
+
+    private ScheduledFuture<?> later(Runnable callback) {
+        long delayMs = minLatencyMs + ThreadLocalRandom.current().nextLong(maxLatencyMs - minLatencyMs + 1);
+        return sdkThread.schedule(callback, delayMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,133 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry, hedge and deadline behaviour of {@link HedgedCall} with scripted attempts.
+ */
+public class HedgedCallTest {
+
+    // deadline 2s, 3 attempts, 10-40ms backoff, hedge after 100ms
+    private static final HedgedCall.Policy POLICY = new HedgedCall.Policy(2000, 3, 10, 40, 100, 50, 500);
+
+    private ExecutorService io;
+    private ScheduledExecutorService timer;
+    private HedgedCall call;
+
+    @Before
+    public void setUp() {
+        io = Executors.newCachedThreadPool();
+        timer = Executors.newSingleThreadScheduledExecutor();
+        call = new HedgedCall(POLICY, io, timer);
+    }
+
+    @After
+    public void tearDown() {
+        io.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void retriesTransientFailures() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        String result = call.execute(() -> {
+            if (runs.incrementAndGet() < 3) {
+                throw new BackendClient.BackendException(503, null);
+            }
+            return "pi_1_secret";
+        }).get(2, TimeUnit.SECONDS);
+
+        assertEquals("pi_1_secret", result);
+        assertEquals(3, runs.get());
+        assertEquals(2, call.retries.get());
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        try {
+            call.execute(() -> {
+                runs.incrementAndGet();
+                throw new BackendClient.BackendException(400, "amount_too_small");
+            }).get(2, TimeUnit.SECONDS);
+            fail("Expected failure");
+        } catch (ExecutionException e) {
+            assertEquals(400, ((BackendClient.BackendException) e.getCause()).statusCode);
+        }
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void slowAttemptIsHedgedAndHedgeWins() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        long start = System.nanoTime();
+        String result = call.execute(() -> {
+            if (runs.incrementAndGet() == 1) {
+                release.await(); // stalled socket
+                return "late";
+            }
+            return "hedged";
+        }).get(2, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        release.countDown();
+
+        assertEquals("hedged", result);
+        assertTrue("hedge fired at " + elapsedMs + "ms", elapsedMs >= 100 && elapsedMs < 1000);
+        assertEquals(1, call.hedges.get());
+        assertEquals(1, call.hedgeWins.get());
+    }
+
+    @Test
+    public void hedgeThresholdFollowsAttemptP95() throws Exception {
+        assertEquals(100, call.hedgeDelayMs());
+        for (int i = 0; i < HedgedCall.MIN_SAMPLES; i++) {
+            call.attemptLatency.recordMicros(200_000);
+        }
+        long delay = call.hedgeDelayMs();
+        assertTrue("p95-based delay " + delay, delay >= 200 && delay <= 250);
+
+        for (int i = 0; i < 1000; i++) {
+            call.attemptLatency.recordMicros(10_000_000);
+        }
+        assertEquals(500, call.hedgeDelayMs()); // clamped to maxHedgeMs
+    }
+
+    @Test
+    public void deadlineEndsTheCall() throws Exception {
+        HedgedCall shortCall = new HedgedCall(new HedgedCall.Policy(150, 5, 10, 20, 1000, 1000, 1000), io, timer);
+        try {
+            shortCall.execute(() -> {
+                Thread.sleep(60);
+                throw new SocketTimeoutException("Read timed out");
+            }).get(2, TimeUnit.SECONDS);
+            fail("Expected timeout");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            assertTrue(cause instanceof TimeoutException || cause instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test
+    public void backoffIsBoundedAndJittered() {
+        for (int retry = 1; retry <= 10; retry++) {
+            long ceiling = Math.min(40, 10L << (retry - 1));
+            long delay = call.backoffMs(retry);
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+        }
+    }
+}
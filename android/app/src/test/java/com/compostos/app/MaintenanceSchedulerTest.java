@@ -0,0 +1,159 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Idle gating, pausing and constraints of {@link MaintenanceScheduler}.
+ */
+public class MaintenanceSchedulerTest {
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final MaintenanceScheduler.Constraints NONE =
+        new MaintenanceScheduler.Constraints(MaintenanceScheduler.Network.ANY, 0);
+
+    private ExecutorService io;
+    private ScheduledExecutorService timer;
+    private FakeDevice device;
+    private MaintenanceScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        io = Executors.newCachedThreadPool();
+        timer = Executors.newSingleThreadScheduledExecutor();
+        device = new FakeDevice();
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        prefs.edit().putLong(MaintenanceScheduler.PREF_IDLE_DELAY_MS, 50).apply();
+        scheduler = new MaintenanceScheduler(prefs, device, io, timer);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.close();
+        timer.shutdownNow();
+        io.shutdownNow();
+    }
+
+    @Test
+    public void runsTasksOnlyOnceThePaymentIsOver() throws Exception {
+        AtomicBoolean paying = new AtomicBoolean(true);
+        scheduler.setBusy(paying::get);
+        LinkedBlockingQueue<String> ran = new LinkedBlockingQueue<>();
+        scheduler.register("first", HOUR_MS, NONE, () -> CompletableFuture.completedFuture(ran.add("first")));
+        scheduler.register("second", HOUR_MS, NONE, () -> CompletableFuture.completedFuture(ran.add("second")));
+
+        assertNull("Nothing runs during a payment", ran.poll(300, TimeUnit.MILLISECONDS));
+        assertFalse(scheduler.isIdle());
+
+        paying.set(false);
+        assertEquals("first", ran.poll(5, TimeUnit.SECONDS));
+        assertEquals("second", ran.poll(5, TimeUnit.SECONDS));
+        // Not due again for an hour
+        assertNull(ran.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.status().get(0).runs);
+    }
+
+    @Test
+    public void pauseCancelsTheRunningTaskAndRunsItAgainWhenIdle() throws Exception {
+        LinkedBlockingQueue<CompletableFuture<Object>> started = new LinkedBlockingQueue<>();
+        scheduler.register("slow", HOUR_MS, NONE, () -> {
+            CompletableFuture<Object> work = new CompletableFuture<>();
+            started.add(work);
+            return work;
+        });
+
+        CompletableFuture<Object> first = started.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        scheduler.pause();
+        try {
+            first.get(5, TimeUnit.SECONDS);
+            fail("collectPayment stops background work");
+        } catch (CancellationException expected) {
+            // The task's own future is cancelled
+        }
+        assertEquals("A cancelled run doesn't count", 0, scheduler.status().get(0).runs);
+
+        CompletableFuture<Object> second = started.poll(5, TimeUnit.SECONDS);
+        assertNotNull("The task is still due after the payment", second);
+        second.complete(null);
+        awaitRuns("slow", 1);
+    }
+
+    @Test
+    public void holdsTasksWhoseBatteryOrNetworkConstraintIsNotMet() throws Exception {
+        device.batteryPercent = 10;
+        device.connected = false;
+        AtomicInteger uploads = new AtomicInteger();
+        AtomicInteger compactions = new AtomicInteger();
+        scheduler.register("upload", HOUR_MS, new MaintenanceScheduler.Constraints(MaintenanceScheduler.Network.CONNECTED, 0),
+            () -> CompletableFuture.completedFuture(uploads.incrementAndGet()));
+        scheduler.register("compaction", HOUR_MS, new MaintenanceScheduler.Constraints(MaintenanceScheduler.Network.ANY, 30),
+            () -> CompletableFuture.completedFuture(compactions.incrementAndGet()));
+
+        Thread.sleep(300);
+        List<MaintenanceScheduler.TaskStatus> status = scheduler.status();
+        assertEquals("network", status.get(0).blockedBy);
+        assertEquals("battery", status.get(1).blockedBy);
+        assertEquals(0, uploads.get() + compactions.get());
+
+        device.connected = true;
+        device.charging = true;
+        scheduler.onDeviceStateChanged();
+        awaitRuns("upload", 1);
+        awaitRuns("compaction", 1);
+        assertNull(scheduler.status().get(1).blockedBy);
+    }
+
+    private void awaitRuns(String name, long runs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            for (MaintenanceScheduler.TaskStatus status : scheduler.status()) {
+                if (status.name.equals(name) && status.runs >= runs) {
+                    return;
+                }
+            }
+            assertTrue("Timed out waiting for " + name, System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class FakeDevice implements MaintenanceScheduler.DeviceState {
+        volatile int batteryPercent = 80;
+        volatile boolean charging;
+        volatile boolean connected = true;
+
+        @Override
+        public int batteryPercent() {
+            return batteryPercent;
+        }
+
+        @Override
+        public boolean isCharging() {
+            return charging;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public boolean isUnmetered() {
+            return connected;
+        }
+    }
+}
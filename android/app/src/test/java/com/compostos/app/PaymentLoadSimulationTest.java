@@ -0,0 +1,312 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import com.stripe.stripeterminal.external.models.Reader;
+import com.stripe.stripeterminal.external.models.TerminalErrorCode;
+import com.stripe.stripeterminal.external.models.TerminalException;
+import com.stripe.stripeterminal.log.LogLevel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives discover → connect → collect → confirm flows through the real payment pipeline
+ * (token cache, hedged backend calls, PaymentIntentPool, ReaderSession, CheckoutSession)
+ * against {@link FakeTerminalGateway} and {@link StubBackendServer}, with injected latency
+ * and faults. Prints throughput and checkout latency percentiles for each run.
+ */
+public class PaymentLoadSimulationTest {
+
+    private static final String CURRENCY = "czk";
+    // Drop the reader every so many sales, so each run rediscovers and reconnects
+    private static final int RECONNECT_EVERY = 50;
+    private static final long FLOW_TIMEOUT_SECONDS = 30;
+
+    private StubBackendServer backend;
+    private ScheduledExecutorService sdkThreads;
+    private final List<Till> tills = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        backend = new StubBackendServer();
+        sdkThreads = Executors.newScheduledThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        for (Till till : tills) {
+            till.executor.shutdown();
+        }
+        sdkThreads.shutdownNow();
+        backend.stop();
+    }
+
+    @Test
+    public void sequentialFlowsOnOneTill() throws Exception {
+        backend.failureRate = 0.02;
+        Till till = newTill("till-1", CheckoutSession.DEFAULT_DEADLINES);
+        till.terminal.declineRate = 0.02;
+        int flows = 400;
+
+        Results results = new Results();
+        long start = System.nanoTime();
+        drive(till, flows, 1, results);
+        report("sequential", flows, System.nanoTime() - start, results);
+
+        assertClean(results, flows);
+        assertEquals(flows, results.succeeded.get() + results.declined.get());
+        assertEquals(0, till.terminal.overlappingCommands.get());
+        assertEquals(flows / RECONNECT_EVERY, till.terminal.connects.get());
+        assertEquals(flows / RECONNECT_EVERY - 1, till.terminal.discoveries.get());
+        // Retried creates reuse their Idempotency-Key: one intent per sale
+        assertEquals(flows, backend.intentsCreated.get());
+        assertEquals(flows, till.metrics.get(PaymentMetrics.Stage.CHECKOUT).latency.count());
+    }
+
+    @Test
+    public void concurrentTillsAgainstOneBackend() throws Exception {
+        backend.failureRate = 0.05;
+        backend.maxLatencyMs = 5;
+        int tillCount = 16;
+        int flowsPerTill = 150;
+        int flows = tillCount * flowsPerTill;
+
+        Results results = new Results();
+        ExecutorService drivers = Executors.newFixedThreadPool(tillCount);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < tillCount; i++) {
+                Till till = newTill("till-" + i, CheckoutSession.DEFAULT_DEADLINES);
+                till.terminal.declineRate = 0.02;
+                // Queue the next sale while the previous one confirms, as a busy counter would
+                runs.add(drivers.submit(() -> {
+                    drive(till, flowsPerTill, 2, results);
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get(120, TimeUnit.SECONDS);
+            }
+            report("concurrent x" + tillCount, flows, System.nanoTime() - start, results);
+        } finally {
+            drivers.shutdownNow();
+        }
+
+        assertClean(results, flows);
+        assertEquals(flows, results.succeeded.get() + results.declined.get());
+        assertEquals(flows, backend.intentsCreated.get());
+        for (Till till : tills) {
+            assertEquals(0, till.terminal.overlappingCommands.get());
+            assertEquals(0, till.executor.stats().rejectedTasks);
+        }
+    }
+
+    @Test
+    public void stalledCardReadsTimeOutAndReleaseTheReader() throws Exception {
+        Till till = newTill("till-1", new CheckoutSession.Deadlines(5000, 200, 5000));
+        till.terminal.stallRate = 0.05;
+        int flows = 150;
+
+        Results results = new Results();
+        long start = System.nanoTime();
+        drive(till, flows, 2, results);
+        report("stalled reads", flows, System.nanoTime() - start, results);
+
+        assertClean(results, flows);
+        long stalls = till.terminal.stalls.get();
+        assertEquals(stalls, results.timedOut.get());
+        assertEquals(flows - stalls, results.succeeded.get());
+        // Each stalled read was aborted and its PaymentIntent cancelled
+        assertEquals(stalls, till.terminal.cancelledCollects.get());
+        assertEquals(stalls, till.terminal.cancelledIntents.get());
+        assertEquals(0, till.terminal.overlappingCommands.get());
+    }
+
+    /**
+     * One register, wired the way TerminalRuntime and the plugin wire it.
+     */
+    private final class Till {
+        final PluginExecutor executor = new PluginExecutor();
+        final PaymentMetrics metrics = new PaymentMetrics();
+        final AtomicLong backendCancels = new AtomicLong();
+        final String serialNumber;
+        final FakeTerminalGateway terminal;
+        final PaymentBackend payments;
+        final ReaderSession readerSession;
+        final CheckoutSession checkout;
+
+        Till(String serialNumber, CheckoutSession.Deadlines deadlines) {
+            this.serialNumber = serialNumber;
+            terminal = new FakeTerminalGateway(sdkThreads, serialNumber);
+            payments = new PaymentBackend(new BackendClient(backend.baseUrl()), metrics, executor.io(), executor.timer());
+            ConnectionTokenCache tokenCache = new ConnectionTokenCache(payments::fetchConnectionToken, executor);
+            terminal.init(null, LogLevel.NONE, tokenCache, null);
+
+            TerminalStages stages = new TerminalStages(terminal);
+            readerSession = new ReaderSession(new InMemoryPreferences(), terminal, metrics, executor.timer());
+            PaymentIntentPool pool = new PaymentIntentPool(new PaymentIntentPool.Backend() {
+                @Override
+                public CompletableFuture<String> create(long amount, String currency) {
+                    return payments.createPaymentIntent(amount, currency);
+                }
+
+                @Override
+                public void updateAmount(String paymentIntentId, long amount) throws Exception {
+                    payments.updatePaymentIntentAmount(paymentIntentId, amount);
+                }
+
+                @Override
+                public void cancelLater(String paymentIntentId) {
+                    backendCancels.incrementAndGet();
+                }
+            }, stages, metrics, executor);
+            checkout = new CheckoutSession(stages, pool::acquire, metrics, executor.timer(), id -> backendCancels.incrementAndGet());
+            checkout.setDeadlines(deadlines);
+        }
+
+        /**
+         * Discover and connect: the first time as if JS picked the reader, later through the
+         * remembered-reader fast path.
+         */
+        CompletableFuture<Reader> connect() {
+            if (readerSession.lastReader() == null) {
+                return readerSession.connect(FakeTerminalGateway.reader(serialNumber), "tml_test", true);
+            }
+            return readerSession.reconnect();
+        }
+    }
+
+    private Till newTill(String serialNumber, CheckoutSession.Deadlines deadlines) {
+        Till till = new Till(serialNumber, deadlines);
+        tills.add(till);
+        return till;
+    }
+
+    private static final class Pending {
+        final CheckoutSession.Checkout checkout;
+        final long startNanos = System.nanoTime();
+
+        Pending(CheckoutSession.Checkout checkout) {
+            this.checkout = checkout;
+        }
+    }
+
+    private static final class Results {
+        final LatencyHistogram checkoutLatency = new LatencyHistogram();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong declined = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final AtomicLong hung = new AtomicLong();
+        final Map<String, AtomicLong> otherFailures = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Run sales back to back on one till, keeping up to {@code inFlight} of them submitted
+     * (2 = the next sale queued behind the one on the reader).
+     */
+    private static void drive(Till till, int flows, int inFlight, Results results) throws Exception {
+        ArrayDeque<Pending> pending = new ArrayDeque<>();
+        for (int i = 0; i < flows; i++) {
+            if (i > 0 && i % RECONNECT_EVERY == 0) {
+                while (!pending.isEmpty()) {
+                    await(pending.poll(), results);
+                }
+                till.terminal.disconnect();
+            }
+            if (till.terminal.getConnectedReader() == null) {
+                till.connect().get(FLOW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            if (pending.size() >= inFlight) {
+                await(pending.poll(), results);
+            }
+            long amount = 1500 + (i % 20) * 100;
+            pending.add(new Pending(submit(till, amount, inFlight > 1)));
+        }
+        while (!pending.isEmpty()) {
+            await(pending.poll(), results);
+        }
+    }
+
+    /**
+     * A sale that timed out or was cancelled fails at once but holds the reader until the SDK
+     * lets go of it; retry like a cashier would.
+     */
+    private static CheckoutSession.Checkout submit(Till till, long amount, boolean queue) throws InterruptedException {
+        long giveUpAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(FLOW_TIMEOUT_SECONDS);
+        while (true) {
+            try {
+                return till.checkout.submit(amount, CURRENCY, queue);
+            } catch (IllegalStateException busy) {
+                if (System.nanoTime() > giveUpAt) {
+                    throw busy;
+                }
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void await(Pending pending, Results results) throws InterruptedException {
+        try {
+            pending.checkout.result.get(FLOW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            results.checkoutLatency.recordNanos(System.nanoTime() - pending.startNanos);
+            results.succeeded.incrementAndGet();
+        } catch (TimeoutException e) {
+            results.hung.incrementAndGet();
+        } catch (ExecutionException e) {
+            Throwable cause = TerminalStages.unwrap(e.getCause()).getCause();
+            if (cause instanceof TerminalException
+                && ((TerminalException) cause).getErrorCode() == TerminalErrorCode.DECLINED_BY_STRIPE_API) {
+                results.declined.incrementAndGet();
+            } else if (cause instanceof TimeoutException) {
+                results.timedOut.incrementAndGet();
+            } else {
+                String key = cause == null ? e.getCause().toString() : cause.toString();
+                results.otherFailures.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+            }
+        }
+    }
+
+    private static void assertClean(Results results, int flows) {
+        assertEquals("hung checkouts", 0, results.hung.get());
+        assertTrue("unexpected failures " + results.otherFailures, results.otherFailures.isEmpty());
+        assertEquals(flows, results.succeeded.get() + results.declined.get() + results.timedOut.get());
+    }
+
+    private void report(String name, int flows, long elapsedNanos, Results results) {
+        double seconds = elapsedNanos / 1e9;
+        LatencyHistogram latency = results.checkoutLatency;
+        long retries = 0;
+        long hedges = 0;
+        for (Till till : tills) {
+            retries += till.payments.createIntentCall.retries.get() + till.payments.tokenCall.retries.get();
+            hedges += till.payments.createIntentCall.hedges.get() + till.payments.tokenCall.hedges.get();
+        }
+        System.out.printf(Locale.ROOT,
+            "%s: %d flows in %.2fs (%.0f/s) | ok=%d declined=%d timedOut=%d | checkout p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms"
+                + " | backend requests=%d injected503=%d retries=%d hedges=%d%n",
+            name, flows, seconds, flows / seconds,
+            results.succeeded.get(), results.declined.get(), results.timedOut.get(),
+            latency.percentileMillis(0.50), latency.percentileMillis(0.95), latency.percentileMillis(0.99), latency.maxMillis(),
+            backend.requests.get(), backend.injectedFailures.get(), retries, hedges);
+    }
+}
@@ -0,0 +1,146 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link SessionBootstrap} against local stand-ins for new and old register backends.
+ */
+public class SessionBootstrapTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger bootstrapCalls = new AtomicInteger();
+    private volatile String lastRequestBody;
+    private volatile int status = 200;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/bootstrap", exchange -> {
+            bootstrapCalls.incrementAndGet();
+            lastRequestBody = readAll(exchange.getRequestBody());
+            if (status != 200) {
+                respond(exchange, status, "{\"error\":\"unavailable\"}");
+                return;
+            }
+            respond(exchange, 200, "{"
+                + "\"connection_token\":{\"secret\":\"pst_test_1\"},"
+                + "\"location\":{\"id\":\"tml_1\",\"display_name\":\"Front counter\"},"
+                + "\"payment_intents\":["
+                + "{\"id\":\"pi_1\",\"client_secret\":\"pi_1_secret\",\"amount\":2500,\"currency\":\"czk\"},"
+                + "{\"id\":\"pi_2\",\"client_secret\":\"pi_2_secret\",\"amount\":2500},"
+                + "{\"id\":\"pi_bad\"}"
+                + "]}");
+        });
+        // Old backend: Express answers unknown routes with an HTML 404
+        server.createContext("/old/bootstrap", exchange -> {
+            bootstrapCalls.incrementAndGet();
+            readAll(exchange.getRequestBody());
+            respond(exchange, 404, "<!DOCTYPE html><pre>Cannot POST /bootstrap</pre>");
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void spreadsOneResponseAcrossTokenLocationAndIntents() throws IOException {
+        SessionBootstrap bootstrap = new SessionBootstrap(new BackendClient(baseUrl));
+        SessionBootstrap.Result result = bootstrap.fetch(2, 0, "czk");
+
+        assertNotNull(result);
+        assertEquals("pst_test_1", result.connectionToken);
+        assertEquals("tml_1", result.locationId);
+        assertEquals("Front counter", result.locationName);
+        assertEquals(2, result.intents.size());
+        assertEquals("pi_1_secret", result.intents.get(0).clientSecret);
+        assertEquals(2500, result.intents.get(0).amount);
+        assertEquals("czk", result.intents.get(1).currency);
+        assertEquals(1, bootstrapCalls.get());
+        assertTrue(lastRequestBody.contains("\"intents\":2"));
+        assertFalse(lastRequestBody.contains("amount"));
+    }
+
+    @Test
+    public void clampsIntentCount() throws IOException {
+        new SessionBootstrap(new BackendClient(baseUrl)).fetch(50, 1500, "eur");
+
+        assertTrue(lastRequestBody.contains("\"intents\":" + SessionBootstrap.MAX_INTENTS));
+        assertTrue(lastRequestBody.contains("\"amount\":1500"));
+    }
+
+    @Test
+    public void missingEndpointFallsBackWithoutProbingAgain() throws IOException {
+        BackendClient client = new BackendClient(baseUrl + "/old");
+        SessionBootstrap bootstrap = new SessionBootstrap(client);
+
+        assertNull(bootstrap.fetch(2, 0, "czk"));
+        assertFalse(bootstrap.isSupported());
+        assertNull(bootstrap.fetch(2, 0, "czk"));
+        assertEquals(1, bootstrapCalls.get());
+
+        // A different backend gets probed again
+        client.setBaseUrl(baseUrl);
+        assertTrue(bootstrap.isSupported());
+        assertNotNull(bootstrap.fetch(2, 0, "czk"));
+    }
+
+    @Test
+    public void serverErrorIsThrownAndNotRemembered() throws IOException {
+        SessionBootstrap bootstrap = new SessionBootstrap(new BackendClient(baseUrl));
+        status = 500;
+        try {
+            bootstrap.fetch(1, 0, "czk");
+            fail("Expected BackendException");
+        } catch (BackendClient.BackendException e) {
+            assertEquals(500, e.statusCode);
+        }
+        assertTrue(bootstrap.isSupported());
+
+        status = 200;
+        assertNotNull(bootstrap.fetch(1, 0, "czk"));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsEmptyResponse() throws IOException {
+        SessionBootstrap.parse(new HashMap<String, Object>(), "czk", 0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString("UTF-8");
+    }
+}
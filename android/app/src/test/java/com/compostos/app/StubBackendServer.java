@@ -0,0 +1,196 @@
+package com.compostos.app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process stand-in for stripe-backend: {@code /connection_token},
+ * {@code /create_payment_intent} (deduplicated by {@code Idempotency-Key}, like the real one),
+ * {@code /cancel_payment_intent}, the single and batch capture endpoints and {@code /telemetry},
+ * with injectable latency and 503s.
+ */
+class StubBackendServer {
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+
+    volatile long minLatencyMs = 0;
+    volatile long maxLatencyMs = 3;
+    // Fraction of requests answered with 503 before doing anything
+    volatile double failureRate;
+
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong injectedFailures = new AtomicLong();
+    final AtomicLong tokens = new AtomicLong();
+    final AtomicLong intentsCreated = new AtomicLong();
+    final AtomicLong duplicateCreates = new AtomicLong();
+    final AtomicLong intentsCancelled = new AtomicLong();
+    final AtomicLong captureRequests = new AtomicLong();
+    // Captured intent ids; capturing one twice answers "succeeded" again, like the real backend
+    final Set<String> captured = ConcurrentHashMap.newKeySet();
+    // Intents whose capture fails for good (e.g. the authorization expired)
+    final Set<String> uncapturable = ConcurrentHashMap.newKeySet();
+    // Off: /capture_payment_intents answers 404, like a backend from before batch capture
+    volatile boolean batchCapture = true;
+    // Decoded telemetry batches, in arrival order
+    final LinkedBlockingQueue<Map<String, Object>> telemetryBatches = new LinkedBlockingQueue<>();
+    private final Map<String, String> intentsByKey = new ConcurrentHashMap<>();
+
+    StubBackendServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        handlers = Executors.newFixedThreadPool(16);
+        server.setExecutor(handlers);
+        server.createContext("/connection_token", exchange -> handle(exchange, body ->
+            "{\"secret\":\"pst_test_" + tokens.incrementAndGet() + "\"}"));
+        server.createContext("/create_payment_intent", exchange -> handle(exchange, body -> {
+            String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            String id = key == null ? null : intentsByKey.get(key);
+            if (id != null) {
+                duplicateCreates.incrementAndGet();
+            } else {
+                id = "pi_" + intentsCreated.incrementAndGet();
+                if (key != null) {
+                    String raced = intentsByKey.putIfAbsent(key, id);
+                    if (raced != null) {
+                        // A hedge arrived while the first request was being handled
+                        intentsCreated.decrementAndGet();
+                        duplicateCreates.incrementAndGet();
+                        id = raced;
+                    }
+                }
+            }
+            return "{\"id\":\"" + id + "\",\"client_secret\":\"" + id + "_secret_test\"}";
+        }));
+        server.createContext("/cancel_payment_intent", exchange -> handle(exchange, body -> {
+            intentsCancelled.incrementAndGet();
+            return "{\"status\":\"canceled\"}";
+        }));
+        server.createContext("/capture_payment_intent", exchange -> handle(exchange, body -> {
+            captureRequests.incrementAndGet();
+            String id = BackendJson.getString(BackendJson.readObject(body), "payment_intent_id");
+            if (uncapturable.contains(id)) {
+                throw new IOException("Authorization expired");
+            }
+            captured.add(id);
+            return "{\"status\":\"succeeded\"}";
+        }));
+        server.createContext("/capture_payment_intents", exchange -> {
+            if (!batchCapture) {
+                drain(exchange.getRequestBody());
+                respond(exchange, 404, "<pre>Cannot POST /capture_payment_intents</pre>");
+                return;
+            }
+            handle(exchange, body -> {
+                captureRequests.incrementAndGet();
+                StringBuilder results = new StringBuilder("{\"results\":[");
+                @SuppressWarnings("unchecked")
+                List<Object> ids = (List<Object>) BackendJson.readObject(body).get("payment_intent_ids");
+                for (Object id : ids) {
+                    if (results.charAt(results.length() - 1) != '[') {
+                        results.append(',');
+                    }
+                    if (uncapturable.contains(id)) {
+                        results.append("{\"id\":\"").append(id).append("\",\"status\":\"failed\",\"error\":\"Authorization expired\",\"retryable\":false}");
+                    } else {
+                        captured.add((String) id);
+                        results.append("{\"id\":\"").append(id).append("\",\"status\":\"succeeded\"}");
+                    }
+                }
+                return results.append("]}").toString();
+            });
+        });
+        server.createContext("/telemetry", exchange -> handle(exchange, body -> {
+            if (!"gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                throw new IOException("Expected a gzip body");
+            }
+            telemetryBatches.add(BackendJson.readObject(body));
+            return "{\"received\":true}";
+        }));
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private interface Handler {
+        String respond(String body) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        requests.incrementAndGet();
+        InputStream in = exchange.getRequestBody();
+        String body = readAll("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+            ? new GZIPInputStream(in) : in);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delayMs = minLatencyMs + random.nextLong(maxLatencyMs - minLatencyMs + 1);
+        if (delayMs > 0) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (random.nextDouble() < failureRate) {
+            injectedFailures.incrementAndGet();
+            respond(exchange, 503, "{\"error\":\"injected\"}");
+            return;
+        }
+        String response;
+        try {
+            response = handler.respond(body);
+        } catch (IOException e) {
+            respond(exchange, 500, "{\"error\":\"" + e.getMessage() + "\"}");
+            return;
+        }
+        respond(exchange, 200, response);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (in.read(buffer) != -1) {
+            // Request bodies aren't needed; reading them keeps the connection reusable
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Batching, overflow and retry of {@link TelemetryUploader} against {@link StubBackendServer}.
+ */
+public class TelemetryUploaderTest {
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    private StubBackendServer server;
+    private ExecutorService io;
+    private ScheduledExecutorService timer;
+    private TelemetryUploader uploader;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubBackendServer();
+        io = Executors.newCachedThreadPool();
+        timer = Executors.newSingleThreadScheduledExecutor();
+        uploader = new TelemetryUploader(new InMemoryPreferences(), new BackendClient(server.baseUrl()), io, timer,
+            () -> Collections.<String, Object>singletonMap("device", "test"));
+    }
+
+    @After
+    public void tearDown() {
+        uploader.close();
+        timer.shutdownNow();
+        io.shutdownNow();
+        server.stop();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void uploadsAFullBatchWithADeviceSummary() throws Exception {
+        uploader.configure(new TelemetryUploader.Config(true, "/telemetry", 3, HOUR_MS));
+
+        uploader.recordCheckout(1, "succeeded", 200, 1500, 300, 2000, null, "STRM1");
+        uploader.recordCheckout(2, "succeeded", 100, 900, 200, 1200, null, "STRM1");
+        uploader.recordCheckout(3, "failed", 100, 400, 0, 500, "card_declined", "STRM1");
+        Map<String, Object> batch = server.telemetryBatches.poll(5, TimeUnit.SECONDS);
+
+        assertNotNull("Reaching the batch size starts an upload", batch);
+        assertEquals("test", batch.get("device"));
+        assertEquals(3, ((List<Object>) batch.get("records")).size());
+        Map<String, Object> checkout = (Map<String, Object>) ((Map<String, Object>) batch.get("summary")).get("checkout");
+        assertEquals(3, BackendJson.optLong(checkout, "count", 0));
+        assertEquals(1, BackendJson.optLong(checkout, "failures", 0));
+        assertTrue(BackendJson.optLong(checkout, "maxMs", 0) >= 1900);
+        awaitTrue(() -> uploader.stats().uploadedRecords == 3);
+        assertEquals(0, uploader.stats().buffered);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void dropsTheOldestRecordsOnOverflowAndReportsThem() throws Exception {
+        uploader.configure(new TelemetryUploader.Config(true, "/telemetry", 10_000, HOUR_MS));
+        for (int i = 0; i < TelemetryUploader.MAX_BUFFERED + 5; i++) {
+            uploader.recordStage(i, "discovery", 40, null, null);
+        }
+
+        assertEquals(TelemetryUploader.MAX_BUFFERED, uploader.stats().buffered);
+        assertEquals(5, uploader.stats().dropped);
+
+        uploader.flush();
+        Map<String, Object> batch = server.telemetryBatches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(5, BackendJson.optLong(batch, "dropped", 0));
+        Map<String, Object> first = (Map<String, Object>) ((List<Object>) batch.get("records")).get(0);
+        assertEquals(5, BackendJson.optLong(first, "t", -1));
+    }
+
+    @Test
+    public void waitsForThePaymentAndKeepsBatchesTheBackendMissed() throws Exception {
+        uploader.configure(new TelemetryUploader.Config(true, "/telemetry", 1, HOUR_MS));
+        server.failureRate = 1;
+        uploader.recordStage(1, "connectReader", 900, null, "STRM1");
+
+        awaitTrue(() -> uploader.stats().lastError != null);
+        assertEquals(1, uploader.stats().buffered);
+
+        server.failureRate = 0;
+        uploader.setBusy(() -> true);
+        uploader.flush();
+        assertNull("Nothing is sent while a payment is running", server.telemetryBatches.poll(300, TimeUnit.MILLISECONDS));
+
+        uploader.setBusy(() -> false);
+        uploader.flush();
+        assertNotNull(server.telemetryBatches.poll(5, TimeUnit.SECONDS));
+        awaitTrue(() -> uploader.stats().buffered == 0);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
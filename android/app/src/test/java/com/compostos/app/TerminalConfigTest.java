@@ -0,0 +1,60 @@
+package com.compostos.app;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Validation and persistence of the {@link TerminalConfig} snapshot.
+ */
+public class TerminalConfigTest {
+
+    @Test
+    public void rejectsInvalidSettingsAsAWhole() {
+        assertInvalid(new TerminalConfig(Collections.<String>emptyList(), null, null, false));
+        assertInvalid(new TerminalConfig(Arrays.asList("https://pos.example.com", "ftp://lan:4242"), null, null, false));
+        assertInvalid(new TerminalConfig(Collections.singletonList("not a url"), null, null, false));
+        assertInvalid(new TerminalConfig(Collections.singletonList("http://10.0.2.2:4242"), "loc_123", null, false));
+
+        new TerminalConfig(Arrays.asList("https://pos.example.com", "http://192.168.1.20:4242"), "tml_123", null, true).validate();
+    }
+
+    @Test
+    public void roundTripsThroughPreferencesWithoutTheBootstrapLocation() {
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        new TerminalConfig(Arrays.asList("https://pos.example.com", "http://192.168.1.20:4242"), null, "tml_boot", true).save(prefs);
+
+        TerminalConfig loaded = TerminalConfig.load(prefs);
+        assertEquals(Arrays.asList("https://pos.example.com", "http://192.168.1.20:4242"), loaded.backendUrls);
+        assertEquals("https://pos.example.com", loaded.backendUrl());
+        assertNull(loaded.locationId);
+        assertEquals(TerminalConfig.DEFAULT_LOCATION_ID, loaded.effectiveLocationId());
+        assertTrue(loaded.simulated);
+
+        assertEquals("tml_boot", loaded.withBootstrapLocation("tml_boot").effectiveLocationId());
+        TerminalConfig explicit = new TerminalConfig(loaded.backendUrls, "tml_set", "tml_boot", false);
+        assertEquals("A configured location wins over the bootstrap one", "tml_set", explicit.effectiveLocationId());
+    }
+
+    @Test
+    public void readsTheSingleUrlStoredByOlderBuilds() {
+        InMemoryPreferences prefs = new InMemoryPreferences();
+        prefs.edit().putString(TerminalConfig.PREF_BACKEND_URL, "https://old.example.com").apply();
+
+        TerminalConfig loaded = TerminalConfig.load(prefs);
+        assertEquals(Collections.singletonList("https://old.example.com"), loaded.backendUrls);
+        assertFalse(loaded.simulated);
+    }
+
+    private static void assertInvalid(TerminalConfig config) {
+        try {
+            config.validate();
+            fail("Expected " + config.backendUrls + " / " + config.locationId + " to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Nothing is applied
+        }
+    }
+}
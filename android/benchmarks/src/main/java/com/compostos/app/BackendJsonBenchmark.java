@@ -0,0 +1,86 @@
+package com.compostos.app;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend response decoding: the streaming {@link BackendJson} path against the previous
+ * readLine → StringBuilder → org.json path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackendJsonBenchmark {
+
+    private static final byte[] PAYMENT_INTENT_RESPONSE =
+        "{\"client_secret\":\"pi_3PqRsTuVwXyZ0123_secret_AbCdEfGhIjKlMnOpQrStUvWxYz\",\"id\":\"pi_3PqRsTuVwXyZ0123\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] CONNECTION_TOKEN_RESPONSE =
+        "{\"secret\":\"pst_test_YWNjdF8xTjNBYUJDRGVGZ0hpSmtMLGRlbW9fdG9rZW5fZm9yX2JlbmNobWFya3M\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public String streamingPaymentIntent() throws IOException {
+        Map<String, Object> json = BackendJson.readObject(
+            new InputStreamReader(new ByteArrayInputStream(PAYMENT_INTENT_RESPONSE), StandardCharsets.UTF_8));
+        return BackendJson.getString(json, "client_secret");
+    }
+
+    @Benchmark
+    public String legacyPaymentIntent() throws IOException, JSONException {
+        return legacyParse(PAYMENT_INTENT_RESPONSE).getString("client_secret");
+    }
+
+    @Benchmark
+    public String streamingConnectionToken() throws IOException {
+        Map<String, Object> json = BackendJson.readObject(
+            new InputStreamReader(new ByteArrayInputStream(CONNECTION_TOKEN_RESPONSE), StandardCharsets.UTF_8));
+        return BackendJson.getString(json, "secret");
+    }
+
+    @Benchmark
+    public String legacyConnectionToken() throws IOException, JSONException {
+        return legacyParse(CONNECTION_TOKEN_RESPONSE).getString("secret");
+    }
+
+    @Benchmark
+    public String encodeCreateRequest() {
+        Map<String, Object> body = new HashMap<>();
+        body.put("amount", 12550L);
+        body.put("currency", "czk");
+        return BackendJson.write(body);
+    }
+
+    private static JSONObject legacyParse(byte[] body) throws IOException, JSONException {
+        StringBuilder response = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body)))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                response.append(line);
+            }
+        }
+        return new JSONObject(response.toString());
+    }
+}
@@ -0,0 +1,46 @@
+package com.compostos.app;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead that stage timing adds to the payment path, uncontended and with SDK callback
+ * threads recording concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Benchmark
+    public void record() {
+        histogram.recordMicros(ThreadLocalRandom.current().nextInt(1, 5_000_000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        histogram.recordMicros(ThreadLocalRandom.current().nextInt(1, 5_000_000));
+    }
+
+    @Benchmark
+    public double p99() {
+        return histogram.percentileMillis(0.99);
+    }
+}
@@ -0,0 +1,56 @@
+package com.compostos.app;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing readers into the {@code added}/{@code changed} arrays of the
+ * {@code readersChanged} bridge payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReaderSerializationBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int readerCount;
+
+    private List<ReaderInfo> readers;
+
+    @Setup
+    public void setUp() {
+        readers = new ArrayList<>(readerCount);
+        for (int i = 0; i < readerCount; i++) {
+            readers.add(new ReaderInfo("STRM2" + String.format("%07d", i), "TAP_TO_PAY_DEVICE", "tml_FAKE" + (i % 3)));
+        }
+    }
+
+    @Benchmark
+    public JSONArray toJsonArray() throws JSONException {
+        return ReaderInfo.toJsonArray(readers);
+    }
+
+    @Benchmark
+    public String toBridgeString() throws JSONException {
+        // What actually crosses the WebView bridge
+        return ReaderInfo.toJsonArray(readers).toString();
+    }
+}
@@ -156,9 +156,11 @@ export default function MobileApp({ isFrame = false }: MobileAppProps) {
         // Initialize Stripe Terminal with real Location ID (from dashboard)
         const initHardware = async () => {
             try {
-                // Use configured values from settings store
-                await hardwareService.setStripeBackendUrl(stripeBackendUrl || 'https://beatris-unhating-emmaline.ngrok-free.dev');
-                await hardwareService.setStripeLocationId(stripeLocationId || 'tml_GXNjCAxtrU1n9x');
+                // Use configured values from settings store, applied in one native call
+                await hardwareService.configureStripe({
+                    backendUrls: [stripeBackendUrl || 'https://beatris-unhating-emmaline.ngrok-free.dev'],
+                    locationId: stripeLocationId || 'tml_GXNjCAxtrU1n9x'
+                });
 
                 console.log('✅ Hardware Service initialized with config:', {
                     url: stripeBackendUrl,
@@ -229,7 +231,7 @@ export default function MobileApp({ isFrame = false }: MobileAppProps) {
             const tax = areTaxesEnabled ? subtotal * taxRate : 0
             const total = subtotal + tax
 
-            const receiptData = await receiptService.generateReceipt({
+            const receipt = {
                 storeName: receiptConfig.storeName || 'ComPOSt Store',
                 storeAddress: receiptConfig.storeAddress || '',
                 storePhone: receiptConfig.storePhone || '',
@@ -246,8 +248,19 @@ export default function MobileApp({ isFrame = false }: MobileAppProps) {
                 tax,
                 taxRate,
                 total,
-            }, receiptConfig, logoImage || undefined, qrCodeImage || undefined, printerSettings.paperSize)
+            }
+
+            if (printerSettings.connectedPrinterId && hardwareService.isNativePrinter(printerSettings.connectedPrinterId)) {
+                const success = await hardwareService.printReceiptNative(printerSettings.connectedPrinterId, receipt, receiptConfig, logoImage || undefined, qrCodeImage || undefined, printerSettings.paperSize)
+                if (success) {
+                    console.log('Receipt printed successfully')
+                } else {
+                    console.error('Failed to print receipt')
+                }
+                return
+            }
 
+            const receiptData = await receiptService.generateReceipt(receipt, receiptConfig, logoImage || undefined, qrCodeImage || undefined, printerSettings.paperSize)
 
             if (printerSettings.connectedPrinterId) {
                 const success = await hardwareService.printReceipt(printerSettings.connectedPrinterId, receiptData)
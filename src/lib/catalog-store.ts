@@ -0,0 +1,162 @@
+import { Capacitor, registerPlugin } from '@capacitor/core';
+import type { PersistStorage, StorageValue } from 'zustand/middleware';
+import type { InventoryCategory, InventoryItem } from '@/stores/useInventoryStore';
+import type { OrderTab } from '@/stores/useOrderStore';
+import type { ExpenseItem } from '@/stores/useExpenseStore';
+
+export type CatalogProduct = InventoryItem & { sku?: string; barcode?: string; stock?: number };
+export type CatalogOrder = OrderTab & { status?: 'open' | 'paid' | 'void'; total?: number; itemCount?: number; createdAt?: number; updatedAt?: number };
+
+interface Page<T> {
+    records: T[];
+    nextCursor?: string;
+}
+
+// Native indexed store for the catalog, stock, orders and expenses; writes only touch the records passed in
+interface CatalogStorePlugin {
+    upsertCategories(options: { categories: (InventoryCategory & { position?: number })[] }): Promise<{ upserted: number }>;
+    deleteCategories(options: { ids: string[] }): Promise<{ deleted: number }>;
+    getCategories(): Promise<{ categories: (InventoryCategory & { position: number })[] }>;
+    upsertProducts(options: { products: CatalogProduct[] }): Promise<{ upserted: number }>;
+    deleteProducts(options: { ids: string[] }): Promise<{ deleted: number }>;
+    queryProducts(options?: { query?: string; categoryId?: string; favoritesOnly?: boolean; cursor?: string; limit?: number }): Promise<Page<CatalogProduct>>;
+    getProducts(options: { ids: string[] }): Promise<{ products: CatalogProduct[] }>;
+    findByBarcode(options: { barcode: string }): Promise<{ product: CatalogProduct | null }>;
+    setStock(options: { levels: { productId: string; quantity: number }[] }): Promise<{ updated: number }>;
+    adjustStock(options: { deltas: { productId: string; delta: number }[] }): Promise<{ levels: { productId: string; quantity: number }[] }>;
+    upsertOrders(options: { orders: CatalogOrder[] }): Promise<{ upserted: number }>;
+    deleteOrders(options: { ids: string[] }): Promise<{ deleted: number }>;
+    queryOrders(options?: { status?: string; cursor?: string; limit?: number }): Promise<Page<CatalogOrder>>;
+    upsertExpenses(options: { expenses: ExpenseItem[] }): Promise<{ upserted: number }>;
+    deleteExpenses(options: { ids: string[] }): Promise<{ deleted: number }>;
+    queryExpenses(options?: { from?: string; to?: string; category?: string; cursor?: string; limit?: number }): Promise<Page<ExpenseItem>>;
+    getStoreStats(): Promise<{ counts: { categories: number; products: number; terms: number; stockLevels: number; orders: number; expenses: number } }>;
+}
+
+export const CatalogStore = registerPlugin<CatalogStorePlugin>('CatalogStore');
+
+// Keeps each bridge message small when writing thousands of SKUs
+const IMPORT_BATCH_SIZE = 500;
+
+export function isCatalogStoreAvailable(): boolean {
+    return Capacitor.isNativePlatform();
+}
+
+export type InventorySnapshot = { categories: InventoryCategory[]; items: InventoryItem[] };
+
+// Set once the native store owns the inventory, so an empty catalog stays empty instead of re-seeding
+const NATIVE_INVENTORY_KEY = 'compost_inventory_native';
+
+// What was last written per id and where it sits in the list; records keep their position for life
+interface Written {
+    json: Map<string, string>;
+    position: Map<string, number>;
+    next: number;
+}
+
+const writtenCategories: Written = { json: new Map(), position: new Map(), next: 0 };
+const writtenItems: Written = { json: new Map(), position: new Map(), next: 0 };
+let writes: Promise<void> = Promise.resolve();
+
+function diff<T extends { id: string }>(written: Written, records: T[]): { upserts: (T & { position: number })[]; deletes: string[] } {
+    const upserts: (T & { position: number })[] = [];
+    const seen = new Set<string>();
+    for (const record of records) {
+        seen.add(record.id);
+        const json = JSON.stringify(record);
+        if (written.json.get(record.id) === json) continue;
+        let position = written.position.get(record.id);
+        if (position === undefined) {
+            position = written.next++;
+            written.position.set(record.id, position);
+        }
+        written.json.set(record.id, json);
+        upserts.push({ ...record, position });
+    }
+    const deletes = [...written.json.keys()].filter(id => !seen.has(id));
+    for (const id of deletes) {
+        written.json.delete(id);
+        written.position.delete(id);
+    }
+    return { upserts, deletes };
+}
+
+function remember<T extends { id: string; position?: number }>(written: Written, records: T[]): T[] {
+    const sorted = [...records].sort((a, b) => (a.position ?? 0) - (b.position ?? 0));
+    return sorted.map(({ position, ...record }) => {
+        const pos = position ?? written.next;
+        written.position.set(record.id, pos);
+        written.next = Math.max(written.next, pos + 1);
+        written.json.set(record.id, JSON.stringify(record));
+        return record as unknown as T;
+    });
+}
+
+// A failed write is retried by the next one: its upserts look changed and its deletes still pending
+function forget(written: Written, changes: { upserts: { id: string }[]; deletes: string[] }) {
+    for (const record of changes.upserts) written.json.delete(record.id);
+    for (const id of changes.deletes) written.json.set(id, '');
+}
+
+async function writeInventory(state: InventorySnapshot): Promise<void> {
+    const categories = diff(writtenCategories, state.categories);
+    const items = diff(writtenItems, state.items);
+    try {
+        if (categories.upserts.length) await CatalogStore.upsertCategories({ categories: categories.upserts });
+        for (let i = 0; i < items.upserts.length; i += IMPORT_BATCH_SIZE) {
+            await CatalogStore.upsertProducts({ products: items.upserts.slice(i, i + IMPORT_BATCH_SIZE) });
+        }
+        if (items.deletes.length) await CatalogStore.deleteProducts({ ids: items.deletes });
+        if (categories.deletes.length) await CatalogStore.deleteCategories({ ids: categories.deletes });
+    } catch (e) {
+        forget(writtenCategories, categories);
+        forget(writtenItems, items);
+        throw e;
+    }
+    localStorage.setItem(NATIVE_INVENTORY_KEY, '1');
+}
+
+async function readProducts(): Promise<CatalogProduct[]> {
+    const products: CatalogProduct[] = [];
+    let cursor: string | undefined;
+    do {
+        const page = await CatalogStore.queryProducts({ cursor, limit: IMPORT_BATCH_SIZE });
+        products.push(...page.records);
+        cursor = page.nextCursor;
+    } while (cursor);
+    return products;
+}
+
+/**
+ * Persist storage for the inventory store on native. The first load imports the existing
+ * localStorage blob once; every later write only sends the categories and products that changed.
+ */
+export const catalogInventoryStorage: PersistStorage<InventorySnapshot> = {
+    async getItem(name) {
+        const [{ categories }, products] = await Promise.all([CatalogStore.getCategories(), readProducts()]);
+        if (categories.length === 0 && products.length === 0 && !localStorage.getItem(NATIVE_INVENTORY_KEY)) {
+            const saved = localStorage.getItem(name);
+            if (!saved) return null;
+            const value = JSON.parse(saved) as StorageValue<InventorySnapshot>;
+            await writeInventory(value.state);
+            localStorage.removeItem(name);
+            console.log(`📦 Imported ${value.state.items.length} products into the native catalog`);
+            return value;
+        }
+        return {
+            state: {
+                categories: remember(writtenCategories, categories),
+                items: remember(writtenItems, products as (CatalogProduct & { position?: number })[]),
+            },
+            version: 0,
+        };
+    },
+    setItem(_name, value) {
+        // Queued so each diff sees the previous write
+        writes = writes.then(() => writeInventory(value.state)).catch(e => console.error('Failed to persist inventory:', e));
+        return writes;
+    },
+    removeItem() {
+        // The native catalog is never dropped wholesale
+    },
+};
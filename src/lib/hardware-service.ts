@@ -1,20 +1,135 @@
 export type HardwareType = 'printer' | 'terminal' | 'scanner' | 'card_reader';
 import { Capacitor, registerPlugin } from '@capacitor/core';
+import type { ReceiptData } from './receipt-service';
+import type { ReceiptConfig } from '@/sections/settings-and-configuration/types';
+
+// Sale progress from checkoutStatus events. 'confirm_delayed': the card may still be charged;
+// collectPayment stays pending until the outcome is known, so don't offer a retry meanwhile
+export type CheckoutStatus = 'queued' | 'waiting_for_reader' | 'waiting_for_card' | 'processing' | 'confirm_delayed';
+
+// One coalesced frame from the native event stream; events are ordered by seq
+interface TerminalEventFrame {
+    frame: number;
+    dropped: number;
+    events: ({ seq: number; type: 'connectionStatus' | 'paymentStatus' | 'checkoutStatus' | 'readerBattery' | 'readerDisconnected' | 'readerReconnected' | 'readerReconnectFailed' | 'paymentCaptured' } & Record<string, any>)[];
+}
+
+// Totals are per currency; amounts in minor units (cents/haléře)
+interface TransactionTotals {
+    day?: string;
+    currency: string;
+    count: number;
+    succeeded: number;
+    failed: number;
+    cancelled: number;
+    timedOut: number;
+    grossAmountMinor: number;
+    avgTotalMs: number;
+    maxTotalMs: number;
+}
+
+type TransactionStatus = 'succeeded' | 'failed' | 'cancelled' | 'timed_out';
+
+interface TransactionRecord {
+    id: number;
+    paymentIntentId?: string;
+    checkoutId: number;
+    createdAt: number;
+    day: string;
+    status: TransactionStatus;
+    amountMinor: number;
+    currency: string;
+    readerSerial?: string;
+    shiftId?: string;
+    errorCode?: string;
+    errorMessage?: string;
+    timings: { intentMs: number; collectMs: number; confirmMs: number; totalMs: number };
+}
+
+// Outcome of one deferred capture; 'pending' intents stay queued and are retried
+interface CaptureResult {
+    paymentIntentId: string;
+    amountMinor: number;
+    currency: string;
+    authorizedAt: number;
+    attempts: number;
+    status: 'captured' | 'failed' | 'pending';
+    error?: string;
+}
+
+// Native settings snapshot; persisted on the device and swapped whole by configure
+export interface StripeTerminalConfig {
+    backendUrls: string[];
+    // null: use the location returned by /bootstrap
+    locationId: string | null;
+    simulated: boolean;
+}
 
 interface StripeTerminalPlugin {
     initialize(): Promise<void>;
-    setBackendUrl(options: { url: string }): Promise<void>;
-    setSimulatedMode(options: { simulated: boolean }): Promise<void>;
+    configure(options: Partial<StripeTerminalConfig> & { backendUrl?: string }): Promise<StripeTerminalConfig & { effectiveLocationId: string }>;
+    getConfig(): Promise<StripeTerminalConfig & { effectiveLocationId: string }>;
+    getBackendStatus(): Promise<{ activeUrl: string; endpoints: Array<{ url: string; state: 'CLOSED' | 'OPEN'; active: boolean; rttMs?: number; errorRate: number; consecutiveFailures: number; successes: number; failures: number }> }>;
+    setBackendTimeouts(options: { endpoint: string; connectTimeoutMs?: number; readTimeoutMs?: number }): Promise<void>;
     discoverReaders(options?: any): Promise<void>;
     connectReader(options: { serialNumber: string }): Promise<{ connected: boolean; serialNumber: string }>;
-    setLocationId(options: { locationId: string }): Promise<void>;
-    collectPayment(options: { amount: number; currency?: string }): Promise<{ success: boolean; amount: number; simulated: boolean; paymentIntentId?: string }>;
-    addListener(eventName: 'readersDiscovered', listenerFunc: (data: { readers: any[] }) => void): Promise<{ remove: () => void }>;
-    addListener(eventName: 'paymentStatus', listenerFunc: (data: { status: string; message: string }) => void): Promise<{ remove: () => void }>;
+    bootstrapSession(options?: { intents?: number; currency?: string; amount?: number }): Promise<{ batched: boolean; locationId: string; locationName?: string; pooledIntents: number; error?: string }>;
+    preparePayment(options: { amount: number; currency?: string }): Promise<{ prepared: boolean; paymentIntentId: string; amount: number }>;
+    cancelPreparedPayment(): Promise<void>;
+    collectPayment(options: { amount: number; currency?: string; queue?: boolean }): Promise<{ success: boolean; amount: number; simulated: boolean; checkoutId?: number; paymentIntentId?: string; captured?: boolean }>;
+    cancelPayment(options?: { checkoutId?: number }): Promise<{ cancelled: boolean; stage: 'queued' | 'payment_intent' | 'waiting_for_reader' | 'collecting' }>;
+    getCheckoutState(): Promise<{ checkouts: { checkoutId: number; stage: 'queued' | 'payment_intent' | 'waiting_for_reader' | 'collecting' | 'confirming'; amount: number; currency: string; elapsedMs: number }[]; intentTimeoutMs: number; collectTimeoutMs: number; confirmTimeoutMs: number }>;
+    setCheckoutTimeouts(options: { intentTimeoutMs?: number; collectTimeoutMs?: number; confirmTimeoutMs?: number }): Promise<void>;
+    getMetrics(options?: { reset?: boolean }): Promise<{ stages: Record<string, { count: number; successes: number; failures: number; p50Ms: number; p95Ms: number; p99Ms: number; maxMs: number; errors: Record<string, number> }>; hedging: Record<string, { attempts: number; retries: number; hedges: number; hedgeWins: number; hedgeAfterMs: number }> }>;
+    getTransactions(options?: { from?: number; to?: number; status?: TransactionStatus; shiftId?: string; cursor?: string; limit?: number }): Promise<{ transactions: TransactionRecord[]; nextCursor?: string }>;
+    getDailyTotals(options?: { from?: number; to?: number }): Promise<{ totals: TransactionTotals[] }>;
+    startShift(options?: { shiftId?: string }): Promise<{ shiftId: string; startedAt: number }>;
+    endShift(): Promise<{ shiftId: string; startedAt: number; endedAt: number; totals: TransactionTotals[]; captures: CaptureResult[]; uncaptured: number }>;
+    getShiftTotals(options?: { shiftId?: string }): Promise<{ shiftId: string; totals: TransactionTotals[] }>;
+    setCaptureMode(options: { mode: 'automatic' | 'manual'; batchSize?: number; intervalMs?: number }): Promise<void>;
+    capturePendingPayments(): Promise<{ results: CaptureResult[]; pending: number }>;
+    getCaptureStatus(): Promise<{ mode: 'automatic' | 'manual'; batchSize: number; intervalMs: number; pending: Omit<CaptureResult, 'status' | 'error'>[] }>;
+    configureTelemetry(options: { enabled?: boolean; path?: string; batchSize?: number; intervalMs?: number }): Promise<void>;
+    getTelemetryStatus(options?: { flush?: boolean }): Promise<{ enabled: boolean; path: string; batchSize: number; intervalMs: number; buffered: number; uploadedRecords: number; uploadedBatches: number; uploadedBytes: number; dropped: number; lastError?: string }>;
+    configureMaintenance(options: { enabled?: boolean; idleDelayMs?: number }): Promise<void>;
+    getMaintenanceStatus(): Promise<{ enabled: boolean; idle: boolean; idleDelayMs: number; tasks: { name: 'tokenRefresh' | 'intentRefill' | 'readerHealth' | 'compaction' | 'uploadFlush'; intervalMs: number; runs: number; failures: number; lastRunAt: number; lastDurationMs: number; lastError?: string; blockedBy?: 'battery' | 'network' }[] }>;
+    queueBackendOperation(options: { path: string; body?: Record<string, unknown> }): Promise<{ queued: boolean; pending: number }>;
+    getOutboxStatus(): Promise<{ pending: number; deadLettered: number }>;
+    setPrewarmEnabled(options: { enabled: boolean }): Promise<void>;
+    getStartupInfo(): Promise<{ prewarmed: boolean; phasesMs: Record<string, number>; capabilities: { nfcSupported: boolean; nfcEnabled: boolean; locationPermission: boolean } }>;
+    reconnectLastReader(): Promise<{ connected: boolean; serialNumber: string; locationId: string }>;
+    setAutoReconnect(options: { enabled: boolean }): Promise<void>;
+    forgetLastReader(): Promise<void>;
+    setLogLevel(options: { level?: 'VERBOSE' | 'DEBUG' | 'INFO' | 'WARN' | 'ERROR' | 'NONE'; bufferLevel?: 'VERBOSE' | 'DEBUG' | 'INFO' | 'WARN' | 'ERROR' | 'NONE'; sdkLevel?: string }): Promise<{ sdkLevel: string; sdkLevelPendingRestart: boolean }>;
+    getRecentLogs(options?: { limit?: number; minLevel?: string }): Promise<{ entries: { time: number; level: string; message: string }[] }>;
+    exportCrashBreadcrumbs(options?: { includeCurrent?: boolean }): Promise<{ lastSessionCrashed: boolean; breadcrumbs: { seq: number; time: number; text: string }[]; current?: { seq: number; time: number; text: string }[] }>;
+    configureEventStream(options: { windowMs?: number; requireAck?: boolean }): Promise<void>;
+    ackTerminalEvents(options: { frame: number }): Promise<void>;
+    getTerminalState(): Promise<Record<string, Record<string, unknown>>>;
+    getExecutorStats(): Promise<{ queueDepth: number; activeThreads: number; poolSize: number; completedTasks: number; rejectedTasks: number; avgRunMs: number; maxRunMs: number; avgQueueWaitMs: number; maxQueueWaitMs: number }>;
+    getDiscoveredReaders(): Promise<{ readers: any[] }>;
+    addListener(eventName: 'readersChanged', listenerFunc: (data: { added: any[]; changed: any[]; removed: string[] }) => void): Promise<{ remove: () => void }>;
+    addListener(eventName: 'terminalEvents', listenerFunc: (data: TerminalEventFrame) => void): Promise<{ remove: () => void }>;
 }
 
 const StripeTerminal = registerPlugin<StripeTerminalPlugin>('StripeTerminal');
 
+// Native ESC/POS printing over Classic Bluetooth (SPP) or BLE; addresses are Bluetooth MACs
+interface ReceiptPrinterPlugin {
+    getPairedPrinters(): Promise<{ printers: { address: string; name?: string; type: 'classic' | 'le' | 'dual' | 'unknown'; connected: boolean }[] }>;
+    connect(options: { address: string; transport?: 'auto' | 'spp' | 'ble'; paperWidth?: 58 | 80; bytesPerSecond?: number; timeoutMs?: number }): Promise<{ connected: boolean; address: string; transport: 'spp' | 'ble'; chunkSize: number; logoCached: boolean; connectMs: number }>;
+    disconnect(options: { address: string }): Promise<void>;
+    setLogo(options: { address: string; image: string; widthRatio?: number }): Promise<{ cached: boolean; width: number; height: number; bytes: number }>;
+    clearLogo(options: { address: string }): Promise<void>;
+    printReceipt(options: { address: string; receipt: ReceiptData & { currencySymbol?: string }; layout?: Partial<ReceiptConfig> & { codePage?: 'PC437' | 'PC850' | 'PC852' | 'WPC1250' | 'WPC1252' }; logo?: boolean; qrCode?: string }): Promise<{ bytes: number; encodeMs: number; sendMs: number }>;
+    printRaw(options: { address: string; data: string }): Promise<{ bytes: number; sendMs: number }>;
+    getPrinterStatus(options: { address: string }): Promise<{ connected: boolean; transport: 'spp' | 'ble'; chunkSize: number; paperWidth: number; logoCached: boolean; jobs: number; bytesSent: number; lastSendMs: number }>;
+}
+
+const ReceiptPrinter = registerPlugin<ReceiptPrinterPlugin>('ReceiptPrinter');
+
+const BLUETOOTH_ADDRESS = /^([0-9A-F]{2}:){5}[0-9A-F]{2}$/;
+
 export type PrinterConnectionMethod = 'bluetooth' | 'usb';
 
 export interface BaseDevice {
@@ -56,6 +171,9 @@ const THERMAL_PRINTER_SERVICES = [
 
 interface PrinterConnection {
     method: PrinterConnectionMethod;
+    // Connected through the ReceiptPrinter plugin; the printer id is its Bluetooth MAC
+    native?: boolean;
+    logoCached?: boolean;
     bluetoothDevice?: any;
     gattServer?: any;
     characteristic?: any;
@@ -75,17 +193,33 @@ class HardwareService {
         this.loadDevices();
     }
 
+    /**
+     * Apply backend URLs, location and simulated mode in one native call; the settings are
+     * validated together and persisted on the device. Omitted keys keep their value.
+     */
+    async configureStripe(config: Partial<StripeTerminalConfig>): Promise<void> {
+        if (config.backendUrls?.length) this.stripeBackendUrl = config.backendUrls[0];
+        console.log('⚙️ Stripe Terminal configured:', config);
+
+        if (Capacitor.isNativePlatform()) {
+            await StripeTerminal.configure(config);
+        }
+    }
+
     /**
      * Set the Stripe backend URL (e.g., ngrok URL)
      * Call this before initializing terminal
      */
     async setStripeBackendUrl(url: string): Promise<void> {
-        this.stripeBackendUrl = url;
-        console.log('🔗 Stripe backend URL set to:', url);
+        await this.configureStripe({ backendUrls: [url] });
+    }
 
-        if (Capacitor.isNativePlatform()) {
-            await StripeTerminal.setBackendUrl({ url });
-        }
+    /**
+     * Set several backend URLs in order of preference (e.g. cloud, then the in-store server);
+     * the app fails over between them automatically
+     */
+    async setStripeBackendUrls(urls: string[]): Promise<void> {
+        await this.configureStripe({ backendUrls: urls });
     }
 
     /**
@@ -99,8 +233,52 @@ class HardwareService {
      * Set the Stripe Location ID (tml_...)
      */
     async setStripeLocationId(locationId: string): Promise<void> {
+        await this.configureStripe({ locationId });
+    }
+
+    /**
+     * Shift start: fetch the connection token, location and a few PaymentIntents in one
+     * backend call (falls back to separate calls on older backends); no-op on browser.
+     */
+    async bootstrapTerminalSession(intents = 2): Promise<void> {
+        if (!Capacitor.isNativePlatform()) return;
+
+        try {
+            const result = await StripeTerminal.bootstrapSession({ intents, currency: 'czk' });
+            console.log(`🚀 Terminal session bootstrapped (batched: ${result.batched}, location: ${result.locationId}, intents: ${result.pooledIntents})`);
+        } catch (error) {
+            // Not fatal: token and intents are fetched on demand
+            console.warn('⚠️ Failed to bootstrap terminal session:', error);
+        }
+    }
+
+    /**
+     * Manual capture: payments resolve once the card is approved and are captured in
+     * batches (every batchSize sales, after intervalMs, and at endShift); no-op on browser.
+     */
+    async setStripeCaptureMode(mode: 'automatic' | 'manual', batchSize?: number, intervalMs?: number): Promise<void> {
+        if (Capacitor.isNativePlatform()) {
+            await StripeTerminal.setCaptureMode({ mode, batchSize, intervalMs });
+        }
+    }
+
+    /**
+     * Performance telemetry batching: uploads go to `path` on the backend every batchSize
+     * records or intervalMs; disabling drops what is buffered. No-op on browser.
+     */
+    async setStripeTelemetry(enabled: boolean, batchSize?: number, intervalMs?: number): Promise<void> {
         if (Capacitor.isNativePlatform()) {
-            await StripeTerminal.setLocationId({ locationId });
+            await StripeTerminal.configureTelemetry({ enabled, batchSize, intervalMs });
+        }
+    }
+
+    /**
+     * Idle-time native maintenance (token refresh, intent refill, reader health, compaction,
+     * upload flushes); it runs only after idleDelayMs without a payment. No-op on browser.
+     */
+    async setStripeMaintenance(enabled: boolean, idleDelayMs?: number): Promise<void> {
+        if (Capacitor.isNativePlatform()) {
+            await StripeTerminal.configureMaintenance({ enabled, idleDelayMs });
         }
     }
 
@@ -109,10 +287,7 @@ class HardwareService {
      * Use this for development/debugging when real NFC is not available
      */
     async setStripeSimulatedMode(simulated: boolean): Promise<void> {
-        console.log('🔧 Setting Stripe simulated mode:', simulated);
-        if (Capacitor.isNativePlatform()) {
-            await StripeTerminal.setSimulatedMode({ simulated });
-        }
+        await this.configureStripe({ simulated });
     }
 
     private loadDevices() {
@@ -157,7 +332,7 @@ class HardwareService {
      * Check if Web Bluetooth is available
      */
     isBluetoothAvailable(): boolean {
-        return 'bluetooth' in navigator;
+        return Capacitor.isNativePlatform() || 'bluetooth' in navigator;
     }
 
     /**
@@ -198,9 +373,28 @@ class HardwareService {
 
     /**
      * Discover Bluetooth printers
-     * Note: This uses Web Bluetooth which only supports BLE, not Classic Bluetooth SPP
+     * Note: On the web this uses Web Bluetooth which only supports BLE, not Classic Bluetooth SPP;
+     * the native app lists printers paired in Android settings instead
      */
     async discoverBlePrinters(): Promise<Printer[]> {
+        if (Capacitor.isNativePlatform()) {
+            try {
+                const printers = await this.getNativePrinters();
+                return printers.map(p => ({
+                    id: p.address,
+                    name: p.name || p.address,
+                    type: 'printer' as const,
+                    isConnected: p.connected,
+                    status: 'idle' as const,
+                    connectionType: 'bluetooth' as const,
+                    paperSize: '58mm' as const
+                }));
+            } catch (e) {
+                console.error('Failed to list paired printers:', e);
+                return [];
+            }
+        }
+
         if (!this.isBluetoothAvailable()) {
             console.log('Web Bluetooth not available');
             return [];
@@ -288,13 +482,13 @@ class HardwareService {
                         await StripeTerminal.initialize();
                         console.log('✅ Stripe Terminal SDK initialized');
 
-                        const listener = await StripeTerminal.addListener('readersDiscovered', (data) => {
-                            if (hasResolved) return;
+                        const listener = await StripeTerminal.addListener('readersChanged', (data) => {
+                            if (hasResolved || data.added.length === 0) return;
                             hasResolved = true;
 
-                            console.log('📡 Native readers discovered:', data.readers);
+                            console.log('📡 Native readers discovered:', data.added);
                             listener.remove();
-                            const mapped = data.readers.map((r: any) => ({
+                            const mapped = data.added.map((r: any) => ({
                                 id: r.serialNumber,
                                 name: `Phone NFC Reader`,
                                 type: 'terminal' as const,
@@ -383,11 +577,44 @@ class HardwareService {
         return { connected: true, serialNumber };
     }
 
+    /**
+     * Create the PaymentIntent ahead of time while the cart is being built.
+     * Call again whenever the total changes; no-op on browser.
+     */
+    async prepareTerminalPayment(amount: number): Promise<void> {
+        if (!Capacitor.isNativePlatform()) return;
+
+        try {
+            const result = await StripeTerminal.preparePayment({ amount, currency: 'czk' });
+            console.log('⚡ PaymentIntent prepared:', result.paymentIntentId);
+        } catch (error) {
+            // Not fatal: collectPayment will create the intent itself
+            console.warn('⚠️ Failed to prepare payment:', error);
+        }
+    }
+
+    /**
+     * Cancel a prepared PaymentIntent (e.g. cart cleared); no-op on browser.
+     */
+    async cancelPreparedTerminalPayment(): Promise<void> {
+        if (!Capacitor.isNativePlatform()) return;
+        await StripeTerminal.cancelPreparedPayment();
+    }
+
+    /**
+     * Abort the payment on the reader (or the queued one); no-op on browser.
+     * Fails once the payment is already being confirmed.
+     */
+    async cancelTerminalPayment(): Promise<void> {
+        if (!Capacitor.isNativePlatform()) return;
+        await StripeTerminal.cancelPayment();
+    }
+
     /**
      * Collect payment using the connected terminal
      * Uses native plugin on Android, simulated on browser
      */
-    async collectTerminalPayment(amount: number, onStatusChange?: (status: string, message: string) => void): Promise<{ success: boolean; amount: number; simulated: boolean; paymentIntentId?: string }> {
+    async collectTerminalPayment(amount: number, onStatusChange?: (status: CheckoutStatus, message: string) => void): Promise<{ success: boolean; amount: number; simulated: boolean; paymentIntentId?: string }> {
         console.log('💳 Collecting payment:', amount);
 
         if (Capacitor.isNativePlatform()) {
@@ -397,9 +624,15 @@ class HardwareService {
             // Listen for payment status updates
             let statusListener: { remove: () => void } | null = null;
             if (onStatusChange) {
-                statusListener = await StripeTerminal.addListener('paymentStatus', (data) => {
-                    console.log('📊 Payment status:', data.status, data.message);
-                    onStatusChange(data.status, data.message);
+                statusListener = await StripeTerminal.addListener('terminalEvents', (frame) => {
+                    for (const event of frame.events) {
+                        if (event.type !== 'checkoutStatus') continue;
+                        console.log('📊 Payment status:', event.status, event.message);
+                        if (event.status === 'confirm_delayed') {
+                            console.warn('⏳ Payment still confirming - waiting for the outcome instead of failing');
+                        }
+                        onStatusChange(event.status as CheckoutStatus, event.message);
+                    }
                 });
             }
 
@@ -593,7 +826,9 @@ class HardwareService {
                 if (device.connectionType === 'usb') {
                     success = await this.connectUsbPrinter(device);
                 } else if (device.connectionType === 'bluetooth') {
-                    success = await this.connectBlePrinter(device);
+                    success = Capacitor.isNativePlatform()
+                        ? await this.connectNativePrinter(device.id, (device as Printer).paperSize)
+                        : await this.connectBlePrinter(device);
                 }
 
                 if (success) {
@@ -630,7 +865,9 @@ class HardwareService {
         try {
             const connection = this.connectedPrinters.get(deviceId);
             if (connection) {
-                if (connection.method === 'usb' && connection.writer) {
+                if (connection.native) {
+                    await ReceiptPrinter.disconnect({ address: deviceId });
+                } else if (connection.method === 'usb' && connection.writer) {
                     connection.writer.releaseLock();
                     await connection.serialPort?.close();
                 } else if (connection.method === 'bluetooth' && connection.gattServer) {
@@ -892,6 +1129,70 @@ class HardwareService {
     isRawBTAvailable(): boolean {
         return this.isAndroid();
     }
+
+    /**
+     * Bluetooth printers paired in Android settings (native only)
+     */
+    async getNativePrinters(): Promise<{ address: string; name?: string; type: string; connected: boolean }[]> {
+        if (!Capacitor.isNativePlatform()) return [];
+        const { printers } = await ReceiptPrinter.getPairedPrinters();
+        return printers;
+    }
+
+    async connectNativePrinter(address: string, paperSize: '58mm' | '80mm' = '58mm', transport: 'auto' | 'spp' | 'ble' = 'auto'): Promise<boolean> {
+        if (!Capacitor.isNativePlatform()) return false;
+        try {
+            const result = await ReceiptPrinter.connect({ address, transport, paperWidth: paperSize === '80mm' ? 80 : 58 });
+            this.connectedPrinters.set(address, { method: 'bluetooth', native: true, logoCached: result.logoCached });
+            console.log(`✅ Printer ${address} connected over ${result.transport} in ${result.connectMs}ms`);
+            return true;
+        } catch (e) {
+            console.error('Failed to connect native printer:', e);
+            return false;
+        }
+    }
+
+    /**
+     * Whether this printer id prints through the native plugin (a Bluetooth MAC on native)
+     */
+    isNativePrinter(printerId: string): boolean {
+        return Capacitor.isNativePlatform() && BLUETOOTH_ADDRESS.test(printerId);
+    }
+
+    /**
+     * Encode and print a receipt natively, reconnecting first if needed. The logo is only sent
+     * over the bridge when it changed or the printer has no cached copy.
+     */
+    async printReceiptNative(address: string, receipt: ReceiptData, config: ReceiptConfig, logoData?: string, qrCodeData?: string, paperSize: '58mm' | '80mm' = '58mm'): Promise<boolean> {
+        if (!Capacitor.isNativePlatform()) return false;
+        try {
+            let connection = this.connectedPrinters.get(address);
+            if (!connection?.native) {
+                if (!await this.connectNativePrinter(address, paperSize)) return false;
+                connection = this.connectedPrinters.get(address)!;
+            }
+            if (logoData) {
+                const key = `compost_printer_logo_${address}`;
+                const fingerprint = await this.fingerprint(logoData);
+                if (!connection.logoCached || localStorage.getItem(key) !== fingerprint) {
+                    await ReceiptPrinter.setLogo({ address, image: logoData });
+                    localStorage.setItem(key, fingerprint);
+                    connection.logoCached = true;
+                }
+            }
+            const result = await ReceiptPrinter.printReceipt({ address, receipt, layout: config, logo: !!logoData, qrCode: qrCodeData });
+            console.log(`✅ Receipt printed: ${result.bytes} bytes, sent in ${result.sendMs}ms`);
+            return true;
+        } catch (e) {
+            console.error('Native receipt print failed:', e);
+            return false;
+        }
+    }
+
+    private async fingerprint(data: string): Promise<string> {
+        const digest = await crypto.subtle.digest('SHA-256', new TextEncoder().encode(data));
+        return Array.from(new Uint8Array(digest), b => b.toString(16).padStart(2, '0')).join('');
+    }
 }
 
 export const hardwareService = new HardwareService();
@@ -46,10 +46,10 @@ export class ReceiptService {
 
 
     /**
-     * Generate test receipt with sample data
+     * Sample data for test prints
      */
-    static async generateTestReceipt(config: ReceiptConfig, logoData?: string, qrCodeData?: string, paperSize: '58mm' | '80mm' = '58mm'): Promise<Uint8Array> {
-        const testData: ReceiptData = {
+    static testReceiptData(): ReceiptData {
+        return {
             storeName: 'ComPOSt Demo Store',
             storeAddress: '123 Espresso Lane, Seattle, WA 98101',
             storePhone: '(206) 555-0123',
@@ -68,8 +68,13 @@ export class ReceiptService {
             total: 24.3,
             paymentMethod: 'Cash',
         }
+    }
 
-        return this.generateReceipt(testData, config, logoData, qrCodeData, paperSize)
+    /**
+     * Generate test receipt with sample data
+     */
+    static async generateTestReceipt(config: ReceiptConfig, logoData?: string, qrCodeData?: string, paperSize: '58mm' | '80mm' = '58mm'): Promise<Uint8Array> {
+        return this.generateReceipt(this.testReceiptData(), config, logoData, qrCodeData, paperSize)
     }
 
     /**
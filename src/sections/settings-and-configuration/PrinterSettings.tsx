@@ -14,7 +14,7 @@ import { Button } from '@/components/ui/button'
 import { IconTile, SystemIcon } from '@/components/ui/icon'
 import { Label } from '@/components/ui/label'
 import { SectionTitle } from '@/components/ui/section-title'
-import { hardwareService, type BaseDevice } from '@/lib/hardware-service'
+import { hardwareService, type BaseDevice, type Printer as PrinterDevice } from '@/lib/hardware-service'
 import { useSettingsStore } from '@/stores/useSettingsStore'
 import { receiptService } from '@/lib/receipt-service'
 
@@ -82,14 +82,15 @@ export default function PrinterSettings({ onBack }: PrinterSettingsProps) {
         try {
             console.log('Connecting to:', printer.name, `(${printer.connectionType})`)
 
-            const success = await hardwareService.connectDevice(printer)
+            // Native printers are opened at the configured paper width
+            const success = await hardwareService.connectDevice({ ...printer, paperSize: printerSettings.paperSize } as PrinterDevice)
             if (success) {
                 setStatusMessage('✅ Connected!')
                 setConnectedPrinter(printer.id, printer.name)
                 setDiscoveredPrinters([])
             } else {
                 setStatusMessage('❌ Connection failed - check console for details')
-                if (printer.connectionType === 'bluetooth') {
+                if (printer.connectionType === 'bluetooth' && !hardwareService.isNativePrinter(printer.id)) {
                     alert('Connection failed!\n\nThis printer may not support BLE printing.\nThe PTP-II uses Classic Bluetooth SPP which is not supported by Web Bluetooth.\n\nTry connecting via USB instead.')
                 }
                 setPrinterStatus('ERROR')
@@ -120,11 +121,24 @@ export default function PrinterSettings({ onBack }: PrinterSettingsProps) {
         }
 
         try {
-            console.log('Generating test receipt...')
-            const receiptData = await receiptService.generateTestReceipt(receiptConfig, logoImage || undefined)
-            console.log(`Receipt generated (${receiptData.length} bytes). Sending to printer...`)
+            let success: boolean
+            if (hardwareService.isNativePrinter(printerSettings.connectedPrinterId)) {
+                console.log('Sending test receipt to native printer...')
+                success = await hardwareService.printReceiptNative(
+                    printerSettings.connectedPrinterId,
+                    receiptService.testReceiptData(),
+                    receiptConfig,
+                    logoImage || undefined,
+                    undefined,
+                    printerSettings.paperSize
+                )
+            } else {
+                console.log('Generating test receipt...')
+                const receiptData = await receiptService.generateTestReceipt(receiptConfig, logoImage || undefined)
+                console.log(`Receipt generated (${receiptData.length} bytes). Sending to printer...`)
 
-            const success = await hardwareService.printReceipt(printerSettings.connectedPrinterId, receiptData)
+                success = await hardwareService.printReceipt(printerSettings.connectedPrinterId, receiptData)
+            }
 
             if (success) {
                 console.log('✅ Test print sent successfully! Check your printer.')
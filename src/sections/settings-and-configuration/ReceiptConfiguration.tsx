@@ -74,6 +74,22 @@ export default function ReceiptConfiguration({ onBack }: ReceiptConfigurationPro
 
     const handleTestPrint = async () => {
         try {
+            if (printerSettings.connectedPrinterId && hardwareService.isNativePrinter(printerSettings.connectedPrinterId)) {
+                alert('Tiskárna připojena, tisknu test... (' + printerSettings.connectedPrinterName + ')');
+                const success = await hardwareService.printReceiptNative(
+                    printerSettings.connectedPrinterId,
+                    receiptService.testReceiptData(),
+                    receiptConfig,
+                    logoImage || undefined,
+                    qrCodeImage || undefined,
+                    printerSettings.paperSize
+                )
+                if (!success) {
+                    alert('Chyba testovacího tisku.')
+                }
+                return
+            }
+
             // Generate test receipt with current config
             const receiptData = await receiptService.generateTestReceipt(
                 receiptConfig,
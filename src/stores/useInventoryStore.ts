@@ -1,5 +1,6 @@
 import { create } from 'zustand'
 import { persist, createJSONStorage } from 'zustand/middleware'
+import { catalogInventoryStorage, isCatalogStoreAvailable, type InventorySnapshot } from '@/lib/catalog-store'
 
 export interface InventoryCategory {
     id: string
@@ -121,7 +122,9 @@ export const useInventoryStore = create<InventoryState>()(
         }),
         {
             name: 'compost-inventory-storage-v6',
-            storage: createJSONStorage(() => localStorage),
+            // Native keeps the inventory in the indexed catalog store and imports this blob once
+            storage: isCatalogStoreAvailable() ? catalogInventoryStorage : createJSONStorage<InventorySnapshot>(() => localStorage),
+            partialize: (state): InventorySnapshot => ({ categories: state.categories, items: state.items }),
         }
     )
 )
@@ -56,24 +56,113 @@ app.post('/connection_token', async (req, res) => {
     }
 });
 
+/**
+ * POST /bootstrap
+ * 
+ * Everything the register needs at shift start in one round trip: a connection
+ * token, the Terminal location and a few PaymentIntents created ahead of time.
+ * The intents use a placeholder amount; the app sets the real amount with
+ * /update_payment_intent before collecting, and cancels any it doesn't use.
+ * The location is STRIPE_LOCATION_ID if set, otherwise the account's first one.
+ * Body: { intents: number (0-5), currency: string, amount?: number (in cents),
+ *         capture_method?: 'automatic' | 'manual' }
+ */
+app.post('/bootstrap', async (req, res) => {
+    const { currency = 'czk', amount = 2500 } = req.body;
+    const intents = Math.max(0, Math.min(5, parseInt(req.body.intents, 10) || 0));
+
+    console.log(`🚀 Bootstrap requested (${intents} intents, ${currency})`);
+
+    try {
+        const [connectionToken, location, paymentIntents] = await Promise.all([
+            stripe.terminal.connectionTokens.create(),
+            process.env.STRIPE_LOCATION_ID
+                ? stripe.terminal.locations.retrieve(process.env.STRIPE_LOCATION_ID)
+                : stripe.terminal.locations.list({ limit: 1 }).then((list) => list.data[0] || null),
+            Promise.all(Array.from({ length: intents }, () => stripe.paymentIntents.create({
+                amount: amount,
+                currency: currency,
+                payment_method_types: ['card_present'],
+                capture_method: captureMethod(req.body),
+            }))),
+        ]);
+
+        console.log(`✅ Bootstrap ready: location ${location ? location.id : 'none'}, ${paymentIntents.length} intents`);
+        res.json({
+            connection_token: { secret: connectionToken.secret },
+            location: location ? { id: location.id, display_name: location.display_name } : null,
+            payment_intents: paymentIntents.map((pi) => ({
+                id: pi.id,
+                client_secret: pi.client_secret,
+                amount: pi.amount,
+                currency: pi.currency,
+            })),
+        });
+    } catch (error) {
+        console.error('❌ Error during bootstrap:', error.message);
+        res.status(500).json({ error: error.message });
+    }
+});
+
+// Creates still running, by Idempotency-Key, so a hedged duplicate shares the first one
+const pendingCreates = new Map();
+
+// 'manual' when the app captures later in batches (manual-capture mode), else 'automatic'
+function captureMethod(body) {
+    return body.capture_method === 'manual' ? 'manual' : 'automatic';
+}
+
+// Stripe errors worth retrying later; anything else won't capture on a second try either
+function isRetryable(error) {
+    return ['StripeRateLimitError', 'StripeConnectionError', 'StripeAPIError'].includes(error.type);
+}
+
+// Capture one intent; an intent captured already (a retried batch) counts as captured
+async function capture(paymentIntentId) {
+    const existing = await stripe.paymentIntents.retrieve(paymentIntentId);
+    if (existing.status !== 'requires_capture') {
+        return existing;
+    }
+    return stripe.paymentIntents.capture(paymentIntentId);
+}
+
 /**
  * POST /create_payment_intent
  * 
  * Creates a PaymentIntent for terminal payments.
- * Body: { amount: number (in cents), currency: string }
+ * Body: { amount: number (in cents), currency: string, capture_method?: 'automatic' | 'manual' }
+ * 
+ * With capture_method 'manual' the intent stops at requires_capture once the
+ * card is approved; the app captures it later with /capture_payment_intents.
+ * 
+ * The app retries and hedges this call with the same Idempotency-Key header.
+ * Concurrent requests with one key wait for the same create, and the key is
+ * passed on to Stripe, so a retry returns the original intent.
  */
 app.post('/create_payment_intent', async (req, res) => {
     const { amount, currency = 'czk' } = req.body;
+    const idempotencyKey = req.get('Idempotency-Key');
 
-    console.log(`💳 Creating PaymentIntent for ${amount} ${currency}`);
+    console.log(`💳 Creating PaymentIntent for ${amount} ${currency}${idempotencyKey ? ` (${idempotencyKey})` : ''}`);
 
     try {
-        const paymentIntent = await stripe.paymentIntents.create({
-            amount: amount,
-            currency: currency,
-            payment_method_types: ['card_present'],
-            capture_method: 'automatic',
-        });
+        let create = idempotencyKey && pendingCreates.get(idempotencyKey);
+        if (!create) {
+            create = stripe.paymentIntents.create({
+                amount: amount,
+                currency: currency,
+                payment_method_types: ['card_present'],
+                capture_method: captureMethod(req.body),
+            }, idempotencyKey ? { idempotencyKey } : undefined);
+            if (idempotencyKey) {
+                pendingCreates.set(idempotencyKey, create);
+                create.then(
+                    () => pendingCreates.delete(idempotencyKey),
+                    () => pendingCreates.delete(idempotencyKey)
+                );
+            }
+        }
+        const paymentIntent = await create;
 
         console.log('✅ PaymentIntent created:', paymentIntent.id);
         res.json({
@@ -86,10 +175,63 @@ app.post('/create_payment_intent', async (req, res) => {
     }
 });
 
+/**
+ * POST /update_payment_intent
+ * 
+ * Changes the amount of a PaymentIntent that was created ahead of time
+ * (the register prepares it while the cart is still being built).
+ * Body: { payment_intent_id: string, amount: number (in cents) }
+ */
+app.post('/update_payment_intent', async (req, res) => {
+    const { payment_intent_id, amount } = req.body;
+
+    console.log(`✏️ Updating PaymentIntent ${payment_intent_id} to ${amount}`);
+
+    try {
+        const paymentIntent = await stripe.paymentIntents.update(payment_intent_id, { amount });
+
+        console.log('✅ PaymentIntent updated');
+        res.json({ id: paymentIntent.id, amount: paymentIntent.amount });
+    } catch (error) {
+        console.error('❌ Error updating PaymentIntent:', error.message);
+        res.status(500).json({ error: error.message });
+    }
+});
+
+/**
+ * POST /cancel_payment_intent
+ * 
+ * Cancels a prepared PaymentIntent that was never used. The app queues this
+ * in its outbox when it cannot cancel through the reader, so it may arrive late
+ * or more than once; an already-cancelled intent is not an error.
+ * Body: { payment_intent_id: string }
+ */
+app.post('/cancel_payment_intent', async (req, res) => {
+    const { payment_intent_id } = req.body;
+
+    console.log(`🗑️ Cancelling PaymentIntent ${payment_intent_id}`);
+
+    try {
+        const existing = await stripe.paymentIntents.retrieve(payment_intent_id);
+        if (existing.status === 'canceled') {
+            return res.json({ id: existing.id, status: existing.status });
+        }
+
+        const paymentIntent = await stripe.paymentIntents.cancel(payment_intent_id);
+
+        console.log('✅ PaymentIntent cancelled');
+        res.json({ id: paymentIntent.id, status: paymentIntent.status });
+    } catch (error) {
+        console.error('❌ Error cancelling PaymentIntent:', error.message);
+        res.status(500).json({ error: error.message });
+    }
+});
+
 /**
  * POST /capture_payment_intent
  * 
- * Captures a PaymentIntent after it's been confirmed.
+ * Captures a PaymentIntent after it's been confirmed. An intent that is
+ * captured already answers with its current status.
  * Body: { payment_intent_id: string }
  */
 app.post('/capture_payment_intent', async (req, res) => {
@@ -98,7 +240,7 @@ app.post('/capture_payment_intent', async (req, res) => {
     console.log(`🔒 Capturing PaymentIntent: ${payment_intent_id}`);
 
     try {
-        const paymentIntent = await stripe.paymentIntents.capture(payment_intent_id);
+        const paymentIntent = await capture(payment_intent_id);
 
         console.log('✅ PaymentIntent captured');
         res.json({ status: paymentIntent.status });
@@ -108,6 +250,90 @@ app.post('/capture_payment_intent', async (req, res) => {
     }
 });
 
+/**
+ * POST /capture_payment_intents
+ * 
+ * Captures a batch of authorized PaymentIntents (manual-capture mode: the app
+ * queues them after each sale and sends them on a timer, at a batch size or
+ * at shift close). Answers 200 with one result per intent; retryable results
+ * stay queued on the device, the others are final.
+ * Body: { payment_intent_ids: string[] (at most 100) }
+ * Response: { results: [{ id, status, error?, retryable? }] }
+ */
+app.post('/capture_payment_intents', async (req, res) => {
+    const ids = Array.isArray(req.body.payment_intent_ids) ? req.body.payment_intent_ids : [];
+    if (ids.length === 0 || ids.length > 100) {
+        return res.status(400).json({ error: 'payment_intent_ids must hold 1 to 100 ids' });
+    }
+
+    console.log(`🔒 Capturing ${ids.length} PaymentIntent(s)`);
+
+    const results = await Promise.all(ids.map(async (id) => {
+        try {
+            const paymentIntent = await capture(id);
+            return { id, status: paymentIntent.status };
+        } catch (error) {
+            console.error(`❌ Error capturing ${id}:`, error.message);
+            return { id, status: 'failed', error: error.message, retryable: isRetryable(error) };
+        }
+    }));
+
+    console.log(`✅ Captured ${results.filter((r) => r.status === 'succeeded').length}/${ids.length}`);
+    res.json({ results });
+});
+
+// Recent telemetry latencies per location and record kind, newest last
+const TELEMETRY_SAMPLES = 1000;
+const telemetry = new Map();
+
+/**
+ * POST /telemetry
+ * 
+ * Performance records from the tills, sent in gzip batches (express.json
+ * inflates them). Each batch carries device and app fields, a per-kind
+ * summary computed on the device and the raw records; the latest samples are
+ * kept in memory for /telemetry/summary.
+ * Body: { device, appVersion, sdkVersion, locationId?, shiftId?, dropped, summary, records: [{ t, kind, ms, outcome?, err?, reader? }] }
+ * Response: { received: number }
+ */
+app.post('/telemetry', (req, res) => {
+    const { locationId, device, dropped, summary } = req.body;
+    const records = Array.isArray(req.body.records) ? req.body.records : [];
+    const checkout = summary && summary.checkout;
+
+    console.log(`📈 Telemetry from ${device || 'unknown device'} (${locationId || 'no location'}): ${records.length} record(s)` +
+        (checkout ? `, checkout p95 ${checkout.p95Ms}ms` : '') + (dropped ? `, ${dropped} dropped` : ''));
+
+    const byKind = telemetry.get(locationId || 'unknown') || new Map();
+    telemetry.set(locationId || 'unknown', byKind);
+    for (const record of records) {
+        if (typeof record.ms !== 'number' || !record.kind) continue;
+        const samples = byKind.get(record.kind) || [];
+        samples.push(record.ms);
+        if (samples.length > TELEMETRY_SAMPLES) samples.shift();
+        byKind.set(record.kind, samples);
+    }
+    res.json({ received: records.length });
+});
+
+/**
+ * GET /telemetry/summary
+ * 
+ * p50/p95 latency per location and record kind over the latest samples.
+ */
+app.get('/telemetry/summary', (req, res) => {
+    const percentile = (sorted, p) => sorted[Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+    const locations = {};
+    for (const [locationId, byKind] of telemetry) {
+        locations[locationId] = {};
+        for (const [kind, samples] of byKind) {
+            const sorted = [...samples].sort((a, b) => a - b);
+            locations[locationId][kind] = { count: sorted.length, p50Ms: percentile(sorted, 0.5), p95Ms: percentile(sorted, 0.95) };
+        }
+    }
+    res.json({ locations });
+});
+
 /**
  * Health check endpoint
  */
@@ -124,13 +350,19 @@ app.listen(PORT, '0.0.0.0', () => {
     console.log('');
     console.log('Endpoints:');
     console.log(`  POST /connection_token     - Get SDK connection token`);
+    console.log(`  POST /bootstrap            - Token, location and intents in one call`);
     console.log(`  POST /create_payment_intent - Create payment intent`);
+    console.log(`  POST /update_payment_intent - Change amount of a prepared intent`);
+    console.log(`  POST /cancel_payment_intent - Cancel an unused intent`);
     console.log(`  POST /capture_payment_intent - Capture payment`);
+    console.log(`  POST /capture_payment_intents - Capture a batch of payments`);
+    console.log(`  POST /telemetry            - Upload a batch of performance records`);
+    console.log(`  GET  /telemetry/summary    - Latency percentiles per location`);
     console.log(`  GET  /health               - Health check`);
     console.log('');
     console.log('📱 For Android device access, use ngrok:');
     console.log(`   ngrok http ${PORT}`);
     console.log('');
-    console.log('Then update BACKEND_URL in StripeTerminalPlugin.java');
+    console.log('Then call StripeTerminal.configure({ backendUrls: [...] }) from the app (it is remembered across launches)');
     console.log('');
 });